@@ -9,20 +9,21 @@ public class Association extends LabeledRelationship {
 		setBiDirection(pBiDirection);
 	}
 	
+	static final PropertySchema SCHEMA = LabeledRelationship.SCHEMA.with(PropertyKey.DIRECTION);
+	
 	@Override
-	public void buildProperties() {
-		super.buildProperties();
-		putProperty("direction", new Property("NoDirection"));
+	public PropertySchema getSchema() {
+		return SCHEMA;
 	}
 	
 	public boolean getUniDirection() {
-		if(getProperties().get("direction").getValue() == "UniDirection") {
+		if(getProperty(PropertyKey.DIRECTION).getValue() == "UniDirection") {
 			setUniDirection(true);
 		}
 		return uniDirection;
 	}
 	public boolean getBiDirection() {
-		if(getProperties().get("direction").getValue() == "BiDirection") {
+		if(getProperty(PropertyKey.DIRECTION).getValue() == "BiDirection") {
 			setBiDirection(true);
 		}
 		return biDirection;
@@ -13,11 +13,11 @@ public class BClass extends Classifier {
 	private ArrayList<BClass> superInterfaces = new ArrayList<>();
 	private ArrayList<BClass> memberClasses = new ArrayList<>();
 	
+	static final PropertySchema SCHEMA = NamedElement.SCHEMA.with(PropertyKey.ATTRIBUTES, PropertyKey.METHODS);
+	
 	@Override
-	public void buildProperties() {
-		super.buildProperties();
-		putProperty("attributes", new Property(""));
-		putProperty("methods", new Property(""));
+	public PropertySchema getSchema() {
+		return SCHEMA;
 	}
 	
 	public BClass(boolean pAbstract, boolean pInterface) {
@@ -37,14 +37,14 @@ public class BClass extends Classifier {
 		return isInterface;
 	}
 	public String getAttributesString() {
-		setAttributes(getProperties().get("attributes").getValue());
+		setAttributes(getProperty(PropertyKey.ATTRIBUTES).getValue());
 		return attributesString;
 	}
 	public ArrayList<Attribute> getAttributes() {
 		return attributes;
 	}
 	public String getMethodsString() {
-		setMethods(getProperties().get("methods").getValue());
+		setMethods(getProperty(PropertyKey.METHODS).getValue());
 		return methodsString;
 	}
 	public ArrayList<Method> getMethods() {
@@ -62,9 +62,11 @@ public class BClass extends Classifier {
 	
 	public void setIsAbstract(boolean pIsAbstract) {
 		isAbstract = pIsAbstract;
+		changed();
 	}
 	public void setIsInterface(boolean pIsInterface) {
 		isInterface = pIsInterface;
+		changed();
 	}
 	public void setAttributes(String pAttributes) {
 		attributesString = pAttributes;
@@ -1,16 +1,59 @@
 package diagram;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import diagram.manager.DiagramBuilder;
+import geom.Rectangle;
 import viewers.diagrams.DiagramViewer;
 
+/*
+ * The diagram keeps a registry of the elements it contains, so that contains
+ * and indexOf do not have to search the diagram. The NamedElements, including
+ * the descendants of packages, are in an identity set, which Package.addChild
+ * and removeChild update for packages of the diagram. The Relationships are 
+ * mapped to their index in the list of Relationships. Adding or removing a 
+ * Relationship anywhere but at the end shifts the following ones, so only the 
+ * indices before the first change are known to be right, and the others are 
+ * recomputed the next time one of them is needed.
+ * 
+ * The lists returned by getNamedElements and getRelationships must not be
+ * modified directly, as the registry would not be updated.
+ * 
+ * The diagram also reports the elements it gains and loses, and the changes 
+ * in its lists, to a SnapshotRecorder, which derives each snapshot of the 
+ * diagram from the previous one. The elements it gains, loses and changes 
+ * are also reported to its DiagramListeners.
+ * 
+ * The NamedElements that are registered without a persistent identifier get 
+ * the next one, which is greater than all the identifiers registered so far,
+ * so that a save does not have to walk the diagram to identify them.
+ * 
+ * A diagram that is read as it is accessed only has the Relationships whose 
+ * ends are both loaded. The others are added as the packages of their ends 
+ * are loaded, after the Relationships already there, and a relationship loader 
+ * loads these packages when the Relationships in an area are needed.
+ */
 public class Diagram {
 	private String name = "";
-	private ArrayList<NamedElement> namedElements = new ArrayList<>();
+	private OrderStatisticList<NamedElement> namedElements = new OrderStatisticList<>();
 	private ArrayList<Relationship> relationships = new ArrayList<>();
+	private Set<NamedElement> namedElementRegistry = Collections.newSetFromMap(new IdentityHashMap<>());
+	private Map<Relationship, Integer> relationshipIndices = new IdentityHashMap<>();
+	private int validIndices = 0;
+	private int nextPersistentId = 0;
+	private Consumer<Rectangle> relationshipLoader = null;
+	private final SnapshotRecorder snapshotRecorder = new SnapshotRecorder(this);
+	private final List<DiagramListener> listeners = new ArrayList<>();
+	private final StringPool stringPool = new StringPool();
 	private DiagramViewer diagramViewer = new DiagramViewer();
 	private ArrayList<Element> protoTypes = createProtoTypes();
 	private DiagramBuilder diagramBuilder = new DiagramBuilder(this);
@@ -32,7 +75,10 @@ public class Diagram {
 	public String getName() {
 		return name;
 	}
-	public ArrayList<NamedElement> getNamedElements() {
+	/**
+	 * @return The root NamedElements, from the bottom to the top of the z-order.
+	 */
+	public List<NamedElement> getNamedElements() {
 		return namedElements;
 	}
 	public ArrayList<Relationship> getRelationships() {
@@ -47,27 +93,55 @@ public class Diagram {
 	public DiagramBuilder getDiagramBuilder() {
 		return diagramBuilder;
 	}
+	/**
+	 * @return The pool in which the strings of this diagram are interned.
+	 */
+	public StringPool getStringPool() {
+		return stringPool;
+	}
 
 	public void setName(String pName) {
 		name = pName;
 	}
-	public void setNamedElements(ArrayList<NamedElement> pNamedElement) {
-		namedElements = pNamedElement;
+	public void setNamedElements(List<NamedElement> pNamedElement) {
+		namedElements = new OrderStatisticList<>(pNamedElement);
+		namedElementRegistry.clear();
+		namedElements.forEach(this::register);
+		reset();
 	}
 	public void setRelationships(ArrayList<Relationship> pRelationships) {
+		relationships.forEach(Diagram::disconnectEnds);
 		relationships = pRelationships;
+		relationships.forEach(Diagram::connectEnds);
+		relationshipIndices.clear();
+		validIndices = 0;
+		relationships.forEach(relationship -> relationshipIndices.put(relationship, -1));
+		reset();
 	}
 	public void setDiagramViewer(DiagramViewer pDiagramViewer) {
 		diagramViewer = pDiagramViewer;
 	}
 	
+	/**
+	 * The Relationships are found in the Relationships owned by pNamedElement, which the
+	 * diagram keeps in sync when Relationships are added and removed, so the time taken
+	 * only depends on the number of Relationships connected to pNamedElement.
+	 * 
+	 * @param pNamedElement The NamedElement to check.
+	 * @return The Relationships that start or end at pNamedElement, the ones that start 
+	 *     at pNamedElement first. A Relationship from pNamedElement to itself is listed once.
+	 * @pre pNamedElement != null && contains(pNamedElement)
+	 */
 	public Iterable<Relationship> RelationshipsConnectedTo(NamedElement pNamedElement)
 	{
 		assert pNamedElement != null && contains(pNamedElement);
-		Collection<Relationship> lReturn = new ArrayList<>();
-		for( Relationship Relationship : relationships )
+		List<Relationship> asStart = pNamedElement.getOwnedRelationshipsAsStart();
+		List<Relationship> asEnd = pNamedElement.getOwnedRelationshipsAsEnd();
+		Collection<Relationship> lReturn = new ArrayList<>(asStart.size() + asEnd.size());
+		lReturn.addAll(asStart);
+		for( Relationship Relationship : asEnd )
 		{
-			if( Relationship.getStart() == pNamedElement || Relationship.getEnd() == pNamedElement )
+			if( Relationship.getStart() != pNamedElement )
 			{
 				lReturn.add(Relationship);
 			}
@@ -75,52 +149,204 @@ public class Diagram {
 		return lReturn;
 	}
 	
+	/**
+	 * @param pElement The element to check.
+	 * @return True if pElement is a Relationship of this diagram, or a NamedElement
+	 *     of this diagram at any depth.
+	 * @pre pElement != null
+	 */
 	public boolean contains(Element pElement)
 	{
 		assert pElement != null;
-		if( relationships.contains(pElement) )
+		if( pElement instanceof Relationship )
 		{
-			return true;
+			return relationshipIndices.containsKey(pElement);
 		}
-		for( NamedElement NamedElement : namedElements )
+		return namedElementRegistry.contains(pElement);
+	}
+	
+	/**
+	 * Makes the NamedElements that are added to this diagram without a persistent
+	 * identifier get one that is at least pPersistentId, for instance because
+	 * elements that are not loaded yet have identifiers below pPersistentId.
+	 * 
+	 * @param pPersistentId The lowest identifier that is still free.
+	 * @pre pPersistentId >= 0
+	 */
+	public void reservePersistentIds(int pPersistentId)
+	{
+		assert pPersistentId >= 0;
+		nextPersistentId = Math.max(nextPersistentId, pPersistentId);
+	}
+	
+	/**
+	 * Defers the creation of the Relationships that are connected to NamedElements 
+	 * that are not loaded yet. pLoader is called with an area whenever the Relationships 
+	 * in it are needed, and is expected to add the ones whose bounds, as they are known
+	 * without creating them, intersect the area.
+	 * 
+	 * @param pLoader The function that adds the Relationships in an area.
+	 * @pre pLoader != null
+	 */
+	public void setRelationshipLoader(Consumer<Rectangle> pLoader)
+	{
+		assert pLoader != null;
+		relationshipLoader = pLoader;
+	}
+	
+	/**
+	 * Makes sure that the Relationships whose bounds intersect pArea are in this
+	 * diagram, if some of them are only created when they are needed.
+	 * 
+	 * @param pArea The area of interest.
+	 * @pre pArea != null
+	 */
+	public void loadRelationships(Rectangle pArea)
+	{
+		assert pArea != null;
+		if( relationshipLoader != null )
 		{
-			if( containsNamedElements(NamedElement, pElement) )
-			{
-				return true;
-			}
+			relationshipLoader.accept(pArea);
 		}
-		return false;
 	}
 	
-	private boolean containsNamedElements(NamedElement pTest, Element pTarget)
+	/**
+	 * Returns an immutable snapshot of the current state of this diagram, which
+	 * can be read from any thread while the diagram is edited. The snapshot is 
+	 * derived from the previous one in time proportional to the number of changes
+	 * made since then, and shares the snapshots of the elements that did not change.
+	 * 
+	 * @return A snapshot of this diagram. Never null.
+	 */
+	public DiagramSnapshot snapshot()
 	{
-		if( pTest == pTarget )
-		{
-			return true;
+		return snapshotRecorder.snapshot();
+	}
+	
+	SnapshotRecorder getSnapshotRecorder()
+	{
+		return snapshotRecorder;
+	}
+	
+	/**
+	 * @param pListener A listener to tell about the changes to this diagram.
+	 * @pre pListener != null
+	 */
+	public void addListener(DiagramListener pListener)
+	{
+		assert pListener != null;
+		listeners.add(pListener);
+	}
+	
+	/**
+	 * @param pListener A listener that must no longer be told about the changes to this diagram.
+	 */
+	public void removeListener(DiagramListener pListener)
+	{
+		listeners.remove(pListener);
+	}
+	
+	/*
+	 * The methods below report a change to the snapshot recorder and the listeners.
+	 * They loop over the listeners by index, since changed is called for every
+	 * element on every step of a move, which must not allocate.
+	 */
+	void added(Element pElement)
+	{
+		snapshotRecorder.added(pElement);
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).elementAdded(pElement);
 		}
-		if(pTest instanceof Package) {
-			for( NamedElement NamedElement : ((Package)pTest).getChildren() )
-			{
-				if( containsNamedElements(NamedElement, pTarget) )
-				{
-					return true;
-				}
-			}
+	}
+	
+	void removed(Element pElement)
+	{
+		snapshotRecorder.removed(pElement);
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).elementRemoved(pElement);
+		}
+	}
+	
+	void changed(Element pElement)
+	{
+		snapshotRecorder.changed(pElement);
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).elementChanged(pElement);
+		}
+	}
+	
+	void placedOnTop(NamedElement pNamedElement)
+	{
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).elementPlacedOnTop(pNamedElement);
+		}
+	}
+	
+	void reset()
+	{
+		snapshotRecorder.invalidate();
+		for(int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).diagramReset();
+		}
+	}
+	
+	/*
+	 * Adds pNamedElement and its loaded descendants to the registry. The children 
+	 * of a package that are loaded later are registered as they are added to it.
+	 */
+	void register(NamedElement pNamedElement)
+	{
+		if(pNamedElement.hasPersistentId()) {
+			reservePersistentIds(pNamedElement.getPersistentId() + 1);
+		}
+		else {
+			pNamedElement.setPersistentId(nextPersistentId++);
+		}
+		namedElementRegistry.add(pNamedElement);
+		added(pNamedElement);
+		if(pNamedElement instanceof Package && ((Package)pNamedElement).hasLoadedChildren()) {
+			((Package)pNamedElement).getChildren().forEach(this::register);
+		}
+	}
+	
+	/*
+	 * Removes pNamedElement and its loaded descendants from the registry.
+	 */
+	void unregister(NamedElement pNamedElement)
+	{
+		namedElementRegistry.remove(pNamedElement);
+		removed(pNamedElement);
+		if(pNamedElement instanceof Package && ((Package)pNamedElement).hasLoadedChildren()) {
+			((Package)pNamedElement).getChildren().forEach(this::unregister);
 		}
-		return false;
 	}
 	
 	public void addNamedElement(NamedElement pNamedElement)
 	{
-		assert pNamedElement != null;
+		addNamedElement(namedElements.size(), pNamedElement);
+	}
+	
+	/**
+	 * Adds pNamedElement at index pIndex of the root NamedElements.
+	 * 
+	 * @param pIndex Where to add the NamedElement.
+	 * @param pNamedElement The NamedElement to add.
+	 * @pre pNamedElement != null && pIndex >= 0 && pIndex <= getNamedElements().size()
+	 */
+	public void addNamedElement(int pIndex, NamedElement pNamedElement)
+	{
+		assert pNamedElement != null && pIndex >= 0 && pIndex <= namedElements.size();
 		recursiveAttach(pNamedElement);
-		namedElements.add(pNamedElement);
+		register(pNamedElement);
+		namedElements.add(pIndex, pNamedElement);
+		snapshotRecorder.inserted(SnapshotRecorder.ROOT_ELEMENTS, pIndex, pNamedElement);
 	}
 
 	private void recursiveAttach(NamedElement pNamedElement)
 	{
 		pNamedElement.attach(this);
-		if(pNamedElement instanceof Package) {
+		// Children that are not loaded yet are attached by the loader of their package
+		if(pNamedElement instanceof Package && ((Package)pNamedElement).hasLoadedChildren()) {
 			((Package)pNamedElement).getChildren().forEach(this::recursiveAttach);
 		}
 	}
@@ -128,7 +354,7 @@ public class Diagram {
 	private void recursiveDetach(NamedElement pNamedElement)
 	{
 		pNamedElement.detach();
-		if(pNamedElement instanceof Package) {
+		if(pNamedElement instanceof Package && ((Package)pNamedElement).hasLoadedChildren()) {
 			((Package)pNamedElement).getChildren().forEach(this::recursiveDetach);
 		}
 	}
@@ -142,8 +368,10 @@ public class Diagram {
 	 */
 	public void removeNamedElement(NamedElement pNamedElement)
 	{
-		assert pNamedElement != null && namedElements.contains(pNamedElement);
+		assert pNamedElement != null && contains(pNamedElement) && !pNamedElement.hasParent();
 		recursiveDetach(pNamedElement);
+		unregister(pNamedElement);
+		snapshotRecorder.removed(SnapshotRecorder.ROOT_ELEMENTS, namedElements.indexOf(pNamedElement));
 		namedElements.remove(pNamedElement);
 	}
 	
@@ -157,9 +385,7 @@ public class Diagram {
 	public void addRelationship(Relationship pRelationship)
 	{
 		assert pRelationship != null && pRelationship.getStart() != null && pRelationship.getEnd() != null && pRelationship.getDiagram() != null;
-		pRelationship.getStart().addOwnedRealtionshipAsStart(pRelationship);
-		pRelationship.getEnd().addOwnedRealtionshipAsEnd(pRelationship);
-		relationships.add(pRelationship);
+		addRelationship(relationships.size(), pRelationship);
 	}
 	
 	/**
@@ -172,7 +398,20 @@ public class Diagram {
 	public void addRelationship(int pIndex, Relationship pRelationship)
 	{
 		assert pRelationship != null && pIndex >= 0 && pIndex <= relationships.size();
+		connectEnds(pRelationship);
 		relationships.add(pIndex, pRelationship);
+		if( validIndices == pIndex )
+		{
+			relationshipIndices.put(pRelationship, pIndex);
+			validIndices++;
+		}
+		else
+		{
+			relationshipIndices.put(pRelationship, -1);
+			validIndices = Math.min(validIndices, pIndex);
+		}
+		added(pRelationship);
+		snapshotRecorder.inserted(SnapshotRecorder.RELATIONSHIPS, pIndex, pRelationship);
 	}
 	
 	/**
@@ -183,8 +422,90 @@ public class Diagram {
 	 */
 	public void removeRelationship(Relationship pRelationship)
 	{
-		assert pRelationship != null && relationships.contains(pRelationship);
-		relationships.remove(pRelationship);
+		assert pRelationship != null && contains(pRelationship);
+		int index = indexOf(pRelationship);
+		disconnectEnds(pRelationship);
+		relationships.remove(index);
+		relationshipIndices.remove(pRelationship);
+		validIndices = Math.min(validIndices, index);
+		snapshotRecorder.removed(SnapshotRecorder.RELATIONSHIPS, index);
+		removed(pRelationship);
+	}
+
+	/**
+	 * Removes all of pRelationships from this diagram in a single pass over the list of Relationships, which is
+	 * renumbered once. The removals are reported from the last index to the first, so that each reported index is
+	 * the one of the Relationship when it is removed. Callers must ensure that the removal preserves the integrity
+	 * of the diagram.
+	 *
+	 * @param pRelationships The Relationships to remove.
+	 * @pre pRelationships != null && all pRelationships are distinct and contained in the diagram
+	 */
+	public void removeRelationships(Collection<Relationship> pRelationships)
+	{
+		assert pRelationships != null;
+		if( pRelationships.isEmpty() )
+		{
+			return;
+		}
+		int[] indices = new int[pRelationships.size()];
+		int count = 0;
+		for( Relationship relationship : pRelationships )
+		{
+			assert relationship != null && contains(relationship);
+			indices[count++] = indexOf(relationship);
+		}
+		Arrays.sort(indices);
+		Relationship[] removed = new Relationship[indices.length];
+		int next = 0;
+		int kept = indices[0];
+		for( int i = indices[0]; i < relationships.size(); i++ )
+		{
+			Relationship relationship = relationships.get(i);
+			if( next < indices.length && indices[next] == i )
+			{
+				removed[next++] = relationship;
+				disconnectEnds(relationship);
+				relationshipIndices.remove(relationship);
+			}
+			else
+			{
+				relationships.set(kept, relationship);
+				relationshipIndices.put(relationship, kept);
+				kept++;
+			}
+		}
+		assert next == indices.length;
+		relationships.subList(kept, relationships.size()).clear();
+		validIndices = relationships.size();
+		for( int i = removed.length - 1; i >= 0; i-- )
+		{
+			snapshotRecorder.removed(SnapshotRecorder.RELATIONSHIPS, indices[i]);
+			removed(removed[i]);
+		}
+	}
+
+	/*
+	 * Adds pRelationship to the Relationships owned by its end points. The Relationships 
+	 * are spread along the sides of their ends, so the ends get a new version.
+	 */
+	private static void connectEnds(Relationship pRelationship)
+	{
+		pRelationship.getStart().addOwnedRealtionshipAsStart(pRelationship);
+		pRelationship.getEnd().addOwnedRealtionshipAsEnd(pRelationship);
+		pRelationship.getStart().incrementVersion();
+		pRelationship.getEnd().incrementVersion();
+	}
+	
+	/*
+	 * Removes pRelationship from the Relationships owned by its end points.
+	 */
+	private static void disconnectEnds(Relationship pRelationship)
+	{
+		pRelationship.getStart().getOwnedRelationshipsAsStart().remove(pRelationship);
+		pRelationship.getEnd().getOwnedRelationshipsAsEnd().remove(pRelationship);
+		pRelationship.getStart().incrementVersion();
+		pRelationship.getEnd().incrementVersion();
 	}
 	
 	/**
@@ -196,12 +517,23 @@ public class Diagram {
 	public int indexOf(Relationship pRelationship)
 	{
 		assert contains(pRelationship);
-		return relationships.indexOf(pRelationship);
+		int index = relationshipIndices.get(pRelationship);
+		if( index < 0 || index >= validIndices )
+		{
+			for( int i = validIndices; i < relationships.size(); i++ )
+			{
+				relationshipIndices.put(relationships.get(i), i);
+			}
+			validIndices = relationships.size();
+			index = relationshipIndices.get(pRelationship);
+		}
+		return index;
 	}
 	
 	/**
 	 * Recursively reorder the node to be on top of its parent's children. If the node is not a child node or the node
-	 * does not have a parent, check if the node is a root node of the diagram and place it on top.
+	 * does not have a parent, check if the node is a root node of the diagram and place it on top. Each move takes
+	 * time logarithmic in the number of siblings, and does not change the attachment of the node or its children.
 	 * 
 	 * @param pNamedElement The node to be placed on top
 	 * @pre pNamedElement != null
@@ -215,80 +547,62 @@ public class Diagram {
 			Package parent = pNamedElement.getParent();
 			// Move the child node to the top of all other children
 			parent.placeLast(pNamedElement);
+			if( contains(pNamedElement) )
+			{
+				placedOnTop(pNamedElement);
+			}
 			// Recursively reorder the node's parent
 			placeOnTop(parent);
 		}
 		else if( contains(pNamedElement) )
 		{
-			removeNamedElement(pNamedElement);
-			addNamedElement(pNamedElement);
+			snapshotRecorder.movedToEnd(SnapshotRecorder.ROOT_ELEMENTS, namedElements.indexOf(pNamedElement));
+			namedElements.moveToEnd(pNamedElement);
+			placedOnTop(pNamedElement);
 		}
 	}
 	
 	/**
 	 * Creates a copy of the current diagram. The copy is a completely distinct graph of nodes and edges with the same
-	 * topology as this diagram.
+	 * topology as this diagram. The copies of the nodes are mapped to their original while they are cloned, so that
+	 * the edges can be connected to the copies in a single pass, in time proportional to the size of the diagram.
+	 * The copies share the strings of the original, but the copy has its own string pool,
+	 * which is not thread-safe, so that the copy can be used on another thread.
 	 * 
 	 * @return A copy of this diagram. Never null.
 	 */
 	public Diagram duplicate()
 	{
 		Diagram copy = new Diagram();
-		relationships.forEach(edge -> copy.relationships.add((Relationship)edge.clone()));
-
+		Map<NamedElement, NamedElement> copies = new IdentityHashMap<>();
 		for( NamedElement node : namedElements )
 		{
-			NamedElement nodeCopy = (NamedElement)node.clone();
-			copy.namedElements.add(nodeCopy);
-			reassignRelationships(copy.relationships, node, nodeCopy);
+			NamedElement nodeCopy = node.clone();
+			mapCopies(node, nodeCopy, copies);
+			copy.addNamedElement(nodeCopy);
 		}
-
-		// Reassign diagram
-		copy.relationships.forEach(edge -> edge.connect(edge.getStart(), edge.getEnd(), copy));
-		for( NamedElement node : copy.namedElements )
+		for( Relationship edge : relationships )
 		{
-			copy.attachNamedElement(node);
+			Relationship edgeCopy = edge.clone();
+			edgeCopy.connect(copies.get(edge.getStart()), copies.get(edge.getEnd()), copy);
+			copy.addRelationship(edgeCopy);
 		}
 		return copy;
 	}
 	
 	/*
-	 * Recursively attach the node and all its children to this diagram.
-	 */
-	private void attachNamedElement(NamedElement pNamedElement)
-	{
-		pNamedElement.attach(this);
-		if(pNamedElement instanceof Package) {
-			for( NamedElement child : ((Package)pNamedElement).getChildren() )
-			{
-				attachNamedElement(child);
-			}
-		}
-	}
-
-	/*
-	 * For node pOriginal, go through all edges that refer to it and replace it with pCopy in the edge. Do this
-	 * recursively for all children of pOriginal, assuming the same topology for pCopy.
+	 * Maps pOriginal to pCopy in pCopies, and recursively the children of pOriginal
+	 * to the children of pCopy, assuming the same topology for pCopy.
 	 */
-	private static void reassignRelationships(List<Relationship> pRelationships, NamedElement pOriginal, NamedElement pCopy)
+	private static void mapCopies(NamedElement pOriginal, NamedElement pCopy, Map<NamedElement, NamedElement> pCopies)
 	{
-		for( Relationship edge : pRelationships )
-		{
-			if( edge.getStart() == pOriginal )
-			{
-				edge.connect(pCopy, edge.getEnd(), edge.getDiagram());
-			}
-			if( edge.getEnd() == pOriginal )
-			{
-				edge.connect(edge.getStart(), pCopy, edge.getDiagram());
-			}
-		}
+		pCopies.put(pOriginal, pCopy);
 		if( pOriginal instanceof Package ) {
-			List<NamedElement> oldChildren = ((Package)pOriginal).getChildren();
-			List<NamedElement> newChildren = ((Package)pCopy).getChildren();
-			for( int i = 0; i < oldChildren.size(); i++ )
+			// The children are walked together, since getting them by index takes logarithmic time
+			Iterator<NamedElement> copiedChildren = ((Package)pCopy).getChildren().iterator();
+			for( NamedElement originalChild : ((Package)pOriginal).getChildren() )
 			{
-				reassignRelationships(pRelationships, oldChildren.get(i), newChildren.get(i));
+				mapCopies(originalChild, copiedChildren.next(), pCopies);
 			}
 		}
 	}
@@ -0,0 +1,49 @@
+package diagram;
+
+/**
+ * Is told about the changes to a diagram that can change how it looks: the 
+ * elements that it gains and loses, at any depth, the elements whose 
+ * properties or position change, and the elements placed on top of the 
+ * others. A listener is registered with Diagram.addListener, and is called 
+ * while the diagram is being changed, so it should only record what changed 
+ * and leave any further work for later.
+ */
+public interface DiagramListener
+{
+	/**
+	 * Called when pElement is added to the diagram, either as a root NamedElement,
+	 * as the child of a Package of the diagram, or as a Relationship.
+	 * 
+	 * @param pElement The added element.
+	 */
+	void elementAdded(Element pElement);
+	
+	/**
+	 * Called when pElement is removed from the diagram. A NamedElement that is 
+	 * removed from a package is still linked to it.
+	 * 
+	 * @param pElement The removed element.
+	 */
+	void elementRemoved(Element pElement);
+	
+	/**
+	 * Called when a property or the position of pElement changes.
+	 * 
+	 * @param pElement The changed element.
+	 */
+	void elementChanged(Element pElement);
+	
+	/**
+	 * Called when pNamedElement is placed on top of its siblings, so that 
+	 * it is drawn over them.
+	 * 
+	 * @param pNamedElement The NamedElement placed on top.
+	 */
+	void elementPlacedOnTop(NamedElement pNamedElement);
+	
+	/**
+	 * Called when the root NamedElements, the Relationships or the children 
+	 * of a package of the diagram are replaced all at once.
+	 */
+	void diagramReset();
+}
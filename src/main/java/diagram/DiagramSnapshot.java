@@ -0,0 +1,261 @@
+package diagram;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+
+import geom.Point;
+
+/**
+ * An immutable view of a diagram at the time Diagram.snapshot() was called,
+ * which can be handed to other threads while the diagram is edited.
+ *
+ * The snapshots of the elements are kept in a persistent table, and refer to
+ * each other by their position in the table. The root elements, the children
+ * of each package and the relationships are persistent lists of positions, so
+ * the next snapshot of the diagram only copies the parts of the table and of
+ * the lists that lead to the elements that changed in the meantime.
+ */
+public final class DiagramSnapshot
+{
+	private final PersistentVector<ElementSnapshot> aElements;
+	private final PersistentVector<Integer> aRootElements;
+	private final PersistentVector<Integer> aRelationships;
+
+	DiagramSnapshot(PersistentVector<ElementSnapshot> pElements, PersistentVector<Integer> pRootElements,
+			PersistentVector<Integer> pRelationships)
+	{
+		aElements = pElements;
+		aRootElements = pRootElements;
+		aRelationships = pRelationships;
+	}
+
+	/**
+	 * @return The root NamedElements, from the bottom to the top of the z-order.
+	 */
+	public List<NamedElementSnapshot> getRootElements()
+	{
+		return new Elements<>(aRootElements);
+	}
+
+	/**
+	 * @return The Relationships of the diagram.
+	 */
+	public List<RelationshipSnapshot> getRelationships()
+	{
+		return new Elements<>(aRelationships);
+	}
+
+	/**
+	 * @param pNamedElement A NamedElement of this snapshot.
+	 * @return The children of pNamedElement from the bottom to the top of the z-order,
+	 *     or an empty list if it is not a package.
+	 * @pre pNamedElement != null
+	 */
+	public List<NamedElementSnapshot> getChildren(NamedElementSnapshot pNamedElement)
+	{
+		assert pNamedElement != null;
+		if( !pNamedElement.isPackage() )
+		{
+			return List.of();
+		}
+		return new Elements<>(pNamedElement.getChildIds());
+	}
+
+	/**
+	 * @param pRelationship A Relationship of this snapshot.
+	 * @return The start of pRelationship, or null if it was not in the diagram.
+	 * @pre pRelationship != null
+	 */
+	public NamedElementSnapshot getStart(RelationshipSnapshot pRelationship)
+	{
+		assert pRelationship != null;
+		return element(pRelationship.getStartId());
+	}
+
+	/**
+	 * @param pRelationship A Relationship of this snapshot.
+	 * @return The end of pRelationship, or null if it was not in the diagram.
+	 * @pre pRelationship != null
+	 */
+	public NamedElementSnapshot getEnd(RelationshipSnapshot pRelationship)
+	{
+		assert pRelationship != null;
+		return element(pRelationship.getEndId());
+	}
+
+	/**
+	 * Creates a diagram in the state of this snapshot, for instance to save it
+	 * on another thread. The diagram has its own elements and string pool, so
+	 * nothing it does touches the diagram the snapshot was taken of. Its properties
+	 * have the same values and its NamedElements the same persistent identifiers.
+	 * Can be called on any thread.
+	 *
+	 * @return A new diagram with the content of this snapshot. Never null.
+	 */
+	public Diagram toDiagram()
+	{
+		Diagram result = new Diagram();
+		NamedElement[] namedElements = new NamedElement[aElements.size()];
+		for( NamedElementSnapshot root : getRootElements() )
+		{
+			result.addNamedElement(toNamedElement(root, namedElements));
+		}
+		for( RelationshipSnapshot snapshot : getRelationships() )
+		{
+			Relationship relationship = newRelationship(snapshot);
+			setProperties(relationship, snapshot);
+			relationship.connect(namedElement(snapshot.getStartId(), namedElements),
+					namedElement(snapshot.getEndId(), namedElements), result);
+			result.addRelationship(relationship);
+		}
+		// Once all the Relationships are connected, as each one changes the version of its ends
+		List<RelationshipSnapshot> relationships = getRelationships();
+		for( int i = 0; i < relationships.size(); i++ )
+		{
+			relationships.get(i).getKnownBounds().ifPresent(result.getRelationships().get(i)::setKnownBounds);
+		}
+		return result;
+	}
+
+	/*
+	 * Creates the NamedElement of pSnapshot and its descendants, and records them in pNamedElements by id.
+	 */
+	private NamedElement toNamedElement(NamedElementSnapshot pSnapshot, NamedElement[] pNamedElements)
+	{
+		NamedElement namedElement = newNamedElement(pSnapshot);
+		setProperties(namedElement, pSnapshot);
+		namedElement.setPosition(new Point(pSnapshot.getX(), pSnapshot.getY()));
+		namedElement.setPersistentId(pSnapshot.getPersistentId());
+		if( pSnapshot.getKnownBounds().isPresent() )
+		{
+			((Package) namedElement).setKnownBounds(pSnapshot.getKnownBounds().get());
+		}
+		for( NamedElementSnapshot child : getChildren(pSnapshot) )
+		{
+			((Package) namedElement).addChild(toNamedElement(child, pNamedElements));
+		}
+		pNamedElements[pSnapshot.getId()] = namedElement;
+		return namedElement;
+	}
+
+	private static NamedElement namedElement(int pId, NamedElement[] pNamedElements)
+	{
+		return pId == SnapshotRecorder.NO_ID ? null : pNamedElements[pId];
+	}
+
+	private static void setProperties(Element pElement, ElementSnapshot pSnapshot)
+	{
+		PropertySchema schema = pSnapshot.getSchema();
+		for( int i = 0; i < schema.size(); i++ )
+		{
+			pElement.getProperty(schema.getKey(i)).setValue(pSnapshot.getProperty(schema.getKey(i)));
+		}
+	}
+
+	private static NamedElement newNamedElement(NamedElementSnapshot pSnapshot)
+	{
+		Class<? extends Element> type = pSnapshot.getType();
+		if( type == BClass.class )
+		{
+			return new BClass(pSnapshot.isAbstract(), pSnapshot.isInterface());
+		}
+		else if( type == Package.class )
+		{
+			return new Package();
+		}
+		else if( type == Enumeration.class )
+		{
+			return new Enumeration();
+		}
+		else
+		{
+			assert type == DataType.class;
+			return new DataType();
+		}
+	}
+
+	private static Relationship newRelationship(RelationshipSnapshot pSnapshot)
+	{
+		Class<? extends Element> type = pSnapshot.getType();
+		if( type == Association.class )
+		{
+			return new Association(pSnapshot.isUniDirection(), pSnapshot.isBiDirection());
+		}
+		else if( type == Generalization.class )
+		{
+			return new Generalization();
+		}
+		else
+		{
+			assert type == Composition.class;
+			return new Composition();
+		}
+	}
+
+	PersistentVector<ElementSnapshot> getElementTable()
+	{
+		return aElements;
+	}
+
+	PersistentVector<Integer> getRootElementIds()
+	{
+		return aRootElements;
+	}
+
+	PersistentVector<Integer> getRelationshipIds()
+	{
+		return aRelationships;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <E extends ElementSnapshot> E element(int pId)
+	{
+		return pId == SnapshotRecorder.NO_ID ? null : (E) aElements.get(pId);
+	}
+
+	/*
+	 * The snapshots at the positions of a list of ids.
+	 */
+	private final class Elements<E extends ElementSnapshot> extends AbstractList<E>
+	{
+		private final PersistentVector<Integer> aIds;
+
+		Elements(PersistentVector<Integer> pIds)
+		{
+			aIds = pIds;
+		}
+
+		@Override
+		public E get(int pIndex)
+		{
+			return element(aIds.get(pIndex));
+		}
+
+		@Override
+		public int size()
+		{
+			return aIds.size();
+		}
+
+		@Override
+		public Iterator<E> iterator()
+		{
+			Iterator<Integer> ids = aIds.iterator();
+			return new Iterator<>()
+			{
+				@Override
+				public boolean hasNext()
+				{
+					return ids.hasNext();
+				}
+
+				@Override
+				public E next()
+				{
+					return element(ids.next());
+				}
+			};
+		}
+	}
+}
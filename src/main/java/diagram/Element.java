@@ -1,36 +1,134 @@
 package diagram;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
 
+/*
+ * The properties of an element are stored in an array with one slot per 
+ * property of its type, as listed by the schema returned by getSchema(). 
+ * Subclasses with more properties override getSchema() to return a shared 
+ * schema that extends the one of their superclass.
+ */
 public abstract class Element implements Cloneable {
 	private Diagram diagram = null;
 	private Optional<Diagram> aDiagram = Optional.empty();
-	private HashMap<String, Property> properties;
+	private Property[] properties;
+	private PropertyMap propertyMap = null; // The view of properties, created when it is first needed
+	private int snapshotId = SnapshotRecorder.NO_ID;
+	private int version = 0;
 	
 	Element() {
-		buildProperties();
+		properties = new Property[getSchema().size()];
+		setDefaultProperties();
 	}
 	
+	/**
+	 * @return The properties of this type of element.
+	 */
+	public PropertySchema getSchema() {
+		return PropertySchema.EMPTY;
+	}
+	
+	/**
+	 * Sets every property of this element to a new property with its default value.
+	 */
 	public void buildProperties() {
-		properties = new HashMap<>();
+		setDefaultProperties();
+		changed();
+	}
+	
+	/*
+	 * Fills the slots in place, so that the view returned by getProperties stays valid.
+	 */
+	private void setDefaultProperties() {
+		PropertySchema schema = getSchema();
+		for(int i = 0; i < properties.length; i++) {
+			properties[i] = new Property(schema.getKey(i).getDefaultValue());
+			properties[i].setOwner(this);
+		}
+	}
+	
+	/**
+	 * @param pKey A property of this type of element.
+	 * @return The property pKey of this element.
+	 * @pre getSchema().contains(pKey)
+	 */
+	public Property getProperty(PropertyKey pKey) {
+		assert getSchema().contains(pKey);
+		return properties[getSchema().getSlot(pKey)];
+	}
+	
+	/**
+	 * @param pKey A property of this type of element.
+	 * @param pProperty The new property pKey of this element.
+	 * @pre getSchema().contains(pKey) && pProperty != null
+	 */
+	public void setProperty(PropertyKey pKey, Property pProperty) {
+		assert getSchema().contains(pKey) && pProperty != null;
+		setSlot(getSchema().getSlot(pKey), pProperty);
+	}
+	
+	/*
+	 * Stores pProperty in slot pSlot, and records the change for the snapshots of the diagram.
+	 */
+	void setSlot(int pSlot, Property pProperty) {
+		pProperty.setOwner(this);
+		properties[pSlot] = pProperty;
+		changed();
 	}
 	
-	public HashMap<String, Property> getProperties() {
-		return properties;
+	/**
+	 * @return A view of the properties of this element by name, which is always
+	 *     the same. Putting a property or setting an entry replaces the property 
+	 *     of this element.
+	 */
+	public Map<String, Property> getProperties() {
+		if(propertyMap == null) {
+			propertyMap = new PropertyMap(this, getSchema(), properties);
+		}
+		return propertyMap;
 	}
 
-	public void setProperties(HashMap<String, Property> properties) {
-		this.properties = properties;
+	/**
+	 * Replaces the properties of this element by the ones in pProperties. The 
+	 * properties that are not in pProperties are set to their default value, 
+	 * and the ones that elements of this type do not have are ignored.
+	 * 
+	 * @param pProperties The new properties by name.
+	 * @pre pProperties != null
+	 */
+	public void setProperties(Map<String, Property> pProperties) {
+		assert pProperties != null;
+		PropertySchema schema = getSchema();
+		for(int i = 0; i < properties.length; i++) {
+			Property property = pProperties.get(schema.getKey(i).getName());
+			properties[i] = property == null ? new Property(schema.getKey(i).getDefaultValue()) : property;
+			properties[i].setOwner(this);
+		}
+		changed();
+	}
+	
+	/**
+	 * Replaces the values of the properties of this element by the equal strings 
+	 * of the pool of its diagram, for instance once they have been edited. 
+	 * Nothing happens if this element is not in a diagram.
+	 */
+	public void internProperties() {
+		containingDiagram().ifPresent(container -> {
+			for(Property property : properties) {
+				property.intern(container.getStringPool());
+			}
+		});
 	}
 	
 	public void putProperty(String key, Property pProperty) {
-		properties.put(key, pProperty);
+		getProperties().put(key, pProperty);
 	}
 	
 	public ArrayList<Property> getPropertiesList() {
-		return new ArrayList<>(properties.values());
+		return new ArrayList<>(Arrays.asList(properties));
 	}
 
 	public Diagram getDiagram() {
@@ -44,12 +142,13 @@ public abstract class Element implements Cloneable {
 	public Element clone() {
 		try {
 			Element e = (Element)super.clone();
-			HashMap<String, Property> oldProperties = e.getProperties();
-			e.setProperties(new HashMap<String, Property>());
-			for(String key : oldProperties.keySet()) {
-				Property p = new Property(oldProperties.get(key));
-				e.putProperty(key, p);
+			e.properties = new Property[properties.length];
+			e.propertyMap = null;
+			for(int i = 0; i < properties.length; i++) {
+				e.properties[i] = new Property(properties[i]);
+				e.properties[i].setOwner(e);
 			}
+			e.snapshotId = SnapshotRecorder.NO_ID;
 			return e;
 		} catch (CloneNotSupportedException e) {
 			// TODO Auto-generated catch block
@@ -71,4 +170,55 @@ public abstract class Element implements Cloneable {
 	{
 		aDiagram = Optional.empty();
 	}
+	
+	/*
+	 * Returns the diagram that contains this element, if any. A Relationship
+	 * knows the diagram it was connected in.
+	 */
+	Optional<Diagram> containingDiagram() {
+		return Optional.ofNullable(findContainingDiagram());
+	}
+	
+	/*
+	 * Returns the diagram that contains this element, or null. Unlike containingDiagram,
+	 * this allocates nothing, so that it can be called on every step of a move.
+	 */
+	Diagram findContainingDiagram() {
+		return diagram != null && diagram.contains(this) ? diagram : null;
+	}
+	
+	/*
+	 * Records that the state of this element changed, for the next snapshot of its diagram
+	 * and for the listeners of the diagram.
+	 */
+	void changed() {
+		incrementVersion();
+		Diagram container = findContainingDiagram();
+		if(container != null) {
+			container.changed(this);
+		}
+	}
+	
+	/**
+	 * @return A number that changes every time the state of this element, 
+	 *     or of one of its descendants, changes.
+	 */
+	public int getVersion() {
+		return version;
+	}
+	
+	void incrementVersion() {
+		version++;
+	}
+	
+	/*
+	 * The position of the snapshot of this element in the snapshots of its diagram.
+	 */
+	int getSnapshotId() {
+		return snapshotId;
+	}
+	
+	void setSnapshotId(int pSnapshotId) {
+		snapshotId = pSnapshotId;
+	}
 }
@@ -0,0 +1,73 @@
+package diagram;
+
+/**
+ * The state of an Element at the time a snapshot of its diagram was taken.
+ * Snapshots of elements never change, and the ones of elements that did not
+ * change are shared by the successive snapshots of a diagram. They can be
+ * read from any thread.
+ */
+public abstract class ElementSnapshot
+{
+	private final int aId;
+	private final Class<? extends Element> aType;
+	private final PropertySchema aSchema;
+	private final String[] aValues;
+
+	ElementSnapshot(int pId, Element pElement)
+	{
+		aId = pId;
+		aType = pElement.getClass();
+		aSchema = pElement.getSchema();
+		aValues = new String[aSchema.size()];
+		for( int i = 0; i < aValues.length; i++ )
+		{
+			aValues[i] = pElement.getProperty(aSchema.getKey(i)).getValue();
+		}
+	}
+
+	/*
+	 * Creates a snapshot with the same id, type and property values as pSnapshot.
+	 */
+	ElementSnapshot(ElementSnapshot pSnapshot)
+	{
+		aId = pSnapshot.aId;
+		aType = pSnapshot.aType;
+		aSchema = pSnapshot.aSchema;
+		aValues = pSnapshot.aValues;
+	}
+
+	/*
+	 * The position of the snapshot in the table of the elements of the diagram snapshot.
+	 */
+	int getId()
+	{
+		return aId;
+	}
+
+	/**
+	 * @return The class of the element.
+	 */
+	public Class<? extends Element> getType()
+	{
+		return aType;
+	}
+
+	/**
+	 * @return The properties of the element.
+	 */
+	public PropertySchema getSchema()
+	{
+		return aSchema;
+	}
+
+	/**
+	 * @param pKey A property of the element.
+	 * @return The value of property pKey of the element.
+	 * @pre getSchema().contains(pKey)
+	 */
+	public String getProperty(PropertyKey pKey)
+	{
+		assert aSchema.contains(pKey);
+		return aValues[aSchema.getSlot(pKey)];
+	}
+}
@@ -6,14 +6,15 @@ public class Enumeration extends DataType {
 	private String literalsString = "";
 	private ArrayList<String> literals = new ArrayList<>();
 	
+	static final PropertySchema SCHEMA = NamedElement.SCHEMA.with(PropertyKey.LITERALS);
+	
 	@Override
-	public void buildProperties() {
-		super.buildProperties();
-		putProperty("literals", new Property(""));
+	public PropertySchema getSchema() {
+		return SCHEMA;
 	}
 	
 	public String getLiteralsString() {
-		setLiteralsString(getProperties().get("literals").getValue());
+		setLiteralsString(getProperty(PropertyKey.LITERALS).getValue());
 		return literalsString;
 	}
 	public ArrayList<String> getLiterals() {
@@ -5,24 +5,24 @@ public abstract class LabeledRelationship extends Relationship {
 	private String midLabel = "";
 	private String endLabel = "";
 	
+	static final PropertySchema SCHEMA = PropertySchema.EMPTY.with(PropertyKey.START_LABEL, 
+			PropertyKey.MID_LABEL, PropertyKey.END_LABEL);
+	
 	@Override
-	public void buildProperties() {
-		super.buildProperties();
-		putProperty("startLabel", new Property(""));
-		putProperty("midLabel", new Property(""));
-		putProperty("endLabel", new Property(""));
+	public PropertySchema getSchema() {
+		return SCHEMA;
 	}
 	
 	public String getStartLabel() {
-		setStartLabel(getProperties().get("startLabel").getValue());
+		setStartLabel(getProperty(PropertyKey.START_LABEL).getValue());
 		return startLabel;
 	}
 	public String getEndLabel() {
-		setEndLabel(getProperties().get("endLabel").getValue());
+		setEndLabel(getProperty(PropertyKey.END_LABEL).getValue());
 		return endLabel;
 	}
 	public String getMidLabel() {
-		setMidLabel(getProperties().get("midLabel").getValue());
+		setMidLabel(getProperty(PropertyKey.MID_LABEL).getValue());
 		return midLabel;
 	}
 	
@@ -6,29 +6,51 @@ import java.util.Optional;
 import geom.Point;
 
 public abstract class NamedElement extends Element {
+	/**
+	 * The persistent identifier of a NamedElement that was never saved.
+	 */
+	public static final int NO_PERSISTENT_ID = -1;
+	
 	private String name = "";
 	private Optional<Package> parent = Optional.empty();
-	private Point position = new Point(0, 0);
+	private int x = 0;
+	private int y = 0;
+	private Point position = null;
 	private ArrayList<Relationship> ownedRelationshipsAsStart = new ArrayList<>();
 	private ArrayList<Relationship> ownedRelationshipsAsEnd = new ArrayList<>();
+	private int persistentId = NO_PERSISTENT_ID;
+	
+	static final PropertySchema SCHEMA = PropertySchema.EMPTY.with(PropertyKey.NAME);
 	
 	@Override
-	public void buildProperties() {
-		super.buildProperties();
-		putProperty("name", new Property(""));
+	public PropertySchema getSchema() {
+		return SCHEMA;
 	}
 	
 	public String getName() {
-		setName(getProperties().get("name").getValue());
+		setName(getProperty(PropertyKey.NAME).getValue());
 		return name;
 	}
 	public Package getParent() {
 		assert hasParent();
 		return parent.get();
 	}
+	/**
+	 * @return The position of this element. The point is created again only 
+	 *     after the element moved, so calling getX and getY allocates nothing.
+	 */
 	public Point getPosition() {
+		if(position == null) {
+			position = new Point(x, y);
+		}
 		return position;
 	}
+	public int getX() {
+		return x;
+	}
+	public int getY() {
+		return y;
+	}
 	public void setName(String pName) {
 		name = pName;
 	}
@@ -36,15 +58,87 @@ public abstract class NamedElement extends Element {
 		parent = Optional.of(pParent);
 	}
 	public void setPosition(Point pPosition) {
+		x = pPosition.getX();
+		y = pPosition.getY();
 		position = pPosition;
+		changed();
 	}
 	
 	public boolean hasParent() {
 		return parent.isPresent();
 	}
+	
+	/**
+	 * @return The identifier of this NamedElement in the file it was read from or
+	 *     last saved to, or NO_PERSISTENT_ID if it was never in a diagram. Copies keep
+	 *     the identifier of the original.
+	 */
+	public int getPersistentId() {
+		return persistentId;
+	}
+	
+	public void setPersistentId(int pPersistentId) {
+		assert pPersistentId >= 0 || pPersistentId == NO_PERSISTENT_ID;
+		persistentId = pPersistentId;
+		Diagram container = findContainingDiagram();
+		if(container != null && pPersistentId != NO_PERSISTENT_ID) {
+			container.reservePersistentIds(pPersistentId + 1);
+			changed();
+		}
+	}
+	
+	public boolean hasPersistentId() {
+		return persistentId != NO_PERSISTENT_ID;
+	}
+	/*
+	 * Moves this element in place: the coordinates are updated and the point
+	 * returned by getPosition is only dropped, so that moving any number of 
+	 * elements on every step of a drag does not produce garbage.
+	 */
 	public void translate(int pDeltaX, int pDeltaY)
 	{
-		position = new Point( position.getX() + pDeltaX, position.getY() + pDeltaY );
+		x += pDeltaX;
+		y += pDeltaY;
+		position = null;
+		changed();
+	}
+	
+	/*
+	 * The bounds of a package depend on those of its children, so the
+	 * ancestors of this element also get a new version.
+	 */
+	@Override
+	void changed() {
+		super.changed();
+		if(hasParent()) {
+			getParent().incrementVersions();
+		}
+	}
+	
+	/*
+	 * Gives a new version to this element and to its ancestors.
+	 */
+	void incrementVersions() {
+		NamedElement current = this;
+		current.incrementVersion();
+		while(current.hasParent()) {
+			current = current.getParent();
+			current.incrementVersion();
+		}
+	}
+	
+	/*
+	 * Returns the diagram that contains this element. Only the root NamedElements 
+	 * are attached to their diagram, so the diagram is the one of the root ancestor.
+	 */
+	@Override
+	Diagram findContainingDiagram() {
+		NamedElement root = this;
+		while(root.hasParent()) {
+			root = root.getParent();
+		}
+		Diagram diagram = root.getOptionalDiagram().orElse(null);
+		return diagram != null && diagram.contains(this) ? diagram : null;
 	}
 	public void link(Package pNamedElement)
 	{
@@ -84,8 +178,9 @@ public abstract class NamedElement extends Element {
 	@Override
 	public NamedElement clone() {
 		NamedElement clone = (NamedElement)super.clone();
-		clone.position = position.copy();
-		clone.setName(new String(clone.getName()));
+		// The clone is not connected to the relationships of the original
+		clone.ownedRelationshipsAsStart = new ArrayList<>();
+		clone.ownedRelationshipsAsEnd = new ArrayList<>();
 		return clone;
 	}
 }
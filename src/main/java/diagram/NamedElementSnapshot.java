@@ -0,0 +1,121 @@
+package diagram;
+
+import java.util.Optional;
+
+import geom.Rectangle;
+
+/**
+ * The state of a NamedElement at the time a snapshot of its diagram was
+ * taken. The children of a package are obtained from the DiagramSnapshot.
+ */
+public final class NamedElementSnapshot extends ElementSnapshot
+{
+	private final int aPersistentId;
+	private final int aX;
+	private final int aY;
+	private final boolean aAbstract;
+	private final boolean aInterface;
+	private final PersistentVector<Integer> aChildren;
+	private final Rectangle aKnownBounds;
+
+	/*
+	 * pChildren are the ids of the snapshots of the children of pNamedElement, or null if it is not a package.
+	 */
+	NamedElementSnapshot(int pId, NamedElement pNamedElement, PersistentVector<Integer> pChildren)
+	{
+		super(pId, pNamedElement);
+		aPersistentId = pNamedElement.getPersistentId();
+		aX = pNamedElement.getX();
+		aY = pNamedElement.getY();
+		aAbstract = pNamedElement instanceof BClass && ((BClass) pNamedElement).getIsAbstract();
+		aInterface = pNamedElement instanceof BClass && ((BClass) pNamedElement).getIsInterface();
+		aChildren = pChildren;
+		aKnownBounds = pNamedElement instanceof Package ? ((Package) pNamedElement).getKnownBounds().orElse(null) : null;
+	}
+
+	private NamedElementSnapshot(NamedElementSnapshot pSnapshot, PersistentVector<Integer> pChildren)
+	{
+		super(pSnapshot);
+		aPersistentId = pSnapshot.aPersistentId;
+		aX = pSnapshot.aX;
+		aY = pSnapshot.aY;
+		aAbstract = pSnapshot.aAbstract;
+		aInterface = pSnapshot.aInterface;
+		aChildren = pChildren;
+		aKnownBounds = pSnapshot.aKnownBounds;
+	}
+
+	/**
+	 * @return The persistent identifier of the element.
+	 */
+	public int getPersistentId()
+	{
+		return aPersistentId;
+	}
+
+	/**
+	 * @return The x coordinate of the position of the element.
+	 */
+	public int getX()
+	{
+		return aX;
+	}
+
+	/**
+	 * @return The y coordinate of the position of the element.
+	 */
+	public int getY()
+	{
+		return aY;
+	}
+
+	/**
+	 * @return True if the element is an abstract class.
+	 */
+	public boolean isAbstract()
+	{
+		return aAbstract;
+	}
+
+	/**
+	 * @return True if the element is an interface.
+	 */
+	public boolean isInterface()
+	{
+		return aInterface;
+	}
+
+	/**
+	 * @return True if the element is a package.
+	 */
+	public boolean isPackage()
+	{
+		return aChildren != null;
+	}
+
+	/**
+	 * @return The known bounds of the element and its descendants if it is a package, 
+	 *     as Package.getKnownBounds.
+	 */
+	public Optional<Rectangle> getKnownBounds()
+	{
+		return Optional.ofNullable(aKnownBounds);
+	}
+
+	/*
+	 * The ids of the snapshots of the children, or null if the element is not a package.
+	 */
+	PersistentVector<Integer> getChildIds()
+	{
+		return aChildren;
+	}
+
+	/*
+	 * Returns a snapshot of the same package with other children.
+	 */
+	NamedElementSnapshot withChildren(PersistentVector<Integer> pChildren)
+	{
+		assert isPackage() && pChildren != null;
+		return new NamedElementSnapshot(this, pChildren);
+	}
+}
@@ -0,0 +1,449 @@
+package diagram;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A list of distinct elements kept in a treap ordered by position, in which
+ * each node knows the size of its subtree. Inserting or removing at any
+ * index, finding the index of an element and moving an element to the end
+ * take time logarithmic in the size of the list, instead of linear as in an
+ * ArrayList. This is used for the z-order of NamedElements, which changes
+ * every time an element is placed on top.
+ *
+ * Elements are compared by identity, and an element can only be in the list
+ * once. Getting an element by index also takes logarithmic time, so the list
+ * should rather be traversed with its iterator, which takes constant amortized
+ * time per element.
+ *
+ * Each element takes a node of 40 bytes, and once the list has more than
+ * MAP_THRESHOLD elements, an entry of about 16 bytes in a map from the elements
+ * to their node, instead of the 4 bytes of a reference in an ArrayList. Most
+ * packages have a few children, so their lists find the node of an element by
+ * traversing the list instead, which is as fast at that size.
+ *
+ * @param <E> The type of the elements.
+ */
+final class OrderStatisticList<E> extends AbstractList<E>
+{
+	private static final int MAP_THRESHOLD = 16;
+
+	private Map<Object, Node<E>> aNodes; // Created once the list has more than MAP_THRESHOLD elements
+	private Node<E> aRoot;
+
+	/**
+	 * Creates an empty list.
+	 */
+	OrderStatisticList() {}
+
+	/**
+	 * Creates a list with the elements of pElements.
+	 *
+	 * @param pElements Distinct elements.
+	 * @pre pElements != null
+	 */
+	OrderStatisticList(Collection<? extends E> pElements)
+	{
+		assert pElements != null;
+		addAll(pElements);
+	}
+
+	@Override
+	public int size()
+	{
+		return size(aRoot);
+	}
+
+	@Override
+	public E get(int pIndex)
+	{
+		checkIndex(pIndex, size());
+		return node(pIndex).aElement;
+	}
+
+	@Override
+	public E set(int pIndex, E pElement)
+	{
+		checkIndex(pIndex, size());
+		Node<E> node = node(pIndex);
+		E result = node.aElement;
+		if( result != pElement )
+		{
+			checkAbsent(pElement);
+			node.aElement = pElement;
+			if( aNodes != null )
+			{
+				aNodes.remove(result);
+				aNodes.put(pElement, node);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void add(int pIndex, E pElement)
+	{
+		checkIndex(pIndex, size() + 1);
+		checkAbsent(pElement);
+		Node<E> node = new Node<>(pElement);
+		modCount++;
+		if( aRoot == null )
+		{
+			aRoot = node;
+			return;
+		}
+		// Goes down to the leaf where the element is inserted, counting it in the subtrees it goes through
+		Node<E> parent = aRoot;
+		int index = pIndex;
+		while( true )
+		{
+			parent.aSize++;
+			int leftSize = size(parent.aLeft);
+			if( index <= leftSize )
+			{
+				if( parent.aLeft == null )
+				{
+					parent.aLeft = node;
+					break;
+				}
+				parent = parent.aLeft;
+			}
+			else
+			{
+				index -= leftSize + 1;
+				if( parent.aRight == null )
+				{
+					parent.aRight = node;
+					break;
+				}
+				parent = parent.aRight;
+			}
+		}
+		node.aParent = parent;
+		while( node.aParent != null && node.aParent.aPriority < node.aPriority )
+		{
+			rotateUp(node);
+		}
+		if( aNodes != null )
+		{
+			aNodes.put(pElement, node);
+		}
+		else if( aRoot.aSize > MAP_THRESHOLD )
+		{
+			aNodes = new IdentityHashMap<>();
+			for( Node<E> each = first(aRoot); each != null; each = successor(each) )
+			{
+				aNodes.put(each.aElement, each);
+			}
+		}
+	}
+
+	@Override
+	public E remove(int pIndex)
+	{
+		checkIndex(pIndex, size());
+		Node<E> node = node(pIndex);
+		remove(node);
+		return node.aElement;
+	}
+
+	@Override
+	public boolean remove(Object pElement)
+	{
+		Node<E> node = find(pElement);
+		if( node == null )
+		{
+			return false;
+		}
+		remove(node);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object pElement)
+	{
+		return find(pElement) != null;
+	}
+
+	@Override
+	public int indexOf(Object pElement)
+	{
+		Node<E> node = find(pElement);
+		if( node == null )
+		{
+			return -1;
+		}
+		int result = size(node.aLeft);
+		while( node.aParent != null )
+		{
+			if( node == node.aParent.aRight )
+			{
+				result += size(node.aParent.aLeft) + 1;
+			}
+			node = node.aParent;
+		}
+		return result;
+	}
+
+	@Override
+	public int lastIndexOf(Object pElement)
+	{
+		return indexOf(pElement);
+	}
+
+	@Override
+	public void clear()
+	{
+		aNodes = null;
+		aRoot = null;
+		modCount++;
+	}
+
+	/**
+	 * Moves pElement after all the other elements.
+	 *
+	 * @param pElement An element of this list.
+	 * @pre contains(pElement)
+	 */
+	void moveToEnd(E pElement)
+	{
+		assert contains(pElement);
+		remove(pElement);
+		add(pElement);
+	}
+
+	@Override
+	public Iterator<E> iterator()
+	{
+		return new Iterator<>()
+		{
+			private Node<E> aNext = first(aRoot);
+			private Node<E> aLast = null;
+			private int aExpectedModCount = modCount;
+
+			@Override
+			public boolean hasNext()
+			{
+				return aNext != null;
+			}
+
+			@Override
+			public E next()
+			{
+				checkModCount();
+				if( aNext == null )
+				{
+					throw new NoSuchElementException();
+				}
+				aLast = aNext;
+				aNext = successor(aNext);
+				return aLast.aElement;
+			}
+
+			@Override
+			public void remove()
+			{
+				if( aLast == null )
+				{
+					throw new IllegalStateException();
+				}
+				checkModCount();
+				// Nodes keep their element when the tree is rebalanced, so aNext stays the next node
+				OrderStatisticList.this.remove(aLast);
+				aLast = null;
+				aExpectedModCount = modCount;
+			}
+
+			private void checkModCount()
+			{
+				if( modCount != aExpectedModCount )
+				{
+					throw new ConcurrentModificationException();
+				}
+			}
+		};
+	}
+
+	/*
+	 * Rotates pNode down until it has at most one child, then replaces it by that child.
+	 */
+	private void remove(Node<E> pNode)
+	{
+		while( pNode.aLeft != null && pNode.aRight != null )
+		{
+			rotateUp(pNode.aLeft.aPriority > pNode.aRight.aPriority ? pNode.aLeft : pNode.aRight);
+		}
+		Node<E> child = pNode.aLeft != null ? pNode.aLeft : pNode.aRight;
+		Node<E> parent = pNode.aParent;
+		if( child != null )
+		{
+			child.aParent = parent;
+		}
+		replaceChild(parent, pNode, child);
+		for( Node<E> ancestor = parent; ancestor != null; ancestor = ancestor.aParent )
+		{
+			ancestor.aSize--;
+		}
+		if( aNodes != null )
+		{
+			aNodes.remove(pNode.aElement);
+		}
+		modCount++;
+	}
+
+	/*
+	 * Rotates pNode above its parent, keeping the order of the nodes.
+	 */
+	private void rotateUp(Node<E> pNode)
+	{
+		Node<E> parent = pNode.aParent;
+		Node<E> grandParent = parent.aParent;
+		if( pNode == parent.aLeft )
+		{
+			parent.aLeft = pNode.aRight;
+			if( pNode.aRight != null )
+			{
+				pNode.aRight.aParent = parent;
+			}
+			pNode.aRight = parent;
+		}
+		else
+		{
+			parent.aRight = pNode.aLeft;
+			if( pNode.aLeft != null )
+			{
+				pNode.aLeft.aParent = parent;
+			}
+			pNode.aLeft = parent;
+		}
+		parent.aParent = pNode;
+		pNode.aParent = grandParent;
+		replaceChild(grandParent, parent, pNode);
+		parent.aSize = 1 + size(parent.aLeft) + size(parent.aRight);
+		pNode.aSize = 1 + size(pNode.aLeft) + size(pNode.aRight);
+	}
+
+	private void replaceChild(Node<E> pParent, Node<E> pChild, Node<E> pReplacement)
+	{
+		if( pParent == null )
+		{
+			aRoot = pReplacement;
+		}
+		else if( pParent.aLeft == pChild )
+		{
+			pParent.aLeft = pReplacement;
+		}
+		else
+		{
+			pParent.aRight = pReplacement;
+		}
+	}
+
+	private Node<E> node(int pIndex)
+	{
+		Node<E> node = aRoot;
+		int index = pIndex;
+		while( true )
+		{
+			int leftSize = size(node.aLeft);
+			if( index < leftSize )
+			{
+				node = node.aLeft;
+			}
+			else if( index == leftSize )
+			{
+				return node;
+			}
+			else
+			{
+				index -= leftSize + 1;
+				node = node.aRight;
+			}
+		}
+	}
+
+	/*
+	 * Returns the node of pElement, or null if pElement is not in the list.
+	 */
+	private Node<E> find(Object pElement)
+	{
+		if( aNodes != null )
+		{
+			return aNodes.get(pElement);
+		}
+		for( Node<E> node = first(aRoot); node != null; node = successor(node) )
+		{
+			if( node.aElement == pElement )
+			{
+				return node;
+			}
+		}
+		return null;
+	}
+
+	private void checkAbsent(E pElement)
+	{
+		if( find(pElement) != null )
+		{
+			throw new IllegalArgumentException("Element already in the list");
+		}
+	}
+
+	private static void checkIndex(int pIndex, int pSize)
+	{
+		if( pIndex < 0 || pIndex >= pSize )
+		{
+			throw new IndexOutOfBoundsException("Index " + pIndex + " out of bounds for length " + pSize);
+		}
+	}
+
+	private static int size(Node<?> pNode)
+	{
+		return pNode == null ? 0 : pNode.aSize;
+	}
+
+	private static <E> Node<E> first(Node<E> pNode)
+	{
+		Node<E> node = pNode;
+		while( node != null && node.aLeft != null )
+		{
+			node = node.aLeft;
+		}
+		return node;
+	}
+
+	private static <E> Node<E> successor(Node<E> pNode)
+	{
+		if( pNode.aRight != null )
+		{
+			return first(pNode.aRight);
+		}
+		Node<E> node = pNode;
+		while( node.aParent != null && node == node.aParent.aRight )
+		{
+			node = node.aParent;
+		}
+		return node.aParent;
+	}
+
+	private static final class Node<E>
+	{
+		private final int aPriority = ThreadLocalRandom.current().nextInt();
+		private E aElement;
+		private int aSize = 1;
+		private Node<E> aLeft;
+		private Node<E> aRight;
+		private Node<E> aParent;
+
+		Node(E pElement)
+		{
+			aElement = pElement;
+		}
+	}
+}
@@ -1,22 +1,99 @@
 package diagram;
 
-import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import geom.Rectangle;
 
 public class Package extends NamedElement {
 	
-	private ArrayList<NamedElement> children = new ArrayList<>();
+	private OrderStatisticList<NamedElement> children = new OrderStatisticList<>();
+	private Consumer<Package> childrenLoader = null;
+	private Rectangle knownBounds = null;
 	
 	
-	public ArrayList<NamedElement> getChildren() {
+	/**
+	 * @return The children of this package, from the bottom to the top of the z-order.
+	 *     The list must not be modified directly.
+	 */
+	public List<NamedElement> getChildren() {
+		loadChildren();
 		return children;
 	}
 	
-	public void setChildren(ArrayList<NamedElement> pChildren) {
-		children = pChildren;
+	public void setChildren(List<NamedElement> pChildren) {
+		Optional<Diagram> diagram = containingDiagram();
+		if( hasLoadedChildren() ) {
+			diagram.ifPresent(container -> children.forEach(container::unregister));
+		}
+		childrenLoader = null;
+		children = new OrderStatisticList<>(pChildren);
+		diagram.ifPresent(container -> children.forEach(container::register));
+		incrementVersions();
+		diagram.ifPresent(Diagram::reset);
+	}
+	
+	/**
+	 * Defers the creation of the children of this package until they are
+	 * first accessed. pLoader is then called once with this package, and
+	 * is expected to add the children with addChild.
+	 * 
+	 * @param pLoader The function that adds the children to this package.
+	 * @pre pLoader != null && getChildren().isEmpty()
+	 */
+	public void setChildrenLoader(Consumer<Package> pLoader)
+	{
+		assert pLoader != null && children.isEmpty();
+		childrenLoader = pLoader;
+	}
+	
+	/**
+	 * @return The bounds of this package and its descendants when they were last
+	 *     computed, or read from the file of the package, if any. They can be out of 
+	 *     date, but they are known without loading the children of the package.
+	 */
+	public Optional<Rectangle> getKnownBounds()
+	{
+		return Optional.ofNullable(knownBounds);
+	}
+	
+	/**
+	 * Records the bounds of this package and its descendants, for instance once
+	 * they have been computed. This is not a change of the package.
+	 * 
+	 * @param pBounds The bounds of this package and its descendants.
+	 * @pre pBounds != null
+	 */
+	public void setKnownBounds(Rectangle pBounds)
+	{
+		assert pBounds != null;
+		knownBounds = pBounds;
 	}
+	
+	/**
+	 * @return True if the children of this package exist, false if
+	 *     they will only be created when they are first accessed.
+	 */
+	public boolean hasLoadedChildren()
+	{
+		return childrenLoader == null;
+	}
+	
+	private void loadChildren()
+	{
+		if( childrenLoader != null )
+		{
+			Consumer<Package> loader = childrenLoader;
+			childrenLoader = null;
+			loader.accept(this);
+		}
+	}
+	
 	public void addChild(int pIndex, NamedElement pNamedElement)
 	{
 		assert pNamedElement != null;
+		loadChildren();
 		assert pIndex >=0 && pIndex <= children.size();
 		if(pNamedElement.hasParent())
 		{
@@ -24,33 +101,57 @@ public class Package extends NamedElement {
 		}
 		children.add(pIndex, pNamedElement);
 		pNamedElement.link(this);
+		incrementVersions();
+		containingDiagram().ifPresent(diagram -> {
+			diagram.register(pNamedElement);
+			diagram.getSnapshotRecorder().inserted(getSnapshotId(), pIndex, pNamedElement);
+		});
 	}
 
 	public void addChild(NamedElement pNamedElement)
 	{
 		assert pNamedElement != null;
-		addChild(children.size(), pNamedElement);
+		addChild(getChildren().size(), pNamedElement);
 	}
 
 	public void removeChild(NamedElement pNamedElement)
 	{
 		assert getChildren().contains(pNamedElement);
 		assert pNamedElement.getParent() == this;
+		Optional<Diagram> diagram = containingDiagram();
+		diagram.ifPresent(container -> {
+			container.getSnapshotRecorder().removed(getSnapshotId(), children.indexOf(pNamedElement));
+			// The package is snapshot again, as its bounds changed
+			container.getSnapshotRecorder().changed(this);
+		});
 		children.remove(pNamedElement);
+		// Unregistered while still linked, so that the listeners of the diagram know where it was
+		diagram.ifPresent(container -> container.unregister(pNamedElement));
 		pNamedElement.unlink();
+		incrementVersions();
 	}
+	
+	/**
+	 * Moves pNamedElement to the top of the children of this package, in time
+	 * logarithmic in the number of children. pNamedElement stays linked to
+	 * this package and in its diagram.
+	 * 
+	 * @param pNamedElement The child to move.
+	 * @pre pNamedElement != null && getChildren().contains(pNamedElement)
+	 */
 	public void placeLast(NamedElement pNamedElement)
 	{
 		assert pNamedElement != null;
 		assert getChildren().contains(pNamedElement);
-		removeChild(pNamedElement);
-		addChild(pNamedElement);
+		containingDiagram().ifPresent(diagram -> diagram.getSnapshotRecorder().movedToEnd(getSnapshotId(), children.indexOf(pNamedElement)));
+		children.moveToEnd(pNamedElement);
 	}
 	
 	@Override
 	public Package clone() {
+		loadChildren();
 		Package cloned = (Package) super.clone();
-		cloned.children = new ArrayList<>();
+		cloned.children = new OrderStatisticList<>();
 		for( NamedElement child : children )
 		{
 			// We can't use addChild(...) here because of the interaction with the original parent.
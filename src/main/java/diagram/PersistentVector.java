@@ -0,0 +1,340 @@
+package diagram;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An immutable list kept in a treap ordered by position. Setting, inserting
+ * or removing an element returns a new list that shares all the nodes of
+ * this one except the ones on the path to the element, so each of these
+ * operations takes time and space logarithmic in the size of the list.
+ *
+ * The nodes are never modified after they are created, so a list can be
+ * read from any thread once it is published. The list cannot be modified
+ * through the methods of List.
+ *
+ * @param <E> The type of the elements.
+ */
+final class PersistentVector<E> extends AbstractList<E>
+{
+	private static final PersistentVector<?> EMPTY = new PersistentVector<>(null);
+
+	private final Node<E> aRoot;
+
+	private PersistentVector(Node<E> pRoot)
+	{
+		aRoot = pRoot;
+	}
+
+	/**
+	 * @param <E> The type of the elements.
+	 * @return The empty list.
+	 */
+	@SuppressWarnings("unchecked")
+	static <E> PersistentVector<E> empty()
+	{
+		return (PersistentVector<E>) EMPTY;
+	}
+
+	/**
+	 * Creates a list with the elements of pElements, in time linear in their number.
+	 *
+	 * @param <E> The type of the elements.
+	 * @param pElements The elements of the list.
+	 * @return A list with the elements of pElements in the same order.
+	 * @pre pElements != null
+	 */
+	@SuppressWarnings("unchecked")
+	static <E> PersistentVector<E> of(List<? extends E> pElements)
+	{
+		assert pElements != null;
+		Object[] elements = pElements.toArray();
+		if( elements.length == 0 )
+		{
+			return empty();
+		}
+		// Builds the treap of the random priorities with the right spine on a stack
+		int[] priorities = new int[elements.length];
+		int[] left = new int[elements.length];
+		int[] right = new int[elements.length];
+		Arrays.fill(left, -1);
+		Arrays.fill(right, -1);
+		int[] spine = new int[elements.length];
+		int top = -1;
+		for( int i = 0; i < elements.length; i++ )
+		{
+			priorities[i] = ThreadLocalRandom.current().nextInt();
+			int last = -1;
+			while( top >= 0 && priorities[spine[top]] < priorities[i] )
+			{
+				last = spine[top--];
+			}
+			left[i] = last;
+			if( top >= 0 )
+			{
+				right[spine[top]] = i;
+			}
+			spine[++top] = i;
+		}
+		return new PersistentVector<>(build(spine[0], (E[]) elements, priorities, left, right));
+	}
+
+	private static <E> Node<E> build(int pIndex, E[] pElements, int[] pPriorities, int[] pLeft, int[] pRight)
+	{
+		if( pIndex < 0 )
+		{
+			return null;
+		}
+		return new Node<>(pElements[pIndex], pPriorities[pIndex], build(pLeft[pIndex], pElements, pPriorities, pLeft, pRight),
+				build(pRight[pIndex], pElements, pPriorities, pLeft, pRight));
+	}
+
+	@Override
+	public int size()
+	{
+		return size(aRoot);
+	}
+
+	@Override
+	public E get(int pIndex)
+	{
+		checkIndex(pIndex, size());
+		Node<E> node = aRoot;
+		int index = pIndex;
+		while( true )
+		{
+			int leftSize = size(node.aLeft);
+			if( index < leftSize )
+			{
+				node = node.aLeft;
+			}
+			else if( index == leftSize )
+			{
+				return node.aElement;
+			}
+			else
+			{
+				index -= leftSize + 1;
+				node = node.aRight;
+			}
+		}
+	}
+
+	/**
+	 * @param pIndex The index of the element to replace.
+	 * @param pElement The new element.
+	 * @return A list with pElement at index pIndex instead of the element of this list.
+	 */
+	PersistentVector<E> with(int pIndex, E pElement)
+	{
+		checkIndex(pIndex, size());
+		return new PersistentVector<>(with(aRoot, pIndex, pElement));
+	}
+
+	/**
+	 * @param pIndex Where to insert the element.
+	 * @param pElement The element to insert.
+	 * @return A list with pElement inserted at index pIndex of this list.
+	 */
+	PersistentVector<E> plus(int pIndex, E pElement)
+	{
+		checkIndex(pIndex, size() + 1);
+		return new PersistentVector<>(insert(aRoot, pIndex, pElement, ThreadLocalRandom.current().nextInt()));
+	}
+
+	/**
+	 * @param pElement The element to append.
+	 * @return A list with pElement after the elements of this list.
+	 */
+	PersistentVector<E> plus(E pElement)
+	{
+		return plus(size(), pElement);
+	}
+
+	/**
+	 * @param pIndex The index of the element to remove.
+	 * @return A list without the element at index pIndex of this list.
+	 */
+	PersistentVector<E> minus(int pIndex)
+	{
+		checkIndex(pIndex, size());
+		return new PersistentVector<>(remove(aRoot, pIndex));
+	}
+
+	@Override
+	public Iterator<E> iterator()
+	{
+		return new Iterator<>()
+		{
+			// The nodes whose element and right subtree are still to be visited
+			private final Deque<Node<E>> aPath = new ArrayDeque<>();
+
+			{
+				pushLeftSpine(aRoot);
+			}
+
+			@Override
+			public boolean hasNext()
+			{
+				return !aPath.isEmpty();
+			}
+
+			@Override
+			public E next()
+			{
+				if( aPath.isEmpty() )
+				{
+					throw new NoSuchElementException();
+				}
+				Node<E> node = aPath.pop();
+				pushLeftSpine(node.aRight);
+				return node.aElement;
+			}
+
+			private void pushLeftSpine(Node<E> pNode)
+			{
+				for( Node<E> node = pNode; node != null; node = node.aLeft )
+				{
+					aPath.push(node);
+				}
+			}
+		};
+	}
+
+	private static <E> Node<E> with(Node<E> pNode, int pIndex, E pElement)
+	{
+		int leftSize = size(pNode.aLeft);
+		if( pIndex < leftSize )
+		{
+			return new Node<>(pNode.aElement, pNode.aPriority, with(pNode.aLeft, pIndex, pElement), pNode.aRight);
+		}
+		else if( pIndex == leftSize )
+		{
+			return new Node<>(pElement, pNode.aPriority, pNode.aLeft, pNode.aRight);
+		}
+		return new Node<>(pNode.aElement, pNode.aPriority, pNode.aLeft, with(pNode.aRight, pIndex - leftSize - 1, pElement));
+	}
+
+	/*
+	 * Goes down until the priority of the new node is higher than the one of the subtree,
+	 * and then splits the subtree between the children of the new node.
+	 */
+	private static <E> Node<E> insert(Node<E> pNode, int pIndex, E pElement, int pPriority)
+	{
+		if( pNode == null || pPriority > pNode.aPriority )
+		{
+			return new Node<>(pElement, pPriority, first(pNode, pIndex), dropFirst(pNode, pIndex));
+		}
+		int leftSize = size(pNode.aLeft);
+		if( pIndex <= leftSize )
+		{
+			return new Node<>(pNode.aElement, pNode.aPriority, insert(pNode.aLeft, pIndex, pElement, pPriority), pNode.aRight);
+		}
+		return new Node<>(pNode.aElement, pNode.aPriority, pNode.aLeft, insert(pNode.aRight, pIndex - leftSize - 1, pElement, pPriority));
+	}
+
+	private static <E> Node<E> remove(Node<E> pNode, int pIndex)
+	{
+		int leftSize = size(pNode.aLeft);
+		if( pIndex < leftSize )
+		{
+			return new Node<>(pNode.aElement, pNode.aPriority, remove(pNode.aLeft, pIndex), pNode.aRight);
+		}
+		else if( pIndex == leftSize )
+		{
+			return merge(pNode.aLeft, pNode.aRight);
+		}
+		return new Node<>(pNode.aElement, pNode.aPriority, pNode.aLeft, remove(pNode.aRight, pIndex - leftSize - 1));
+	}
+
+	/*
+	 * Returns the tree of the first pCount elements of pNode.
+	 */
+	private static <E> Node<E> first(Node<E> pNode, int pCount)
+	{
+		if( pNode == null || pCount == pNode.aSize )
+		{
+			return pNode;
+		}
+		int leftSize = size(pNode.aLeft);
+		if( pCount <= leftSize )
+		{
+			return first(pNode.aLeft, pCount);
+		}
+		return new Node<>(pNode.aElement, pNode.aPriority, pNode.aLeft, first(pNode.aRight, pCount - leftSize - 1));
+	}
+
+	/*
+	 * Returns the tree of the elements of pNode after the first pCount ones.
+	 */
+	private static <E> Node<E> dropFirst(Node<E> pNode, int pCount)
+	{
+		if( pNode == null || pCount == 0 )
+		{
+			return pNode;
+		}
+		int leftSize = size(pNode.aLeft);
+		if( pCount <= leftSize )
+		{
+			return new Node<>(pNode.aElement, pNode.aPriority, dropFirst(pNode.aLeft, pCount), pNode.aRight);
+		}
+		return dropFirst(pNode.aRight, pCount - leftSize - 1);
+	}
+
+	/*
+	 * Returns the tree of the elements of pLeft followed by the ones of pRight.
+	 */
+	private static <E> Node<E> merge(Node<E> pLeft, Node<E> pRight)
+	{
+		if( pLeft == null )
+		{
+			return pRight;
+		}
+		if( pRight == null )
+		{
+			return pLeft;
+		}
+		if( pLeft.aPriority > pRight.aPriority )
+		{
+			return new Node<>(pLeft.aElement, pLeft.aPriority, pLeft.aLeft, merge(pLeft.aRight, pRight));
+		}
+		return new Node<>(pRight.aElement, pRight.aPriority, merge(pLeft, pRight.aLeft), pRight.aRight);
+	}
+
+	private static void checkIndex(int pIndex, int pSize)
+	{
+		if( pIndex < 0 || pIndex >= pSize )
+		{
+			throw new IndexOutOfBoundsException("Index " + pIndex + " out of bounds for length " + pSize);
+		}
+	}
+
+	private static int size(Node<?> pNode)
+	{
+		return pNode == null ? 0 : pNode.aSize;
+	}
+
+	private static final class Node<E>
+	{
+		private final E aElement;
+		private final int aPriority;
+		private final int aSize;
+		private final Node<E> aLeft;
+		private final Node<E> aRight;
+
+		Node(E pElement, int pPriority, Node<E> pLeft, Node<E> pRight)
+		{
+			aElement = pElement;
+			aPriority = pPriority;
+			aLeft = pLeft;
+			aRight = pRight;
+			aSize = 1 + size(pLeft) + size(pRight);
+		}
+	}
+}
@@ -1,16 +1,47 @@
 package diagram;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+/*
+ * The attributes, methods and literals split from the value are cached until 
+ * the value is set again. Each call to setValue increments the version of the
+ * property, and a cached list is only used if it was split from the current version.
+ * A property stored in an element knows it, so that setting its value records
+ * the change for the snapshots of the diagram of the element.
+ */
 public class Property {
 	private String value = "";
+	private int version = 0;
+	private int attributesVersion = -1;
+	private List<Attribute> attributes;
+	private int methodsVersion = -1;
+	private List<Method> methods;
+	private int literalsVersion = -1;
+	private List<String> literals;
+	private Element owner = null;
 	
 	public Property(String value) {
 		setValue(value);
 	}
 	
+	/*
+	 * The copy shares the lists already split from the value of p, which are never modified.
+	 */
 	public Property(Property p) {
 		setValue(p.getValue());
+		if(p.attributesVersion == p.version) {
+			attributes = p.attributes;
+			attributesVersion = version;
+		}
+		if(p.methodsVersion == p.version) {
+			methods = p.methods;
+			methodsVersion = version;
+		}
+		if(p.literalsVersion == p.version) {
+			literals = p.literals;
+			literalsVersion = version;
+		}
 	}
 	
 	public String getValue() {
@@ -19,88 +50,85 @@ public class Property {
 	
 	public void setValue(String value) {
 		this.value = value;
+		version++;
+		if(owner != null) {
+			owner.changed();
+		}
 	}
 	
-	public ArrayList<Attribute> splitAsAttributes() {
-		ArrayList<Attribute> resultArrayList = new ArrayList<>();
-		String[] strArr = getValue().replace("\n", "").split(";");
-		for(int i = 0; i < strArr.length; i++) {
-			String[] tmpStrArr = strArr[i].split(":");
-			Attribute aAttribute = null;
-			if(tmpStrArr.length <= 1) {
-				aAttribute = new Attribute(tmpStrArr[0], "");
-			}
-			else if(tmpStrArr.length == 2) {
-				aAttribute = new Attribute(tmpStrArr[0], tmpStrArr[1]);
-			}
-			else {
-				String secondString = "";
-				for(int j = 1; j < tmpStrArr.length; j++) {
-					secondString += tmpStrArr[j];
-				}
-				aAttribute = new Attribute(tmpStrArr[0], secondString);
-			}
-			resultArrayList.add(aAttribute);
-		}
-		return resultArrayList;
+	/**
+	 * Sets the value that the property is known to have, for instance because it was
+	 * just read from a file. Unlike setValue, this is not an edit: the version does not 
+	 * change and the owner is not told.
+	 * 
+	 * @param pValue The value of the property.
+	 */
+	protected void initializeValue(String pValue) {
+		value = pValue;
+	}
+	
+	void setOwner(Element pOwner) {
+		owner = pOwner;
+	}
+	
+	/*
+	 * Replaces the value by the equal string of pPool. The value does not change,
+	 * so neither does the version.
+	 */
+	void intern(StringPool pPool) {
+		value = pPool.intern(value);
+	}
+	
+	/*
+	 * The pool of the diagram of the owner, in which the parts of the value are interned.
+	 */
+	private StringPool pool() {
+		return owner == null ? null : owner.containingDiagram().map(Diagram::getStringPool).orElse(null);
+	}
+	
+	/**
+	 * @return A number that changes every time the value is set.
+	 */
+	public int getVersion() {
+		return version;
 	}
 	
-	public ArrayList<Method> splitAsMethods() {
-		ArrayList<Method> resultArrayList = new ArrayList<>();
-		String[] strArr = getValue().replace("\n", "").split(";");
-		for(int i = 0; i < strArr.length; i++) {
-			String[] tmpStrArr = strArr[i].split("\\)");
-			String methodType = "";
-			if(tmpStrArr.length == 2) {
-				methodType = tmpStrArr[1].replace(":", "");
-			}
-			else if(tmpStrArr.length >= 2) {
-				for(int j = 1; j < tmpStrArr.length; j++) {
-					methodType += tmpStrArr[j];
-				}
-			}
-			String[] methodNameAndParameters = tmpStrArr[0].split("\\(");
-			String methodName = methodNameAndParameters[0];
-			ArrayList<Attribute> methodParameters = new ArrayList<>();
-			if(methodNameAndParameters.length >= 2) {
-				methodParameters = splitAsAttributesByComma(methodNameAndParameters[1]);
-			}
-			Method aMethod = new Method(methodType, methodName, methodParameters);
-			resultArrayList.add(aMethod);
+	/**
+	 * @return The attributes declared by the value, separated by semicolons. 
+	 *     The list and its attributes must not be modified.
+	 */
+	public List<Attribute> splitAsAttributes() {
+		String current = getValue();
+		if(attributesVersion != version) {
+			attributes = Collections.unmodifiableList(PropertyParser.parseAttributes(current, pool()));
+			attributesVersion = version;
 		}
-		return resultArrayList;
+		return attributes;
 	}
 	
-	private ArrayList<Attribute> splitAsAttributesByComma(String value) {
-		ArrayList<Attribute> resultArrayList = new ArrayList<>();
-		String[] strArr = value.replace("\n", "").split(",");
-		for(int i = 0; i < strArr.length; i++) {
-			String[] tmpStrArr = strArr[i].split(":");
-			Attribute aAttribute = null;
-			if(tmpStrArr.length <= 1) {
-				aAttribute = new Attribute(tmpStrArr[0], "");
-			}
-			else if(tmpStrArr.length == 2) {
-				aAttribute = new Attribute(tmpStrArr[0], tmpStrArr[1]);
-			}
-			else {
-				String secondString = "";
-				for(int j = 1; j < tmpStrArr.length; j++) {
-					secondString += tmpStrArr[j];
-				}
-				aAttribute = new Attribute(tmpStrArr[0], secondString);
-			}
-			resultArrayList.add(aAttribute);
+	/**
+	 * @return The methods declared by the value, separated by semicolons. 
+	 *     The list and its methods must not be modified.
+	 */
+	public List<Method> splitAsMethods() {
+		String current = getValue();
+		if(methodsVersion != version) {
+			methods = Collections.unmodifiableList(PropertyParser.parseMethods(current, pool()));
+			methodsVersion = version;
 		}
-		return resultArrayList;
+		return methods;
 	}
 	
-	public ArrayList<String> splitAsLiterals() {
-		ArrayList<String> resultArrayList = new ArrayList<>();
-		String[] strArr = getValue().replace("\n", "").split(";");
-		for(int i = 0; i < strArr.length; i++) {
-			resultArrayList.add(strArr[i]);
+	/**
+	 * @return The literals declared by the value, separated by semicolons. 
+	 *     The list must not be modified.
+	 */
+	public List<String> splitAsLiterals() {
+		String current = getValue();
+		if(literalsVersion != version) {
+			literals = Collections.unmodifiableList(PropertyParser.parseLiterals(current, pool()));
+			literalsVersion = version;
 		}
-		return resultArrayList;
+		return literals;
 	}
 }
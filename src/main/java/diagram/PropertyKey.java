@@ -0,0 +1,66 @@
+package diagram;
+
+/**
+ * The properties that elements can have. The name of a key is the name of
+ * its property in the map returned by Element.getProperties().
+ */
+public enum PropertyKey
+{
+	NAME("name", ""),
+	ATTRIBUTES("attributes", ""),
+	METHODS("methods", ""),
+	LITERALS("literals", ""),
+	START_LABEL("startLabel", ""),
+	MID_LABEL("midLabel", ""),
+	END_LABEL("endLabel", ""),
+	DIRECTION("direction", "NoDirection");
+
+	private final String aName;
+	private final String aDefaultValue;
+
+	PropertyKey(String pName, String pDefaultValue)
+	{
+		aName = pName;
+		aDefaultValue = pDefaultValue;
+	}
+
+	/**
+	 * @return The name of the property.
+	 */
+	public String getName()
+	{
+		return aName;
+	}
+
+	/**
+	 * @return The value of the property when an element is created.
+	 */
+	public String getDefaultValue()
+	{
+		return aDefaultValue;
+	}
+
+	/**
+	 * @param pName The name of a property.
+	 * @return The key with that name, or null if there is none.
+	 */
+	static PropertyKey forName(Object pName)
+	{
+		if( !(pName instanceof String) )
+		{
+			return null;
+		}
+		switch( (String) pName )
+		{
+		case "name": return NAME;
+		case "attributes": return ATTRIBUTES;
+		case "methods": return METHODS;
+		case "literals": return LITERALS;
+		case "startLabel": return START_LABEL;
+		case "midLabel": return MID_LABEL;
+		case "endLabel": return END_LABEL;
+		case "direction": return DIRECTION;
+		default: return null;
+		}
+	}
+}
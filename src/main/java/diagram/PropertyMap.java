@@ -0,0 +1,153 @@
+package diagram;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A view of the property slots of an element as a map from the names of the
+ * properties to the properties. Setting the value of an entry or putting a
+ * property replaces the property in its slot. Properties cannot be added to
+ * or removed from an element, so keys that are not in the schema of the
+ * element cannot be put, and nothing can be removed.
+ */
+final class PropertyMap extends AbstractMap<String, Property>
+{
+	private final Element aElement;
+	private final PropertySchema aSchema;
+	private final Property[] aSlots;
+
+	PropertyMap(Element pElement, PropertySchema pSchema, Property[] pSlots)
+	{
+		assert pSchema.size() == pSlots.length;
+		aElement = pElement;
+		aSchema = pSchema;
+		aSlots = pSlots;
+	}
+
+	@Override
+	public int size()
+	{
+		return aSlots.length;
+	}
+
+	@Override
+	public boolean containsKey(Object pKey)
+	{
+		return slot(pKey) >= 0;
+	}
+
+	@Override
+	public Property get(Object pKey)
+	{
+		int slot = slot(pKey);
+		return slot < 0 ? null : aSlots[slot];
+	}
+
+	@Override
+	public Property put(String pKey, Property pProperty)
+	{
+		int slot = slot(pKey);
+		if( slot < 0 )
+		{
+			throw new UnsupportedOperationException("No property " + pKey);
+		}
+		Property result = aSlots[slot];
+		aElement.setSlot(slot, pProperty);
+		return result;
+	}
+
+	@Override
+	public Set<Map.Entry<String, Property>> entrySet()
+	{
+		return new AbstractSet<>()
+		{
+			@Override
+			public int size()
+			{
+				return aSlots.length;
+			}
+
+			@Override
+			public Iterator<Map.Entry<String, Property>> iterator()
+			{
+				return new Iterator<>()
+				{
+					private int aNext = 0;
+
+					@Override
+					public boolean hasNext()
+					{
+						return aNext < aSlots.length;
+					}
+
+					@Override
+					public Map.Entry<String, Property> next()
+					{
+						if( !hasNext() )
+						{
+							throw new NoSuchElementException();
+						}
+						return new Slot(aNext++);
+					}
+				};
+			}
+		};
+	}
+
+	private int slot(Object pKey)
+	{
+		PropertyKey key = PropertyKey.forName(pKey);
+		return key == null ? -1 : aSchema.getSlot(key);
+	}
+
+	private final class Slot implements Map.Entry<String, Property>
+	{
+		private final int aSlot;
+
+		Slot(int pSlot)
+		{
+			aSlot = pSlot;
+		}
+
+		@Override
+		public String getKey()
+		{
+			return aSchema.getKey(aSlot).getName();
+		}
+
+		@Override
+		public Property getValue()
+		{
+			return aSlots[aSlot];
+		}
+
+		@Override
+		public Property setValue(Property pProperty)
+		{
+			Property result = aSlots[aSlot];
+			aElement.setSlot(aSlot, pProperty);
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object pObject)
+		{
+			if( !(pObject instanceof Map.Entry) )
+			{
+				return false;
+			}
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) pObject;
+			return getKey().equals(entry.getKey()) && getValue().equals(entry.getValue());
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return getKey().hashCode() ^ getValue().hashCode();
+		}
+	}
+}
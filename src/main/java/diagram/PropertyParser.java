@@ -0,0 +1,333 @@
+package diagram;
+
+import java.util.ArrayList;
+
+/**
+ * Splits the text of a property into attributes, methods or literals in a
+ * single scan of its characters, without intermediate strings or arrays. The
+ * results are the same as splitting the text, with line breaks removed, with
+ * String.split:
+ * * Members are separated by semicolons, and parameters by commas.
+ * * The name of an attribute ends at its first colon. The other colons of the
+ *   type are dropped.
+ * * The type of a method follows its closing parenthesis, without its colons.
+ * * Empty members at the end of the text are dropped, unless the text has no separator.
+ *
+ * Separators within angle or square brackets do not split the text, so that
+ * a type such as Map<String, List<Integer>> stays in one piece. Brackets are
+ * only taken into account if they are balanced in the whole text, so text
+ * with stray brackets is split as before.
+ *
+ * The names and types can be interned in the string pool of the diagram, so
+ * that the ones that the model repeats are only kept once and are not copied
+ * out of the text when they are already in the pool.
+ */
+final class PropertyParser
+{
+	private final String aText;
+	private final boolean aNested;
+	private final StringPool aPool;
+
+	private PropertyParser(String pText, StringPool pPool)
+	{
+		aText = pText;
+		aNested = isBalanced(pText);
+		aPool = pPool;
+	}
+
+	/**
+	 * @param pText The text of an attributes property.
+	 * @return The attributes declared in pText.
+	 * @pre pText != null
+	 */
+	static ArrayList<Attribute> parseAttributes(String pText)
+	{
+		return parseAttributes(pText, null);
+	}
+
+	/**
+	 * @param pText The text of an attributes property.
+	 * @param pPool The pool in which to intern the parts of the text, or null.
+	 * @return The attributes declared in pText.
+	 * @pre pText != null
+	 */
+	static ArrayList<Attribute> parseAttributes(String pText, StringPool pPool)
+	{
+		assert pText != null;
+		PropertyParser parser = new PropertyParser(pText, pPool);
+		ArrayList<Attribute> result = new ArrayList<>();
+		int last = parser.last(0, pText.length(), ';');
+		int start = 0;
+		while( start <= last )
+		{
+			int end = parser.next(start, pText.length(), ';');
+			result.add(parser.attribute(start, end));
+			start = end + 1;
+		}
+		return result;
+	}
+
+	/**
+	 * @param pText The text of a methods property.
+	 * @return The methods declared in pText.
+	 * @pre pText != null
+	 */
+	static ArrayList<Method> parseMethods(String pText)
+	{
+		return parseMethods(pText, null);
+	}
+
+	/**
+	 * @param pText The text of a methods property.
+	 * @param pPool The pool in which to intern the parts of the text, or null.
+	 * @return The methods declared in pText.
+	 * @pre pText != null
+	 */
+	static ArrayList<Method> parseMethods(String pText, StringPool pPool)
+	{
+		assert pText != null;
+		PropertyParser parser = new PropertyParser(pText, pPool);
+		ArrayList<Method> result = new ArrayList<>();
+		int last = parser.last(0, pText.length(), ';');
+		int start = 0;
+		while( start <= last )
+		{
+			int end = parser.next(start, pText.length(), ';');
+			result.add(parser.method(start, end));
+			start = end + 1;
+		}
+		return result;
+	}
+
+	/**
+	 * @param pText The text of a literals property.
+	 * @return The literals declared in pText.
+	 * @pre pText != null
+	 */
+	static ArrayList<String> parseLiterals(String pText)
+	{
+		return parseLiterals(pText, null);
+	}
+
+	/**
+	 * @param pText The text of a literals property.
+	 * @param pPool The pool in which to intern the parts of the text, or null.
+	 * @return The literals declared in pText.
+	 * @pre pText != null
+	 */
+	static ArrayList<String> parseLiterals(String pText, StringPool pPool)
+	{
+		assert pText != null;
+		PropertyParser parser = new PropertyParser(pText, pPool);
+		ArrayList<String> result = new ArrayList<>();
+		int last = parser.last(0, pText.length(), ';');
+		int start = 0;
+		while( start <= last )
+		{
+			int end = parser.next(start, pText.length(), ';');
+			result.add(parser.text(start, end));
+			start = end + 1;
+		}
+		return result;
+	}
+
+	/*
+	 * An attribute or parameter: the name up to the first colon, then the type
+	 * without its colons.
+	 */
+	private Attribute attribute(int pStart, int pEnd)
+	{
+		int colon = next(pStart, pEnd, ':');
+		if( colon == pEnd )
+		{
+			return new Attribute(text(pStart, pEnd), "");
+		}
+		return new Attribute(text(pStart, colon), text(colon + 1, pEnd, ':'));
+	}
+
+	/*
+	 * A method: name(parameters) then the type. As with String.split, the text is cut
+	 * at each closing parenthesis. The type is what follows the first one, without
+	 * colons if there is a single part after it and without the other parentheses otherwise.
+	 */
+	private Method method(int pStart, int pEnd)
+	{
+		int last = last(pStart, pEnd, ')');
+		if( last < pStart )
+		{
+			return new Method("", "", new ArrayList<>());
+		}
+		int headEnd = next(pStart, pEnd, ')');
+		String type = "";
+		if( headEnd < last )
+		{
+			int typeEnd = next(headEnd + 1, pEnd, ')');
+			if( typeEnd > last )
+			{
+				type = text(headEnd + 1, typeEnd, ':');
+			}
+			else
+			{
+				type = text(headEnd + 1, next(last + 1, pEnd, ')'), ')');
+			}
+		}
+
+		int nameLast = last(pStart, headEnd, '(');
+		if( nameLast < pStart )
+		{
+			return new Method(type, "", new ArrayList<>());
+		}
+		int nameEnd = next(pStart, headEnd, '(');
+		ArrayList<Attribute> parameters = new ArrayList<>();
+		if( nameEnd < nameLast )
+		{
+			int parametersEnd = next(nameEnd + 1, headEnd, '(');
+			int parametersLast = last(nameEnd + 1, parametersEnd, ',');
+			int start = nameEnd + 1;
+			while( start <= parametersLast )
+			{
+				int end = next(start, parametersEnd, ',');
+				parameters.add(attribute(start, end));
+				start = end + 1;
+			}
+		}
+		return new Method(type, text(pStart, nameEnd), parameters);
+	}
+
+	/*
+	 * Returns the index of a character in the last part in which pDelimiter splits [pStart, pEnd),
+	 * without the empty parts at the end as String.split does, or pStart - 1 if there is no part.
+	 * A text without delimiter is a single part, even if it is empty. Parts are cut at
+	 * delimiters that are not within brackets, but the empty parts at the end cannot contain
+	 * brackets, so they can be found by going backwards.
+	 */
+	private int last(int pStart, int pEnd, char pDelimiter)
+	{
+		for( int i = pEnd - 1; i >= pStart; i-- )
+		{
+			char character = aText.charAt(i);
+			if( character != pDelimiter && character != '\n' )
+			{
+				return i;
+			}
+		}
+		for( int i = pStart; i < pEnd; i++ )
+		{
+			if( aText.charAt(i) == pDelimiter )
+			{
+				return pStart - 1;
+			}
+		}
+		return pStart;
+	}
+
+	/*
+	 * Returns the index of the first pDelimiter in [pStart, pEnd) that is not within
+	 * brackets, or pEnd if there is none.
+	 */
+	private int next(int pStart, int pEnd, char pDelimiter)
+	{
+		int depth = 0;
+		for( int i = pStart; i < pEnd; i++ )
+		{
+			char character = aText.charAt(i);
+			if( character == pDelimiter && depth == 0 )
+			{
+				return i;
+			}
+			if( aNested )
+			{
+				depth += nesting(character);
+			}
+		}
+		return pEnd;
+	}
+
+	/*
+	 * Returns [pStart, pEnd) without line breaks.
+	 */
+	private String text(int pStart, int pEnd)
+	{
+		return text(pStart, pEnd, '\n');
+	}
+
+	/*
+	 * Returns [pStart, pEnd) without line breaks and without the occurrences of
+	 * pRemoved that are not within brackets.
+	 */
+	private String text(int pStart, int pEnd, char pRemoved)
+	{
+		StringBuilder builder = null;
+		int start = pStart;
+		int depth = 0;
+		for( int i = pStart; i < pEnd; i++ )
+		{
+			char character = aText.charAt(i);
+			if( character == '\n' || character == pRemoved && depth == 0 )
+			{
+				if( builder == null && i > start )
+				{
+					builder = new StringBuilder(pEnd - pStart);
+				}
+				if( builder != null )
+				{
+					builder.append(aText, start, i);
+				}
+				start = i + 1;
+			}
+			else if( aNested )
+			{
+				depth += nesting(character);
+			}
+		}
+		if( builder == null )
+		{
+			return aPool == null ? aText.substring(start, pEnd) : aPool.intern(aText, start, pEnd);
+		}
+		builder.append(aText, start, pEnd);
+		return aPool == null ? builder.toString() : aPool.intern(builder, 0, builder.length());
+	}
+
+	private static int nesting(char pCharacter)
+	{
+		if( pCharacter == '<' || pCharacter == '[' )
+		{
+			return 1;
+		}
+		else if( pCharacter == '>' || pCharacter == ']' )
+		{
+			return -1;
+		}
+		return 0;
+	}
+
+	/*
+	 * Returns true if every bracket of pText is closed by a bracket of the same kind.
+	 */
+	private static boolean isBalanced(String pText)
+	{
+		int angle = 0;
+		int square = 0;
+		for( int i = 0; i < pText.length(); i++ )
+		{
+			char character = pText.charAt(i);
+			if( character == '<' )
+			{
+				angle++;
+			}
+			else if( character == '>' && --angle < 0 )
+			{
+				return false;
+			}
+			else if( character == '[' )
+			{
+				square++;
+			}
+			else if( character == ']' && --square < 0 )
+			{
+				return false;
+			}
+		}
+		return angle == 0 && square == 0;
+	}
+}
@@ -0,0 +1,84 @@
+package diagram;
+
+import java.util.Arrays;
+
+/**
+ * The properties of a type of element, in the order of the slots in which
+ * its elements store them. A schema is shared by all the elements of a type,
+ * so an element only needs an array with one slot per property.
+ */
+public final class PropertySchema
+{
+	/**
+	 * The schema of elements without properties.
+	 */
+	public static final PropertySchema EMPTY = new PropertySchema(new PropertyKey[0]);
+
+	private static final int ABSENT = -1;
+
+	private final PropertyKey[] aKeys;
+	private final int[] aSlots = new int[PropertyKey.values().length];
+
+	private PropertySchema(PropertyKey[] pKeys)
+	{
+		aKeys = pKeys;
+		Arrays.fill(aSlots, ABSENT);
+		for( int i = 0; i < pKeys.length; i++ )
+		{
+			assert aSlots[pKeys[i].ordinal()] == ABSENT;
+			aSlots[pKeys[i].ordinal()] = i;
+		}
+	}
+
+	/**
+	 * @param pKeys Additional properties.
+	 * @return A schema with the properties of this schema followed by pKeys.
+	 * @pre pKeys are not in this schema
+	 */
+	public PropertySchema with(PropertyKey... pKeys)
+	{
+		PropertyKey[] keys = Arrays.copyOf(aKeys, aKeys.length + pKeys.length);
+		System.arraycopy(pKeys, 0, keys, aKeys.length, pKeys.length);
+		return new PropertySchema(keys);
+	}
+
+	/**
+	 * @return The number of properties.
+	 */
+	public int size()
+	{
+		return aKeys.length;
+	}
+
+	/**
+	 * @param pSlot A slot.
+	 * @return The property stored in pSlot.
+	 * @pre pSlot >= 0 && pSlot < size()
+	 */
+	public PropertyKey getKey(int pSlot)
+	{
+		assert pSlot >= 0 && pSlot < size();
+		return aKeys[pSlot];
+	}
+
+	/**
+	 * @param pKey A property.
+	 * @return The slot of pKey, or -1 if elements of this schema do not have it.
+	 * @pre pKey != null
+	 */
+	public int getSlot(PropertyKey pKey)
+	{
+		assert pKey != null;
+		return aSlots[pKey.ordinal()];
+	}
+
+	/**
+	 * @param pKey A property.
+	 * @return True if elements of this schema have pKey.
+	 * @pre pKey != null
+	 */
+	public boolean contains(PropertyKey pKey)
+	{
+		return getSlot(pKey) != ABSENT;
+	}
+}
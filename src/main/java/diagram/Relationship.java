@@ -1,8 +1,22 @@
 package diagram;
 
+import java.util.Optional;
+
+import geom.Rectangle;
+
+/*
+ * The path of a Relationship depends on its own state and on that of its ends,
+ * including the other Relationships connected to them, each of which changes 
+ * the version of the NamedElement. Known bounds are only valid for the versions 
+ * that the Relationship and its ends had when they were recorded.
+ */
 public abstract class Relationship extends Element {
 	private NamedElement start = null;
 	private NamedElement end = null;
+	private Rectangle knownBounds = null;
+	private int knownVersion;
+	private int knownStartVersion;
+	private int knownEndVersion;
 	
 	public NamedElement getStart() {
 		return start;
@@ -12,9 +26,11 @@ public abstract class Relationship extends Element {
 	}
 	public void setStart(NamedElement pStart) {
 		start = pStart;
+		changed();
 	}
 	public void setEnd(NamedElement pEnd) {
 		end = pEnd;
+		changed();
 	}
 	
 	public void connect(NamedElement pStart, NamedElement pEnd, Diagram pDiagram) {
@@ -23,6 +39,39 @@ public abstract class Relationship extends Element {
 		setEnd(pEnd);
 	}
 	
+	/**
+	 * @return The bounds of this relationship when they were last computed, or read 
+	 *     from the file of the relationship, if neither it nor its ends changed since.
+	 *     They are known without computing the path of the relationship.
+	 */
+	public Optional<Rectangle> getKnownBounds() {
+		if(knownBounds == null || start == null || end == null || knownVersion != getVersion() || 
+				knownStartVersion != start.getVersion() || knownEndVersion != end.getVersion()) {
+			return Optional.empty();
+		}
+		return Optional.of(knownBounds);
+	}
+	
+	/**
+	 * Records the bounds of this relationship for the current state of it and its ends,
+	 * for instance once they have been computed. This is not a change of the relationship,
+	 * but its next snapshot records them.
+	 * 
+	 * @param pBounds The bounds of this relationship.
+	 * @pre pBounds != null && getStart() != null && getEnd() != null
+	 */
+	public void setKnownBounds(Rectangle pBounds) {
+		assert pBounds != null && start != null && end != null;
+		knownBounds = pBounds;
+		knownVersion = getVersion();
+		knownStartVersion = start.getVersion();
+		knownEndVersion = end.getVersion();
+		Diagram container = findContainingDiagram();
+		if(container != null) {
+			container.getSnapshotRecorder().changed(this);
+		}
+	}
+	
 	@Override
 	public Relationship clone() {
 		Relationship clone = (Relationship)super.clone();
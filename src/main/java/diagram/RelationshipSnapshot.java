@@ -0,0 +1,66 @@
+package diagram;
+
+import java.util.Optional;
+
+import geom.Rectangle;
+
+/**
+ * The state of a Relationship at the time a snapshot of its diagram was
+ * taken. Its start and end are obtained from the DiagramSnapshot.
+ */
+public final class RelationshipSnapshot extends ElementSnapshot
+{
+	private final int aStart;
+	private final int aEnd;
+	private final boolean aUniDirection;
+	private final boolean aBiDirection;
+	private final Rectangle aKnownBounds;
+
+	/*
+	 * pStart and pEnd are the ids of the snapshots of the ends of pRelationship, or
+	 * SnapshotRecorder.NO_ID for an end that is not in the diagram.
+	 */
+	RelationshipSnapshot(int pId, Relationship pRelationship, int pStart, int pEnd)
+	{
+		super(pId, pRelationship);
+		aStart = pStart;
+		aEnd = pEnd;
+		aUniDirection = pRelationship instanceof Association && ((Association) pRelationship).getUniDirection();
+		aBiDirection = pRelationship instanceof Association && ((Association) pRelationship).getBiDirection();
+		aKnownBounds = pRelationship.getKnownBounds().orElse(null);
+	}
+
+	/**
+	 * @return True if the relationship is a unidirectional association.
+	 */
+	public boolean isUniDirection()
+	{
+		return aUniDirection;
+	}
+
+	/**
+	 * @return True if the relationship is a bidirectional association.
+	 */
+	public boolean isBiDirection()
+	{
+		return aBiDirection;
+	}
+
+	/**
+	 * @return The known bounds of the relationship, as Relationship.getKnownBounds.
+	 */
+	public Optional<Rectangle> getKnownBounds()
+	{
+		return Optional.ofNullable(aKnownBounds);
+	}
+
+	int getStartId()
+	{
+		return aStart;
+	}
+
+	int getEndId()
+	{
+		return aEnd;
+	}
+}
@@ -0,0 +1,486 @@
+package diagram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records what changes in a diagram between two of its snapshots, so that
+ * the next snapshot is derived from the previous one in time proportional to
+ * the number of changes rather than to the size of the diagram.
+ *
+ * Nothing is recorded until the first snapshot, which is built from the whole
+ * diagram and gives each element an id: its position in the table of element
+ * snapshots. Elements added afterwards get the next free id, and the ids of
+ * removed elements are only reused when the table is rebuilt, once it holds
+ * more ids of removed elements than of elements of the diagram. The diagram
+ * reports the insertions, removals and moves in its lists of root elements
+ * and relationships and in the children of its packages, which are replayed
+ * in order on the lists of ids of the previous snapshot, and the elements
+ * whose state changed, whose snapshots are replaced in the table.
+ */
+final class SnapshotRecorder
+{
+	/**
+	 * The id of an element that is not in the table of element snapshots.
+	 */
+	static final int NO_ID = -1;
+
+	/**
+	 * The list of root elements, as the list of an edit.
+	 */
+	static final int ROOT_ELEMENTS = -2;
+
+	/**
+	 * The list of relationships, as the list of an edit.
+	 */
+	static final int RELATIONSHIPS = -3;
+
+	private static final int INSERT = 0;
+	private static final int REMOVE = 1;
+	private static final int MOVE_TO_END = 2;
+
+	private final Diagram aDiagram;
+	private DiagramSnapshot aLast;
+	private int aNextId;
+	private int aRemovedCount;
+	private final List<Edit> aEdits = new ArrayList<>();
+	private final List<Integer> aRemoved = new ArrayList<>();
+	private final Set<Element> aChanged = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	SnapshotRecorder(Diagram pDiagram)
+	{
+		aDiagram = pDiagram;
+	}
+
+	/*
+	 * Changes are only recorded once there is a previous snapshot to derive the next one from.
+	 */
+	private boolean isRecording()
+	{
+		return aLast != null;
+	}
+
+	/**
+	 * Records that pElement was added to the diagram. The relationships of a
+	 * NamedElement are also changed, since the id of their end changed, and so
+	 * are the other relationships of the ends of a relationship whose known
+	 * bounds no longer hold.
+	 *
+	 * @param pElement The added element.
+	 * @pre pElement != null
+	 */
+	void added(Element pElement)
+	{
+		assert pElement != null;
+		if( !isRecording() )
+		{
+			return;
+		}
+		pElement.setSnapshotId(aNextId++);
+		aChanged.add(pElement);
+		if( pElement instanceof NamedElement )
+		{
+			changedRelationships((NamedElement) pElement);
+		}
+		else
+		{
+			changedEnds((Relationship) pElement);
+		}
+	}
+
+	private void changedRelationships(NamedElement pNamedElement)
+	{
+		pNamedElement.getOwnedRelationshipsAsStart().forEach(this::changedIfContained);
+		pNamedElement.getOwnedRelationshipsAsEnd().forEach(this::changedIfContained);
+	}
+
+	private void changedEnds(Relationship pRelationship)
+	{
+		changedKnownBounds(pRelationship.getStart());
+		changedKnownBounds(pRelationship.getEnd());
+	}
+
+	/*
+	 * Only the relationships recorded with known bounds need a new snapshot: the bounds
+	 * of the others can only become known through setKnownBounds, which records them.
+	 */
+	private void changedKnownBounds(NamedElement pNamedElement)
+	{
+		pNamedElement.getOwnedRelationshipsAsStart().forEach(this::changedIfBounded);
+		pNamedElement.getOwnedRelationshipsAsEnd().forEach(this::changedIfBounded);
+	}
+
+	private void changedIfBounded(Relationship pRelationship)
+	{
+		PersistentVector<ElementSnapshot> table = aLast.getElementTable();
+		int id = pRelationship.getSnapshotId();
+		if( aDiagram.contains(pRelationship) && id < table.size()
+				&& ((RelationshipSnapshot) table.get(id)).getKnownBounds().isPresent() )
+		{
+			aChanged.add(pRelationship);
+		}
+	}
+
+	private void changedIfContained(Relationship pRelationship)
+	{
+		if( aDiagram.contains(pRelationship) )
+		{
+			aChanged.add(pRelationship);
+		}
+	}
+
+	/**
+	 * Records that pElement was removed from the diagram.
+	 *
+	 * @param pElement The removed element.
+	 * @pre pElement != null
+	 */
+	void removed(Element pElement)
+	{
+		assert pElement != null;
+		if( !isRecording() )
+		{
+			return;
+		}
+		aRemoved.add(pElement.getSnapshotId());
+		aRemovedCount++;
+		pElement.setSnapshotId(NO_ID);
+		if( pElement instanceof Relationship )
+		{
+			changedEnds((Relationship) pElement);
+		}
+	}
+
+	/**
+	 * Records that the state of pElement, an element of the diagram, changed.
+	 *
+	 * @param pElement The changed element.
+	 * @pre pElement != null
+	 */
+	void changed(Element pElement)
+	{
+		assert pElement != null;
+		if( isRecording() )
+		{
+			aChanged.add(pElement);
+		}
+	}
+
+	/**
+	 * Records that pElement was inserted at pIndex in a list.
+	 *
+	 * @param pList ROOT_ELEMENTS, RELATIONSHIPS or the id of a package.
+	 * @param pIndex The index of the inserted element.
+	 * @param pElement The inserted element, already added.
+	 */
+	void inserted(int pList, int pIndex, Element pElement)
+	{
+		record(pList, INSERT, pIndex, pElement.getSnapshotId());
+	}
+
+	/**
+	 * Records that the element at pIndex of a list was removed.
+	 *
+	 * @param pList ROOT_ELEMENTS, RELATIONSHIPS or the id of a package.
+	 * @param pIndex The index of the removed element.
+	 */
+	void removed(int pList, int pIndex)
+	{
+		record(pList, REMOVE, pIndex, NO_ID);
+	}
+
+	/**
+	 * Records that the element at pIndex of a list was moved to its end.
+	 *
+	 * @param pList ROOT_ELEMENTS or the id of a package.
+	 * @param pIndex The index of the element before it was moved.
+	 */
+	void movedToEnd(int pList, int pIndex)
+	{
+		record(pList, MOVE_TO_END, pIndex, NO_ID);
+	}
+
+	private void record(int pList, int pKind, int pIndex, int pId)
+	{
+		if( !isRecording() )
+		{
+			return;
+		}
+		aEdits.add(new Edit(pList, pKind, pIndex, pId));
+		// Replaying more edits than there are elements costs more than a new snapshot
+		if( aEdits.size() > aNextId - aRemovedCount )
+		{
+			invalidate();
+		}
+	}
+
+	/**
+	 * Discards the previous snapshot, so that the next one is built from the whole diagram.
+	 */
+	void invalidate()
+	{
+		aLast = null;
+		aEdits.clear();
+		aRemoved.clear();
+		aChanged.clear();
+	}
+
+	/**
+	 * @return A snapshot of the current state of the diagram.
+	 */
+	DiagramSnapshot snapshot()
+	{
+		if( isRecording() )
+		{
+			loadChangedPackages();
+		}
+		if( !isRecording() || aRemovedCount > aNextId - aRemovedCount )
+		{
+			aLast = null;
+			aLast = buildAll();
+		}
+		else if( !aEdits.isEmpty() || !aRemoved.isEmpty() || !aChanged.isEmpty() )
+		{
+			aLast = update();
+		}
+		aEdits.clear();
+		aRemoved.clear();
+		aChanged.clear();
+		return aLast;
+	}
+
+	/*
+	 * Gives a new id to every element of the diagram, and builds all their snapshots.
+	 * Loading the children of packages adds elements, which are not recorded yet.
+	 */
+	private DiagramSnapshot buildAll()
+	{
+		List<ElementSnapshot> table = new ArrayList<>();
+		List<Integer> rootElements = new ArrayList<>();
+		for( NamedElement namedElement : aDiagram.getNamedElements() )
+		{
+			rootElements.add(buildAll(namedElement, table));
+		}
+		List<Integer> relationships = new ArrayList<>();
+		for( Relationship relationship : aDiagram.getRelationships() )
+		{
+			relationship.setSnapshotId(table.size());
+			relationships.add(table.size());
+			table.add(snapshotOf(relationship));
+		}
+		aNextId = table.size();
+		aRemovedCount = 0;
+		return new DiagramSnapshot(PersistentVector.of(table), PersistentVector.of(rootElements),
+				PersistentVector.of(relationships));
+	}
+
+	private int buildAll(NamedElement pNamedElement, List<ElementSnapshot> pTable)
+	{
+		int id = pTable.size();
+		pNamedElement.setSnapshotId(id);
+		pTable.add(null);
+		PersistentVector<Integer> children = null;
+		if( pNamedElement instanceof Package )
+		{
+			List<Integer> childIds = new ArrayList<>();
+			for( NamedElement child : ((Package) pNamedElement).getChildren() )
+			{
+				childIds.add(buildAll(child, pTable));
+			}
+			children = PersistentVector.of(childIds);
+		}
+		pTable.set(id, new NamedElementSnapshot(id, pNamedElement, children));
+		return id;
+	}
+
+	/*
+	 * Replays the edits on the lists of the previous snapshot, then replaces the snapshots
+	 * of the removed and changed elements and of the packages whose children changed.
+	 */
+	private DiagramSnapshot update()
+	{
+		addChangedAncestors();
+		addChangedRelationships();
+		PersistentVector<ElementSnapshot> previous = aLast.getElementTable();
+		PersistentVector<ElementSnapshot> table = previous;
+		while( table.size() < aNextId )
+		{
+			table = table.plus(null);
+		}
+		PersistentVector<Integer> rootElements = aLast.getRootElementIds();
+		PersistentVector<Integer> relationships = aLast.getRelationshipIds();
+		Map<Integer, PersistentVector<Integer>> children = new HashMap<>();
+		for( Edit edit : aEdits )
+		{
+			if( edit.aList == ROOT_ELEMENTS )
+			{
+				rootElements = edit.applyTo(rootElements);
+			}
+			else if( edit.aList == RELATIONSHIPS )
+			{
+				relationships = edit.applyTo(relationships);
+			}
+			else if( edit.aList < previous.size() && previous.get(edit.aList) != null )
+			{
+				// The children of packages added since the previous snapshot are taken from the package
+				PersistentVector<Integer> list = children.get(edit.aList);
+				if( list == null )
+				{
+					list = ((NamedElementSnapshot) previous.get(edit.aList)).getChildIds();
+				}
+				children.put(edit.aList, edit.applyTo(list));
+			}
+		}
+		for( int id : aRemoved )
+		{
+			table = table.with(id, null);
+		}
+		for( Element element : aChanged )
+		{
+			int id = element.getSnapshotId();
+			if( id == NO_ID )
+			{
+				continue;
+			}
+			if( element instanceof Relationship )
+			{
+				table = table.with(id, snapshotOf((Relationship) element));
+			}
+			else
+			{
+				PersistentVector<Integer> childIds = null;
+				if( element instanceof Package )
+				{
+					childIds = children.remove(id);
+					if( childIds == null )
+					{
+						childIds = id < previous.size() && previous.get(id) != null ?
+								((NamedElementSnapshot) previous.get(id)).getChildIds() : idsOf(((Package) element).getChildren());
+					}
+				}
+				table = table.with(id, new NamedElementSnapshot(id, (NamedElement) element, childIds));
+			}
+		}
+		for( Map.Entry<Integer, PersistentVector<Integer>> entry : children.entrySet() )
+		{
+			NamedElementSnapshot snapshot = (NamedElementSnapshot) table.get(entry.getKey());
+			if( snapshot != null )
+			{
+				table = table.with(entry.getKey(), snapshot.withChildren(entry.getValue()));
+			}
+		}
+		return new DiagramSnapshot(table, rootElements, relationships);
+	}
+
+	/*
+	 * The bounds of a package enclose its descendants, so the packages that contain 
+	 * a changed NamedElement changed with it.
+	 */
+	private void addChangedAncestors()
+	{
+		for( Element element : new ArrayList<>(aChanged) )
+		{
+			if( element instanceof NamedElement )
+			{
+				NamedElement namedElement = (NamedElement) element;
+				while( namedElement.hasParent() && aChanged.add(namedElement.getParent()) )
+				{
+					namedElement = namedElement.getParent();
+				}
+			}
+		}
+	}
+
+	/*
+	 * The path of a relationship depends on its ends, so the known bounds of the
+	 * relationships connected to a changed NamedElement no longer hold, which
+	 * their snapshots must reflect.
+	 */
+	private void addChangedRelationships()
+	{
+		for( Element element : new ArrayList<>(aChanged) )
+		{
+			if( element instanceof NamedElement && element.getSnapshotId() != NO_ID )
+			{
+				changedKnownBounds((NamedElement) element);
+			}
+		}
+	}
+
+	/*
+	 * Loads the children of the changed packages that were added with a loader, which
+	 * adds the children, possibly other such packages, to the changed elements. This
+	 * can record enough edits to discard the previous snapshot.
+	 */
+	private void loadChangedPackages()
+	{
+		boolean loaded = true;
+		while( loaded && isRecording() )
+		{
+			loaded = false;
+			for( Element element : new ArrayList<>(aChanged) )
+			{
+				if( element instanceof Package && !((Package) element).hasLoadedChildren() && element.getSnapshotId() != NO_ID )
+				{
+					((Package) element).getChildren();
+					loaded = true;
+				}
+			}
+		}
+	}
+
+	private static PersistentVector<Integer> idsOf(List<NamedElement> pNamedElements)
+	{
+		List<Integer> ids = new ArrayList<>(pNamedElements.size());
+		pNamedElements.forEach(namedElement -> ids.add(namedElement.getSnapshotId()));
+		return PersistentVector.of(ids);
+	}
+
+	private RelationshipSnapshot snapshotOf(Relationship pRelationship)
+	{
+		return new RelationshipSnapshot(pRelationship.getSnapshotId(), pRelationship, idOf(pRelationship.getStart()),
+				idOf(pRelationship.getEnd()));
+	}
+
+	private int idOf(NamedElement pNamedElement)
+	{
+		return pNamedElement != null && aDiagram.contains(pNamedElement) ? pNamedElement.getSnapshotId() : NO_ID;
+	}
+
+	/*
+	 * An insertion, removal or move in one of the lists of the diagram.
+	 */
+	private static final class Edit
+	{
+		private final int aList;
+		private final int aKind;
+		private final int aIndex;
+		private final int aId;
+
+		Edit(int pList, int pKind, int pIndex, int pId)
+		{
+			aList = pList;
+			aKind = pKind;
+			aIndex = pIndex;
+			aId = pId;
+		}
+
+		PersistentVector<Integer> applyTo(PersistentVector<Integer> pIds)
+		{
+			if( aKind == INSERT )
+			{
+				return pIds.plus(aIndex, aId);
+			}
+			else if( aKind == REMOVE )
+			{
+				return pIds.minus(aIndex);
+			}
+			return pIds.minus(aIndex).plus(pIds.get(aIndex));
+		}
+	}
+}
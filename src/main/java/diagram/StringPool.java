@@ -0,0 +1,141 @@
+package diagram;
+
+/**
+ * A set of strings in which equal strings are represented by a single
+ * instance, so that the names, types and property values that a model
+ * repeats many times are only kept once in memory. Each diagram has its own
+ * pool, which is used by the decoders, the property editor and the parser
+ * of attributes and methods, and which lives as long as the diagram.
+ *
+ * Strings are kept in an open-addressing table with linear probing. Unlike
+ * String.intern, the pool can look up a part of a character sequence without
+ * creating a string for it, so text that is already in the pool is not copied.
+ *
+ * A pool is not thread-safe: it must only be used by the thread that builds
+ * or edits its diagram.
+ */
+public final class StringPool
+{
+	private static final int INITIAL_CAPACITY = 64;
+
+	private String[] aTable = new String[INITIAL_CAPACITY];
+	private int aSize = 0;
+
+	/**
+	 * @return The number of strings in the pool.
+	 */
+	public int size()
+	{
+		return aSize;
+	}
+
+	/**
+	 * @param pString The string to intern.
+	 * @return The string of the pool that is equal to pString, which becomes
+	 *     pString itself if there was none.
+	 * @pre pString != null
+	 */
+	public String intern(String pString)
+	{
+		assert pString != null;
+		int slot = slot(pString, 0, pString.length(), hash(pString, 0, pString.length()));
+		if( aTable[slot] == null )
+		{
+			return add(slot, pString);
+		}
+		return aTable[slot];
+	}
+
+	/**
+	 * @param pText The text that contains the string to intern.
+	 * @param pStart The index of the first character of the string.
+	 * @param pEnd The index after the last character of the string.
+	 * @return The string of the pool that is equal to [pStart, pEnd) of pText,
+	 *     which is only created if there was none.
+	 * @pre pText != null && 0 <= pStart && pStart <= pEnd && pEnd <= pText.length()
+	 */
+	public String intern(CharSequence pText, int pStart, int pEnd)
+	{
+		assert pText != null && 0 <= pStart && pStart <= pEnd && pEnd <= pText.length();
+		int slot = slot(pText, pStart, pEnd, hash(pText, pStart, pEnd));
+		if( aTable[slot] == null )
+		{
+			return add(slot, pText.subSequence(pStart, pEnd).toString());
+		}
+		return aTable[slot];
+	}
+
+	/*
+	 * Returns the slot of the string equal to [pStart, pEnd) of pText, or the empty slot where it belongs.
+	 */
+	private int slot(CharSequence pText, int pStart, int pEnd, int pHash)
+	{
+		int mask = aTable.length - 1;
+		int slot = pHash & mask;
+		while( aTable[slot] != null && !matches(aTable[slot], pText, pStart, pEnd) )
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/*
+	 * Adds pString in empty slot pSlot, and returns it.
+	 */
+	private String add(int pSlot, String pString)
+	{
+		aTable[pSlot] = pString;
+		aSize++;
+		// Keeps the table at most half full, so that probe sequences stay short
+		if( aSize * 2 > aTable.length )
+		{
+			String[] old = aTable;
+			aTable = new String[old.length * 2];
+			for( String string : old )
+			{
+				if( string != null )
+				{
+					aTable[slot(string, 0, string.length(), hash(string, 0, string.length()))] = string;
+				}
+			}
+		}
+		return pString;
+	}
+
+	private static boolean matches(String pString, CharSequence pText, int pStart, int pEnd)
+	{
+		if( pString.length() != pEnd - pStart )
+		{
+			return false;
+		}
+		for( int i = 0; i < pString.length(); i++ )
+		{
+			if( pString.charAt(i) != pText.charAt(pStart + i) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * The same hash as String.hashCode, which strings cache, spread over the low bits.
+	 */
+	private static int hash(CharSequence pText, int pStart, int pEnd)
+	{
+		int hash;
+		if( pText instanceof String && pStart == 0 && pEnd == pText.length() )
+		{
+			hash = pText.hashCode();
+		}
+		else
+		{
+			hash = 0;
+			for( int i = pStart; i < pEnd; i++ )
+			{
+				hash = 31 * hash + pText.charAt(i);
+			}
+		}
+		return hash ^ (hash >>> 16);
+	}
+}
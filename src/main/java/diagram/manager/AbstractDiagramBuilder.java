@@ -147,7 +147,7 @@ public abstract class AbstractDiagramBuilder
 		assert canAdd(pNamedElement, pRequestedPosition);
 		positionNamedElement(pNamedElement, pRequestedPosition);
 		return new SimpleOperation( ()-> aDiagram.addNamedElement(pNamedElement), 
-				()-> aDiagram.removeNamedElement(pNamedElement));
+				()-> aDiagram.removeNamedElement(pNamedElement), List.of(pNamedElement));
 	}
 	
 	/**
@@ -167,7 +167,7 @@ public abstract class AbstractDiagramBuilder
 			{
 				operation.add(new SimpleOperation(
 						()-> aDiagram.addNamedElement((NamedElement)element),
-						()-> aDiagram.removeNamedElement((NamedElement)element)));
+						()-> aDiagram.removeNamedElement((NamedElement)element), List.of(element)));
 			}
 			else if( element instanceof Relationship)
 			{
@@ -182,7 +182,7 @@ public abstract class AbstractDiagramBuilder
 							aDiagram.addRelationship(Relationship); 
 							Relationship.connect(Relationship.getStart(), Relationship.getEnd(), aDiagram);	
 						},
-						()-> aDiagram.removeRelationship((Relationship)element)));
+						()-> aDiagram.removeRelationship((Relationship)element), List.of(element)));
 			}
 		}
 		
@@ -287,34 +287,69 @@ public abstract class AbstractDiagramBuilder
 			toDelete.addAll(getCoRemovals(element));
 		}
 		CompoundOperation result = new CompoundOperation();
-		
-		for( Element element : tweakOrder(toDelete))
+		List<Element> elements = tweakOrder(toDelete);
+		List<Relationship> relationships = new ArrayList<>();
+		for( Element element : elements )
 		{
 			if( element instanceof Relationship )
 			{
-				int index = aDiagram.indexOf((Relationship)element);
-				result.add(new SimpleOperation(
-						()-> aDiagram.removeRelationship((Relationship)element),
-						()-> aDiagram.addRelationship(index, (Relationship)element)));
+				relationships.add((Relationship)element);
+			}
+		}
+		for( Element element : elements )
+		{
+			if( element instanceof Relationship )
+			{
+				// The Relationships are contiguous in elements, and removed together
+				if( element == relationships.get(0) )
+				{
+					result.add(createRemoveRelationshipsOperation(relationships));
+				}
 			}
 			else if( element instanceof NamedElement )
 			{
 				if(((NamedElement) element).hasParent())
 				{
+					// Detaching the last child of a package also moves the package
 					result.add(new SimpleOperation(
 						createDetachOperation((NamedElement)element),
-						createReinsertOperation((NamedElement)element)));
+						createReinsertOperation((NamedElement)element),
+						List.of(element, ((NamedElement) element).getParent())));
 				}
 				else
 				{
 					result.add(new SimpleOperation(
 						()-> aDiagram.removeNamedElement((NamedElement)element),
-						()-> aDiagram.addNamedElement((NamedElement)element)));
+						()-> aDiagram.addNamedElement((NamedElement)element), List.of(element)));
 				}
 			}
 		}
 		return result;
 	}
+
+	/*
+	 * Removes pRelationships, which tweakOrder sorts from the last to the first
+	 * index, in a single pass over the Relationships of the diagram. Undoing the 
+	 * operation reinserts them from the first to the last index, so that each of 
+	 * them gets back its original index.
+	 */
+	private DiagramOperation createRemoveRelationshipsOperation(List<Relationship> pRelationships)
+	{
+		int[] indices = new int[pRelationships.size()];
+		for( int i = 0; i < indices.length; i++ )
+		{
+			indices[i] = aDiagram.indexOf(pRelationships.get(i));
+		}
+		return new SimpleOperation(
+				()-> aDiagram.removeRelationships(pRelationships),
+				()-> 
+				{
+					for( int i = indices.length - 1; i >= 0; i-- )
+					{
+						aDiagram.addRelationship(indices[i], pRelationships.get(i));
+					}
+				}, pRelationships);
+	}
 	
 	/**
 	 * Create an operation to move a NamedElement.
@@ -329,7 +364,7 @@ public abstract class AbstractDiagramBuilder
 	{
 		return new SimpleOperation(
 				()-> pNamedElement.translate(pX, pY),
-				()-> pNamedElement.translate(-pX, -pY));
+				()-> pNamedElement.translate(-pX, -pY), List.of(pNamedElement));
 	}
 	
 	/**
@@ -375,7 +410,7 @@ public abstract class AbstractDiagramBuilder
 	{
 		pRelationship.connect(pStartNamedElement, pEndNamedElement, aDiagram);
 		pOperation.add(new SimpleOperation(()-> aDiagram.addRelationship(pRelationship),
-				()-> aDiagram.removeRelationship(pRelationship)));
+				()-> aDiagram.removeRelationship(pRelationship), List.of(pRelationship)));
 	}
 	
 	private Runnable createReinsertOperation(NamedElement pNamedElement)
@@ -3,6 +3,9 @@ package diagram.manager;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+
+import diagram.Element;
 
 /**
  * An operation that is composed of other operations, following
@@ -56,4 +59,24 @@ public class CompoundOperation implements DiagramOperation
 	{
 		return aOperations.isEmpty();
 	}
+	
+	/**
+	 * @return The elements changed by all the sub-operations, or empty
+	 *     if they are not known for one of them.
+	 */
+	@Override
+	public Optional<List<Element>> getElements()
+	{
+		List<Element> result = new ArrayList<>();
+		for( DiagramOperation operation : aOperations )
+		{
+			Optional<List<Element>> elements = operation.getElements();
+			if( elements.isEmpty() )
+			{
+				return Optional.empty();
+			}
+			result.addAll(elements.get());
+		}
+		return Optional.of(result);
+	}
 }
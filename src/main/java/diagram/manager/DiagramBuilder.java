@@ -69,7 +69,7 @@ public class DiagramBuilder extends AbstractDiagramBuilder
 				{ 
 					pNamedElement.detach();
 					container.get().removeChild(pNamedElement); 
-				});
+				}, List.of(pNamedElement));
 			}
 		}
 		if( result == null )
@@ -290,7 +290,7 @@ public class DiagramBuilder extends AbstractDiagramBuilder
 						aDiagram.addNamedElement(pNamedElement);
 						Package.removeChild(pNamedElement);
 					}
-				});	
+				}, pNamedElements);
 	}
 	
 
@@ -326,7 +326,7 @@ public class DiagramBuilder extends AbstractDiagramBuilder
 							aDiagram.removeNamedElement(pNamedElement);
 							parent.addChild(pNamedElement);
 						}
-					});	
+					}, pNamedElements);
 		}
 		else 
 		{
@@ -347,7 +347,7 @@ public class DiagramBuilder extends AbstractDiagramBuilder
 							outerParent.removeChild(pNamedElement);
 							parent.addChild(pNamedElement);
 						}
-					});	
+					}, pNamedElements);
 		}
 	}
 }
@@ -1,5 +1,10 @@
 package diagram.manager;
 
+import java.util.List;
+import java.util.Optional;
+
+import diagram.Element;
+
 /**
  * Represents an operation to change a diagram, that
  * can be undone. Operations are only required to be valid
@@ -16,4 +21,14 @@ public interface DiagramOperation
 	 * Undoes the operation.
 	 */
 	void undo();
+	
+	/**
+	 * @return The elements whose state is changed when the operation is executed
+	 *     or undone, or empty if they are not known. The elements are only reported, 
+	 *     they are not used to perform the operation.
+	 */
+	default Optional<List<Element>> getElements()
+	{
+		return Optional.empty();
+	}
 }
@@ -3,6 +3,7 @@ package diagram.manager;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Responsible for executing and undoing operations, and managing the collection 
@@ -14,6 +15,7 @@ public class DiagramOperationProcessor
 	private final List<DiagramOperation> aExecutedOperations = new ArrayList<>();
 	private final List<DiagramOperation> aUndoneOperations = new ArrayList<>();
 	private Optional<DiagramOperation> aLastSavedOperation = Optional.empty();
+	private final List<Consumer<DiagramOperation>> aListeners = new ArrayList<>();
 	
 	/**
 	 * Executes pOperation and adds it to the list of executed
@@ -27,6 +29,38 @@ public class DiagramOperationProcessor
 		assert pOperation != null;
 		pOperation.execute();
 		aExecutedOperations.add(pOperation);
+		notifyListeners(pOperation);
+	}
+	
+	/**
+	 * Registers pListener to be notified with each operation that changes the diagram,
+	 * after it is executed, stored, undone, or redone.
+	 * 
+	 * @param pListener The listener to add.
+	 * @pre pListener != null
+	 */
+	public void addOperationListener(Consumer<DiagramOperation> pListener)
+	{
+		assert pListener != null;
+		aListeners.add(pListener);
+	}
+	
+	/**
+	 * @param pListener The listener to remove.
+	 * @pre pListener != null
+	 */
+	public void removeOperationListener(Consumer<DiagramOperation> pListener)
+	{
+		assert pListener != null;
+		aListeners.remove(pListener);
+	}
+	
+	private void notifyListeners(DiagramOperation pOperation)
+	{
+		for( Consumer<DiagramOperation> listener : aListeners )
+		{
+			listener.accept(pOperation);
+		}
 	}
 	
 	/**
@@ -61,11 +95,36 @@ public class DiagramOperationProcessor
 	 */
 	public void diagramSaved()
 	{
-		aLastSavedOperation = Optional.empty();
+		savePoint().run();
+	}
+	
+	/**
+	 * Records the current state of the diagram, for saves that complete
+	 * after other operations may have been executed.
+	 * 
+	 * @return A function that indicates that the diagram managed by this processor 
+	 *     has been saved in the state it had when this method was called.
+	 */
+	public Runnable savePoint()
+	{
+		Optional<DiagramOperation> lastOperation = Optional.empty();
 		if( aExecutedOperations.size() > 0 )
 		{
-			aLastSavedOperation = Optional.of(peek());
+			lastOperation = Optional.of(peek());
 		}
+		Optional<DiagramOperation> savedOperation = lastOperation;
+		return () -> aLastSavedOperation = savedOperation;
+	}
+	
+	/**
+	 * Indicates that the diagram managed by this processor has changes that were not made 
+	 * through this processor, for example because they were recovered after a crash. 
+	 * The diagram then has unsaved modifications until it is saved.
+	 */
+	public void diagramRecovered()
+	{
+		// No executed operation is ever the last saved one
+		aLastSavedOperation = Optional.of(new CompoundOperation());
 	}
 	
 	/**
@@ -79,6 +138,7 @@ public class DiagramOperationProcessor
 	{
 		assert pOperation != null;
 		aExecutedOperations.add(pOperation);
+		notifyListeners(pOperation);
 	}
 	
 	/**
@@ -92,6 +152,7 @@ public class DiagramOperationProcessor
 		DiagramOperation operation = aExecutedOperations.remove(aExecutedOperations.size() - 1);
 		operation.undo();
 		aUndoneOperations.add(operation);
+		notifyListeners(operation);
 	}
 	
 	/**
@@ -105,6 +166,7 @@ public class DiagramOperationProcessor
 		DiagramOperation operation = aUndoneOperations.remove(aUndoneOperations.size() - 1);
 		operation.execute();
 		aExecutedOperations.add(operation);
+		notifyListeners(operation);
 	}
 
 	/**
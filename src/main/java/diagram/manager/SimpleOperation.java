@@ -1,5 +1,10 @@
 package diagram.manager;
 
+import java.util.List;
+import java.util.Optional;
+
+import diagram.Element;
+
 /**
  * Represents a simple (non-compound) operation. The operation
  * does no validation of the input method, so any code that 
@@ -10,6 +15,7 @@ public class SimpleOperation implements DiagramOperation
 {
 	private final Runnable aOperation;
 	private final Runnable aReverse;
+	private final Optional<List<Element>> aElements;
 	
 	/**
 	 * Creates an operation.
@@ -24,6 +30,25 @@ public class SimpleOperation implements DiagramOperation
 		assert pOperation != null && pReverse != null;
 		aOperation = pOperation;
 		aReverse = pReverse;
+		aElements = Optional.empty();
+	}
+	
+	/**
+	 * Creates an operation that changes the state of pElements.
+	 * 
+	 * @param pOperation The code to run when the operation is executed.
+	 * @param pReverse The code to run when the operation is undone.
+	 * @param pElements The elements whose state is changed by the operation.
+	 * @pre pOperation != null
+	 * @pre pReverse != null
+	 * @pre pElements != null
+	 */
+	public SimpleOperation(Runnable pOperation, Runnable pReverse, List<? extends Element> pElements)
+	{
+		assert pOperation != null && pReverse != null && pElements != null;
+		aOperation = pOperation;
+		aReverse = pReverse;
+		aElements = Optional.of(List.copyOf(pElements));
 	}
 
 	@Override
@@ -37,4 +62,10 @@ public class SimpleOperation implements DiagramOperation
 	{
 		aReverse.run();
 	}
+	
+	@Override
+	public Optional<List<Element>> getElements()
+	{
+		return aElements;
+	}
 }
@@ -1,7 +1,10 @@
 package file;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import diagram.Diagram;
@@ -12,10 +15,16 @@ import diagram.NamedElement;
  * is a mapping between nodes and arbitrary identifiers. The only constraint
  * on identifiers is that they consistently preserve mapping between objects and
  * their identity.
+ *
+ * The mapping is indexed in both directions, so that finding the identifier
+ * of a node and the node of an identifier both take constant time. Nodes
+ * are iterated in the order in which they were added.
  */
 public abstract class AbstractContext implements Iterable<NamedElement>
 {
-	protected final Map<NamedElement, Integer> aNamedElements = new HashMap<>();
+	private final Map<NamedElement, Integer> aIds = new IdentityHashMap<>();
+	private final IntMap<NamedElement> aNamedElements = new IntMap<>();
+	private final List<NamedElement> aOrder = new ArrayList<>();
 	private final Diagram aDiagram;
 	
 	/**
@@ -47,13 +56,65 @@ public abstract class AbstractContext implements Iterable<NamedElement>
 	public int getId(NamedElement pNamedElement)
 	{
 		assert pNamedElement != null;
-		assert aNamedElements.containsKey(pNamedElement);
-		return aNamedElements.get(pNamedElement);
+		assert aIds.containsKey(pNamedElement);
+		return aIds.get(pNamedElement);
 	}
 	
+	/**
+	 * @return The number of nodes in this context.
+	 */
+	public int size()
+	{
+		return aIds.size();
+	}
+
 	@Override
 	public Iterator<NamedElement> iterator()
 	{
-		return aNamedElements.keySet().iterator();
+		return Collections.unmodifiableList(aOrder).iterator();
+	}
+
+	/**
+	 * @param pNamedElement The node to check.
+	 * @return True if pNamedElement has an identifier in this context.
+	 * @pre pNamedElement != null
+	 */
+	protected boolean contains(NamedElement pNamedElement)
+	{
+		assert pNamedElement != null;
+		return aIds.containsKey(pNamedElement);
+	}
+
+	/**
+	 * Associates pId with pNamedElement, replacing the identifier that
+	 * pNamedElement may already have.
+	 *
+	 * @param pNamedElement The node.
+	 * @param pId The identifier of the node.
+	 * @pre pNamedElement != null
+	 */
+	protected void put(NamedElement pNamedElement, int pId)
+	{
+		assert pNamedElement != null;
+		if( aIds.put(pNamedElement, pId) == null )
+		{
+			aOrder.add(pNamedElement);
+		}
+		aNamedElements.put(pId, pNamedElement);
+	}
+
+	/**
+	 * @param pId An identifier.
+	 * @return The node whose identifier is pId, or null if there is none.
+	 */
+	protected NamedElement find(int pId)
+	{
+		NamedElement namedElement = aNamedElements.get(pId);
+		// The node may have been given another identifier since
+		if( namedElement == null || aIds.get(namedElement) != pId )
+		{
+			return null;
+		}
+		return namedElement;
 	}
 }
@@ -0,0 +1,234 @@
+package file;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import diagram.Diagram;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.Property;
+import diagram.Relationship;
+import diagram.StringPool;
+import geom.Point;
+import geom.Rectangle;
+
+/**
+ * Reads a diagram from the binary format described in BinaryFormat.
+ * Each distinct string is decoded once and shared by all the
+ * properties that refer to it.
+ */
+public final class BinaryDecoder
+{
+	private final DataInputStream aInput;
+	private int[] aStringEnds;
+	private byte[] aStringData;
+	private String[] aStrings;
+	private StringPool aPool;
+
+	private BinaryDecoder(InputStream pInput)
+	{
+		aInput = new DataInputStream(pInput);
+	}
+
+	/**
+	 * @param pFile The file that contains the encoded diagram.
+	 * @return The decoded diagram.
+	 * @throws DeserializationException If it's not possible to read the file or to decode it into a valid diagram.
+	 * @pre pFile != null
+	 */
+	public static Diagram decode(File pFile)
+	{
+		assert pFile != null;
+		try( InputStream input = new BufferedInputStream(new FileInputStream(pFile)) )
+		{
+			return decode(input);
+		}
+		catch( IOException exception )
+		{
+			throw new DeserializationException("Cannot read " + pFile.getName(), exception);
+		}
+	}
+
+	/**
+	 * @param pInput The stream that contains the encoded diagram. It is not closed.
+	 * @return The decoded diagram.
+	 * @throws DeserializationException If it's not possible to decode the stream into a valid diagram.
+	 * @pre pInput != null
+	 */
+	public static Diagram decode(InputStream pInput)
+	{
+		assert pInput != null;
+		try
+		{
+			return new BinaryDecoder(pInput).read();
+		}
+		catch( IOException exception )
+		{
+			throw new DeserializationException("Cannot decode the diagram", exception);
+		}
+	}
+
+	private Diagram read() throws IOException
+	{
+		check(aInput.readInt() == BinaryFormat.MAGIC, "Not a binary diagram");
+		int version = aInput.readInt();
+		check(version == BinaryFormat.VERSION, "Unsupported binary diagram version " + version);
+		int stringCount = aInput.readInt();
+		int namedElementCount = aInput.readInt();
+		int relationshipCount = aInput.readInt();
+		check(stringCount >= 0 && namedElementCount >= 0 && relationshipCount >= 0, "Invalid header");
+		readStrings(stringCount);
+
+		Diagram diagram = new Diagram();
+		aPool = diagram.getStringPool();
+		NamedElement[] namedElements = new NamedElement[namedElementCount];
+		List<NamedElement> roots = new ArrayList<>();
+		for( int id = 0; id < namedElementCount; id++ )
+		{
+			namedElements[id] = readNamedElement(id, namedElements, roots, diagram);
+		}
+		/* Adding the roots last attaches their descendants along with them. */
+		for( NamedElement root : roots )
+		{
+			diagram.addNamedElement(root);
+		}
+		Rectangle[] knownBounds = new Rectangle[relationshipCount];
+		for( int i = 0; i < relationshipCount; i++ )
+		{
+			diagram.addRelationship(readRelationship(namedElements, diagram, knownBounds, i));
+		}
+		// Once all the Relationships are connected, as each one changes the version of its ends
+		for( int i = 0; i < relationshipCount; i++ )
+		{
+			if( knownBounds[i] != null )
+			{
+				diagram.getRelationships().get(i).setKnownBounds(knownBounds[i]);
+			}
+		}
+		return diagram;
+	}
+
+	private void readStrings(int pCount) throws IOException
+	{
+		aStringEnds = new int[pCount];
+		int start = 0;
+		for( int i = 0; i < pCount; i++ )
+		{
+			aStringEnds[i] = aInput.readInt();
+			check(aStringEnds[i] >= start, "Invalid string table");
+			start = aStringEnds[i];
+		}
+		aStringData = new byte[start];
+		aInput.readFully(aStringData);
+		aStrings = new String[pCount];
+	}
+
+	private NamedElement readNamedElement(int pId, NamedElement[] pNamedElements, List<NamedElement> pRoots,
+			Diagram pDiagram) throws IOException
+	{
+		int kind = aInput.readInt();
+		int parent = aInput.readInt();
+		aInput.readInt(); // The number of descendants is only needed for random access
+		int persistentId = aInput.readInt();
+		int x = aInput.readInt();
+		int y = aInput.readInt();
+		// The known bounds are only needed for the packages whose children are not loaded
+		for( int i = 0; i < 4; i++ )
+		{
+			aInput.readInt();
+		}
+		check(persistentId >= 0, "Invalid persistent identifier of " + pId);
+		NamedElement namedElement = BinaryFormat.createNamedElement(kind);
+		namedElement.setPersistentId(persistentId);
+		namedElement.setPosition(new Point(x, y));
+		namedElement.setProperties(readProperties(BinaryFormat.NAMED_ELEMENT_PROPERTIES));
+		if( parent == BinaryFormat.NO_PARENT )
+		{
+			pRoots.add(namedElement);
+		}
+		else
+		{
+			check(parent >= 0 && parent < pId && pNamedElements[parent] instanceof Package, "Invalid parent of " + pId);
+			namedElement.setDiagram(pDiagram);
+			((Package)pNamedElements[parent]).addChild(namedElement);
+		}
+		return namedElement;
+	}
+
+	/*
+	 * Reads relationship pIndex, and records its known bounds in pKnownBounds if it has any.
+	 */
+	private Relationship readRelationship(NamedElement[] pNamedElements, Diagram pDiagram, Rectangle[] pKnownBounds,
+			int pIndex) throws IOException
+	{
+		int kind = aInput.readInt();
+		int start = aInput.readInt();
+		int end = aInput.readInt();
+		check(start >= 0 && start < pNamedElements.length && end >= 0 && end < pNamedElements.length,
+				"Invalid relationship end point");
+		int x = aInput.readInt();
+		int y = aInput.readInt();
+		int width = aInput.readInt();
+		int height = aInput.readInt();
+		if( width != BinaryFormat.ABSENT )
+		{
+			check(width >= 0 && height >= 0, "Invalid bounds of relationship " + pIndex);
+			pKnownBounds[pIndex] = new Rectangle(x, y, width, height);
+		}
+		Relationship relationship = BinaryFormat.createRelationship(kind);
+		relationship.connect(pNamedElements[start], pNamedElements[end], pDiagram);
+		HashMap<String, Property> properties = readProperties(BinaryFormat.RELATIONSHIP_PROPERTIES);
+		String direction = BinaryFormat.direction(kind);
+		if( direction != null )
+		{
+			properties.put("direction", new Property(direction));
+		}
+		relationship.setProperties(properties);
+		return relationship;
+	}
+
+	/*
+	 * Reads one string index per key in pKeys and creates the corresponding properties.
+	 * The properties that the saved Element did not have are left out.
+	 */
+	private HashMap<String, Property> readProperties(String[] pKeys) throws IOException
+	{
+		HashMap<String, Property> properties = new HashMap<>();
+		for( String key : pKeys )
+		{
+			int index = aInput.readInt();
+			if( index != BinaryFormat.ABSENT )
+			{
+				properties.put(key, new Property(string(index)));
+			}
+		}
+		return properties;
+	}
+
+	private String string(int pIndex)
+	{
+		check(pIndex >= 0 && pIndex < aStrings.length, "Invalid string index " + pIndex);
+		if( aStrings[pIndex] == null )
+		{
+			int start = pIndex == 0 ? 0 : aStringEnds[pIndex - 1];
+			aStrings[pIndex] = aPool.intern(new String(aStringData, start, aStringEnds[pIndex] - start, StandardCharsets.UTF_8));
+		}
+		return aStrings[pIndex];
+	}
+
+	private static void check(boolean pCondition, String pMessage)
+	{
+		if( !pCondition )
+		{
+			throw new DeserializationException(pMessage);
+		}
+	}
+}
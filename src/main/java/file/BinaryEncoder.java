@@ -0,0 +1,262 @@
+package file;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import diagram.Association;
+import diagram.BClass;
+import diagram.DataType;
+import diagram.Diagram;
+import diagram.Element;
+import diagram.Enumeration;
+import diagram.Generalization;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.Property;
+import diagram.Relationship;
+import geom.Rectangle;
+
+/**
+ * Converts a diagram to the binary format described in BinaryFormat.
+ * Property values are stored verbatim, once per distinct value, so a
+ * diagram read back from the binary format has exactly the properties
+ * of the diagram that was saved.
+ */
+public final class BinaryEncoder
+{
+	private final NamedElement[] aNamedElements;
+	/* The index of the record of each NamedElement */
+	private final Map<NamedElement, Integer> aIds = new IdentityHashMap<>();
+	private final Map<String, Integer> aStringIndices = new HashMap<>();
+	private final List<byte[]> aStrings = new ArrayList<>();
+
+	private BinaryEncoder(Diagram pDiagram)
+	{
+		SerializationContext context = new SerializationContext(pDiagram);
+		aNamedElements = new NamedElement[context.size()];
+		for( NamedElement namedElement : context )
+		{
+			aNamedElements[aIds.size()] = namedElement;
+			aIds.put(namedElement, aIds.size());
+		}
+	}
+
+	/**
+	 * Writes pDiagram to pFile.
+	 *
+	 * @param pDiagram The diagram to serialize.
+	 * @param pFile The file to write to.
+	 * @throws IOException If there is a problem writing to pFile.
+	 * @pre pDiagram != null && pFile != null
+	 */
+	public static void encode(Diagram pDiagram, File pFile) throws IOException
+	{
+		assert pDiagram != null && pFile != null;
+		try( OutputStream out = new BufferedOutputStream(new FileOutputStream(pFile)) )
+		{
+			encode(pDiagram, out);
+		}
+	}
+
+	/**
+	 * Writes pDiagram to pOutput. The stream is flushed but not closed.
+	 *
+	 * @param pDiagram The diagram to serialize.
+	 * @param pOutput The stream to write to.
+	 * @throws IOException If there is a problem writing to pOutput.
+	 * @pre pDiagram != null && pOutput != null
+	 */
+	public static void encode(Diagram pDiagram, OutputStream pOutput) throws IOException
+	{
+		assert pDiagram != null && pOutput != null;
+		new BinaryEncoder(pDiagram).write(pDiagram.getRelationships(), new DataOutputStream(pOutput));
+	}
+
+	private void write(List<Relationship> pRelationships, DataOutputStream pOutput) throws IOException
+	{
+		/* The string table precedes the records, so the records are built in memory first. */
+		int[] namedElementRecords = new int[aNamedElements.length * BinaryFormat.NAMED_ELEMENT_RECORD_SIZE / Integer.BYTES];
+		int[] descendants = countDescendants();
+		int offset = 0;
+		for( int id = 0; id < aNamedElements.length; id++ )
+		{
+			NamedElement namedElement = aNamedElements[id];
+			namedElementRecords[offset++] = kind(namedElement);
+			namedElementRecords[offset++] = namedElement.hasParent() ? 
+					aIds.get(namedElement.getParent()) : BinaryFormat.NO_PARENT;
+			namedElementRecords[offset++] = descendants[id];
+			namedElementRecords[offset++] = namedElement.getPersistentId();
+			namedElementRecords[offset++] = namedElement.getPosition().getX();
+			namedElementRecords[offset++] = namedElement.getPosition().getY();
+			offset = knownBounds(namedElement, namedElementRecords, offset);
+			offset = stringIndices(namedElement, BinaryFormat.NAMED_ELEMENT_PROPERTIES, namedElementRecords, offset);
+		}
+		int[] relationshipRecords = new int[pRelationships.size() * BinaryFormat.RELATIONSHIP_RECORD_SIZE / Integer.BYTES];
+		offset = 0;
+		for( Relationship relationship : pRelationships )
+		{
+			relationshipRecords[offset++] = kind(relationship);
+			relationshipRecords[offset++] = aIds.get(relationship.getStart());
+			relationshipRecords[offset++] = aIds.get(relationship.getEnd());
+			offset = bounds(relationship.getKnownBounds(), relationshipRecords, offset);
+			offset = stringIndices(relationship, BinaryFormat.RELATIONSHIP_PROPERTIES, relationshipRecords, offset);
+		}
+
+		pOutput.writeInt(BinaryFormat.MAGIC);
+		pOutput.writeInt(BinaryFormat.VERSION);
+		pOutput.writeInt(aStrings.size());
+		pOutput.writeInt(aNamedElements.length);
+		pOutput.writeInt(pRelationships.size());
+		int end = 0;
+		for( byte[] string : aStrings )
+		{
+			end += string.length;
+			pOutput.writeInt(end);
+		}
+		for( byte[] string : aStrings )
+		{
+			pOutput.write(string);
+		}
+		writeInts(namedElementRecords, pOutput);
+		writeInts(relationshipRecords, pOutput);
+		pOutput.flush();
+	}
+
+	/*
+	 * Records are in depth-first order, so the descendants of a
+	 * NamedElement are the elements that follow it up to the first one whose
+	 * parent comes before it. Visiting the elements in reverse order adds the
+	 * size of each subtree to its parent.
+	 */
+	private int[] countDescendants()
+	{
+		int[] result = new int[aNamedElements.length];
+		for( int id = aNamedElements.length - 1; id >= 0; id-- )
+		{
+			if( aNamedElements[id].hasParent() )
+			{
+				result[aIds.get(aNamedElements[id].getParent())] += result[id] + 1;
+			}
+		}
+		return result;
+	}
+
+	private static int knownBounds(NamedElement pNamedElement, int[] pRecords, int pOffset)
+	{
+		return bounds(pNamedElement instanceof Package ? ((Package) pNamedElement).getKnownBounds() : Optional.empty(), 
+				pRecords, pOffset);
+	}
+
+	private static int bounds(Optional<Rectangle> pBounds, int[] pRecords, int pOffset)
+	{
+		pRecords[pOffset] = pBounds.map(Rectangle::getX).orElse(0);
+		pRecords[pOffset + 1] = pBounds.map(Rectangle::getY).orElse(0);
+		pRecords[pOffset + 2] = pBounds.map(Rectangle::getWidth).orElse(BinaryFormat.ABSENT);
+		pRecords[pOffset + 3] = pBounds.map(Rectangle::getHeight).orElse(0);
+		return pOffset + 4;
+	}
+
+	private int stringIndices(Element pElement, String[] pKeys, int[] pRecords, int pOffset)
+	{
+		int offset = pOffset;
+		for( String key : pKeys )
+		{
+			Property property = pElement.getProperties().get(key);
+			pRecords[offset++] = property == null ? BinaryFormat.ABSENT : stringIndex(property.getValue());
+		}
+		return offset;
+	}
+
+	private int stringIndex(String pString)
+	{
+		Integer index = aStringIndices.get(pString);
+		if( index == null )
+		{
+			index = aStrings.size();
+			aStringIndices.put(pString, index);
+			aStrings.add(pString.getBytes(StandardCharsets.UTF_8));
+		}
+		return index;
+	}
+
+	/*
+	 * Returns the code of the kind of pNamedElement, as described in BinaryFormat.
+	 */
+	static int kind(NamedElement pNamedElement)
+	{
+		if( pNamedElement instanceof BClass )
+		{
+			BClass bClass = (BClass) pNamedElement;
+			return BinaryFormat.KIND_BCLASS | (bClass.getIsAbstract() ? BinaryFormat.FLAG_ABSTRACT : 0) | 
+					(bClass.getIsInterface() ? BinaryFormat.FLAG_INTERFACE : 0);
+		}
+		else if( pNamedElement instanceof Package )
+		{
+			return BinaryFormat.KIND_PACKAGE;
+		}
+		else if( pNamedElement instanceof Enumeration )
+		{
+			return BinaryFormat.KIND_ENUMERATION;
+		}
+		else
+		{
+			assert pNamedElement instanceof DataType;
+			return BinaryFormat.KIND_DATATYPE;
+		}
+	}
+
+	/*
+	 * Returns the code of the kind of pRelationship, as described in BinaryFormat.
+	 */
+	static int kind(Relationship pRelationship)
+	{
+		if( pRelationship instanceof Association )
+		{
+			return BinaryFormat.KIND_ASSOCIATION | direction((Association) pRelationship) << BinaryFormat.DIRECTION_SHIFT;
+		}
+		int noDirection = BinaryFormat.DIRECTION_ABSENT << BinaryFormat.DIRECTION_SHIFT;
+		if( pRelationship instanceof Generalization )
+		{
+			return BinaryFormat.KIND_GENERALIZATION | noDirection;
+		}
+		else
+		{
+			return BinaryFormat.KIND_COMPOSITION | noDirection;
+		}
+	}
+
+	private static int direction(Association pAssociation)
+	{
+		if( pAssociation.getUniDirection() )
+		{
+			return BinaryFormat.DIRECTION_UNI;
+		}
+		else if( pAssociation.getBiDirection() )
+		{
+			return BinaryFormat.DIRECTION_BI;
+		}
+		else
+		{
+			return BinaryFormat.DIRECTION_NONE;
+		}
+	}
+
+	private static void writeInts(int[] pValues, DataOutputStream pOutput) throws IOException
+	{
+		for( int value : pValues )
+		{
+			pOutput.writeInt(value);
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package file;
+
+import diagram.Association;
+import diagram.BClass;
+import diagram.Composition;
+import diagram.DataType;
+import diagram.Enumeration;
+import diagram.Generalization;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.Relationship;
+
+/**
+ * Layout of the binary diagram format, and creation of the elements
+ * described by its records. All values are big-endian.
+ *
+ * * Header: magic number, format version, number of strings,
+ *   number of NamedElements and number of relationships, as ints.
+ * * String table: the end offset of each string in the string data,
+ *   as ints, followed by the UTF-8 bytes of all the strings.
+ * * NamedElement records, one per NamedElement, in depth-first order, so that
+ *   parents come before their children and the descendants of a package
+ *   immediately follow it. Records refer to NamedElements by the index of their
+ *   record, and each record stores the persistent identifier of its NamedElement,
+ *   so that identifiers survive a round trip through the binary format. The
+ *   record of a package also stores the bounds of the package and its descendants
+ *   as they were last drawn, if they are known, so that a diagram that is read
+ *   as it is accessed can be drawn and laid out without loading its packages.
+ * * Relationship records, one per relationship, in diagram order. Each record
+ *   stores the bounds of its relationship as they were last computed, if they are
+ *   known, so that the relationships of packages that are not loaded yet can be
+ *   found by area, and the ones that are loaded indexed without computing their path.
+ *
+ * Records have a fixed width, so the record of any NamedElement or relationship
+ * can be found from its index alone. Strings are referred to by their index
+ * in the string table, or by ABSENT if the corresponding property does not exist.
+ */
+final class BinaryFormat
+{
+	static final int MAGIC = 0x4D424447; // "MBDG"
+	static final int VERSION = 4;
+	static final int HEADER_SIZE = 5 * Integer.BYTES;
+	static final int ABSENT = -1;
+	static final int NO_PARENT = -1;
+
+	/*
+	 * NamedElement record: kind and flags, parent identifier, number of descendants,
+	 * persistent identifier, x, y, then the x, y, width and height of the known bounds,
+	 * with a width of ABSENT if they are not known or it is not a package, then the 
+	 * string indices of the properties in NAMED_ELEMENT_PROPERTIES.
+	 */
+	static final String[] NAMED_ELEMENT_PROPERTIES = {"name", "attributes", "methods", "literals"};
+	static final int NAMED_ELEMENT_RECORD_SIZE = (10 + NAMED_ELEMENT_PROPERTIES.length) * Integer.BYTES;
+
+	/*
+	 * Relationship record: kind and direction, start identifier, end identifier,
+	 * then the x, y, width and height of the known bounds, with a width of ABSENT
+	 * if they are not known, then the string indices of the properties in 
+	 * RELATIONSHIP_PROPERTIES.
+	 */
+	static final String[] RELATIONSHIP_PROPERTIES = {"startLabel", "midLabel", "endLabel"};
+	static final int RELATIONSHIP_RECORD_SIZE = (7 + RELATIONSHIP_PROPERTIES.length) * Integer.BYTES;
+
+	static final int KIND_MASK = 0xFF;
+
+	static final int KIND_BCLASS = 0;
+	static final int KIND_PACKAGE = 1;
+	static final int KIND_DATATYPE = 2;
+	static final int KIND_ENUMERATION = 3;
+	static final int FLAG_ABSTRACT = 1 << 8;
+	static final int FLAG_INTERFACE = 1 << 9;
+
+	static final int KIND_ASSOCIATION = 0;
+	static final int KIND_GENERALIZATION = 1;
+	static final int KIND_COMPOSITION = 2;
+	static final int DIRECTION_SHIFT = 8;
+	static final int DIRECTION_NONE = 0;
+	static final int DIRECTION_UNI = 1;
+	static final int DIRECTION_BI = 2;
+	static final int DIRECTION_ABSENT = 3;
+
+	private static final String[] DIRECTIONS = {"NoDirection", "UniDirection", "BiDirection"};
+
+	private BinaryFormat() {}
+
+	/**
+	 * @param pKind The kind and flags of a NamedElement record.
+	 * @return A new NamedElement of that kind.
+	 * @throws DeserializationException If pKind is not a known kind.
+	 */
+	static NamedElement createNamedElement(int pKind)
+	{
+		switch( pKind & KIND_MASK )
+		{
+		case KIND_BCLASS:
+			return new BClass((pKind & FLAG_ABSTRACT) != 0, (pKind & FLAG_INTERFACE) != 0);
+		case KIND_PACKAGE:
+			return new Package();
+		case KIND_DATATYPE:
+			return new DataType();
+		case KIND_ENUMERATION:
+			return new Enumeration();
+		default:
+			throw new DeserializationException("Unknown kind of element " + pKind);
+		}
+	}
+
+	/**
+	 * @param pKind The kind and direction of a relationship record.
+	 * @return A new relationship of that kind, with that direction if it is an association.
+	 * @throws DeserializationException If pKind is not a known kind.
+	 */
+	static Relationship createRelationship(int pKind)
+	{
+		switch( pKind & KIND_MASK )
+		{
+		case KIND_ASSOCIATION:
+			int direction = pKind >>> DIRECTION_SHIFT;
+			return new Association(direction == DIRECTION_UNI, direction == DIRECTION_BI);
+		case KIND_GENERALIZATION:
+			return new Generalization();
+		case KIND_COMPOSITION:
+			return new Composition();
+		default:
+			throw new DeserializationException("Unknown kind of relationship " + pKind);
+		}
+	}
+
+	/**
+	 * @param pKind The kind and direction of a relationship record.
+	 * @return The value of the direction property of the relationship, or null if it has none.
+	 * @throws DeserializationException If the direction is not a known direction.
+	 */
+	static String direction(int pKind)
+	{
+		int direction = pKind >>> DIRECTION_SHIFT;
+		if( direction == DIRECTION_ABSENT )
+		{
+			return null;
+		}
+		if( direction >= DIRECTIONS.length )
+		{
+			throw new DeserializationException("Unknown direction " + direction);
+		}
+		return DIRECTIONS[direction];
+	}
+}
@@ -43,7 +43,7 @@ public class DeserializationContext extends AbstractContext
 	public void addNamedElement(NamedElement pNamedElement, int pId)
 	{
 		assert pNamedElement != null;
-		aNamedElements.put(pNamedElement, pId);
+		put(pNamedElement, pId);
 	}
 	
 	/**
@@ -53,14 +53,8 @@ public class DeserializationContext extends AbstractContext
 	 */
 	public NamedElement getNamedElement(int pId)
 	{
-		for( NamedElement node : this )
-		{
-			if( aNamedElements.get(node) == pId )
-			{
-				return node;
-			}
-		}
-		assert false;
-		return null;
+		NamedElement node = find(pId);
+		assert node != null;
+		return node;
 	}
 }
@@ -0,0 +1,902 @@
+package file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import diagram.Diagram;
+import diagram.DiagramSnapshot;
+import diagram.Element;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.Property;
+import diagram.Relationship;
+import diagram.manager.DiagramOperation;
+
+/**
+ * An append-only journal of the operations performed on a diagram since it was
+ * last saved, from which the changes can be recovered if the application stops
+ * before the diagram is saved again.
+ *
+ * The journal of the diagram saved in file F is written to F.journal. It applies
+ * to a base, which is either F or a snapshot of the diagram in F.autosave.mbd,
+ * and has one entry per operation executed, undone or redone. An entry records the
+ * state of the elements changed by the operation, so its size is proportional to the
+ * size of the change and not to the size of the diagram. The entries are kept in memory
+ * and appended to the file on a timer. Once the journal grows beyond a threshold, it is
+ * compacted: the diagram is written to F.autosave.mbd, which becomes the new base.
+ *
+ * * Header: magic number, version and kind of base (BASE_FILE or BASE_AUTOSAVE), as ints,
+ *   then the length and the modification time of the base file, as longs.
+ * * Entry: the length of the records, as an int, the records, and their CRC-32, as an int.
+ *   A truncated or corrupted entry ends the journal.
+ * * NamedElement record: TAG_NAMED_ELEMENT, then the identifier, kind, parent identifier
+ *   (or BinaryFormat.NO_PARENT), index in the parent or in the root elements, x and y,
+ *   as ints, then the values of BinaryFormat.NAMED_ELEMENT_PROPERTIES.
+ * * Relationship record: TAG_RELATIONSHIP, then the identifier, kind, start identifier,
+ *   end identifier and index in the diagram, as ints, then the values of
+ *   BinaryFormat.RELATIONSHIP_PROPERTIES.
+ * * Removal records: TAG_REMOVED_NAMED_ELEMENT or TAG_REMOVED_RELATIONSHIP, then the
+ *   identifier.
+ * * Values: the length of the UTF-8 bytes of the value, or BinaryFormat.ABSENT, as an int,
+ *   then the bytes.
+ *
+ * Identifiers are indices: the NamedElements of the base are numbered in depth-first order
+ * and its relationships in diagram order, and the elements that are added later are numbered
+ * in the order in which they first appear in the journal. Tags are bytes and kinds are the
+ * kinds of BinaryFormat.
+ *
+ * The methods of a journal that are not marked otherwise must be called on the thread
+ * that modifies the diagram.
+ */
+public final class DiagramJournal
+{
+	static final int MAGIC = 0x4D424A4C; // "MBJL"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 3 * Integer.BYTES + 2 * Long.BYTES;
+	static final int BASE_FILE = 0;
+	static final int BASE_AUTOSAVE = 1;
+	static final byte TAG_NAMED_ELEMENT = 0;
+	static final byte TAG_REMOVED_NAMED_ELEMENT = 1;
+	static final byte TAG_RELATIONSHIP = 2;
+	static final byte TAG_REMOVED_RELATIONSHIP = 3;
+
+	private static final String JOURNAL_SUFFIX = ".journal";
+	private static final String AUTOSAVE_SUFFIX = ".autosave" + FileExtensions.EXTENSION_BINARY;
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static final long FLUSH_INTERVAL = 2000; // ms
+	private static final long COMPACTION_SIZE = 4 * 1024 * 1024;
+	/* Writes the journals and their bases, one task at a time. */
+	private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(pTask ->
+	{
+		Thread thread = new Thread(pTask, "Diagram journal");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Diagram aDiagram;
+	private final long aCompactionSize;
+	private final ScheduledFuture<?> aFlushTask;
+	private Optional<File> aFile = Optional.empty();
+	private final Map<NamedElement, Integer> aNamedElementIds = new IdentityHashMap<>();
+	private final Map<Relationship, Integer> aRelationshipIds = new IdentityHashMap<>();
+	private int aNextNamedElementId;
+	private int aNextRelationshipId;
+	/* The decoder of the base if it is the file the diagram is mapped from, which identifies its elements */
+	private Optional<MappedBinaryDecoder> aMappedBase = Optional.empty();
+	private int[] aMappedRelationshipIds; // By index in the mapped base
+
+	/* The following fields are shared with the journal thread, and guarded by this. */
+	private ByteArrayOutputStream aPending = new ByteArrayOutputStream();
+	private File aJournalFile; // The file the pending entries are appended to
+	private byte[] aHeader;    // Written first if aLength is 0
+	private long aLength;      // The number of bytes in aJournalFile
+	private int aGeneration;   // Incremented each time the base changes
+	private boolean aStarted;  // The base of the pending entries is written
+	private boolean aWritingBase;
+	private boolean aStale;    // The journal does not describe some of the changes since the base
+	private boolean aFailed;   // Writing to the journal failed, so it stays off until the next save
+	private boolean aClosed;
+
+	/**
+	 * Creates a journal for a diagram that is not saved in a file yet. The operations
+	 * are journaled once the diagram is saved with save.
+	 *
+	 * @param pDiagram The diagram whose operations to record.
+	 * @pre pDiagram != null
+	 */
+	public DiagramJournal(Diagram pDiagram)
+	{
+		this(pDiagram, COMPACTION_SIZE);
+	}
+
+	/*
+	 * Creates a journal that is compacted once it is larger than pCompactionSize bytes.
+	 */
+	DiagramJournal(Diagram pDiagram, long pCompactionSize)
+	{
+		assert pDiagram != null && pCompactionSize > 0;
+		aDiagram = pDiagram;
+		aCompactionSize = pCompactionSize;
+		aFlushTask = EXECUTOR.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts journaling a diagram that was just read from pFile, replacing
+	 * any previous journal of pFile.
+	 *
+	 * @param pDiagram The diagram read from pFile.
+	 * @param pFile The file the diagram was read from.
+	 * @return The journal of pDiagram.
+	 * @pre pDiagram != null && pFile != null
+	 */
+	public static DiagramJournal start(Diagram pDiagram, File pFile)
+	{
+		assert pDiagram != null && pFile != null;
+		DiagramJournal journal = new DiagramJournal(pDiagram);
+		journal.index();
+		journal.begin(pFile);
+		return journal;
+	}
+
+	/**
+	 * Reads the diagram saved in pFile as it is accessed, as PersistenceService.readMapped,
+	 * and starts journaling it, replacing any previous journal of pFile. The journal applies
+	 * to pFile, whose elements are identified by the decoder as they are read, so journaling
+	 * does not load the diagram. The relationships of the diagram are in the order in which
+	 * they were read, so they can be in a different order once the journal is recovered.
+	 *
+	 * @param pFile A file in the binary format.
+	 * @return The journal of the diagram read from pFile, which is available through getDiagram.
+	 * @throws DeserializationException If there is a problem decoding the file.
+	 * @pre pFile != null && FileExtensions.isBinary(pFile)
+	 */
+	public static DiagramJournal startMapped(File pFile)
+	{
+		assert pFile != null && FileExtensions.isBinary(pFile);
+		MappedBinaryDecoder decoder = PersistenceService.map(pFile);
+		DiagramJournal journal = new DiagramJournal(decoder.getDiagram());
+		journal.index(decoder);
+		journal.begin(pFile);
+		return journal;
+	}
+
+	/*
+	 * Starts journaling relative to pFile, which contains the diagram in its current state,
+	 * once the elements of the diagram are identified.
+	 */
+	private void begin(File pFile)
+	{
+		aFile = Optional.of(pFile);
+		int generation = rebase(false);
+		EXECUTOR.execute(() ->
+		{
+			try
+			{
+				Files.deleteIfExists(getAutosaveFile(pFile).toPath());
+				startAppending(generation, pFile, BASE_FILE, pFile, false);
+			}
+			catch( IOException exception )
+			{
+				fail(generation);
+			}
+		});
+	}
+
+	/**
+	 * @param pFile A diagram file.
+	 * @return True if pFile has a journal with changes that were not saved in pFile.
+	 * @pre pFile != null
+	 */
+	public static boolean hasJournal(File pFile)
+	{
+		assert pFile != null;
+		return getJournalFile(pFile).length() > HEADER_SIZE;
+	}
+
+	/**
+	 * Reads the diagram saved in pFile, applies the changes recorded in its journal,
+	 * and continues journaling the diagram from there.
+	 *
+	 * @param pFile A diagram file that has a journal.
+	 * @return The journal of the recovered diagram, which is available through getDiagram.
+	 * @throws DeserializationException If the journal does not apply to the diagram saved
+	 *     in pFile, or if it's not possible to read the diagram or its journal.
+	 * @pre pFile != null && hasJournal(pFile)
+	 */
+	public static DiagramJournal recover(File pFile)
+	{
+		assert pFile != null && hasJournal(pFile);
+		File journalFile = getJournalFile(pFile);
+		try
+		{
+			ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(journalFile.toPath()));
+			check(journal.remaining() >= HEADER_SIZE && journal.getInt() == MAGIC, "Not a diagram journal");
+			int version = journal.getInt();
+			check(version == VERSION, "Unsupported diagram journal version " + version);
+			int base = journal.getInt();
+			check(base == BASE_FILE || base == BASE_AUTOSAVE, "Invalid base");
+			File baseFile = base == BASE_FILE ? pFile : getAutosaveFile(pFile);
+			check(journal.getLong() == baseFile.length() && journal.getLong() == baseFile.lastModified(),
+					"The journal does not apply to " + baseFile.getName());
+
+			JournalReplay replay = new JournalReplay(PersistenceService.read(baseFile).diagram());
+			replay.apply(journal);
+			// The changes are appended after the last complete entry
+			try( FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE) )
+			{
+				channel.truncate(journal.position());
+			}
+
+			DiagramJournal result = new DiagramJournal(replay.getDiagram());
+			result.aFile = Optional.of(pFile);
+			replay.getNamedElements().forEach(pNamedElement ->
+					result.aNamedElementIds.put(pNamedElement, result.aNamedElementIds.size()));
+			replay.getRelationships().forEach(pRelationship ->
+					result.aRelationshipIds.put(pRelationship, result.aRelationshipIds.size()));
+			result.aNextNamedElementId = result.aNamedElementIds.size();
+			result.aNextRelationshipId = result.aRelationshipIds.size();
+			synchronized( result )
+			{
+				result.aJournalFile = journalFile;
+				result.aLength = journal.position();
+				result.aStarted = true;
+			}
+			return result;
+		}
+		catch( IOException exception )
+		{
+			throw new DeserializationException("Cannot read " + journalFile.getName(), exception);
+		}
+	}
+
+	/**
+	 * @return The diagram whose operations are recorded.
+	 */
+	public Diagram getDiagram()
+	{
+		return aDiagram;
+	}
+
+	/**
+	 * Records the changes made by pOperation, once it has been executed,
+	 * undone or redone. Intended to be registered as a listener of the
+	 * processor of the operations of the diagram.
+	 *
+	 * @param pOperation The operation that was performed.
+	 * @pre pOperation != null
+	 */
+	public void record(DiagramOperation pOperation)
+	{
+		assert pOperation != null;
+		if( aFile.isEmpty() )
+		{
+			return;
+		}
+		Optional<List<Element>> elements = pOperation.getElements();
+		boolean compact;
+		synchronized( this )
+		{
+			if( aFailed || aClosed )
+			{
+				return;
+			}
+			if( elements.isPresent() && !aStale )
+			{
+				writeEntry(encode(elements.get()));
+			}
+			else
+			{
+				// Only a new base can describe the changes
+				aStale = true;
+			}
+			compact = !aWritingBase && (aStale || aLength + aPending.size() > aCompactionSize);
+		}
+		if( compact )
+		{
+			compact();
+		}
+	}
+
+	/*
+	 * Writes the diagram to the autosave file, and restarts the journal from there.
+	 * As with PersistenceService.saveInBackground, only a snapshot of the diagram is
+	 * taken on this thread, and the diagram to save is rebuilt from it on the journal thread.
+	 */
+	private void compact()
+	{
+		File file = aFile.get();
+		DiagramSnapshot snapshot = aDiagram.snapshot();
+		index();
+		int generation = rebase(false);
+		EXECUTOR.execute(() ->
+		{
+			try
+			{
+				File autosave = getAutosaveFile(file);
+				PersistenceService.save(snapshot.toDiagram(), autosave);
+				startAppending(generation, file, BASE_AUTOSAVE, autosave, true);
+			}
+			catch( IOException | RuntimeException exception )
+			{
+				fail(generation);
+			}
+		});
+	}
+
+	/**
+	 * Saves the diagram in pFile on a background thread, as PersistenceService.saveInBackground,
+	 * and restarts the journal from the saved diagram. The journal is then stored next to pFile.
+	 *
+	 * @param pFile The file in which to save the diagram.
+	 * @return A future that is completed once pFile has been written and the journal restarted,
+	 *     or completed exceptionally if there is a problem writing to pFile.
+	 * @pre pFile != null
+	 */
+	public CompletableFuture<Void> save(File pFile)
+	{
+		assert pFile != null;
+		Optional<File> previous = aFile;
+		aFile = Optional.of(pFile);
+		index();
+		int generation = rebase(true);
+		return PersistenceService.saveInBackground(aDiagram, pFile).whenCompleteAsync((pResult, pException) ->
+		{
+			if( pException != null )
+			{
+				// The next operation compacts the journal
+				synchronized( this )
+				{
+					if( aGeneration == generation )
+					{
+						aWritingBase = false;
+						aStale = true;
+					}
+				}
+				return;
+			}
+			try
+			{
+				startAppending(generation, pFile, BASE_FILE, pFile, true);
+				Files.deleteIfExists(getAutosaveFile(pFile).toPath());
+				if( previous.isPresent() && !previous.get().getAbsoluteFile().equals(pFile.getAbsoluteFile()) )
+				{
+					deleteFiles(previous.get());
+				}
+			}
+			catch( IOException exception )
+			{
+				fail(generation);
+			}
+		}, EXECUTOR);
+	}
+
+	/**
+	 * Stops journaling and deletes the journal, for example because the diagram is
+	 * closed. Waits until the journal is deleted.
+	 */
+	public void close()
+	{
+		synchronized( this )
+		{
+			aClosed = true;
+			aPending = new ByteArrayOutputStream();
+		}
+		aFlushTask.cancel(false);
+		Optional<File> file = aFile;
+		aFile = Optional.empty();
+		if( file.isPresent() )
+		{
+			try
+			{
+				EXECUTOR.submit(() ->
+				{
+					deleteFiles(file.get());
+					return null;
+				}).get();
+			}
+			catch( InterruptedException exception )
+			{
+				Thread.currentThread().interrupt();
+			}
+			catch( ExecutionException exception )
+			{
+				// The journal is ignored when the diagram is next opened, unless the diagram file is unchanged
+			}
+		}
+	}
+
+	/*
+	 * Waits until the entries recorded so far are written. For testing.
+	 */
+	void sync() throws IOException
+	{
+		try
+		{
+			EXECUTOR.submit(this::flush).get();
+		}
+		catch( InterruptedException exception )
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch( ExecutionException exception )
+		{
+			throw new IOException(exception.getCause());
+		}
+	}
+
+	/*
+	 * Assigns the identifiers of a new base to the elements of the diagram.
+	 */
+	private void index()
+	{
+		aNamedElementIds.clear();
+		aRelationshipIds.clear();
+		aMappedBase = Optional.empty();
+		aMappedRelationshipIds = null;
+		List<NamedElement> namedElements = depthFirst(aDiagram);
+		for( NamedElement namedElement : namedElements )
+		{
+			aNamedElementIds.put(namedElement, aNamedElementIds.size());
+		}
+		for( Relationship relationship : byStart(aDiagram, namedElements) )
+		{
+			aRelationshipIds.put(relationship, aRelationshipIds.size());
+		}
+		aNextNamedElementId = aNamedElementIds.size();
+		aNextRelationshipId = aRelationshipIds.size();
+	}
+
+	/*
+	 * Assigns the identifiers of a base that is the file of pDecoder, which identifies
+	 * the elements of the diagram as it reads them. The NamedElements of the file are in
+	 * depth-first order, and its relationships are read back in the order of the file,
+	 * so they are numbered by start as in byStart.
+	 */
+	private void index(MappedBinaryDecoder pDecoder)
+	{
+		aNamedElementIds.clear();
+		aRelationshipIds.clear();
+		aMappedBase = Optional.of(pDecoder);
+		int[] next = new int[pDecoder.getNamedElementCount() + 1];
+		for( int i = 0; i < pDecoder.getRelationshipCount(); i++ )
+		{
+			next[pDecoder.startOf(i) + 1]++;
+		}
+		for( int id = 0; id < pDecoder.getNamedElementCount(); id++ )
+		{
+			next[id + 1] += next[id];
+		}
+		aMappedRelationshipIds = new int[pDecoder.getRelationshipCount()];
+		for( int i = 0; i < pDecoder.getRelationshipCount(); i++ )
+		{
+			aMappedRelationshipIds[i] = next[pDecoder.startOf(i)]++;
+		}
+		aNextNamedElementId = pDecoder.getNamedElementCount();
+		aNextRelationshipId = pDecoder.getRelationshipCount();
+	}
+
+	/*
+	 * Returns the identifier of pNamedElement, or null if it was not identified yet.
+	 */
+	private Integer idOf(NamedElement pNamedElement)
+	{
+		Integer id = aNamedElementIds.get(pNamedElement);
+		if( id == null && aMappedBase.isPresent() )
+		{
+			int mapped = aMappedBase.get().idOf(pNamedElement);
+			if( mapped >= 0 )
+			{
+				id = mapped;
+			}
+		}
+		return id;
+	}
+
+	/*
+	 * Returns the identifier of pRelationship, or null if it was not identified yet.
+	 */
+	private Integer idOf(Relationship pRelationship)
+	{
+		Integer id = aRelationshipIds.get(pRelationship);
+		if( id == null && aMappedBase.isPresent() )
+		{
+			int index = aMappedBase.get().indexOf(pRelationship);
+			if( index >= 0 )
+			{
+				id = aMappedRelationshipIds[index];
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * The XMI format stores the relationships within their start NamedElement,
+	 * so reading a diagram back only preserves the order of the relationships
+	 * that have the same start.
+	 *
+	 * @param pDiagram A diagram.
+	 * @param pNamedElements The NamedElements of pDiagram, in depth-first order.
+	 * @return The relationships of pDiagram, in the order of their identifiers in a journal.
+	 * @pre pDiagram != null && pNamedElements != null
+	 */
+	static List<Relationship> byStart(Diagram pDiagram, List<NamedElement> pNamedElements)
+	{
+		assert pDiagram != null && pNamedElements != null;
+		Map<NamedElement, List<Relationship>> relationships = new IdentityHashMap<>();
+		for( Relationship relationship : pDiagram.getRelationships() )
+		{
+			relationships.computeIfAbsent(relationship.getStart(), key -> new ArrayList<>()).add(relationship);
+		}
+		List<Relationship> result = new ArrayList<>();
+		for( NamedElement namedElement : pNamedElements )
+		{
+			result.addAll(relationships.getOrDefault(namedElement, List.of()));
+		}
+		return result;
+	}
+
+	/**
+	 * @param pDiagram A diagram.
+	 * @return The NamedElements of pDiagram, in the order of their identifiers in a journal.
+	 * @pre pDiagram != null
+	 */
+	static List<NamedElement> depthFirst(Diagram pDiagram)
+	{
+		assert pDiagram != null;
+		List<NamedElement> result = new ArrayList<>();
+		for( NamedElement root : pDiagram.getNamedElements() )
+		{
+			addDepthFirst(root, result);
+		}
+		return result;
+	}
+
+	private static void addDepthFirst(NamedElement pNamedElement, List<NamedElement> pResult)
+	{
+		pResult.add(pNamedElement);
+		if( pNamedElement instanceof Package )
+		{
+			for( NamedElement child : ((Package)pNamedElement).getChildren() )
+			{
+				addDepthFirst(child, pResult);
+			}
+		}
+	}
+
+	/*
+	 * Discards the pending entries, which describe changes relative to the previous
+	 * base, and returns the generation of the new one.
+	 */
+	private synchronized int rebase(boolean pRetry)
+	{
+		aGeneration++;
+		aPending = new ByteArrayOutputStream();
+		aStarted = false;
+		aWritingBase = true;
+		aStale = false;
+		if( pRetry )
+		{
+			aFailed = false;
+		}
+		return aGeneration;
+	}
+
+	/*
+	 * Called on the journal thread once the base of generation pGeneration is written.
+	 * Replaces the journal of pFile with one that applies to pBaseFile. The journal is
+	 * written right away if pWriteNow, otherwise when there is something to append.
+	 */
+	private void startAppending(int pGeneration, File pFile, int pBase, File pBaseFile, boolean pWriteNow)
+			throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC).putInt(VERSION).putInt(pBase).putLong(pBaseFile.length()).putLong(pBaseFile.lastModified());
+		File journalFile = getJournalFile(pFile);
+		if( pWriteNow )
+		{
+			// Any previous journal applies to a previous base, so it is replaced in one step
+			File temporary = File.createTempFile("." + journalFile.getName(), TEMPORARY_SUFFIX,
+					journalFile.getAbsoluteFile().getParentFile());
+			try
+			{
+				try( FileOutputStream out = new FileOutputStream(temporary) )
+				{
+					out.write(header.array());
+					out.getFD().sync();
+				}
+				synchronized( this )
+				{
+					if( aGeneration != pGeneration || aClosed )
+					{
+						return;
+					}
+					PersistenceService.replace(temporary, journalFile);
+				}
+			}
+			finally
+			{
+				Files.deleteIfExists(temporary.toPath());
+			}
+		}
+		else
+		{
+			Files.deleteIfExists(journalFile.toPath());
+		}
+		synchronized( this )
+		{
+			if( aGeneration == pGeneration )
+			{
+				aJournalFile = journalFile;
+				aHeader = header.array();
+				aLength = pWriteNow ? HEADER_SIZE : 0;
+				aStarted = true;
+				aWritingBase = false;
+			}
+		}
+	}
+
+	private synchronized void fail(int pGeneration)
+	{
+		if( aGeneration == pGeneration )
+		{
+			aWritingBase = false;
+			aFailed = true;
+		}
+	}
+
+	/*
+	 * Appends the pending entries to the journal file. Runs on the journal thread.
+	 */
+	private void flush()
+	{
+		byte[] header;
+		byte[] entries;
+		File journalFile;
+		int generation;
+		synchronized( this )
+		{
+			if( !aStarted || aStale || aFailed || aClosed || aPending.size() == 0 )
+			{
+				return;
+			}
+			header = aLength == 0 ? aHeader : new byte[0];
+			entries = aPending.toByteArray();
+			aPending = new ByteArrayOutputStream();
+			journalFile = aJournalFile;
+			generation = aGeneration;
+		}
+		StandardOpenOption mode = header.length > 0 ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND;
+		try( FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, mode) )
+		{
+			channel.write(new ByteBuffer[] {ByteBuffer.wrap(header), ByteBuffer.wrap(entries)});
+			channel.force(false);
+			synchronized( this )
+			{
+				if( aGeneration == generation )
+				{
+					aLength += header.length + entries.length;
+				}
+			}
+		}
+		catch( IOException exception )
+		{
+			fail(generation);
+		}
+	}
+
+	/*
+	 * Adds an entry with pRecords to the pending entries.
+	 */
+	private void writeEntry(byte[] pRecords)
+	{
+		CRC32 crc = new CRC32();
+		crc.update(pRecords);
+		ByteBuffer entry = ByteBuffer.allocate(pRecords.length + 2 * Integer.BYTES);
+		entry.putInt(pRecords.length).put(pRecords).putInt((int) crc.getValue());
+		aPending.writeBytes(entry.array());
+	}
+
+	/*
+	 * Encodes the current state of pElements. The NamedElements are written first,
+	 * so that the end points of the relationships exist when they are read.
+	 */
+	private byte[] encode(List<Element> pElements)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		Set<Element> written = Collections.newSetFromMap(new IdentityHashMap<>());
+		try
+		{
+			for( Element element : pElements )
+			{
+				if( element instanceof NamedElement )
+				{
+					writeNamedElement((NamedElement) element, out, written);
+				}
+			}
+			for( Element element : pElements )
+			{
+				if( element instanceof Relationship )
+				{
+					writeRelationship((Relationship) element, out, written);
+				}
+			}
+		}
+		catch( IOException exception )
+		{
+			// Writing to a byte array does not fail
+			throw new UncheckedIOException(exception);
+		}
+		return bytes.toByteArray();
+	}
+
+	private void writeNamedElement(NamedElement pNamedElement, DataOutputStream pOut, Set<Element> pWritten)
+			throws IOException
+	{
+		if( pWritten.contains(pNamedElement) )
+		{
+			return;
+		}
+		Integer id = idOf(pNamedElement);
+		int index = pNamedElement.hasParent() ? pNamedElement.getParent().getChildren().indexOf(pNamedElement) :
+			aDiagram.getNamedElements().indexOf(pNamedElement);
+		if( index < 0 )
+		{
+			if( id != null )
+			{
+				pOut.writeByte(TAG_REMOVED_NAMED_ELEMENT);
+				pOut.writeInt(id);
+			}
+			pWritten.add(pNamedElement);
+			return;
+		}
+		if( pNamedElement.hasParent() && idOf(pNamedElement.getParent()) == null )
+		{
+			// A new parent is written with all its children
+			writeNamedElement(pNamedElement.getParent(), pOut, pWritten);
+			return;
+		}
+		boolean added = id == null;
+		if( added )
+		{
+			id = aNextNamedElementId++;
+			aNamedElementIds.put(pNamedElement, id);
+		}
+		pWritten.add(pNamedElement);
+		pOut.writeByte(TAG_NAMED_ELEMENT);
+		pOut.writeInt(id);
+		pOut.writeInt(BinaryEncoder.kind(pNamedElement));
+		pOut.writeInt(pNamedElement.hasParent() ? idOf(pNamedElement.getParent()) : BinaryFormat.NO_PARENT);
+		pOut.writeInt(index);
+		pOut.writeInt(pNamedElement.getPosition().getX());
+		pOut.writeInt(pNamedElement.getPosition().getY());
+		writeProperties(pNamedElement, BinaryFormat.NAMED_ELEMENT_PROPERTIES, pOut);
+		if( added && pNamedElement instanceof Package )
+		{
+			for( NamedElement child : ((Package)pNamedElement).getChildren() )
+			{
+				writeNamedElement(child, pOut, pWritten);
+			}
+		}
+	}
+
+	private void writeRelationship(Relationship pRelationship, DataOutputStream pOut, Set<Element> pWritten)
+			throws IOException
+	{
+		if( pWritten.contains(pRelationship) )
+		{
+			return;
+		}
+		pWritten.add(pRelationship);
+		Integer id = idOf(pRelationship);
+		int index = aDiagram.contains(pRelationship) ? aDiagram.indexOf(pRelationship) : -1;
+		if( index < 0 )
+		{
+			if( id != null )
+			{
+				pOut.writeByte(TAG_REMOVED_RELATIONSHIP);
+				pOut.writeInt(id);
+			}
+			return;
+		}
+		for( NamedElement end : new NamedElement[] {pRelationship.getStart(), pRelationship.getEnd()} )
+		{
+			if( idOf(end) == null )
+			{
+				writeNamedElement(end, pOut, pWritten);
+			}
+		}
+		if( id == null )
+		{
+			id = aNextRelationshipId++;
+			aRelationshipIds.put(pRelationship, id);
+		}
+		pOut.writeByte(TAG_RELATIONSHIP);
+		pOut.writeInt(id);
+		pOut.writeInt(BinaryEncoder.kind(pRelationship));
+		pOut.writeInt(idOf(pRelationship.getStart()));
+		pOut.writeInt(idOf(pRelationship.getEnd()));
+		pOut.writeInt(index);
+		writeProperties(pRelationship, BinaryFormat.RELATIONSHIP_PROPERTIES, pOut);
+	}
+
+	private static void writeProperties(Element pElement, String[] pKeys, DataOutputStream pOut) throws IOException
+	{
+		for( String key : pKeys )
+		{
+			Property property = pElement.getProperties().get(key);
+			if( property == null )
+			{
+				pOut.writeInt(BinaryFormat.ABSENT);
+			}
+			else
+			{
+				byte[] value = property.getValue().getBytes(StandardCharsets.UTF_8);
+				pOut.writeInt(value.length);
+				pOut.write(value);
+			}
+		}
+	}
+
+	/**
+	 * @param pFile A diagram file.
+	 * @return The file that holds the journal of pFile.
+	 * @pre pFile != null
+	 */
+	public static File getJournalFile(File pFile)
+	{
+		assert pFile != null;
+		return new File(pFile.getPath() + JOURNAL_SUFFIX);
+	}
+
+	/**
+	 * @param pFile A diagram file.
+	 * @return The file that holds the last compacted state of the journal of pFile.
+	 * @pre pFile != null
+	 */
+	public static File getAutosaveFile(File pFile)
+	{
+		assert pFile != null;
+		return new File(pFile.getPath() + AUTOSAVE_SUFFIX);
+	}
+
+	private static void deleteFiles(File pFile) throws IOException
+	{
+		Files.deleteIfExists(getJournalFile(pFile).toPath());
+		Files.deleteIfExists(getAutosaveFile(pFile).toPath());
+	}
+
+	private static void check(boolean pCondition, String pMessage)
+	{
+		if( !pCondition )
+		{
+			throw new DeserializationException(pMessage);
+		}
+	}
+}
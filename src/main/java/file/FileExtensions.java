@@ -13,15 +13,29 @@ import javafx.stage.FileChooser.ExtensionFilter;
 public final class FileExtensions
 {
 	private static final String EXTENSION_JET = ".xmi";
-	
-	private static ExtensionFilter FILTER = new ExtensionFilter(RESOURCES.getString("metamodeldiagram.file.name"),
-			"*" + EXTENSION_JET);
+	static final String EXTENSION_BINARY = ".mbd";
 	
 	private FileExtensions() {}
 	
 	public static ExtensionFilter getFilter()
 	{
-		return FILTER;
+		return Filters.FILTER;
+	}
+	
+	public static ExtensionFilter getBinaryFilter()
+	{
+		return Filters.BINARY_FILTER;
+	}
+	
+	/**
+	 * @param pFile The file to check.
+	 * @return True if pFile has the extension of the binary diagram format.
+	 * @pre pFile != null
+	 */
+	public static boolean isBinary(File pFile)
+	{
+		assert pFile != null;
+		return pFile.getName().endsWith(EXTENSION_BINARY);
 	}
 	
 	/**
@@ -34,13 +48,26 @@ public final class FileExtensions
 	public static File clipApplicationExtension(File pFile)
 	{
 		assert pFile != null;
-		if( !pFile.getAbsolutePath().endsWith(EXTENSION_JET))
+		for( String extension : new String[] {EXTENSION_JET, EXTENSION_BINARY} )
 		{
-			return pFile;
+			if( pFile.getAbsolutePath().endsWith(extension) )
+			{
+				return new File(pFile.getAbsolutePath()
+						.substring(0, pFile.getAbsolutePath().length() - extension.length()));
+			}
 		}
-		return new File(pFile.getAbsolutePath()
-				.substring(0, pFile.getAbsolutePath().length() - EXTENSION_JET.length()));
+		return pFile;
 	}
-}
 	
-	
\ No newline at end of file
+	/*
+	 * The filters are created on first use, so that checking the extension of a 
+	 * file does not require the application resources to be loaded.
+	 */
+	private static final class Filters
+	{
+		private static final ExtensionFilter FILTER = 
+				new ExtensionFilter(RESOURCES.getString("metamodeldiagram.file.name"), "*" + EXTENSION_JET);
+		private static final ExtensionFilter BINARY_FILTER = 
+				new ExtensionFilter(RESOURCES.getString("metamodeldiagram.binary.file.name"), "*" + EXTENSION_BINARY);
+	}
+}
@@ -0,0 +1,142 @@
+package file;
+
+import java.util.Arrays;
+
+/**
+ * A map from primitive int keys to non-null values, implemented with
+ * open addressing and linear probing. It avoids boxing the keys and allocating
+ * an entry object per mapping, which matters when resolving the identifiers
+ * of very large diagrams.
+ *
+ * @param <T> The type of the values.
+ */
+final class IntMap<T>
+{
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private int[] aKeys;
+	private Object[] aValues;
+	private int aSize = 0;
+
+	/**
+	 * Creates an empty map.
+	 */
+	IntMap()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty map that can hold pExpectedSize mappings without resizing.
+	 *
+	 * @param pExpectedSize The expected number of mappings.
+	 * @pre pExpectedSize >= 0
+	 */
+	IntMap(int pExpectedSize)
+	{
+		assert pExpectedSize >= 0;
+		int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, (int)(pExpectedSize / LOAD_FACTOR)) - 1) << 1;
+		aKeys = new int[capacity];
+		aValues = new Object[capacity];
+	}
+
+	/**
+	 * Associates pValue with pKey, replacing any previous value.
+	 *
+	 * @param pKey The key.
+	 * @param pValue The value.
+	 * @pre pValue != null
+	 */
+	void put(int pKey, T pValue)
+	{
+		assert pValue != null;
+		int index = indexOf(pKey, aKeys, aValues);
+		if( aValues[index] == null )
+		{
+			aKeys[index] = pKey;
+			aSize++;
+		}
+		aValues[index] = pValue;
+		if( aSize > aKeys.length * LOAD_FACTOR )
+		{
+			grow();
+		}
+	}
+
+	/**
+	 * @param pKey The key to look up.
+	 * @return The value associated with pKey, or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	T get(int pKey)
+	{
+		return (T) aValues[indexOf(pKey, aKeys, aValues)];
+	}
+
+	/**
+	 * @param pKey The key to look up.
+	 * @return True if a value is associated with pKey.
+	 */
+	boolean containsKey(int pKey)
+	{
+		return get(pKey) != null;
+	}
+
+	/**
+	 * @return The number of mappings in this map.
+	 */
+	int size()
+	{
+		return aSize;
+	}
+
+	/**
+	 * Removes all the mappings.
+	 */
+	void clear()
+	{
+		Arrays.fill(aValues, null);
+		aSize = 0;
+	}
+
+	/*
+	 * Returns the slot that holds pKey, or the empty slot where it would be inserted.
+	 */
+	private static int indexOf(int pKey, int[] pKeys, Object[] pValues)
+	{
+		int mask = pKeys.length - 1;
+		int index = mix(pKey) & mask;
+		while( pValues[index] != null && pKeys[index] != pKey )
+		{
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	private void grow()
+	{
+		int[] oldKeys = aKeys;
+		Object[] oldValues = aValues;
+		aKeys = new int[oldKeys.length * 2];
+		aValues = new Object[oldValues.length * 2];
+		for( int i = 0; i < oldKeys.length; i++ )
+		{
+			if( oldValues[i] != null )
+			{
+				int index = indexOf(oldKeys[i], aKeys, aValues);
+				aKeys[index] = oldKeys[i];
+				aValues[index] = oldValues[i];
+			}
+		}
+	}
+
+	/*
+	 * Spreads consecutive identifiers over the table.
+	 */
+	private static int mix(int pKey)
+	{
+		int hash = pKey * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
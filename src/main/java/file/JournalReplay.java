@@ -0,0 +1,312 @@
+package file;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import diagram.Diagram;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.Property;
+import diagram.Relationship;
+import geom.Point;
+
+/**
+ * Applies the entries of a journal, in the format described in DiagramJournal,
+ * to the diagram of its base.
+ *
+ * The records of an entry describe the state of the elements after the
+ * operation. The elements are first taken out of the diagram, then put back
+ * in their position in increasing order of index, so that the elements that
+ * the entry does not mention keep their relative order.
+ */
+final class JournalReplay
+{
+	private final Diagram aDiagram;
+	private final List<NamedElement> aNamedElements;
+	private final List<Relationship> aRelationships;
+
+	/**
+	 * @param pDiagram The diagram of the base of the journal.
+	 * @pre pDiagram != null
+	 */
+	JournalReplay(Diagram pDiagram)
+	{
+		assert pDiagram != null;
+		aDiagram = pDiagram;
+		aNamedElements = DiagramJournal.depthFirst(pDiagram);
+		aRelationships = DiagramJournal.byStart(pDiagram, aNamedElements);
+	}
+
+	/**
+	 * @return The diagram, with the entries applied so far.
+	 */
+	Diagram getDiagram()
+	{
+		return aDiagram;
+	}
+
+	/**
+	 * @return All the NamedElements referred to by the journal, including the
+	 *     removed ones, in the order of their identifiers.
+	 */
+	List<NamedElement> getNamedElements()
+	{
+		return aNamedElements;
+	}
+
+	/**
+	 * @return All the relationships referred to by the journal, including the
+	 *     removed ones, in the order of their identifiers.
+	 */
+	List<Relationship> getRelationships()
+	{
+		return aRelationships;
+	}
+
+	/**
+	 * Applies the entries that follow the position of pJournal, up to its end or to
+	 * the first entry that is truncated or corrupted. The position of pJournal is
+	 * then right after the last entry applied.
+	 *
+	 * @param pJournal The entries of a journal.
+	 * @throws DeserializationException If a complete entry does not apply to the diagram.
+	 * @pre pJournal != null
+	 */
+	void apply(ByteBuffer pJournal)
+	{
+		assert pJournal != null;
+		while( pJournal.remaining() >= Integer.BYTES )
+		{
+			int start = pJournal.position();
+			int length = pJournal.getInt();
+			if( length < 0 || pJournal.remaining() < length + Integer.BYTES )
+			{
+				pJournal.position(start);
+				break;
+			}
+			ByteBuffer records = pJournal.slice(pJournal.position(), length);
+			CRC32 crc = new CRC32();
+			crc.update(records.duplicate());
+			pJournal.position(pJournal.position() + length);
+			if( pJournal.getInt() != (int) crc.getValue() )
+			{
+				pJournal.position(start);
+				break;
+			}
+			try
+			{
+				applyEntry(records);
+			}
+			catch( BufferUnderflowException | IndexOutOfBoundsException exception )
+			{
+				throw new DeserializationException("Invalid journal entry at " + start, exception);
+			}
+		}
+		removeDisconnected();
+		attach();
+	}
+
+	private void applyEntry(ByteBuffer pRecords)
+	{
+		List<int[]> namedElementPositions = new ArrayList<>();
+		List<int[]> relationshipPositions = new ArrayList<>();
+		while( pRecords.hasRemaining() )
+		{
+			byte tag = pRecords.get();
+			int id = pRecords.getInt();
+			if( tag == DiagramJournal.TAG_NAMED_ELEMENT )
+			{
+				NamedElement namedElement = namedElement(id, pRecords.getInt());
+				int parent = pRecords.getInt();
+				int index = pRecords.getInt();
+				namedElement.setPosition(new Point(pRecords.getInt(), pRecords.getInt()));
+				namedElement.setProperties(readProperties(pRecords, BinaryFormat.NAMED_ELEMENT_PROPERTIES));
+				namedElementPositions.add(new int[] {id, parent, index});
+			}
+			else if( tag == DiagramJournal.TAG_REMOVED_NAMED_ELEMENT )
+			{
+				check(id >= 0 && id < aNamedElements.size(), "Invalid element " + id);
+				remove(aNamedElements.get(id));
+			}
+			else if( tag == DiagramJournal.TAG_RELATIONSHIP )
+			{
+				int kind = pRecords.getInt();
+				Relationship relationship = relationship(id, kind);
+				int start = pRecords.getInt();
+				int end = pRecords.getInt();
+				int index = pRecords.getInt();
+				HashMap<String, Property> properties = readProperties(pRecords, BinaryFormat.RELATIONSHIP_PROPERTIES);
+				String direction = BinaryFormat.direction(kind);
+				if( direction != null )
+				{
+					properties.put("direction", new Property(direction));
+				}
+				relationship.setProperties(properties);
+				relationshipPositions.add(new int[] {id, start, end, index});
+			}
+			else if( tag == DiagramJournal.TAG_REMOVED_RELATIONSHIP )
+			{
+				check(id >= 0 && id < aRelationships.size(), "Invalid relationship " + id);
+				remove(aRelationships.get(id));
+			}
+			else
+			{
+				throw new DeserializationException("Unknown journal record " + tag);
+			}
+		}
+
+		namedElementPositions.sort(Comparator.comparingInt(pPosition -> pPosition[2]));
+		for( int[] position : namedElementPositions )
+		{
+			place(aNamedElements.get(position[0]), position[1], position[2]);
+		}
+		relationshipPositions.sort(Comparator.comparingInt(pPosition -> pPosition[3]));
+		for( int[] position : relationshipPositions )
+		{
+			place(aRelationships.get(position[0]), position[1], position[2], position[3]);
+		}
+	}
+
+	/*
+	 * Returns NamedElement pId, taken out of the diagram, creating it if it is new.
+	 */
+	private NamedElement namedElement(int pId, int pKind)
+	{
+		check(pId >= 0 && pId <= aNamedElements.size(), "Invalid element " + pId);
+		if( pId == aNamedElements.size() )
+		{
+			NamedElement namedElement = BinaryFormat.createNamedElement(pKind);
+			namedElement.setDiagram(aDiagram);
+			aNamedElements.add(namedElement);
+			return namedElement;
+		}
+		NamedElement namedElement = aNamedElements.get(pId);
+		remove(namedElement);
+		return namedElement;
+	}
+
+	/*
+	 * Returns relationship pId, taken out of the diagram, creating it if it is new.
+	 */
+	private Relationship relationship(int pId, int pKind)
+	{
+		check(pId >= 0 && pId <= aRelationships.size(), "Invalid relationship " + pId);
+		if( pId == aRelationships.size() )
+		{
+			Relationship relationship = BinaryFormat.createRelationship(pKind);
+			aRelationships.add(relationship);
+			return relationship;
+		}
+		Relationship relationship = aRelationships.get(pId);
+		remove(relationship);
+		return relationship;
+	}
+
+	private void remove(NamedElement pNamedElement)
+	{
+		if( pNamedElement.hasParent() )
+		{
+			pNamedElement.getParent().removeChild(pNamedElement);
+		}
+		else if( aDiagram.contains(pNamedElement) )
+		{
+			aDiagram.removeNamedElement(pNamedElement);
+		}
+	}
+
+	private void remove(Relationship pRelationship)
+	{
+		if( aDiagram.contains(pRelationship) )
+		{
+			aDiagram.removeRelationship(pRelationship);
+		}
+	}
+
+	private void place(NamedElement pNamedElement, int pParent, int pIndex)
+	{
+		if( pParent == BinaryFormat.NO_PARENT )
+		{
+			aDiagram.addNamedElement(Math.min(pIndex, aDiagram.getNamedElements().size()), pNamedElement);
+		}
+		else
+		{
+			check(pParent >= 0 && pParent < aNamedElements.size() && aNamedElements.get(pParent) instanceof Package,
+					"Invalid parent " + pParent);
+			Package parent = (Package) aNamedElements.get(pParent);
+			parent.addChild(Math.min(pIndex, parent.getChildren().size()), pNamedElement);
+		}
+	}
+
+	private void place(Relationship pRelationship, int pStart, int pEnd, int pIndex)
+	{
+		check(pStart >= 0 && pStart < aNamedElements.size() && pEnd >= 0 && pEnd < aNamedElements.size(),
+				"Invalid relationship end point");
+		pRelationship.connect(aNamedElements.get(pStart), aNamedElements.get(pEnd), aDiagram);
+		aDiagram.addRelationship(Math.min(pIndex, aDiagram.getRelationships().size()), pRelationship);
+	}
+
+	/*
+	 * Removes the relationships of the base whose end points are no longer in the diagram.
+	 * The journal of a diagram read with PersistenceService.readMapped does not mention the
+	 * relationships that the diagram had not read when their end points were removed.
+	 */
+	private void removeDisconnected()
+	{
+		List<Relationship> disconnected = new ArrayList<>();
+		for( Relationship relationship : aDiagram.getRelationships() )
+		{
+			if( !aDiagram.contains(relationship.getStart()) || !aDiagram.contains(relationship.getEnd()) )
+			{
+				disconnected.add(relationship);
+			}
+		}
+		if( !disconnected.isEmpty() )
+		{
+			aDiagram.removeRelationships(disconnected);
+		}
+	}
+
+	/*
+	 * Attaches the NamedElements that are in the diagram once all entries are applied,
+	 * and detaches the removed ones.
+	 */
+	private void attach()
+	{
+		aNamedElements.forEach(NamedElement::detach);
+		for( NamedElement namedElement : DiagramJournal.depthFirst(aDiagram) )
+		{
+			namedElement.attach(aDiagram);
+		}
+	}
+
+	private HashMap<String, Property> readProperties(ByteBuffer pRecords, String[] pKeys)
+	{
+		HashMap<String, Property> properties = new HashMap<>();
+		for( String key : pKeys )
+		{
+			int length = pRecords.getInt();
+			if( length != BinaryFormat.ABSENT )
+			{
+				check(length >= 0 && length <= pRecords.remaining(), "Invalid value length " + length);
+				byte[] value = new byte[length];
+				pRecords.get(value);
+				properties.put(key, new Property(aDiagram.getStringPool().intern(new String(value, StandardCharsets.UTF_8))));
+			}
+		}
+		return properties;
+	}
+
+	private static void check(boolean pCondition, String pMessage)
+	{
+		if( !pCondition )
+		{
+			throw new DeserializationException(pMessage);
+		}
+	}
+}
@@ -0,0 +1,603 @@
+package file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import diagram.Diagram;
+import diagram.DiagramListener;
+import diagram.Element;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.Property;
+import diagram.Relationship;
+import geom.Point;
+import geom.Rectangle;
+import geom.SpatialIndex;
+
+/**
+ * Reads a diagram from a memory-mapped file in the binary format described
+ * in BinaryFormat, creating its content only as it is needed:
+ * * Only the root NamedElements are created when the file is read. The
+ *   children of a package are created when they are first accessed.
+ * * Property values are decoded from the string table when they are first read.
+ * * A relationship is added to the diagram once both its end points are in it,
+ *   so after the relationships that were added before, in the order of the file
+ *   for the ones added together.
+ * * The packages whose children are not loaded yet are indexed by the known bounds
+ *   of the relationships of their descendants, so that the relationship loader of 
+ *   the diagram loads the packages needed by the relationships of an area. A
+ *   relationship whose bounds are not known is in every area.
+ * * The relationships that wait for an end point are also added once that end 
+ *   point changes, and when it is added back to the diagram after being removed.
+ *
+ * The relationships that are added when the file is read get the bounds stored in 
+ * the file, if both their end points have all their relationships, so that the 
+ * diagram can be indexed without computing the path of each relationship.
+ *
+ * The decoder keeps the identifier in the file of the elements it created, so that
+ * the changes to the diagram can be journaled relative to the file.
+ *
+ * The file must not be modified for as long as the diagram is in use, except by
+ * PersistenceService, which loads the rest of the diagram before replacing it.
+ */
+public final class MappedBinaryDecoder
+{
+	// The area of a relationship whose bounds are not known, which covers the whole plane
+	private static final Rectangle EVERYWHERE = new Rectangle(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, 
+			Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+	private final ByteBuffer aBuffer;
+	private final Diagram aDiagram = new Diagram();
+	private final int aStringCount;
+	private final int aNamedElementCount;
+	private final int aRelationshipCount;
+	private final int aStringEndsOffset;
+	private final int aStringDataOffset;
+	private final int aNamedElementsOffset;
+	private final int aRelationshipsOffset;
+	private final NamedElement[] aNamedElements;
+	private final BitSet aAddedRelationships;
+	/* The relationships connected to NamedElement i are at aConnected[aConnectedStart[i]..aConnectedStart[i+1]) */
+	private int[] aConnectedStart;
+	private int[] aConnected;
+	private final SpatialIndex<Package> aPendingPackages = new SpatialIndex<>();
+	/* The NamedElements that were created and have relationships that were not added, by identifier */
+	private final Map<NamedElement, Integer> aWaiting = new IdentityHashMap<>();
+	private final Map<NamedElement, Integer> aIds = new IdentityHashMap<>();
+	private final Map<Relationship, Integer> aIndices = new IdentityHashMap<>();
+
+	private MappedBinaryDecoder(ByteBuffer pBuffer)
+	{
+		aBuffer = pBuffer;
+		check(aBuffer.capacity() >= BinaryFormat.HEADER_SIZE && aBuffer.getInt(0) == BinaryFormat.MAGIC,
+				"Not a binary diagram");
+		int version = aBuffer.getInt(Integer.BYTES);
+		check(version == BinaryFormat.VERSION, "Unsupported binary diagram version " + version);
+		aStringCount = aBuffer.getInt(2 * Integer.BYTES);
+		aNamedElementCount = aBuffer.getInt(3 * Integer.BYTES);
+		aRelationshipCount = aBuffer.getInt(4 * Integer.BYTES);
+		check(aStringCount >= 0 && aNamedElementCount >= 0 && aRelationshipCount >= 0, "Invalid header");
+
+		aStringEndsOffset = BinaryFormat.HEADER_SIZE;
+		aStringDataOffset = Math.addExact(aStringEndsOffset, Math.multiplyExact(aStringCount, Integer.BYTES));
+		int stringDataLength = aStringCount == 0 ? 0 : aBuffer.getInt(aStringDataOffset - Integer.BYTES);
+		aNamedElementsOffset = Math.addExact(aStringDataOffset, stringDataLength);
+		aRelationshipsOffset = Math.addExact(aNamedElementsOffset,
+				Math.multiplyExact(aNamedElementCount, BinaryFormat.NAMED_ELEMENT_RECORD_SIZE));
+		int length = Math.addExact(aRelationshipsOffset,
+				Math.multiplyExact(aRelationshipCount, BinaryFormat.RELATIONSHIP_RECORD_SIZE));
+		check(length == aBuffer.capacity(), "Invalid file length");
+
+		aNamedElements = new NamedElement[aNamedElementCount];
+		aAddedRelationships = new BitSet(aRelationshipCount);
+	}
+
+	/**
+	 * @param pFile The file that contains the encoded diagram.
+	 * @return The decoded diagram, whose content is read from pFile as it is accessed.
+	 * @throws DeserializationException If it's not possible to read the file or to decode it into a valid diagram.
+	 * @pre pFile != null
+	 */
+	public static Diagram decode(File pFile)
+	{
+		assert pFile != null;
+		return map(pFile).getDiagram();
+	}
+
+	/**
+	 * @param pFile The file that contains the encoded diagram.
+	 * @return The decoder of pFile, once it has read the diagram.
+	 * @throws DeserializationException If it's not possible to read the file or to decode it into a valid diagram.
+	 * @pre pFile != null
+	 */
+	static MappedBinaryDecoder map(File pFile)
+	{
+		assert pFile != null;
+		try( FileChannel channel = FileChannel.open(pFile.toPath(), StandardOpenOption.READ) )
+		{
+			if( channel.size() > Integer.MAX_VALUE )
+			{
+				throw new DeserializationException(pFile.getName() + " is too large to be mapped");
+			}
+			MappedBinaryDecoder decoder = new MappedBinaryDecoder(channel.map(FileChannel.MapMode.READ_ONLY, 0, 
+					channel.size()));
+			decoder.read();
+			return decoder;
+		}
+		catch( IOException | ArithmeticException | IndexOutOfBoundsException exception )
+		{
+			throw new DeserializationException("Cannot read " + pFile.getName(), exception);
+		}
+	}
+
+	/**
+	 * @return The diagram read by this decoder.
+	 */
+	Diagram getDiagram()
+	{
+		return aDiagram;
+	}
+
+	/**
+	 * @return The number of NamedElements in the file.
+	 */
+	int getNamedElementCount()
+	{
+		return aNamedElementCount;
+	}
+
+	/**
+	 * @return The number of relationships in the file.
+	 */
+	int getRelationshipCount()
+	{
+		return aRelationshipCount;
+	}
+
+	/**
+	 * @param pNamedElement A NamedElement.
+	 * @return The identifier of pNamedElement in the file, or -1 if it was not created by this decoder.
+	 * @pre pNamedElement != null
+	 */
+	int idOf(NamedElement pNamedElement)
+	{
+		assert pNamedElement != null;
+		return aIds.getOrDefault(pNamedElement, -1);
+	}
+
+	/**
+	 * @param pRelationship A relationship.
+	 * @return The index of pRelationship in the file, or -1 if it was not created by this decoder.
+	 * @pre pRelationship != null
+	 */
+	int indexOf(Relationship pRelationship)
+	{
+		assert pRelationship != null;
+		return aIndices.getOrDefault(pRelationship, -1);
+	}
+
+	/**
+	 * @param pIndex The index of a relationship in the file.
+	 * @return The identifier of the start NamedElement of relationship pIndex.
+	 * @pre pIndex >= 0 && pIndex < getRelationshipCount()
+	 */
+	int startOf(int pIndex)
+	{
+		assert pIndex >= 0 && pIndex < aRelationshipCount;
+		return relationshipEnd(pIndex, 1);
+	}
+
+	private void read()
+	{
+		indexRelationships();
+		reservePersistentIds();
+		List<Integer> roots = new ArrayList<>();
+		for( int id = 0; id < aNamedElementCount; id += descendants(id) + 1 )
+		{
+			check(parent(id) == BinaryFormat.NO_PARENT, "Invalid parent of " + id);
+			aDiagram.addNamedElement(namedElement(id));
+			roots.add(id);
+		}
+		List<Integer> added = new ArrayList<>();
+		for( int i = 0; i < aRelationshipCount; i++ )
+		{
+			if( addRelationshipIfConnected(i) )
+			{
+				added.add(i);
+			}
+		}
+		// Once all of them are added, as each one changes the version of its end points
+		for( int i = 0; i < added.size(); i++ )
+		{
+			int index = added.get(i);
+			Rectangle bounds = knownBounds(index);
+			if( bounds != null && !isWaiting(relationshipEnd(index, 1)) && !isWaiting(relationshipEnd(index, 2)) )
+			{
+				aDiagram.getRelationships().get(i).setKnownBounds(bounds);
+			}
+		}
+		roots.forEach(this::recordIfWaiting);
+		aDiagram.setRelationshipLoader(this::loadRelationships);
+		aDiagram.addListener(new EndPointListener());
+	}
+
+	/*
+	 * Builds the lists of relationships connected to each NamedElement, so that
+	 * the relationships of a NamedElement can be added when it is created.
+	 */
+	private void indexRelationships()
+	{
+		aConnectedStart = new int[aNamedElementCount + 1];
+		for( int i = 0; i < aRelationshipCount; i++ )
+		{
+			int start = relationshipEnd(i, 1);
+			int end = relationshipEnd(i, 2);
+			aConnectedStart[start + 1]++;
+			if( end != start )
+			{
+				aConnectedStart[end + 1]++;
+			}
+		}
+		for( int id = 0; id < aNamedElementCount; id++ )
+		{
+			aConnectedStart[id + 1] += aConnectedStart[id];
+		}
+		aConnected = new int[aConnectedStart[aNamedElementCount]];
+		int[] next = aConnectedStart.clone();
+		for( int i = 0; i < aRelationshipCount; i++ )
+		{
+			int start = relationshipEnd(i, 1);
+			int end = relationshipEnd(i, 2);
+			aConnected[next[start]++] = i;
+			if( end != start )
+			{
+				aConnected[next[end]++] = i;
+			}
+		}
+	}
+
+	/*
+	 * Keeps the persistent identifiers of the NamedElements that are not created yet
+	 * from being given to the ones that are added to the diagram in the meantime.
+	 */
+	private void reservePersistentIds()
+	{
+		int next = 0;
+		for( int id = 0; id < aNamedElementCount; id++ )
+		{
+			next = Math.max(next, persistentId(id) + 1);
+		}
+		aDiagram.reservePersistentIds(next);
+	}
+
+	private NamedElement namedElement(int pId)
+	{
+		int offset = namedElementOffset(pId);
+		int kind = aBuffer.getInt(offset);
+		int persistentId = persistentId(pId);
+		NamedElement namedElement = BinaryFormat.createNamedElement(kind);
+		namedElement.setPersistentId(persistentId);
+		namedElement.setPosition(new Point(aBuffer.getInt(offset + 4 * Integer.BYTES),
+				aBuffer.getInt(offset + 5 * Integer.BYTES)));
+		namedElement.setProperties(properties(offset + 10 * Integer.BYTES, BinaryFormat.NAMED_ELEMENT_PROPERTIES));
+		if( namedElement instanceof Package && descendants(pId) > 0 )
+		{
+			((Package)namedElement).setChildrenLoader(pPackage -> loadChildren(pId, pPackage));
+			int width = aBuffer.getInt(offset + 8 * Integer.BYTES);
+			if( width != BinaryFormat.ABSENT )
+			{
+				check(width >= 0, "Invalid bounds of " + pId);
+				((Package)namedElement).setKnownBounds(new Rectangle(aBuffer.getInt(offset + 6 * Integer.BYTES),
+						aBuffer.getInt(offset + 7 * Integer.BYTES), width, aBuffer.getInt(offset + 9 * Integer.BYTES)));
+			}
+			indexPending(pId, (Package)namedElement);
+		}
+		aNamedElements[pId] = namedElement;
+		aIds.put(namedElement, pId);
+		return namedElement;
+	}
+
+	/*
+	 * Indexes pPackage, whose children are not loaded yet, by the union of the known
+	 * bounds of the relationships of its descendants, if it has any.
+	 */
+	private void indexPending(int pId, Package pPackage)
+	{
+		Rectangle extent = null;
+		int last = pId + descendants(pId);
+		for( int i = aConnectedStart[pId + 1]; i < aConnectedStart[last + 1]; i++ )
+		{
+			Rectangle bounds = knownBounds(aConnected[i]);
+			if( bounds == null )
+			{
+				extent = EVERYWHERE;
+				break;
+			}
+			extent = extent == null ? bounds : extent.add(bounds);
+		}
+		if( extent != null )
+		{
+			aPendingPackages.put(pPackage, extent);
+		}
+	}
+
+	private void loadChildren(int pId, Package pPackage)
+	{
+		aPendingPackages.remove(pPackage);
+		int last = pId + descendants(pId);
+		for( int child = pId + 1; child <= last; child += descendants(child) + 1 )
+		{
+			check(parent(child) == pId, "Invalid parent of " + child);
+			NamedElement namedElement = namedElement(child);
+			namedElement.setDiagram(aDiagram);
+			pPackage.addChild(namedElement);
+			pPackage.getOptionalDiagram().ifPresent(namedElement::attach);
+		}
+		for( int child = pId + 1; child <= last; child += descendants(child) + 1 )
+		{
+			for( int i = aConnectedStart[child]; i < aConnectedStart[child + 1]; i++ )
+			{
+				addRelationshipIfConnected(aConnected[i]);
+			}
+			recordIfWaiting(child);
+		}
+	}
+
+	/*
+	 * Loads the packages indexed by bounds that intersect pArea, which can index 
+	 * the packages among their children, until no package in pArea is left.
+	 */
+	private void loadRelationships(Rectangle pArea)
+	{
+		List<Package> packages = aPendingPackages.itemsIntersecting(pArea);
+		while( !packages.isEmpty() )
+		{
+			for( Package pending : packages )
+			{
+				// Removed first, in case its children were replaced without being loaded
+				aPendingPackages.remove(pending);
+				pending.getChildren();
+			}
+			packages = aPendingPackages.itemsIntersecting(pArea);
+		}
+	}
+
+	/*
+	 * Adds relationship pIndex to the diagram if it was not added yet and both 
+	 * its end points exist and are in the diagram.
+	 * 
+	 * Returns true if the relationship was added.
+	 */
+	private boolean addRelationshipIfConnected(int pIndex)
+	{
+		if( aAddedRelationships.get(pIndex) )
+		{
+			return false;
+		}
+		NamedElement start = aNamedElements[relationshipEnd(pIndex, 1)];
+		NamedElement end = aNamedElements[relationshipEnd(pIndex, 2)];
+		if( start == null || end == null || !aDiagram.contains(start) || !aDiagram.contains(end) )
+		{
+			return false;
+		}
+		aAddedRelationships.set(pIndex);
+		int offset = relationshipOffset(pIndex);
+		int kind = aBuffer.getInt(offset);
+		Relationship relationship = BinaryFormat.createRelationship(kind);
+		relationship.connect(start, end, aDiagram);
+		HashMap<String, Property> properties = properties(offset + 7 * Integer.BYTES, BinaryFormat.RELATIONSHIP_PROPERTIES);
+		String direction = BinaryFormat.direction(kind);
+		if( direction != null )
+		{
+			properties.put("direction", new Property(direction));
+		}
+		relationship.setProperties(properties);
+		aIndices.put(relationship, pIndex);
+		aDiagram.addRelationship(relationship);
+		return true;
+	}
+
+	/*
+	 * Returns true if some of the relationships of NamedElement pId are not added yet.
+	 */
+	private boolean isWaiting(int pId)
+	{
+		for( int i = aConnectedStart[pId]; i < aConnectedStart[pId + 1]; i++ )
+		{
+			if( !aAddedRelationships.get(aConnected[i]) )
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void recordIfWaiting(int pId)
+	{
+		if( isWaiting(pId) )
+		{
+			aWaiting.put(aNamedElements[pId], pId);
+		}
+	}
+
+	/*
+	 * Loads the packages of the other end points of the relationships of NamedElement pId 
+	 * that are not added yet, from the root down, and adds the ones whose end points are then 
+	 * in the diagram.
+	 */
+	private void loadWaitingRelationships(int pId)
+	{
+		for( int i = aConnectedStart[pId]; i < aConnectedStart[pId + 1]; i++ )
+		{
+			int index = aConnected[i];
+			if( !aAddedRelationships.get(index) )
+			{
+				int start = relationshipEnd(index, 1);
+				loadAncestors(start == pId ? relationshipEnd(index, 2) : start);
+				addRelationshipIfConnected(index);
+			}
+		}
+		if( !isWaiting(pId) )
+		{
+			aWaiting.remove(aNamedElements[pId]);
+		}
+	}
+
+	private void loadAncestors(int pId)
+	{
+		int parent = parent(pId);
+		if( parent != BinaryFormat.NO_PARENT )
+		{
+			loadAncestors(parent);
+			if( aNamedElements[parent] != null )
+			{
+				((Package)aNamedElements[parent]).getChildren();
+			}
+		}
+	}
+
+	/*
+	 * The known bounds of relationship pIndex, or null if they are not known.
+	 */
+	private Rectangle knownBounds(int pIndex)
+	{
+		int offset = relationshipOffset(pIndex);
+		int width = aBuffer.getInt(offset + 5 * Integer.BYTES);
+		if( width == BinaryFormat.ABSENT )
+		{
+			return null;
+		}
+		int height = aBuffer.getInt(offset + 6 * Integer.BYTES);
+		check(width >= 0 && height >= 0, "Invalid bounds of relationship " + pIndex);
+		return new Rectangle(aBuffer.getInt(offset + 3 * Integer.BYTES), aBuffer.getInt(offset + 4 * Integer.BYTES), 
+				width, height);
+	}
+
+	private HashMap<String, Property> properties(int pOffset, String[] pKeys)
+	{
+		HashMap<String, Property> properties = new HashMap<>();
+		for( int i = 0; i < pKeys.length; i++ )
+		{
+			int index = aBuffer.getInt(pOffset + i * Integer.BYTES);
+			if( index != BinaryFormat.ABSENT )
+			{
+				check(index >= 0 && index < aStringCount, "Invalid string index " + index);
+				properties.put(pKeys[i], new MappedProperty(this, index));
+			}
+		}
+		return properties;
+	}
+
+	/**
+	 * @param pIndex The index of a string in the string table.
+	 * @return The decoded string, interned in the pool of the diagram.
+	 * @pre pIndex >= 0 && pIndex < the number of strings
+	 */
+	String string(int pIndex)
+	{
+		assert pIndex >= 0 && pIndex < aStringCount;
+		int start = pIndex == 0 ? 0 : aBuffer.getInt(aStringEndsOffset + (pIndex - 1) * Integer.BYTES);
+		int end = aBuffer.getInt(aStringEndsOffset + pIndex * Integer.BYTES);
+		check(start >= 0 && start <= end && aStringDataOffset + end <= aNamedElementsOffset, "Invalid string table");
+		byte[] bytes = new byte[end - start];
+		aBuffer.get(aStringDataOffset + start, bytes);
+		return aDiagram.getStringPool().intern(new String(bytes, StandardCharsets.UTF_8));
+	}
+
+	private int namedElementOffset(int pId)
+	{
+		return aNamedElementsOffset + pId * BinaryFormat.NAMED_ELEMENT_RECORD_SIZE;
+	}
+
+	private int parent(int pId)
+	{
+		return aBuffer.getInt(namedElementOffset(pId) + Integer.BYTES);
+	}
+
+	private int persistentId(int pId)
+	{
+		int persistentId = aBuffer.getInt(namedElementOffset(pId) + 3 * Integer.BYTES);
+		check(persistentId >= 0, "Invalid persistent identifier of " + pId);
+		return persistentId;
+	}
+
+	private int descendants(int pId)
+	{
+		int descendants = aBuffer.getInt(namedElementOffset(pId) + 2 * Integer.BYTES);
+		check(descendants >= 0 && descendants < aNamedElementCount - pId, "Invalid number of descendants of " + pId);
+		return descendants;
+	}
+
+	private int relationshipOffset(int pIndex)
+	{
+		return aRelationshipsOffset + pIndex * BinaryFormat.RELATIONSHIP_RECORD_SIZE;
+	}
+
+	/*
+	 * Returns the identifier stored in field pField (1 for the start, 2 for the end) of relationship pIndex.
+	 */
+	private int relationshipEnd(int pIndex, int pField)
+	{
+		int id = aBuffer.getInt(relationshipOffset(pIndex) + pField * Integer.BYTES);
+		check(id >= 0 && id < aNamedElementCount, "Invalid relationship end point " + id);
+		return id;
+	}
+
+	/*
+	 * Adds the relationships that wait for a NamedElement once it changes, so that they 
+	 * follow it, and once it is back in the diagram, since they were not added while it 
+	 * was not in the diagram.
+	 */
+	private final class EndPointListener implements DiagramListener
+	{
+		@Override
+		public void elementAdded(Element pElement)
+		{
+			Integer id = aWaiting.get(pElement);
+			if( id != null )
+			{
+				for( int i = aConnectedStart[id]; i < aConnectedStart[id + 1]; i++ )
+				{
+					addRelationshipIfConnected(aConnected[i]);
+				}
+			}
+		}
+
+		@Override
+		public void elementRemoved(Element pElement) {}
+
+		@Override
+		public void elementChanged(Element pElement)
+		{
+			Integer id = aWaiting.get(pElement);
+			if( id != null )
+			{
+				loadWaitingRelationships(id);
+			}
+		}
+
+		@Override
+		public void elementPlacedOnTop(NamedElement pNamedElement) {}
+
+		@Override
+		public void diagramReset() {}
+	}
+
+	private static void check(boolean pCondition, String pMessage)
+	{
+		if( !pCondition )
+		{
+			throw new DeserializationException(pMessage);
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package file;
+
+import diagram.Property;
+
+/**
+ * A property whose value stays in the string table of a mapped
+ * binary diagram file until it is first read.
+ */
+final class MappedProperty extends Property
+{
+	private MappedBinaryDecoder aDecoder;
+	private final int aIndex;
+
+	/**
+	 * @param pDecoder The decoder that reads the string table.
+	 * @param pIndex The index of the value in the string table.
+	 * @pre pDecoder != null
+	 */
+	MappedProperty(MappedBinaryDecoder pDecoder, int pIndex)
+	{
+		super("");
+		assert pDecoder != null;
+		aDecoder = pDecoder;
+		aIndex = pIndex;
+	}
+
+	@Override
+	public String getValue()
+	{
+		if( aDecoder != null )
+		{
+			// Reading the value is not an edit of the diagram
+			initializeValue(aDecoder.string(aIndex));
+			aDecoder = null;
+		}
+		return super.getValue();
+	}
+
+	@Override
+	public void setValue(String pValue)
+	{
+		aDecoder = null;
+		super.setValue(pValue);
+	}
+}
@@ -1,10 +1,39 @@
 package file;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import utils.UserPreferences;
+import utils.UserPreferences.booleanPreference;
 import utils.Version;
 import diagram.Diagram;
+import diagram.DiagramSnapshot;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.Property;
+import diagram.Relationship;
 
 /**
  * Services for saving and loading Diagram objects. The files are encoded
@@ -12,10 +41,26 @@ import diagram.Diagram;
  */
 public final class PersistenceService
 {
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+	private static final ExecutorService SAVE_EXECUTOR = Executors.newSingleThreadExecutor(pTask ->
+	{
+		Thread thread = new Thread(pTask, "Diagram save");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	/* The roots written by the last save of each diagram, used by SAVE_EXECUTOR only */
+	private static final Map<Diagram, XmiFragments> FRAGMENTS = Collections.synchronizedMap(new WeakHashMap<>());
+	
+	/* The files from which diagrams were read with readMapped, and from which they may still read content */
+	private static final Map<Diagram, Path> MAPPED_FILES = Collections.synchronizedMap(new WeakHashMap<>());
+	
 	private PersistenceService() {}
 	
 	/**
-     * Saves the current diagram in a file. 
+     * Saves the current diagram in a file. If diagrams were read from pFile with 
+     * readMapped, the content that they did not read yet is loaded first, on the 
+     * calling thread, so that they no longer depend on pFile once it is replaced.
      * 
      * @param pDiagram The diagram to save
      * @param pFile The file in which to save the diagram
@@ -26,12 +71,174 @@ public final class PersistenceService
 	public static void save(Diagram pDiagram, File pFile) throws IOException
 	{
 		assert pDiagram != null && pFile != null;
+		boolean mapped = loadMappedContent(pFile);
+		save(pDiagram, pFile, Optional.empty(), mapped);
+	}
+	
+	/*
+	 * Saves pDiagram in pFile, copying the root NamedElements that did not change
+	 * from pFragments if pFile is written in the Xml format. pMapped tells whether
+	 * diagrams were read from pFile with readMapped.
+	 */
+	private static void save(Diagram pDiagram, File pFile, Optional<XmiFragments> pFragments, 
+			boolean pMapped) throws IOException
+	{
 //		try( PrintWriter out = new PrintWriter(
 //				new OutputStreamWriter(new FileOutputStream(pFile), StandardCharsets.UTF_8)))
 //		{
 //			out.println(JsonEncoder.encode(pDiagram).toString());
 //		}
-		XmlEncoder.encode(pDiagram, pFile);
+		// The diagram is written to a temporary file first because
+		// it may still be reading its content from pFile.
+		File temporary = File.createTempFile("." + pFile.getName(), TEMPORARY_SUFFIX, 
+				pFile.getAbsoluteFile().getParentFile());
+		try
+		{
+			try( FileOutputStream out = new FileOutputStream(temporary) )
+			{
+				OutputStream buffered = new BufferedOutputStream(out);
+				if( FileExtensions.isBinary(pFile) )
+				{
+					BinaryEncoder.encode(pDiagram, buffered);
+				}
+				else if( pFragments.isPresent() )
+				{
+					XmlStreamEncoder.encode(pDiagram, buffered, pFragments.get());
+				}
+				else
+				{
+					XmlStreamEncoder.encode(pDiagram, buffered);
+				}
+				out.getFD().sync();
+			}
+			try
+			{
+				replace(temporary, pFile);
+			}
+			catch( FileSystemException exception )
+			{
+				if( !pMapped )
+				{
+					throw exception;
+				}
+				// On Windows, a file cannot be replaced while it is mapped, and a mapping
+				// is only released once it is garbage collected
+				throw new IOException(pFile.getName() + " cannot be replaced while it is mapped in memory. " + 
+						"Save the diagram in another file.", exception);
+			}
+		}
+		finally
+		{
+			Files.deleteIfExists(temporary.toPath());
+		}
+	}
+	
+	/**
+	 * Saves pDiagram in pFile on a background thread. A snapshot of pDiagram is 
+	 * taken before this method returns, in time proportional to the changes since
+	 * the previous one, so pDiagram can be modified while it is being saved. The
+	 * diagram to encode is rebuilt from the snapshot on the background thread. Saves
+	 * are performed one at a time, in the order in which they are requested.
+	 * 
+	 * If the incrementalSave preference is set, only the root NamedElements 
+	 * that changed since pDiagram was last saved are serialized.
+	 * 
+	 * As with save, the diagrams read from pFile with readMapped are loaded
+	 * completely before this method returns.
+	 * 
+	 * @param pDiagram The diagram to save
+	 * @param pFile The file in which to save the diagram
+	 * @return A future that is completed once pFile has been written, or completed 
+	 *     exceptionally if there is a problem writing to pFile.
+	 * @pre pDiagram != null.
+	 * @pre pFile != null.
+	 */
+	public static CompletableFuture<Void> saveInBackground(Diagram pDiagram, File pFile)
+	{
+		assert pDiagram != null && pFile != null;
+		boolean mapped = loadMappedContent(pFile);
+		DiagramSnapshot snapshot = pDiagram.snapshot();
+		Optional<XmiFragments> fragments = Optional.empty();
+		if( UserPreferences.instance().getboolean(booleanPreference.incrementalSave) )
+		{
+			fragments = Optional.of(FRAGMENTS.computeIfAbsent(pDiagram, key -> new XmiFragments()));
+		}
+		else
+		{
+			FRAGMENTS.remove(pDiagram);
+		}
+		Optional<XmiFragments> savedFragments = fragments;
+		CompletableFuture<Void> result = new CompletableFuture<>();
+		SAVE_EXECUTOR.execute(() ->
+		{
+			try
+			{
+				save(snapshot.toDiagram(), pFile, savedFragments, mapped);
+				result.complete(null);
+			}
+			catch( IOException | RuntimeException exception )
+			{
+				result.completeExceptionally(exception);
+			}
+		});
+		return result;
+	}
+	
+	/*
+	 * Moves pSource to pTarget, atomically if the file system supports it.
+	 */
+	static void replace(File pSource, File pTarget) throws IOException
+	{
+		try
+		{
+			Files.move(pSource.toPath(), pTarget.toPath(), StandardCopyOption.REPLACE_EXISTING, 
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch( AtomicMoveNotSupportedException exception )
+		{
+			Files.move(pSource.toPath(), pTarget.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	/*
+	 * Loads all the content of the diagrams read from pFile with readMapped, which no
+	 * longer depend on it afterwards. Returns whether there were any such diagrams.
+	 */
+	private static boolean loadMappedContent(File pFile)
+	{
+		Path path = pFile.getAbsoluteFile().toPath().normalize();
+		List<Diagram> diagrams = new ArrayList<>();
+		synchronized( MAPPED_FILES )
+		{
+			Iterator<Map.Entry<Diagram, Path>> entries = MAPPED_FILES.entrySet().iterator();
+			while( entries.hasNext() )
+			{
+				Map.Entry<Diagram, Path> entry = entries.next();
+				if( entry.getValue().equals(path) )
+				{
+					diagrams.add(entry.getKey());
+					entries.remove();
+				}
+			}
+		}
+		for( Diagram diagram : diagrams )
+		{
+			diagram.getNamedElements().forEach(PersistenceService::loadContent);
+			for( Relationship relationship : diagram.getRelationships() )
+			{
+				relationship.getProperties().values().forEach(Property::getValue);
+			}
+		}
+		return !diagrams.isEmpty();
+	}
+	
+	private static void loadContent(NamedElement pNamedElement)
+	{
+		pNamedElement.getProperties().values().forEach(Property::getValue);
+		if( pNamedElement instanceof Package )
+		{
+			((Package) pNamedElement).getChildren().forEach(PersistenceService::loadContent);
+		}
 	}
 	
 	/**
@@ -46,6 +253,142 @@ public final class PersistenceService
 	public static VersionedDiagram read(File pFile)
 	{
 		assert pFile != null;
-		return new VersionedDiagram(XmlDecoder.decode(pFile), Version.create(3, 3, 3), false);
+		if( FileExtensions.isBinary(pFile) )
+		{
+			return new VersionedDiagram(BinaryDecoder.decode(pFile), Version.create(3, 3, 3), false);
+		}
+		return new VersionedDiagram(XmlStreamDecoder.decode(pFile), Version.create(3, 3, 3), false);
+	}
+	
+	/**
+	 * Reads a diagram from a file without loading all of its content. Files in
+	 * the binary format are mapped in memory, and the children of packages and the
+	 * values of properties are only read when they are first accessed. Files in 
+	 * other formats are read completely, as with read. A file that is mapped must
+	 * not be modified while the diagram is in use, except by saving a diagram in it 
+	 * with this class, which first loads the rest of the diagram.
+	 * 
+	 * @param pFile The file to read the diagram from.
+	 * @return The diagram that is read in
+	 * @throws DeserializationException if there is a problem decoding the file.
+	 * @pre pFile != null
+	 */
+	public static VersionedDiagram readMapped(File pFile)
+	{
+		assert pFile != null;
+		if( FileExtensions.isBinary(pFile) )
+		{
+			return new VersionedDiagram(map(pFile).getDiagram(), Version.create(3, 3, 3), false);
+		}
+		return read(pFile);
+	}
+	
+	/*
+	 * Reads the diagram in pFile, in the binary format, as readMapped does, and returns
+	 * the decoder the diagram reads its content from.
+	 */
+	static MappedBinaryDecoder map(File pFile)
+	{
+		assert pFile != null && FileExtensions.isBinary(pFile);
+		MappedBinaryDecoder decoder = MappedBinaryDecoder.map(pFile);
+		MAPPED_FILES.put(decoder.getDiagram(), pFile.getAbsoluteFile().toPath().normalize());
+		return decoder;
+	}
+	
+	/**
+	 * Saves each diagram in pDiagrams in its associated file, using at most 
+	 * pParallelism threads. As with save, the diagrams read from these files with
+	 * readMapped are first loaded completely on the calling thread.
+	 * 
+	 * @param pDiagrams A map from the files to write to the diagrams to save in them.
+	 * @param pParallelism The maximum number of diagrams to save at the same time.
+	 * @throws IOException If there is a problem writing one of the files, or if the
+	 *     calling thread is interrupted while waiting.
+	 * @pre pDiagrams != null && pParallelism > 0
+	 */
+	public static void saveAll(Map<File, Diagram> pDiagrams, int pParallelism) throws IOException
+	{
+		assert pDiagrams != null && pParallelism > 0;
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for( Map.Entry<File, Diagram> entry : pDiagrams.entrySet() )
+		{
+			// Loaded on the calling thread, as the diagrams that are read from the files
+			boolean mapped = loadMappedContent(entry.getKey());
+			tasks.add(() -> 
+			{
+				save(entry.getValue(), entry.getKey(), Optional.empty(), mapped);
+				return null;
+			});
+		}
+		runAll(tasks, pParallelism);
+	}
+	
+	/**
+	 * Reads the diagrams in pFiles, using at most pParallelism threads.
+	 * 
+	 * @param pFiles The files to read the diagrams from.
+	 * @param pParallelism The maximum number of files to read at the same time.
+	 * @return The diagrams that are read in, in the same order as pFiles.
+	 * @throws IOException If the calling thread is interrupted while waiting.
+	 * @throws DeserializationException If there is a problem decoding one of the files.
+	 * @pre pFiles != null && pParallelism > 0
+	 */
+	public static List<VersionedDiagram> readAll(List<File> pFiles, int pParallelism) throws IOException
+	{
+		assert pFiles != null && pParallelism > 0;
+		List<Callable<VersionedDiagram>> tasks = new ArrayList<>();
+		for( File file : pFiles )
+		{
+			tasks.add(() -> read(file));
+		}
+		return runAll(tasks, pParallelism);
+	}
+	
+	/*
+	 * Runs all of pTasks on a pool of at most pParallelism threads and returns their results
+	 * in order. The first failure, in task order, is rethrown.
+	 */
+	private static <T> List<T> runAll(List<Callable<T>> pTasks, int pParallelism) throws IOException
+	{
+		if( pTasks.isEmpty() )
+		{
+			return new ArrayList<>();
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(pParallelism, pTasks.size()));
+		try
+		{
+			List<T> results = new ArrayList<>();
+			for( Future<T> future : executor.invokeAll(pTasks) )
+			{
+				results.add(future.get());
+			}
+			return results;
+		}
+		catch( InterruptedException exception )
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch( ExecutionException exception )
+		{
+			Throwable cause = exception.getCause();
+			if( cause instanceof IOException )
+			{
+				throw (IOException) cause;
+			}
+			if( cause instanceof RuntimeException )
+			{
+				throw (RuntimeException) cause;
+			}
+			if( cause instanceof Error )
+			{
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
 	}
 }
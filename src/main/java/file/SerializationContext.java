@@ -27,59 +27,48 @@ import diagram.Package;
 /**
  * A serialization context automatically finds all the nodes
  * in a diagram, including children nodes, and creates a new map between
- * nodes and identifiers.
+ * nodes and identifiers. The identifiers are the persistent identifiers
+ * that the nodes are given when they are registered in their diagram, so
+ * building a context does not modify the diagram.
  */
 public class SerializationContext extends AbstractContext
 {
 	/**
 	 * Automatically creates the map between nodes in pDiagram
-	 * and fresh identifiers.
+	 * and their persistent identifiers. The nodes are
+	 * iterated in depth-first order.
 	 * 
 	 * @param pDiagram The diagram to load into the context.
 	 * @pre pDiagram != null.
+	 * @pre Each node of pDiagram has a persistent identifier that no other node has.
 	 */
 	public SerializationContext(Diagram pDiagram)
 	{
 		super(pDiagram);
-		getAllNamedElements(pDiagram);
+		for( NamedElement node : pDiagram.getNamedElements() )
+		{
+			addNamedElement(node);
+		}
 	}
 	
 	/**
-	 * Adds a node to the context if it is not already there. Its identifier
-	 * is automatically defined. If the node is already in the 
-	 * context, it is not added.
+	 * Adds a node and its descendants to the context with their persistent identifier.
 	 * 
 	 * @param pNamedElement The node to add.
 	 * @pre pNamedElement != null;
-	 * @pre !aNamedElements.containsKey(pNamedElement)
+	 * @pre pNamedElement.hasPersistentId()
+	 * @pre !contains(pNamedElement)
 	 */
 	private void addNamedElement(NamedElement pNamedElement)
 	{
-		assert pNamedElement != null;
-		assert !aNamedElements.containsKey(pNamedElement);
-		aNamedElements.put(pNamedElement, aNamedElements.size());
-	}
-	
-	private void getAllNamedElements(Diagram pDiagram)
-	{
-		for( NamedElement node : pDiagram.getNamedElements() )
+		assert pNamedElement != null && pNamedElement.hasPersistentId();
+		assert !contains(pNamedElement) && find(pNamedElement.getPersistentId()) == null;
+		put(pNamedElement, pNamedElement.getPersistentId());
+		if( pNamedElement instanceof Package )
 		{
-			addNamedElement(node);
-			if( node instanceof Package && ((Package)node).getChildren().size() > 0 )
-			{
-				addChildren((Package)node);
-			}
-		}
-	}
-	
-	private void addChildren(Package pParent)
-	{
-		for( NamedElement node : pParent.getChildren() )
-		{
-			addNamedElement(node);
-			if( node instanceof Package && ((Package)node).getChildren().size() > 0  )
+			for( NamedElement child : ((Package)pNamedElement).getChildren() )
 			{
-				addChildren((Package)node);
+				addNamedElement(child);
 			}
 		}
 	}
@@ -0,0 +1,114 @@
+package file;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The serialized root NamedElements of the last diagram written by
+ * XmlStreamEncoder with this object, so that the next save can copy the
+ * packagedElement of a root that did not change instead of serializing it again.
+ *
+ * Each fragment is stored with the values it was written from, as listed by
+ * the encoder. A root is unchanged if all these values are equal. The values
+ * of an unchanged root are usually the same objects as in the previous save, 
+ * for which equals returns at once, so checking a root is still much cheaper
+ * than serializing it.
+ *
+ * An XmiFragments object must only be used by one save at a time.
+ */
+final class XmiFragments
+{
+	private Map<Integer, Fragment> aFragments = new HashMap<>();
+	private Map<Integer, Fragment> aNextFragments = new HashMap<>();
+	private int aReused = 0;
+
+	/**
+	 * Starts writing a diagram.
+	 */
+	void begin()
+	{
+		aNextFragments = new HashMap<>();
+		aReused = 0;
+	}
+
+	/**
+	 * @param pId The persistent identifier of a root NamedElement.
+	 * @param pInputs The values from which the root is written.
+	 * @return The serialized root, if it was written in the previous save from the same values.
+	 * @pre pInputs != null
+	 */
+	Optional<byte[]> get(int pId, List<Object> pInputs)
+	{
+		assert pInputs != null;
+		Fragment fragment = aFragments.get(pId);
+		if( fragment == null || !same(fragment.aInputs, pInputs) )
+		{
+			return Optional.empty();
+		}
+		aNextFragments.put(pId, fragment);
+		aReused++;
+		return Optional.of(fragment.aBytes);
+	}
+
+	/**
+	 * Records the serialized root pId.
+	 *
+	 * @param pId The persistent identifier of a root NamedElement.
+	 * @param pInputs The values from which the root was written.
+	 * @param pBytes The serialized root.
+	 * @pre pInputs != null && pBytes != null
+	 */
+	void put(int pId, List<Object> pInputs, byte[] pBytes)
+	{
+		assert pInputs != null && pBytes != null;
+		aNextFragments.put(pId, new Fragment(pInputs, pBytes));
+	}
+
+	/**
+	 * Ends writing a diagram. Only the fragments of this diagram are kept.
+	 */
+	void end()
+	{
+		aFragments = aNextFragments;
+		aNextFragments = new HashMap<>();
+	}
+
+	/**
+	 * @return The number of roots copied from the previous save in the last save.
+	 */
+	int getReusedCount()
+	{
+		return aReused;
+	}
+
+	private static boolean same(List<Object> pInputs, List<Object> pOtherInputs)
+	{
+		if( pInputs.size() != pOtherInputs.size() )
+		{
+			return false;
+		}
+		for( int i = 0; i < pInputs.size(); i++ )
+		{
+			if( !Objects.equals(pInputs.get(i), pOtherInputs.get(i)) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class Fragment
+	{
+		private final List<Object> aInputs;
+		private final byte[] aBytes;
+
+		Fragment(List<Object> pInputs, byte[] pBytes)
+		{
+			aInputs = pInputs;
+			aBytes = pBytes;
+		}
+	}
+}
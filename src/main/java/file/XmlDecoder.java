@@ -26,20 +26,27 @@ import geom.Point;
 
 public final class XmlDecoder {
 	
-	static Document document = null;
-	static HashMap<Integer, NamedElement> namedElementMap = new HashMap<>();
+	private Document document = null;
+	private final HashMap<Integer, NamedElement> namedElementMap = new HashMap<>();
 	
 	private XmlDecoder() {}
 	
 	/**
-	 * @param pDiagram A XML object that encodes the diagram.
+	 * Decodes the diagram in pFile. Each call uses its own document and
+	 * identifier map, so several files can be decoded concurrently.
+	 * 
+	 * @param pFile The file that contains the encoded diagram.
 	 * @return The decoded diagram.
 	 * @throws DeserializationException If it's not possible to decode the object into a valid diagram.
 	 */
 	public static Diagram decode(File pFile)
 	{
 		assert pFile != null;
-		
+		return new XmlDecoder().read(pFile);
+	}
+	
+	private Diagram read(File pFile)
+	{
 		SAXReader saxReader = new SAXReader();
 		try {
 			document = saxReader.read(pFile);
@@ -59,13 +66,11 @@ public final class XmlDecoder {
 		    
 		    return diagram;
 		} catch (DocumentException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			throw new DeserializationException("Cannot read " + pFile.getName(), e);
 		}
-		return null;
 	}
 	
-	private static void decodeNamedElement(Element curElement, Diagram pDiagram) {
+	private void decodeNamedElement(Element curElement, Diagram pDiagram) {
 		if(curElement.getName().equals("packagedElement")) {
 			String xmiType = curElement.attribute("type").getValue();
 			if(xmiType.equals("BClass")) {
@@ -161,7 +166,7 @@ public final class XmlDecoder {
 		}
 	}
 	
-	private static void decodeChildElement(Element childElement, Package parent, Diagram pDiagram) {
+	private void decodeChildElement(Element childElement, Package parent, Diagram pDiagram) {
 		if(childElement.getName().equals("packagedElement")) {
 			String xmiType = childElement.attribute("type").getValue();
 			if(xmiType.equals("BClass")) {
@@ -261,7 +266,7 @@ public final class XmlDecoder {
 		}
 	}
 	
-	private static void decodeRelationship(Element curElement, Diagram pDiagram) {
+	private void decodeRelationship(Element curElement, Diagram pDiagram) {
 		if(curElement.getName().equals("association")) {
 			Association association = new Association(false, false);
 			Attribute tmpAttribute = curElement.attribute("start");
@@ -275,6 +280,7 @@ public final class XmlDecoder {
 				association.setEnd(endNamedElement);
 			}
 			attr2Properties(association, curElement);
+			association.setDiagram(pDiagram);
 			pDiagram.addRelationship(association);
 		}
 		else if(curElement.getName().equals("generalization")) {
@@ -290,6 +296,7 @@ public final class XmlDecoder {
 				generalization.setEnd(endNamedElement);
 			}
 			attr2Properties(generalization, curElement);
+			generalization.setDiagram(pDiagram);
 			pDiagram.addRelationship(generalization);
 		}
 		else if(curElement.getName().equals("composition")) {
@@ -305,6 +312,7 @@ public final class XmlDecoder {
 				composition.setEnd(endNamedElement);
 			}
 			attr2Properties(composition, curElement);
+			composition.setDiagram(pDiagram);
 			pDiagram.addRelationship(composition);
 		}
 	}
@@ -19,6 +19,8 @@ import diagram.Property;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.dom4j.Document;
 import org.dom4j.DocumentHelper;
@@ -35,21 +37,27 @@ import org.dom4j.io.XMLWriter;
 public final class XmlEncoder
 {   
 	//xmlĵ
-  	static Document document = DocumentHelper.createDocument();
+  	private final Document document = DocumentHelper.createDocument();
   	
 	//ڵ
-	static Element root = DocumentHelper.createElement("xmi:XMI");
+	private final Element root = DocumentHelper.createElement("xmi:XMI");
 	
 	private XmlEncoder() {}
 	
 	/**
+	 * Serializes pDiagram into pFile. Each call uses its own document, so
+	 * several diagrams can be encoded concurrently.
+	 * 
 	 * @param pDiagram The diagram to serialize.
+	 * @param pFile The file to write to.
 	 */
-	@SuppressWarnings("static-access")
 	public static void encode(Diagram pDiagram, File pFile) throws FileNotFoundException
 	{
-		document.clearContent();
-		root.clearContent();
+		new XmlEncoder().write(pDiagram, pFile);
+	}
+	
+	private void write(Diagram pDiagram, File pFile)
+	{
   		document.setRootElement(root);
   		
   		//
@@ -139,7 +147,7 @@ public final class XmlEncoder
 		}
 	}
 
-	private static void encodeRelationships(AbstractContext pContext, Element curElement)
+	private void encodeRelationships(AbstractContext pContext, Element curElement)
 	{
 		for( Relationship relationship : pContext.pDiagram().getRelationships() )
 		{
@@ -178,7 +186,7 @@ public final class XmlEncoder
 		}
 	}
 	
-	private static void properties2Attr(HashMap<String, Property> pProperties, Element curElement)
+	private static void properties2Attr(Map<String, Property> pProperties, Element curElement)
 	{
 		Property tempProperty = pProperties.get("name");
 		if( tempProperty != null )
@@ -188,7 +196,7 @@ public final class XmlEncoder
 		tempProperty = pProperties.get("attributes");
 		if( tempProperty != null && tempProperty.getValue() != "")
 		{
-			ArrayList<Attribute> attrList = tempProperty.splitAsAttributes();
+			List<Attribute> attrList = tempProperty.splitAsAttributes();
 			for(Attribute attr : attrList) {
 				Element aElement = curElement.addElement("ownedAttribute");
 				aElement.addAttribute("name", attr.getName());
@@ -199,7 +207,7 @@ public final class XmlEncoder
 		tempProperty = pProperties.get("methods");
 		if( tempProperty != null && tempProperty.getValue() != "")
 		{
-			ArrayList<Method> methodList = tempProperty.splitAsMethods();
+			List<Method> methodList = tempProperty.splitAsMethods();
 			for(Method method : methodList) {
 				Element aElement = curElement.addElement("ownedOperation");
 				aElement.addAttribute("name", method.getName());
@@ -215,7 +223,7 @@ public final class XmlEncoder
 		tempProperty = pProperties.get("literals");
 		if( tempProperty != null && tempProperty.getValue() != "")
 		{
-			ArrayList<String> attrList = tempProperty.splitAsLiterals();
+			List<String> attrList = tempProperty.splitAsLiterals();
 			for(String attr : attrList) {
 				Element aElement = curElement.addElement("ownedLiteral");
 				aElement.addAttribute("value", attr);
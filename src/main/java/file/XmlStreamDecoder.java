@@ -0,0 +1,433 @@
+package file;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import diagram.Association;
+import diagram.BClass;
+import diagram.Composition;
+import diagram.DataType;
+import diagram.Diagram;
+import diagram.Enumeration;
+import diagram.Generalization;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.Property;
+import diagram.Relationship;
+import geom.Point;
+
+/**
+ * Reads a diagram from Xml notation with a pull parser, in a single pass
+ * and without building a document tree. NamedElements are created as their
+ * packagedElement is read. Relationships are recorded as they are encountered
+ * and connected at the end of the document, once all the identifiers they
+ * refer to are known. The result is the same as the one of XmlDecoder.
+ */
+public final class XmlStreamDecoder
+{
+	private final Diagram aDiagram = new Diagram();
+	private final IntMap<NamedElement> aNamedElements = new IntMap<>();
+	private final List<RelationshipRecord> aRelationships = new ArrayList<>();
+	private final Deque<Frame> aFrames = new ArrayDeque<>();
+
+	private XmlStreamDecoder() {}
+
+	/**
+	 * @param pFile The file that contains the encoded diagram.
+	 * @return The decoded diagram.
+	 * @throws DeserializationException If it's not possible to read the file or to decode it into a valid diagram.
+	 * @pre pFile != null
+	 */
+	public static Diagram decode(File pFile)
+	{
+		assert pFile != null;
+		try( InputStream input = new BufferedInputStream(new FileInputStream(pFile)) )
+		{
+			return decode(input);
+		}
+		catch( IOException exception )
+		{
+			throw new DeserializationException("Cannot read " + pFile.getName(), exception);
+		}
+	}
+
+	/**
+	 * @param pInput The stream that contains the encoded diagram. It is not closed.
+	 * @return The decoded diagram.
+	 * @throws DeserializationException If it's not possible to decode the stream into a valid diagram.
+	 * @pre pInput != null
+	 */
+	public static Diagram decode(InputStream pInput)
+	{
+		assert pInput != null;
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		try
+		{
+			XMLStreamReader reader = factory.createXMLStreamReader(pInput);
+			try
+			{
+				return new XmlStreamDecoder().read(reader);
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch( XMLStreamException | NumberFormatException exception )
+		{
+			throw new DeserializationException("Cannot decode the diagram", exception);
+		}
+	}
+
+	private Diagram read(XMLStreamReader pReader) throws XMLStreamException
+	{
+		while( pReader.hasNext() )
+		{
+			int event = pReader.next();
+			if( event == XMLStreamConstants.START_ELEMENT )
+			{
+				startElement(pReader);
+			}
+			else if( event == XMLStreamConstants.END_ELEMENT )
+			{
+				endElement();
+			}
+		}
+		for( RelationshipRecord record : aRelationships )
+		{
+			aDiagram.addRelationship(record.resolve(aNamedElements, aDiagram));
+		}
+		return aDiagram;
+	}
+
+	private void startElement(XMLStreamReader pReader)
+	{
+		Frame parent = aFrames.peek();
+		String tag = pReader.getLocalName();
+		Frame frame = new Frame();
+		if( parent == null )
+		{
+			frame.aIsRoot = true;
+		}
+		else if( tag.equals("packagedElement") && (parent.aIsRoot || parent.aNamedElement instanceof Package) )
+		{
+			startNamedElement(frame, pReader);
+		}
+		else if( tag.equals("ownedAttribute") && parent.aNamedElement instanceof BClass )
+		{
+			appendAttribute(parent.aAttributes, pReader);
+			parent.aAttributes.append(";\n");
+		}
+		else if( tag.equals("ownedOperation") && parent.aNamedElement instanceof BClass )
+		{
+			frame.aOperation = new StringBuilder();
+			frame.aOperationName = pReader.getAttributeValue(null, "name");
+			frame.aOperationType = pReader.getAttributeValue(null, "type");
+		}
+		else if( parent.aOperation != null )
+		{
+			appendAttribute(parent.aOperation, pReader);
+			parent.aOperation.append(',');
+		}
+		else if( tag.equals("ownedLiteral") && parent.aNamedElement instanceof Enumeration )
+		{
+			appendIfPresent(parent.aLiterals, pReader.getAttributeValue(null, "value"));
+			parent.aLiterals.append(";\n");
+		}
+		else if( parent.aRelationship != null && RelationshipRecord.isLabel(tag) )
+		{
+			parent.aRelationship.label(tag, pReader.getAttributeValue(null, "value"));
+		}
+		if( RelationshipRecord.isRelationship(tag) )
+		{
+			frame.aRelationship = new RelationshipRecord(tag, pReader.getAttributeValue(null, "start"),
+					pReader.getAttributeValue(null, "end"), pReader.getAttributeValue(null, "direction"));
+			aRelationships.add(frame.aRelationship);
+		}
+		aFrames.push(frame);
+	}
+
+	private static void startNamedElement(Frame pFrame, XMLStreamReader pReader)
+	{
+		String type = pReader.getAttributeValue(null, "type");
+		if( "BClass".equals(type) )
+		{
+			BClass bClass = new BClass(false, false);
+			if( "true".equals(pReader.getAttributeValue(null, "isAbstract")) )
+			{
+				bClass.setIsAbstract(true);
+			}
+			if( "true".equals(pReader.getAttributeValue(null, "isInterface")) )
+			{
+				bClass.setIsInterface(true);
+			}
+			pFrame.aNamedElement = bClass;
+		}
+		else if( "Package".equals(type) )
+		{
+			pFrame.aNamedElement = new Package();
+		}
+		else if( "DataType".equals(type) )
+		{
+			pFrame.aNamedElement = new DataType();
+		}
+		else if( "Enumeration".equals(type) )
+		{
+			pFrame.aNamedElement = new Enumeration();
+		}
+		else
+		{
+			return;
+		}
+		String x = pReader.getAttributeValue(null, "x");
+		String y = pReader.getAttributeValue(null, "y");
+		if( x != null && y != null )
+		{
+			pFrame.aNamedElement.setPosition(new Point(Integer.parseInt(x), Integer.parseInt(y)));
+		}
+		else
+		{
+			pFrame.aNamedElement.setPosition(new Point(0, 0));
+		}
+		pFrame.aName = pReader.getAttributeValue(null, "name");
+		pFrame.aId = pReader.getAttributeValue(null, "id");
+	}
+
+	private void endElement()
+	{
+		Frame frame = aFrames.pop();
+		Frame parent = aFrames.peek();
+		if( frame.aNamedElement != null )
+		{
+			endNamedElement(frame, parent);
+		}
+		else if( frame.aOperation != null )
+		{
+			appendIfPresent(parent.aMethods, frame.aOperationName);
+			parent.aMethods.append('(').append(removeLast(frame.aOperation)).append(')');
+			if( frame.aOperationType != null && !frame.aOperationType.isEmpty() )
+			{
+				parent.aMethods.append(':').append(frame.aOperationType);
+			}
+			parent.aMethods.append(";\n");
+		}
+	}
+
+	private void endNamedElement(Frame pFrame, Frame pParent)
+	{
+		NamedElement namedElement = pFrame.aNamedElement;
+		HashMap<String, Property> properties = new HashMap<>();
+		if( pFrame.aName != null )
+		{
+			properties.put("name", new Property(aDiagram.getStringPool().intern(pFrame.aName)));
+		}
+		if( namedElement instanceof BClass )
+		{
+			properties.put("attributes", new Property(removeLast(pFrame.aAttributes)));
+			properties.put("methods", new Property(removeLast(pFrame.aMethods)));
+		}
+		else if( namedElement instanceof Enumeration )
+		{
+			properties.put("literals", new Property(removeLast(pFrame.aLiterals)));
+		}
+		namedElement.setProperties(properties);
+		if( pFrame.aId != null )
+		{
+			int id = Integer.parseInt(pFrame.aId);
+			aNamedElements.put(id, namedElement);
+			if( id >= 0 )
+			{
+				namedElement.setPersistentId(id);
+			}
+		}
+		if( pParent.aIsRoot )
+		{
+			aDiagram.addNamedElement(namedElement);
+		}
+		else
+		{
+			namedElement.setDiagram(aDiagram);
+			((Package)pParent.aNamedElement).addChild(namedElement);
+		}
+	}
+
+	private static void appendAttribute(StringBuilder pBuilder, XMLStreamReader pReader)
+	{
+		appendIfPresent(pBuilder, pReader.getAttributeValue(null, "name"));
+		String type = pReader.getAttributeValue(null, "type");
+		if( type != null && !type.isEmpty() )
+		{
+			pBuilder.append(':').append(type);
+		}
+	}
+
+	private static void appendIfPresent(StringBuilder pBuilder, String pValue)
+	{
+		if( pValue != null )
+		{
+			pBuilder.append(pValue);
+		}
+	}
+
+	/*
+	 * Returns the content of pBuilder without its last separator character, interned
+	 * in the pool of the diagram.
+	 */
+	private String removeLast(StringBuilder pBuilder)
+	{
+		if( pBuilder.length() == 0 )
+		{
+			return "";
+		}
+		return aDiagram.getStringPool().intern(pBuilder, 0, pBuilder.length() - 1);
+	}
+
+	/*
+	 * The decoding state of an open Xml element.
+	 */
+	private static final class Frame
+	{
+		private boolean aIsRoot = false;
+		private NamedElement aNamedElement;
+		private String aName;
+		private String aId;
+		private final StringBuilder aAttributes = new StringBuilder();
+		private final StringBuilder aMethods = new StringBuilder();
+		private final StringBuilder aLiterals = new StringBuilder();
+		private StringBuilder aOperation;
+		private String aOperationName;
+		private String aOperationType;
+		private RelationshipRecord aRelationship;
+	}
+
+	/*
+	 * A relationship read from the document, whose start and end
+	 * identifiers are resolved once the whole document has been read.
+	 */
+	private static final class RelationshipRecord
+	{
+		private static final String[] LABEL_TAGS = {"lowerValue", "upperValue", "relationshipName"};
+		private static final String[] LABEL_PROPERTIES = {"startLabel", "endLabel", "midLabel"};
+
+		private final String aTag;
+		private final String aStart;
+		private final String aEnd;
+		private final String aDirection;
+		private final boolean[] aHasLabel = new boolean[LABEL_TAGS.length];
+		private final String[] aLabels = new String[LABEL_TAGS.length];
+
+		RelationshipRecord(String pTag, String pStart, String pEnd, String pDirection)
+		{
+			aTag = pTag;
+			aStart = pStart;
+			aEnd = pEnd;
+			aDirection = pDirection;
+		}
+
+		static boolean isRelationship(String pTag)
+		{
+			return pTag.equals("association") || pTag.equals("generalization") || pTag.equals("composition");
+		}
+
+		static boolean isLabel(String pTag)
+		{
+			return labelIndex(pTag) >= 0;
+		}
+
+		private static int labelIndex(String pTag)
+		{
+			for( int i = 0; i < LABEL_TAGS.length; i++ )
+			{
+				if( LABEL_TAGS[i].equals(pTag) )
+				{
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/*
+		 * Only the first label element of each kind is taken into account.
+		 */
+		void label(String pTag, String pValue)
+		{
+			int index = labelIndex(pTag);
+			if( !aHasLabel[index] )
+			{
+				aHasLabel[index] = true;
+				aLabels[index] = pValue;
+			}
+		}
+
+		Relationship resolve(IntMap<NamedElement> pNamedElements, Diagram pDiagram)
+		{
+			Relationship relationship = create();
+			NamedElement start = aStart == null ? null : pNamedElements.get(Integer.parseInt(aStart));
+			NamedElement end = aEnd == null ? null : pNamedElements.get(Integer.parseInt(aEnd));
+			relationship.connect(start, end, pDiagram);
+
+			HashMap<String, Property> properties = new HashMap<>();
+			for( int i = 0; i < LABEL_TAGS.length; i++ )
+			{
+				if( !aHasLabel[i] )
+				{
+					properties.put(LABEL_PROPERTIES[i], new Property(""));
+				}
+				else if( aLabels[i] != null )
+				{
+					properties.put(LABEL_PROPERTIES[i], new Property(pDiagram.getStringPool().intern(aLabels[i])));
+				}
+			}
+			if( aDirection != null && relationship instanceof Association )
+			{
+				if( aDirection.equals("unidirection") )
+				{
+					properties.put("direction", new Property("UniDirection"));
+					((Association)relationship).setUniDirection(true);
+				}
+				else if( aDirection.equals("bidirection") )
+				{
+					properties.put("direction", new Property("BiDirection"));
+					((Association)relationship).setBiDirection(true);
+				}
+				else
+				{
+					properties.put("direction", new Property("NoDirection"));
+				}
+			}
+			relationship.setProperties(properties);
+			return relationship;
+		}
+
+		private Relationship create()
+		{
+			if( aTag.equals("association") )
+			{
+				return new Association(false, false);
+			}
+			else if( aTag.equals("generalization") )
+			{
+				return new Generalization();
+			}
+			else
+			{
+				return new Composition();
+			}
+		}
+	}
+}
@@ -0,0 +1,449 @@
+package file;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import diagram.Association;
+import diagram.Attribute;
+import diagram.BClass;
+import diagram.Composition;
+import diagram.Diagram;
+import diagram.Generalization;
+import diagram.Method;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.Property;
+import diagram.Relationship;
+
+/**
+ * Converts a diagram to Xml notation by streaming it to a file in a
+ * single pass, without building a document tree in memory. The
+ * notation is the same as the one produced by XmlEncoder:
+ * * One packagedElement per root NamedElement, with the children of
+ *   packages nested in their parent
+ * * Relationships nested in the packagedElement of their start NamedElement
+ *
+ * NamedElements are identified by their persistent identifier and written in
+ * diagram order, so saving a diagram again only changes the part of the file
+ * that corresponds to what was edited. With an XmiFragments object, the root
+ * NamedElements that did not change since the previous save are copied from it.
+ */
+public final class XmlStreamEncoder
+{
+	private static final String ENCODING = "UTF-8";
+	private static final String XMI_PREFIX = "xmi";
+	private static final String XMI_NAMESPACE = "http://www.omg.org/spec/XMI/20131001";
+	private static final String UML_PREFIX = "uml";
+	private static final String UML_NAMESPACE = "http://www.omg.org/spec/UML/20131001";
+	private static final String INDENT = "  ";
+	private static final String[] CONTENT_PROPERTIES = 
+		{"attributes", "methods", "literals", "startLabel", "endLabel", "midLabel"};
+
+	private XmlStreamEncoder() {}
+
+	/**
+	 * Writes pDiagram to pFile.
+	 *
+	 * @param pDiagram The diagram to serialize.
+	 * @param pFile The file to write to.
+	 * @throws IOException If there is a problem writing to pFile.
+	 * @pre pDiagram != null && pFile != null
+	 */
+	public static void encode(Diagram pDiagram, File pFile) throws IOException
+	{
+		assert pDiagram != null && pFile != null;
+		try( OutputStream out = new BufferedOutputStream(new FileOutputStream(pFile)) )
+		{
+			encode(pDiagram, out);
+		}
+	}
+
+	/**
+	 * Writes pDiagram to pOutput. The stream is flushed but not closed.
+	 *
+	 * @param pDiagram The diagram to serialize.
+	 * @param pOutput The stream to write to.
+	 * @throws IOException If there is a problem writing to pOutput.
+	 * @pre pDiagram != null && pOutput != null
+	 */
+	public static void encode(Diagram pDiagram, OutputStream pOutput) throws IOException
+	{
+		assert pDiagram != null && pOutput != null;
+		encode(pDiagram, pOutput, Optional.empty());
+	}
+
+	/**
+	 * Writes pDiagram to pOutput, copying the root NamedElements that did not 
+	 * change since the previous save with pFragments instead of serializing them 
+	 * again. The result is the same as with encode(Diagram, OutputStream). 
+	 * The stream is flushed but not closed.
+	 *
+	 * @param pDiagram The diagram to serialize.
+	 * @param pOutput The stream to write to.
+	 * @param pFragments The roots written by the previous save. They are replaced by the roots of pDiagram.
+	 * @throws IOException If there is a problem writing to pOutput.
+	 * @pre pDiagram != null && pOutput != null && pFragments != null
+	 */
+	static void encode(Diagram pDiagram, OutputStream pOutput, XmiFragments pFragments) throws IOException
+	{
+		assert pDiagram != null && pOutput != null && pFragments != null;
+		pFragments.begin();
+		encode(pDiagram, pOutput, Optional.of(pFragments));
+		pFragments.end();
+	}
+
+	private static void encode(Diagram pDiagram, OutputStream pOutput, Optional<XmiFragments> pFragments) 
+			throws IOException
+	{
+		SerializationContext context = new SerializationContext(pDiagram);
+		Map<NamedElement, List<Relationship>> relationships = relationshipsByStart(pDiagram);
+		try
+		{
+			XMLOutputFactory factory = XMLOutputFactory.newInstance();
+			XMLStreamWriter writer = factory.createXMLStreamWriter(pOutput, ENCODING);
+			writer.writeStartDocument(ENCODING, "1.0");
+			newLine(writer, 0);
+			writer.writeStartElement(XMI_PREFIX, "XMI", XMI_NAMESPACE);
+			writer.writeNamespace(UML_PREFIX, UML_NAMESPACE);
+			writer.writeNamespace(XMI_PREFIX, XMI_NAMESPACE);
+			for( NamedElement namedElement : context )
+			{
+				if( namedElement.hasParent() )
+				{
+					continue;
+				}
+				if( pFragments.isPresent() )
+				{
+					byte[] fragment = fragment(namedElement, context, relationships, pFragments.get(), factory);
+					// Closes the start tag of the document element before writing to pOutput directly
+					writer.writeCharacters("");
+					writer.flush();
+					pOutput.write(fragment);
+				}
+				else
+				{
+					encodeNamedElement(namedElement, context, relationships, writer, 1);
+				}
+			}
+			newLine(writer, 0);
+			writer.writeEndElement();
+			writer.writeEndDocument();
+			writer.close();
+			pOutput.flush();
+		}
+		catch( XMLStreamException exception )
+		{
+			throw new IOException(exception);
+		}
+	}
+
+	/*
+	 * Groups the relationships of pDiagram by their start NamedElement, preserving
+	 * their order in the diagram, so that they can be written within the
+	 * packagedElement of their start NamedElement.
+	 */
+	private static Map<NamedElement, List<Relationship>> relationshipsByStart(Diagram pDiagram)
+	{
+		Map<NamedElement, List<Relationship>> result = new IdentityHashMap<>();
+		for( Relationship relationship : pDiagram.getRelationships() )
+		{
+			result.computeIfAbsent(relationship.getStart(), key -> new ArrayList<>()).add(relationship);
+		}
+		return result;
+	}
+
+	/*
+	 * Returns the packagedElement of root pRoot, from pFragments if pRoot did not change.
+	 */
+	private static byte[] fragment(NamedElement pRoot, SerializationContext pContext, 
+			Map<NamedElement, List<Relationship>> pRelationships, XmiFragments pFragments, XMLOutputFactory pFactory)
+					throws XMLStreamException
+	{
+		List<Object> inputs = new ArrayList<>();
+		addInputs(pRoot, pContext, pRelationships, inputs);
+		int id = pContext.getId(pRoot);
+		Optional<byte[]> saved = pFragments.get(id, inputs);
+		if( saved.isPresent() )
+		{
+			return saved.get();
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		XMLStreamWriter writer = pFactory.createXMLStreamWriter(bytes, ENCODING);
+		writer.setPrefix(XMI_PREFIX, XMI_NAMESPACE);
+		encodeNamedElement(pRoot, pContext, pRelationships, writer, 1);
+		writer.flush();
+		writer.close();
+		byte[] result = bytes.toByteArray();
+		pFragments.put(id, inputs, result);
+		return result;
+	}
+
+	/*
+	 * Adds the values from which pNamedElement, its descendants and the relationships that
+	 * start from them are written to pInputs.
+	 */
+	private static void addInputs(NamedElement pNamedElement, SerializationContext pContext, 
+			Map<NamedElement, List<Relationship>> pRelationships, List<Object> pInputs)
+	{
+		pInputs.add(pNamedElement.getClass());
+		pInputs.add(pContext.getId(pNamedElement));
+		pInputs.add(pNamedElement.getPosition().getX());
+		pInputs.add(pNamedElement.getPosition().getY());
+		if( pNamedElement instanceof BClass )
+		{
+			pInputs.add(((BClass)pNamedElement).getIsAbstract());
+			pInputs.add(((BClass)pNamedElement).getIsInterface());
+		}
+		addInputs(pNamedElement.getProperties().get("name"), pInputs);
+		for( String key : CONTENT_PROPERTIES )
+		{
+			addInputs(pNamedElement.getProperties().get(key), pInputs);
+		}
+		if( pNamedElement instanceof Package )
+		{
+			List<NamedElement> children = ((Package)pNamedElement).getChildren();
+			pInputs.add(children.size());
+			for( NamedElement child : children )
+			{
+				addInputs(child, pContext, pRelationships, pInputs);
+			}
+		}
+		List<Relationship> relationships = pRelationships.getOrDefault(pNamedElement, List.of());
+		pInputs.add(relationships.size());
+		for( Relationship relationship : relationships )
+		{
+			pInputs.add(relationship.getClass());
+			pInputs.add(pContext.getId(relationship.getStart()));
+			pInputs.add(pContext.getId(relationship.getEnd()));
+			if( relationship instanceof Association )
+			{
+				pInputs.add(direction((Association)relationship));
+			}
+			for( String key : CONTENT_PROPERTIES )
+			{
+				addInputs(relationship.getProperties().get(key), pInputs);
+			}
+		}
+	}
+
+	private static void addInputs(Property pProperty, List<Object> pInputs)
+	{
+		pInputs.add(pProperty == null ? null : pProperty.getValue());
+	}
+
+	private static void encodeNamedElement(NamedElement pNamedElement, SerializationContext pContext,
+			Map<NamedElement, List<Relationship>> pRelationships, XMLStreamWriter pWriter, int pDepth) throws XMLStreamException
+	{
+		List<Relationship> relationships = pRelationships.getOrDefault(pNamedElement, List.of());
+		boolean empty = !hasContent(pNamedElement.getProperties()) && relationships.isEmpty() &&
+				!(pNamedElement instanceof Package && !((Package)pNamedElement).getChildren().isEmpty());
+		startElement("packagedElement", empty, pWriter, pDepth);
+		pWriter.writeAttribute(XMI_PREFIX, XMI_NAMESPACE, "type", pNamedElement.getClass().getSimpleName());
+		Property name = pNamedElement.getProperties().get("name");
+		if( name != null )
+		{
+			pWriter.writeAttribute("name", name.getValue());
+		}
+		abstractAndInterface(pNamedElement, pWriter);
+		pWriter.writeAttribute("id", Integer.toString(pContext.getId(pNamedElement)));
+		pWriter.writeAttribute("x", Integer.toString(pNamedElement.getPosition().getX()));
+		pWriter.writeAttribute("y", Integer.toString(pNamedElement.getPosition().getY()));
+
+		properties2Elements(pNamedElement.getProperties(), pWriter, pDepth + 1);
+		if( pNamedElement instanceof Package )
+		{
+			for( NamedElement child : ((Package)pNamedElement).getChildren() )
+			{
+				encodeNamedElement(child, pContext, pRelationships, pWriter, pDepth + 1);
+			}
+		}
+		for( Relationship relationship : relationships )
+		{
+			encodeRelationship(relationship, pContext, pWriter, pDepth + 1);
+		}
+		endElement(empty, pWriter, pDepth);
+	}
+
+	private static void abstractAndInterface(NamedElement pNamedElement, XMLStreamWriter pWriter) throws XMLStreamException
+	{
+		if( pNamedElement instanceof BClass )
+		{
+			if( ((BClass)pNamedElement).getIsAbstract() )
+			{
+				pWriter.writeAttribute("isAbstract", "true");
+			}
+			else if( ((BClass)pNamedElement).getIsInterface() )
+			{
+				pWriter.writeAttribute("isInterface", "true");
+			}
+		}
+	}
+
+	private static void encodeRelationship(Relationship pRelationship, SerializationContext pContext,
+			XMLStreamWriter pWriter, int pDepth) throws XMLStreamException
+	{
+		boolean empty = !hasContent(pRelationship.getProperties());
+		startElement(relationshipTag(pRelationship), empty, pWriter, pDepth);
+		pWriter.writeAttribute(XMI_PREFIX, XMI_NAMESPACE, "type", pRelationship.getClass().getSimpleName());
+		pWriter.writeAttribute("start", Integer.toString(pContext.getId(pRelationship.getStart())));
+		pWriter.writeAttribute("end", Integer.toString(pContext.getId(pRelationship.getEnd())));
+		if( pRelationship instanceof Association )
+		{
+			pWriter.writeAttribute("direction", direction((Association)pRelationship));
+		}
+		properties2Elements(pRelationship.getProperties(), pWriter, pDepth + 1);
+		endElement(empty, pWriter, pDepth);
+	}
+
+	private static String relationshipTag(Relationship pRelationship)
+	{
+		if( pRelationship instanceof Association )
+		{
+			return "association";
+		}
+		else if( pRelationship instanceof Generalization )
+		{
+			return "generalization";
+		}
+		else
+		{
+			assert pRelationship instanceof Composition;
+			return "composition";
+		}
+	}
+
+	private static String direction(Association pAssociation)
+	{
+		if( pAssociation.getUniDirection() )
+		{
+			return "unidirection";
+		}
+		else if( pAssociation.getBiDirection() )
+		{
+			return "bidirection";
+		}
+		else
+		{
+			return "nodirection";
+		}
+	}
+
+	private static void properties2Elements(Map<String, Property> pProperties, XMLStreamWriter pWriter, int pDepth)
+			throws XMLStreamException
+	{
+		Property property = pProperties.get("attributes");
+		if( hasValue(property) )
+		{
+			for( Attribute attribute : property.splitAsAttributes() )
+			{
+				startElement("ownedAttribute", true, pWriter, pDepth);
+				pWriter.writeAttribute("name", attribute.getName());
+				pWriter.writeAttribute("type", attribute.getType());
+			}
+		}
+		property = pProperties.get("methods");
+		if( hasValue(property) )
+		{
+			for( Method method : property.splitAsMethods() )
+			{
+				boolean empty = method.getParameters().isEmpty();
+				startElement("ownedOperation", empty, pWriter, pDepth);
+				pWriter.writeAttribute("name", method.getName());
+				pWriter.writeAttribute("type", method.getType());
+				for( Attribute parameter : method.getParameters() )
+				{
+					startElement("ownedParameter", true, pWriter, pDepth + 1);
+					pWriter.writeAttribute("name", parameter.getName());
+					pWriter.writeAttribute("type", parameter.getType());
+				}
+				endElement(empty, pWriter, pDepth);
+			}
+		}
+		property = pProperties.get("literals");
+		if( hasValue(property) )
+		{
+			for( String literal : property.splitAsLiterals() )
+			{
+				startElement("ownedLiteral", true, pWriter, pDepth);
+				pWriter.writeAttribute("value", literal);
+			}
+		}
+		writeValueElement("lowerValue", pProperties.get("startLabel"), pWriter, pDepth);
+		writeValueElement("upperValue", pProperties.get("endLabel"), pWriter, pDepth);
+		writeValueElement("relationshipName", pProperties.get("midLabel"), pWriter, pDepth);
+	}
+
+	private static void writeValueElement(String pTag, Property pProperty, XMLStreamWriter pWriter, int pDepth)
+			throws XMLStreamException
+	{
+		if( hasValue(pProperty) )
+		{
+			startElement(pTag, true, pWriter, pDepth);
+			pWriter.writeAttribute("value", pProperty.getValue());
+		}
+	}
+
+	/*
+	 * Returns true if any of the properties in pProperties is written as a child element.
+	 */
+	private static boolean hasContent(Map<String, Property> pProperties)
+	{
+		for( String key : CONTENT_PROPERTIES )
+		{
+			if( hasValue(pProperties.get(key)) )
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean hasValue(Property pProperty)
+	{
+		return pProperty != null && !pProperty.getValue().isEmpty();
+	}
+
+	private static void startElement(String pTag, boolean pEmpty, XMLStreamWriter pWriter, int pDepth) throws XMLStreamException
+	{
+		newLine(pWriter, pDepth);
+		if( pEmpty )
+		{
+			pWriter.writeEmptyElement(pTag);
+		}
+		else
+		{
+			pWriter.writeStartElement(pTag);
+		}
+	}
+
+	private static void endElement(boolean pEmpty, XMLStreamWriter pWriter, int pDepth) throws XMLStreamException
+	{
+		if( !pEmpty )
+		{
+			newLine(pWriter, pDepth);
+			pWriter.writeEndElement();
+		}
+	}
+
+	private static void newLine(XMLStreamWriter pWriter, int pDepth) throws XMLStreamException
+	{
+		pWriter.writeCharacters("\n");
+		for( int i = 0; i < pDepth; i++ )
+		{
+			pWriter.writeCharacters(INDENT);
+		}
+	}
+}
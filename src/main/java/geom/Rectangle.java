@@ -88,6 +88,31 @@ public class Rectangle
 		return new Rectangle(aX + pDeltaX, aY + pDeltaY, aWidth, aHeight);
 	}
 	
+	/**
+	 * @param pMargin The amount by which to move each side of the rectangle outwards.
+	 * @return A new rectangle that is this rectangle enlarged by pMargin on every side.
+	 * @pre pMargin >= 0
+	 */
+	public Rectangle expanded(int pMargin)
+	{
+		assert pMargin >= 0;
+		return new Rectangle(aX - pMargin, aY - pMargin, aWidth + 2 * pMargin, aHeight + 2 * pMargin);
+	}
+	
+	/**
+	 * @param pRectangle The rectangle to intersect with this one.
+	 * @return A new rectangle that is the part of this rectangle that is also in pRectangle.
+	 * @pre pRectangle != null && intersects(pRectangle)
+	 */
+	public Rectangle intersection(Rectangle pRectangle)
+	{
+		assert pRectangle != null && intersects(pRectangle);
+		int x = Math.max(aX, pRectangle.aX);
+		int y = Math.max(aY, pRectangle.aY);
+		return new Rectangle(x, y, Math.min(getMaxX(), pRectangle.getMaxX()) - x, 
+				Math.min(getMaxY(), pRectangle.getMaxY()) - y);
+	}
+	
 	/**
 	 * @param pPoint The point to check.
 	 * @return True iif pPoint is within the rectangle or on its boundary.
@@ -113,6 +138,19 @@ public class Rectangle
 				pRectangle.getMaxY() <= aY + aHeight;
 	}
 	
+	/**
+	 * @param pRectangle The rectangle to check.
+	 * @return True iif pRectangle and this rectangle share at least one point,
+	 *     including points on their boundaries.
+	 * @pre pRectangle != null.
+	 */
+	public boolean intersects(Rectangle pRectangle)
+	{
+		assert pRectangle != null;
+		return pRectangle.aX <= getMaxX() && aX <= pRectangle.getMaxX() &&
+				pRectangle.aY <= getMaxY() && aY <= pRectangle.getMaxY();
+	}
+	
 	/**
 	 * @return A point in the center of this rectangle.
 	 */
@@ -0,0 +1,472 @@
+package geom;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A set of items placed in the plane by a bounding rectangle, which finds the
+ * items at a point or in an area in time logarithmic in the number of items,
+ * for items that do not overlap much. The items are compared by identity.
+ *
+ * The index is an R-tree: the items are kept in the leaves of a balanced tree
+ * in which each node stores the rectangle that bounds its subtree, and a query
+ * only visits the subtrees whose rectangle intersects the query. Nodes that
+ * overflow are split in two with Guttman's quadratic split, and the items of
+ * nodes that underflow after a removal are inserted again.
+ *
+ * @param <T> The type of the items.
+ */
+public final class SpatialIndex<T>
+{
+	private static final int MAX_CHILDREN = 16;
+	private static final int MIN_CHILDREN = 6;
+
+	private final Map<T, Entry> aEntries = new IdentityHashMap<>();
+	private Node aRoot = new Node(true);
+
+	/**
+	 * @return The number of items in this index.
+	 */
+	public int size()
+	{
+		return aEntries.size();
+	}
+
+	/**
+	 * @param pItem The item to look for.
+	 * @return True if pItem is in this index.
+	 */
+	public boolean contains(T pItem)
+	{
+		return aEntries.containsKey(pItem);
+	}
+
+	/**
+	 * @param pItem The item to look for.
+	 * @return The bounds with which pItem was placed, or Optional.empty() if it is not in this index.
+	 */
+	public Optional<Rectangle> getBounds(T pItem)
+	{
+		Entry entry = aEntries.get(pItem);
+		if( entry == null )
+		{
+			return Optional.empty();
+		}
+		return Optional.of(new Rectangle(entry.aMinX, entry.aMinY, entry.aMaxX - entry.aMinX, entry.aMaxY - entry.aMinY));
+	}
+
+	/**
+	 * Removes all the items.
+	 */
+	public void clear()
+	{
+		aEntries.clear();
+		aRoot = new Node(true);
+	}
+
+	/**
+	 * Adds pItem with bounds pBounds, or moves it to pBounds if it
+	 * is already in this index.
+	 *
+	 * @param pItem The item to place.
+	 * @param pBounds The bounds of pItem.
+	 * @pre pItem != null && pBounds != null
+	 */
+	public void put(T pItem, Rectangle pBounds)
+	{
+		assert pItem != null && pBounds != null;
+		Entry entry = aEntries.get(pItem);
+		if( entry != null )
+		{
+			if( entry.aMinX == pBounds.getX() && entry.aMinY == pBounds.getY() &&
+					entry.aMaxX == pBounds.getMaxX() && entry.aMaxY == pBounds.getMaxY() )
+			{
+				return;
+			}
+			remove(pItem);
+		}
+		entry = new Entry(pItem);
+		entry.set(pBounds.getX(), pBounds.getY(), pBounds.getMaxX(), pBounds.getMaxY());
+		aEntries.put(pItem, entry);
+		insert(entry);
+	}
+
+	/**
+	 * Removes pItem from this index. Nothing happens if it is not in it.
+	 *
+	 * @param pItem The item to remove.
+	 */
+	public void remove(T pItem)
+	{
+		Entry entry = aEntries.remove(pItem);
+		if( entry == null )
+		{
+			return;
+		}
+		Node leaf = entry.aParent;
+		leaf.remove(entry);
+		condense(leaf);
+	}
+
+	/**
+	 * @param pPoint The point to look at.
+	 * @return The items whose bounds contain pPoint, including on their boundary, in no particular order.
+	 * @pre pPoint != null
+	 */
+	public List<T> itemsAt(Point pPoint)
+	{
+		assert pPoint != null;
+		List<T> result = new ArrayList<>();
+		search(aRoot, pPoint.getX(), pPoint.getY(), pPoint.getX(), pPoint.getY(), result);
+		return result;
+	}
+
+	/**
+	 * @param pArea The area to look at.
+	 * @return The items whose bounds intersect pArea, including on their boundary, in no particular order.
+	 * @pre pArea != null
+	 */
+	public List<T> itemsIntersecting(Rectangle pArea)
+	{
+		assert pArea != null;
+		List<T> result = new ArrayList<>();
+		search(aRoot, pArea.getX(), pArea.getY(), pArea.getMaxX(), pArea.getMaxY(), result);
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void search(Node pNode, int pMinX, int pMinY, int pMaxX, int pMaxY, List<T> pResult)
+	{
+		for( int i = 0; i < pNode.aCount; i++ )
+		{
+			Box child = pNode.aChildren[i];
+			if( child.intersects(pMinX, pMinY, pMaxX, pMaxY) )
+			{
+				if( pNode.aLeaf )
+				{
+					pResult.add((T) ((Entry) child).aItem);
+				}
+				else
+				{
+					search((Node) child, pMinX, pMinY, pMaxX, pMaxY, pResult);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Adds pEntry to the leaf whose bounds grow the least, and splits the nodes
+	 * that overflow on the way back to the root.
+	 */
+	private void insert(Entry pEntry)
+	{
+		Node node = aRoot;
+		while( !node.aLeaf )
+		{
+			Box best = null;
+			long bestEnlargement = Long.MAX_VALUE;
+			for( int i = 0; i < node.aCount; i++ )
+			{
+				Box child = node.aChildren[i];
+				long enlargement = child.enlargement(pEntry);
+				if( enlargement < bestEnlargement || enlargement == bestEnlargement && child.area() < best.area() )
+				{
+					best = child;
+					bestEnlargement = enlargement;
+				}
+			}
+			node = (Node) best;
+		}
+		node.add(pEntry);
+		Node split = node.aCount > MAX_CHILDREN ? split(node) : null;
+		while( node != null )
+		{
+			node.fit();
+			Node parent = node.aParent;
+			if( split != null )
+			{
+				split.fit();
+				if( parent == null )
+				{
+					aRoot = new Node(false);
+					aRoot.add(node);
+					aRoot.add(split);
+					aRoot.fit();
+					return;
+				}
+				parent.add(split);
+				split = parent.aCount > MAX_CHILDREN ? split(parent) : null;
+			}
+			node = parent;
+		}
+	}
+
+	/*
+	 * Moves about half of the children of pNode to a new node, which is returned.
+	 * The two seeds are the children that would waste the most area together, and
+	 * each other child then goes to the node it enlarges the least, starting with
+	 * the child for which this matters the most.
+	 */
+	private static Node split(Node pNode)
+	{
+		Box[] children = new Box[pNode.aCount];
+		System.arraycopy(pNode.aChildren, 0, children, 0, pNode.aCount);
+		pNode.clear();
+		Node sibling = new Node(pNode.aLeaf);
+
+		int seed1 = 0;
+		int seed2 = 1;
+		long worstWaste = Long.MIN_VALUE;
+		for( int i = 0; i < children.length; i++ )
+		{
+			for( int j = i + 1; j < children.length; j++ )
+			{
+				long waste = children[i].enlargement(children[j]) - children[j].area();
+				if( waste > worstWaste )
+				{
+					worstWaste = waste;
+					seed1 = i;
+					seed2 = j;
+				}
+			}
+		}
+		pNode.add(children[seed1]);
+		pNode.set(children[seed1]);
+		sibling.add(children[seed2]);
+		sibling.set(children[seed2]);
+		children[seed1] = null;
+		children[seed2] = null;
+
+		int remaining = children.length - 2;
+		while( remaining > 0 )
+		{
+			Node group = null;
+			if( pNode.aCount + remaining == MIN_CHILDREN )
+			{
+				group = pNode;
+			}
+			else if( sibling.aCount + remaining == MIN_CHILDREN )
+			{
+				group = sibling;
+			}
+			int next = -1;
+			long largestDifference = -1;
+			for( int i = 0; i < children.length; i++ )
+			{
+				if( children[i] != null )
+				{
+					long difference = Math.abs(pNode.enlargement(children[i]) - sibling.enlargement(children[i]));
+					if( group != null || difference > largestDifference )
+					{
+						next = i;
+						largestDifference = difference;
+					}
+				}
+			}
+			if( group == null )
+			{
+				group = closer(pNode, sibling, children[next]);
+			}
+			group.add(children[next]);
+			group.include(children[next]);
+			children[next] = null;
+			remaining--;
+		}
+		return sibling;
+	}
+
+	/*
+	 * Returns the node that pChild enlarges the least, then the smaller node, then the one with fewer children.
+	 */
+	private static Node closer(Node pNode1, Node pNode2, Box pChild)
+	{
+		long enlargement1 = pNode1.enlargement(pChild);
+		long enlargement2 = pNode2.enlargement(pChild);
+		if( enlargement1 != enlargement2 )
+		{
+			return enlargement1 < enlargement2 ? pNode1 : pNode2;
+		}
+		if( pNode1.area() != pNode2.area() )
+		{
+			return pNode1.area() < pNode2.area() ? pNode1 : pNode2;
+		}
+		return pNode1.aCount <= pNode2.aCount ? pNode1 : pNode2;
+	}
+
+	/*
+	 * Shrinks the bounds of pNode and its ancestors after a removal. The nodes left with
+	 * too few children are removed, and the entries below them are inserted again.
+	 */
+	private void condense(Node pNode)
+	{
+		List<Entry> orphans = new ArrayList<>();
+		Node node = pNode;
+		while( node.aParent != null )
+		{
+			Node parent = node.aParent;
+			if( node.aCount < MIN_CHILDREN )
+			{
+				parent.remove(node);
+				collectEntries(node, orphans);
+			}
+			else
+			{
+				node.fit();
+			}
+			node = parent;
+		}
+		node.fit();
+		while( !aRoot.aLeaf && aRoot.aCount == 1 )
+		{
+			aRoot = (Node) aRoot.aChildren[0];
+			aRoot.aParent = null;
+		}
+		if( aRoot.aCount == 0 )
+		{
+			aRoot = new Node(true);
+		}
+		for( Entry orphan : orphans )
+		{
+			insert(orphan);
+		}
+	}
+
+	private static void collectEntries(Node pNode, List<Entry> pEntries)
+	{
+		for( int i = 0; i < pNode.aCount; i++ )
+		{
+			if( pNode.aLeaf )
+			{
+				pEntries.add((Entry) pNode.aChildren[i]);
+			}
+			else
+			{
+				collectEntries((Node) pNode.aChildren[i], pEntries);
+			}
+		}
+	}
+
+	/*
+	 * A rectangle in the tree, stored as its corners so that the tree can be
+	 * searched and updated without creating rectangles.
+	 */
+	private abstract static class Box
+	{
+		int aMinX;
+		int aMinY;
+		int aMaxX;
+		int aMaxY;
+		Node aParent;
+
+		void set(int pMinX, int pMinY, int pMaxX, int pMaxY)
+		{
+			aMinX = pMinX;
+			aMinY = pMinY;
+			aMaxX = pMaxX;
+			aMaxY = pMaxY;
+		}
+
+		void set(Box pBox)
+		{
+			set(pBox.aMinX, pBox.aMinY, pBox.aMaxX, pBox.aMaxY);
+		}
+
+		void include(Box pBox)
+		{
+			set(Math.min(aMinX, pBox.aMinX), Math.min(aMinY, pBox.aMinY),
+					Math.max(aMaxX, pBox.aMaxX), Math.max(aMaxY, pBox.aMaxY));
+		}
+
+		boolean intersects(int pMinX, int pMinY, int pMaxX, int pMaxY)
+		{
+			return aMinX <= pMaxX && pMinX <= aMaxX && aMinY <= pMaxY && pMinY <= aMaxY;
+		}
+
+		long area()
+		{
+			return (long) (aMaxX - aMinX) * (aMaxY - aMinY);
+		}
+
+		/*
+		 * The area that this box would gain by including pBox.
+		 */
+		long enlargement(Box pBox)
+		{
+			long width = Math.max(aMaxX, pBox.aMaxX) - (long) Math.min(aMinX, pBox.aMinX);
+			long height = Math.max(aMaxY, pBox.aMaxY) - (long) Math.min(aMinY, pBox.aMinY);
+			return width * height - area();
+		}
+	}
+
+	private static final class Entry extends Box
+	{
+		final Object aItem;
+
+		Entry(Object pItem)
+		{
+			aItem = pItem;
+		}
+	}
+
+	private static final class Node extends Box
+	{
+		final boolean aLeaf;
+		final Box[] aChildren = new Box[MAX_CHILDREN + 1];
+		int aCount = 0;
+
+		Node(boolean pLeaf)
+		{
+			aLeaf = pLeaf;
+		}
+
+		void add(Box pChild)
+		{
+			aChildren[aCount++] = pChild;
+			pChild.aParent = this;
+		}
+
+		void remove(Box pChild)
+		{
+			for( int i = 0; i < aCount; i++ )
+			{
+				if( aChildren[i] == pChild )
+				{
+					aChildren[i] = aChildren[--aCount];
+					aChildren[aCount] = null;
+					pChild.aParent = null;
+					return;
+				}
+			}
+			assert false;
+		}
+
+		void clear()
+		{
+			for( int i = 0; i < aCount; i++ )
+			{
+				aChildren[i] = null;
+			}
+			aCount = 0;
+		}
+
+		/*
+		 * Sets the bounds of this node to those of its children.
+		 */
+		void fit()
+		{
+			if( aCount == 0 )
+			{
+				set(0, 0, 0, 0);
+				return;
+			}
+			set(aChildren[0]);
+			for( int i = 1; i < aCount; i++ )
+			{
+				include(aChildren[i]);
+			}
+		}
+	}
+}
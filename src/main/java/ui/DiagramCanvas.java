@@ -1,7 +1,12 @@
 package ui;
 
+import java.util.Optional;
+import java.util.logging.Logger;
+
 import diagram.Diagram;
+import diagram.Element;
 import geom.Dimension;
+import geom.Line;
 import geom.Rectangle;
 import utils.UserPreferences;
 import utils.UserPreferences.booleanPreference;
@@ -17,7 +22,14 @@ import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.paint.Color;
 
 /**
- * A canvas on which to view diagrams.
+ * A canvas on which to view diagrams. After a change, only the part of the canvas 
+ * in which the drawing may have changed is painted again. This part is found from
+ * the damaged area collected by the viewer of the diagram, and from the area of 
+ * the selection handles, rubberband and lasso before and after the change.
+ * 
+ * The size of each painted area and the time spent painting it are logged at 
+ * level FINE. This time covers computing and recording the drawing operations
+ * of the canvas, which JavaFX then renders on the next pulse.
  */
 public class DiagramCanvas extends Canvas implements SelectionObserver, booleanPreferenceChangeHandler, IntegerPreferenceChangeHandler
 {	
@@ -26,9 +38,16 @@ public class DiagramCanvas extends Canvas implements SelectionObserver, booleanP
 	 * is automatically increased to accommodate a diagram larger than the 
 	 * preferred size. */
 	private static final int DIMENSION_BUFFER = 20;
+	/* The number of pixels beyond their bounds at which elements, their shadow
+	 * and their selection handles can be drawn. */
+	private static final int DAMAGE_MARGIN = 8;
+	private static final Logger LOGGER = Logger.getLogger(DiagramCanvas.class.getName());
 	
 	private final Diagram aDiagram;
 	private DiagramCanvasController aController;
+	private Optional<Rectangle> aVisibleArea = Optional.empty();
+	// The area of the selection handles, rubberband and lasso when the canvas was last painted
+	private Optional<Rectangle> aOverlayArea = Optional.empty();
 	
 	/**
 	 * Constructs the canvas, assigns the diagram to it.
@@ -72,29 +91,126 @@ public class DiagramCanvas extends Canvas implements SelectionObserver, booleanP
 	}
 	
 	/**
-	 * Paints the panel and all the graph elements in aDiagramView.
+	 * Sets the part of the canvas that can be seen, and repaints it. Only this 
+	 * part is painted from then on, so it must be set again whenever it changes.
+	 * 
+	 * @param pVisibleArea The visible part of the canvas.
+	 * @pre pVisibleArea != null
+	 */
+	public void setVisibleArea(Rectangle pVisibleArea)
+	{
+		assert pVisibleArea != null;
+		if( !aVisibleArea.equals(Optional.of(pVisibleArea)) )
+		{
+			aVisibleArea = Optional.of(pVisibleArea);
+			paintPanel();
+		}
+	}
+	
+	/**
+	 * Paints the visible part of the panel and the graph elements in it,
+	 * or the entire panel if the visible part was never set.
 	 * Called after the panel is resized.
 	 */
 	public void paintPanel()
 	{
+		aController.synchronizeSelectionModel();
+		// Everything is painted, so the changes made so far are painted as well
+		aDiagram.getDiagramViewer().takeDamagedArea(aDiagram);
+		aOverlayArea = overlayArea();
+		paint(paintableArea());
+	}
+	
+	/**
+	 * Paints the part of the panel in which the drawing may have changed since it
+	 * was last painted, because elements were added, removed, changed or placed on 
+	 * top, or because the selection, the rubberband or the lasso changed.
+	 */
+	public void repaint()
+	{
+		aController.synchronizeSelectionModel();
+		Optional<Rectangle> overlayArea = overlayArea();
+		Optional<Rectangle> damagedArea = union(union(aDiagram.getDiagramViewer().takeDamagedArea(aDiagram), 
+				aOverlayArea), overlayArea);
+		aOverlayArea = overlayArea;
+		Rectangle paintableArea = paintableArea();
+		damagedArea.map(area -> area.expanded(DAMAGE_MARGIN))
+			.filter(paintableArea::intersects)
+			.ifPresent(area -> paint(area.intersection(paintableArea)));
+	}
+	
+	/*
+	 * Paints the part of the canvas in pArea, and nothing outside of it. The elements
+	 * are looked for in a larger area, as they can be drawn beyond their bounds.
+	 */
+	private void paint(Rectangle pArea)
+	{
+		long start = System.nanoTime();
 		GraphicsContext context = getGraphicsContext2D();
+		context.save();
+		context.beginPath();
+		context.rect(pArea.getX(), pArea.getY(), pArea.getWidth(), pArea.getHeight());
+		context.clip();
 		context.setFill(Color.WHITE); 
-		context.fillRect(0, 0, getWidth(), getHeight());
+		context.fillRect(pArea.getX(), pArea.getY(), pArea.getWidth(), pArea.getHeight());
 		if(UserPreferences.instance().getboolean(booleanPreference.showGrid)) 
 		{
-			Grid.draw(context, new Rectangle(0, 0, (int) getWidth(), (int) getHeight()));
+			Grid.draw(context, pArea);
+		}
+		Rectangle drawnArea = pArea.expanded(DAMAGE_MARGIN);
+		aDiagram.getDiagramViewer().draw(aDiagram, context, drawnArea);
+		for( Element selected : aController.getSelectionModel() )
+		{
+			if( ViewerUtilities.getBounds(selected).intersects(drawnArea) )
+			{
+				ViewerUtilities.drawSelectionHandles(selected, context);
+			}
 		}
-		aDiagram.getDiagramViewer().draw(aDiagram, context);
-		aController.synchronizeSelectionModel();
-		aController.getSelectionModel().forEach( selected -> ViewerUtilities.drawSelectionHandles(selected, context));
 		aController.getSelectionModel().getRubberband().ifPresent( rubberband -> ToolGraphics.drawRubberband(context, rubberband));
 		aController.getSelectionModel().getLasso().ifPresent( lasso -> ToolGraphics.drawLasso(context, lasso));
+		context.restore();
+		long elapsed = System.nanoTime() - start;
+		LOGGER.fine(() -> String.format("Painted %dx%d pixels in %.2f ms", 
+				pArea.getWidth(), pArea.getHeight(), elapsed / 1e6));
+	}
+	
+	/*
+	 * The visible part of the canvas, or the entire canvas if the visible part was never set.
+	 */
+	private Rectangle paintableArea()
+	{
+		return aVisibleArea.orElseGet(() -> new Rectangle(0, 0, (int) getWidth(), (int) getHeight()));
+	}
+	
+	/*
+	 * The area of the selection handles, the rubberband and the lasso, without the 
+	 * margin around them.
+	 */
+	private Optional<Rectangle> overlayArea()
+	{
+		SelectionModel selectionModel = aController.getSelectionModel();
+		Optional<Rectangle> area = Optional.empty();
+		if( !selectionModel.isEmpty() )
+		{
+			area = Optional.of(selectionModel.getSelectionBounds());
+		}
+		area = union(area, selectionModel.getRubberband().map(Line::spanning));
+		return union(area, selectionModel.getLasso());
+	}
+	
+	private static Optional<Rectangle> union(Optional<Rectangle> pArea1, Optional<Rectangle> pArea2)
+	{
+		if( pArea1.isEmpty() )
+		{
+			return pArea2;
+		}
+		return Optional.of(pArea2.map(pArea1.get()::add).orElse(pArea1.get()));
 	}
 	
 	@Override
 	public void selectionModelChanged()
 	{
-		paintPanel();		
+		repaint();
 	}
 
 	@Override
@@ -111,6 +227,7 @@ public class DiagramCanvas extends Canvas implements SelectionObserver, booleanP
 	{
 		if ( pPreference == IntegerPreference.fontSize )
 		{
+			aDiagram.getDiagramViewer().boundsChanged();
 			paintPanel();
 		}
 
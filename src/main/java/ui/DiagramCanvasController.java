@@ -26,6 +26,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Consumer;
 import diagram.manager.DiagramBuilder;
 import utils.Clipboard;
 import utils.MoveTracker;
@@ -36,6 +37,7 @@ import diagram.Relationship;
 import diagram.NamedElement;
 import diagram.manager.CompoundOperation;
 import diagram.manager.DiagramBuilder;
+import diagram.manager.DiagramOperation;
 import diagram.manager.DiagramOperationProcessor;
 import diagram.Package;
 import geom.Dimension;
@@ -122,6 +124,33 @@ public class DiagramCanvasController
 		aProcessor.diagramSaved();
 	}
 	
+	/**
+	 * @return A function that notifies the controller that its diagram has been 
+	 *     saved in the state it has now.
+	 */
+	public Runnable savePoint()
+	{
+		return aProcessor.savePoint();
+	}
+	
+	/**
+	 * Notify the controller that its diagram has changes that were 
+	 * recovered rather than made through this controller.
+	 */
+	public void diagramRecovered()
+	{
+		aProcessor.diagramRecovered();
+	}
+	
+	/**
+	 * @param pListener A listener to notify of each operation that changes the diagram.
+	 * @pre pListener != null
+	 */
+	public void addOperationListener(Consumer<DiagramOperation> pListener)
+	{
+		aProcessor.addOperationListener(pListener);
+	}
+	
 	/**
 	 * @return True if the diagram controlled by this controller 
 	 *     has unsaved changes.
@@ -140,7 +169,7 @@ public class DiagramCanvasController
 		if( edited.isPresent() )
 		{
 			PropertyEditorDialog dialog = new PropertyEditorDialog((Stage)aCanvas.getScene().getWindow(), 
-					edited.get(), ()-> aCanvas.paintPanel());
+					edited.get(), ()-> aCanvas.repaint());
 			
 			CompoundOperation operation = dialog.show();
 			if(!operation.isEmpty())
@@ -173,7 +202,7 @@ public class DiagramCanvasController
 		}
 		aSelectionModel.setSelectionTo(newElementList);
 		Clipboard.instance().copy(newElements);
-		aCanvas.paintPanel();
+		aCanvas.repaint();
 	}
 	
 	/**
@@ -201,7 +230,7 @@ public class DiagramCanvasController
 		if( aProcessor.canUndo() )
 		{
 			aProcessor.undoLastExecutedOperation();
-			aCanvas.paintPanel();
+			aCanvas.repaint();
 		}
 	}
 	
@@ -215,7 +244,7 @@ public class DiagramCanvasController
 		if( aProcessor.canRedo() )
 		{
 			aProcessor.redoLastUndoneOperation();
-			aCanvas.paintPanel();
+			aCanvas.repaint();
 		}
 	}
 	
@@ -234,7 +263,7 @@ public class DiagramCanvasController
 	{
 		aProcessor.executeNewOperation(aDiagramBuilder.createRemoveElementsOperation(aSelectionModel));
 		aSelectionModel.clearSelection();
-		aCanvas.paintPanel();
+		aCanvas.repaint();
 	}
 	
 	/**
@@ -373,7 +402,7 @@ public class DiagramCanvasController
 			aProcessor.executeNewOperation(aDiagramBuilder.createAddNamedElementOperation(newNamedElement, new Point(point.getX(), point.getY())));
 			aSelectionModel.set(newNamedElement);
 			aCanvas.getDiagram().placeOnTop(newNamedElement);
-			aCanvas.paintPanel();
+			aCanvas.repaint();
 			if( UserPreferences.instance().getboolean(booleanPreference.autoEditNamedElement))
 			{
 				editSelected();
@@ -420,7 +449,7 @@ public class DiagramCanvasController
 		Point point = getMousePoint(pEvent);
 		aLastMousePoint = new Point(point.getX(), point.getY()); 
 		aMouseDownPoint = aLastMousePoint;
-		aCanvas.paintPanel();
+		aCanvas.repaint();
 	}
 
 	private void mouseReleased(MouseEvent pEvent)
@@ -459,7 +488,7 @@ public class DiagramCanvasController
 			{
 				selected.translate(dx, dy);
 			}
-			aCanvas.paintPanel();
+			aCanvas.repaint();
 		}
 	}
 	
@@ -474,7 +503,7 @@ public class DiagramCanvasController
 				aProcessor.executeNewOperation(aDiagramBuilder.createAddRelationshipOperation(newRelationship, 
 						aMouseDownPoint, pMousePoint));
 				aSelectionModel.set(newRelationship);
-				aCanvas.paintPanel();
+				aCanvas.repaint();
 			}
 		}
 		aSelectionModel.deactivateRubberband();
@@ -487,7 +516,7 @@ public class DiagramCanvasController
 		{
 			aProcessor.storeAlreadyExecutedOperation(operation);
 		}
-		aCanvas.paintPanel();
+		aCanvas.repaint();
 	}
 
 	private void mouseDragged(MouseEvent pEvent)
@@ -551,12 +580,17 @@ public class DiagramCanvasController
 		dx = Math.min(dx, (int) aCanvas.getWidth() - bounds.getMaxX());
 		dy = Math.min(dy, (int) aCanvas.getHeight() - bounds.getMaxY());
 
-		for(NamedElement selected : aSelectionModel.getSelectedNamedElements())
+		// Iterates over the selection itself rather than a list of its NamedElements, 
+		// since this is done on every mouse event of a drag
+		for(Element selected : aSelectionModel)
 		{
-			selected.translate(dx, dy);
+			if( selected instanceof NamedElement )
+			{
+				((NamedElement) selected).translate(dx, dy);
+			}
 		}
 		aLastMousePoint = pMousePoint; 
-		aCanvas.paintPanel();
+		aCanvas.repaint();
 	}
 	
 	/**
@@ -575,6 +609,6 @@ public class DiagramCanvasController
 		}
 		// Place the modified NamedElements on the top
 		selectedNamedElements.forEach(NamedElement -> aCanvas.getDiagram().placeOnTop(NamedElement));
-		aCanvas.paintPanel();
+		aCanvas.repaint();
 	}
 }
@@ -9,7 +9,9 @@ import java.util.Optional;
 
 import utils.UserPreferences;
 import diagram.Diagram;
+import file.DiagramJournal;
 import geom.Point;
+import geom.Rectangle;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.geometry.Bounds;
@@ -28,11 +30,15 @@ public class DiagramTab extends Tab implements MouseDraggedGestureHandler, KeyEv
 	private static final double SCALE_MULTIPLIER = 1.25;
 	private static final double ZOOM_MIN = DEFAULT_SCALE / (SCALE_MULTIPLIER * SCALE_MULTIPLIER);
 	private static final double ZOOM_MAX = DEFAULT_SCALE * SCALE_MULTIPLIER * SCALE_MULTIPLIER;
+	/* The number of pixels added around the visible area of the canvas, which
+	 * accounts for the border around the canvas in the scroll pane. */
+	private static final int VISIBLE_AREA_MARGIN = 20;
 	
 	private final DoubleProperty aZoom;
 	private final Diagram aDiagram;
 	private DiagramCanvas aDiagramCanvas;
 	private final DiagramCanvasController aDiagramCanvasController;
+	private final DiagramJournal aJournal;
 	private Optional<File> aFile = Optional.empty(); // The file associated with this diagram
 	
 	/**
@@ -41,7 +47,19 @@ public class DiagramTab extends Tab implements MouseDraggedGestureHandler, KeyEv
 	 */
 	public DiagramTab(Diagram pDiagram)
 	{
+		this(new DiagramJournal(pDiagram));
+	}
+	
+	/**
+     * Constructs a diagram tab for the diagram of pJournal, whose
+     * operations are recorded in pJournal.
+     * @param pJournal The journal of the initial diagram
+	 */
+	public DiagramTab(DiagramJournal pJournal)
+	{
+		Diagram pDiagram = pJournal.getDiagram();
 		aDiagram = pDiagram;
+		aJournal = pJournal;
 		DiagramTabToolBar sideBar = new DiagramTabToolBar(pDiagram);
 		UserPreferences.instance().addbooleanPreferenceChangeHandler(sideBar);
 		aDiagramCanvas = new DiagramCanvas(pDiagram);
@@ -49,7 +67,10 @@ public class DiagramTab extends Tab implements MouseDraggedGestureHandler, KeyEv
 		UserPreferences.instance().addIntegerPreferenceChangeHandler(aDiagramCanvas);
 		aDiagramCanvasController = new DiagramCanvasController(aDiagramCanvas, sideBar, this);
 		aDiagramCanvas.setController(aDiagramCanvasController);
-		aDiagramCanvas.paintPanel();
+		aDiagramCanvasController.addOperationListener(aJournal::record);
+		// Nothing is visible until the tab is laid out. Painting the whole canvas would
+		// load the packages of a diagram read as it is accessed, even if they are never seen.
+		aDiagramCanvas.setVisibleArea(new Rectangle(0, 0, 0, 0));
 		
 		BorderPane layout = new BorderPane();
 		layout.setRight(sideBar);
@@ -82,6 +103,12 @@ public class DiagramTab extends Tab implements MouseDraggedGestureHandler, KeyEv
 		scroll.setFitToHeight(true);
 		layout.setCenter(scroll);
 		
+		// Only the visible area of the canvas is painted, so it is painted again when it changes
+		scroll.hvalueProperty().addListener(pObservable -> updateVisibleArea());
+		scroll.vvalueProperty().addListener(pObservable -> updateVisibleArea());
+		scroll.viewportBoundsProperty().addListener(pObservable -> updateVisibleArea());
+		aZoom.addListener(pObservable -> updateVisibleArea());
+		
 		setTitle();
 		setContent(layout);
 
@@ -107,6 +134,7 @@ public class DiagramTab extends Tab implements MouseDraggedGestureHandler, KeyEv
 		UserPreferences.instance().removebooleanPreferenceChangeHandler(aDiagramCanvas);
 		UserPreferences.instance().removebooleanPreferenceChangeHandler((DiagramTabToolBar)((BorderPane)getContent()).getRight());
 		UserPreferences.instance().removeIntegerPreferenceChangeHandler(aDiagramCanvas);
+		aJournal.close();
 	}
 
 	/**
@@ -117,6 +145,14 @@ public class DiagramTab extends Tab implements MouseDraggedGestureHandler, KeyEv
 		return aDiagram;
 	}
 	
+	/**
+	 * @return The journal of the operations on the diagram of this tab.
+	 */
+	public DiagramJournal getJournal()
+	{
+		return aJournal;
+	}
+	
 	/**
 	 * Copy the current selection to the clipboard.
 	 */
@@ -231,6 +267,24 @@ public class DiagramTab extends Tab implements MouseDraggedGestureHandler, KeyEv
 		aDiagramCanvasController.diagramSaved();
 	}
 	
+	/**
+	 * @return A function that notifies the tab that its diagram has been 
+	 *     saved in the state it has now.
+	 */
+	public Runnable savePoint()
+	{
+		return aDiagramCanvasController.savePoint();
+	}
+	
+	/**
+	 * Notify the tab that its diagram has changes that were recovered
+	 * from its journal.
+	 */
+	public void diagramRecovered()
+	{
+		aDiagramCanvasController.diagramRecovered();
+	}
+	
 	/**
 	 * @return True if the diagram in this tab
 	 *     has unsaved changes.
@@ -268,6 +322,25 @@ public class DiagramTab extends Tab implements MouseDraggedGestureHandler, KeyEv
 		((ScrollPane)((BorderPane)getContent()).getCenter()).setVvalue(projection.getAdjustedVValueToRevealY(pTo.getY()));
 	}
 	
+	/*
+	 * Tells the canvas which of its parts is visible in the scroll pane, in the 
+	 * coordinates of the canvas. The viewport covers fewer pixels of the canvas
+	 * when the canvas is zoomed in, and more when it is zoomed out.
+	 */
+	private void updateVisibleArea()
+	{
+		ScrollPane scrollPane = (ScrollPane)((BorderPane)getContent()).getCenter();
+		Bounds bounds = scrollPane.getViewportBounds();
+		int viewportWidth = Math.min((int) Math.ceil(bounds.getWidth() / aZoom.get()), (int) aDiagramCanvas.getWidth());
+		int viewportHeight = Math.min((int) Math.ceil(bounds.getHeight() / aZoom.get()), (int) aDiagramCanvas.getHeight());
+		Rectangle visibleArea = new ViewportProjection(viewportWidth, viewportHeight, 
+				(int) aDiagramCanvas.getWidth(), (int) aDiagramCanvas.getHeight(), 
+				scrollPane.getHvalue(), scrollPane.getVvalue()).getVisibleArea();
+		aDiagramCanvas.setVisibleArea(new Rectangle(visibleArea.getX() - VISIBLE_AREA_MARGIN, 
+				visibleArea.getY() - VISIBLE_AREA_MARGIN, 
+				visibleArea.getWidth() + 2 * VISIBLE_AREA_MARGIN, visibleArea.getHeight() + 2 * VISIBLE_AREA_MARGIN));
+	}
+	
 	private ViewportProjection getViewportProjection()
 	{
 		ScrollPane scrollPane = (ScrollPane)((BorderPane)getContent()).getCenter();
@@ -31,9 +31,11 @@ import utils.UserPreferences.booleanPreference;
 import diagram.Diagram;
 import ui.tips.TipDialog;
 import file.DeserializationException;
+import file.DiagramJournal;
 import file.PersistenceService;
 import file.VersionedDiagram;
 import viewers.ImageCreator;
+import javafx.application.Platform;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
@@ -62,6 +64,7 @@ public class EditorFrame extends BorderPane
 	private static final String KEY_LAST_SAVEAS_DIR = "lastSaveAsDir";
 	private static final String KEY_LAST_IMAGE_FORMAT = "lastImageFormat";
 	private static final String USER_MANUAL_URL = "https://www.jetuml.org/docs/user-guide.html";
+	private static final long MAPPED_FILE_SIZE = 64L * 1024 * 1024;
 	
 	private static final String[] IMAGE_FORMATS = validFormats("png", "jpg", "gif", "bmp");
 	
@@ -173,6 +176,10 @@ public class EditorFrame extends BorderPane
 				factory.createMenuItem("file.close", true, event -> close()),
 				factory.createMenuItem("file.save", true, event -> save()),
 				factory.createMenuItem("file.save_as", true, event -> saveAs()),
+				factory.createCheckMenuItem("file.incremental_save", false, 
+						UserPreferences.instance().getboolean(booleanPreference.incrementalSave),
+						event -> UserPreferences.instance().setboolean(booleanPreference.incrementalSave, 
+								((CheckMenuItem) event.getSource()).isSelected())),
 				factory.createMenuItem("file.duplicate", true, event -> duplicate()),
 				factory.createMenuItem("file.export_image", true, event -> exportImage()),
 				factory.createMenuItem("file.copy_to_clipboard", true, event -> copyToClipboard()),
@@ -274,15 +281,35 @@ public class EditorFrame extends BorderPane
 		
 		try 
 		{
-			VersionedDiagram versionedDiagram = PersistenceService.read(pFile); 
-			DiagramTab frame = new DiagramTab(versionedDiagram.diagram());
+			Optional<DiagramJournal> recovered = recover(pFile);
+			if( recovered.isPresent() )
+			{
+				DiagramTab frame = new DiagramTab(recovered.get());
+				frame.diagramRecovered();
+				frame.setFile(pFile.getAbsoluteFile());
+				addRecentFile(pFile.getPath());
+				insertGraphFrameIntoTabbedPane(frame);
+				String message = String.format(RESOURCES.getString("warning.recovered.message"), pFile.getName());
+				Alert alert = new Alert(AlertType.WARNING, message, ButtonType.OK);
+				alert.setTitle(RESOURCES.getString("warning.recovered.title"));
+				alert.initOwner(aMainStage);
+				alert.showAndWait();
+				return;
+			}
+			// Very large binary diagrams are loaded as they are displayed, and journaled against their file
+			boolean mapped = FileExtensions.isBinary(pFile) && pFile.length() >= MAPPED_FILE_SIZE;
+			Optional<VersionedDiagram> versionedDiagram = mapped ? 
+					Optional.empty() : Optional.of(PersistenceService.read(pFile));
+			DiagramTab frame = new DiagramTab(versionedDiagram.isPresent() ? 
+					DiagramJournal.start(versionedDiagram.get().diagram(), pFile.getAbsoluteFile()) : 
+					DiagramJournal.startMapped(pFile.getAbsoluteFile()));
 			frame.setFile(pFile.getAbsoluteFile());
 			addRecentFile(pFile.getPath());
 			insertGraphFrameIntoTabbedPane(frame);
-			if( versionedDiagram.wasMigrated())
+			if( versionedDiagram.isPresent() && versionedDiagram.get().wasMigrated())
 			{
 				String message = String.format(RESOURCES.getString("warning.version.message"), 
-						versionedDiagram.version().toString());
+						versionedDiagram.get().version().toString());
 				Alert alert = new Alert(AlertType.WARNING, message, ButtonType.OK);
 				alert.setTitle(RESOURCES.getString("warning.version.title"));
 				alert.initOwner(aMainStage);
@@ -297,6 +324,27 @@ public class EditorFrame extends BorderPane
 		}
 	}
 	
+	/*
+	 * Returns the diagram of pFile with the changes that were recorded in its 
+	 * journal but not saved, or empty if there are none.
+	 */
+	private static Optional<DiagramJournal> recover(File pFile)
+	{
+		if( !DiagramJournal.hasJournal(pFile) )
+		{
+			return Optional.empty();
+		}
+		try
+		{
+			return Optional.of(DiagramJournal.recover(pFile.getAbsoluteFile()));
+		}
+		catch(DeserializationException exception)
+		{
+			// The journal does not apply to the current content of pFile
+			return Optional.empty();
+		}
+	}
+	
 	private List<NamedHandler> getOpenFileHandlers()
 	{
 		List<NamedHandler> result = new ArrayList<>();
@@ -353,7 +401,7 @@ public class EditorFrame extends BorderPane
 	{
 		FileChooser fileChooser = new FileChooser();
 		fileChooser.setInitialDirectory(aRecentFiles.getMostRecentDirectory());
-		fileChooser.getExtensionFilters().add(FileExtensions.getFilter());
+		fileChooser.getExtensionFilters().addAll(FileExtensions.getFilter(), FileExtensions.getBinaryFilter());
 
 		File selectedFile = fileChooser.showOpenDialog(aMainStage);
 		if(selectedFile != null) 
@@ -455,26 +503,40 @@ public class EditorFrame extends BorderPane
 			saveAs();
 			return;
 		}
-		try 
-		{
-			PersistenceService.save(diagramTab.getDiagram(), file.get());
-			diagramTab.diagramSaved();
-		} 
-		catch(IOException exception) 
-		{
-			Alert alert = new Alert(AlertType.ERROR, RESOURCES.getString("error.save_file"), ButtonType.OK);
-			alert.initOwner(aMainStage);
-			alert.showAndWait();
-		}
+		saveInBackground(diagramTab, file.get(), () -> {});
+	}
+	
+	/*
+	 * Saves the diagram of pDiagramTab in pFile without blocking the user interface. 
+	 * Once the file has been written, the tab is notified that its diagram was saved 
+	 * in the state it had when this method was called, and pOnSaved is run.
+	 */
+	private void saveInBackground(DiagramTab pDiagramTab, File pFile, Runnable pOnSaved)
+	{
+		Runnable savePoint = pDiagramTab.savePoint();
+		pDiagramTab.getJournal().save(pFile).whenComplete((pResult, pException) -> 
+			Platform.runLater(() -> 
+			{
+				if( pException == null )
+				{
+					savePoint.run();
+					pOnSaved.run();
+				}
+				else
+				{
+					Alert alert = new Alert(AlertType.ERROR, RESOURCES.getString("error.save_file"), ButtonType.OK);
+					alert.initOwner(aMainStage);
+					alert.showAndWait();
+				}
+			}));
 	}
 
 	private void saveAs() 
 	{
 		DiagramTab diagramTab = getSelectedDiagramTab();
-		Diagram diagram = diagramTab.getDiagram();
 
 		FileChooser fileChooser = new FileChooser();
-		fileChooser.getExtensionFilters().add(FileExtensions.getFilter());
+		fileChooser.getExtensionFilters().addAll(FileExtensions.getFilter(), FileExtensions.getBinaryFilter());
 		fileChooser.setSelectedExtensionFilter(FileExtensions.getFilter());
 
 		if(diagramTab.getFile().isPresent()) 
@@ -488,28 +550,20 @@ public class EditorFrame extends BorderPane
 			fileChooser.setInitialFileName("");
 		}
 
-		try 
+		File result = fileChooser.showSaveDialog(aMainStage);
+		if( result != null )
 		{
-			File result = fileChooser.showSaveDialog(aMainStage);
-			if( result != null )
+			saveInBackground(diagramTab, result, () ->
 			{
-				PersistenceService.save(diagram, result);
 				addRecentFile(result.getAbsolutePath());
 				diagramTab.setFile(result);
 				diagramTab.setText(diagramTab.getFile().get().getName());
-				diagramTab.diagramSaved();
 				File dir = result.getParentFile();
 				if( dir != null )
 				{
 					setLastDir(KEY_LAST_SAVEAS_DIR, dir);
 				}
-			}
-		} 
-		catch (IOException exception) 
-		{
-			Alert alert = new Alert(AlertType.ERROR, RESOURCES.getString("error.save_file"), ButtonType.OK);
-			alert.initOwner(aMainStage);
-			alert.showAndWait();
+			});
 		}
 	}
 
@@ -654,14 +708,26 @@ public class EditorFrame extends BorderPane
 			if (alert.getResult() == ButtonType.YES) 
 			{
 				Preferences.userNodeForPackage(MetaBuilder.class).put("recent", aRecentFiles.serialize());
+				closeDiagramTabs();
 				System.exit(0);
 			}
 		}
 		else 
 		{
 			Preferences.userNodeForPackage(MetaBuilder.class).put("recent", aRecentFiles.serialize());
+			closeDiagramTabs();
 			System.exit(0);
 		}
+	}
+	
+	/*
+	 * Closes the diagram tabs, which discards the journals of their unsaved changes.
+	 */
+	private void closeDiagramTabs()
+	{
+		tabs().stream()
+			.filter( tab -> tab instanceof DiagramTab )
+			.forEach( tab -> ((DiagramTab) tab).close());
 	}		
 	
 	private List<Tab> tabs()
@@ -88,6 +88,7 @@ public class PropertyEditorDialog
 			PropertyChangeTracker tracker = new PropertyChangeTracker(getPropertySheet().getElement());
 			tracker.startTracking();
 			aStage.showAndWait();
+			getPropertySheet().getElement().internProperties();
 			return tracker.stopTracking();
 		}
 		else
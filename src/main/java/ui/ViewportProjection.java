@@ -20,6 +20,8 @@
  *******************************************************************************/
 package ui;
 
+import geom.Rectangle;
+
 /**
  * An instance of this class can be used to make viewport projection
  * computations to compare visible areas of a scrollpane viewport with an
@@ -120,6 +122,14 @@ public final class ViewportProjection
 		return Math.round((float) hiddenBottom); 
 	}
 	
+	/**
+	 * @return The part of the canvas that is visible in the viewport.
+	 */
+	public Rectangle getVisibleArea()
+	{
+		return new Rectangle(getHiddenLeft(), getHiddenTop(), aViewportWidth, aViewportHeight);
+	}
+	
 	private int hiddenHeight()
 	{
 		return aCanvasHeight - aViewportHeight;
@@ -123,6 +123,7 @@ public final class Clipboard
 //					continue;
 //				}
 				NamedElement cloned = (NamedElement) element.clone();
+				clearPersistentIds(cloned);
 				result.add(cloned);
 				reassignRelationships(pRelationships, (NamedElement)element, cloned);
 			}
@@ -130,6 +131,21 @@ public final class Clipboard
 		return result;
 	}
 	
+	/*
+	 * Pasted elements are new elements, so they get their own identifiers when saved.
+	 */
+	private static void clearPersistentIds(NamedElement pNamedElement)
+	{
+		pNamedElement.setPersistentId(NamedElement.NO_PERSISTENT_ID);
+		if( pNamedElement instanceof Package )
+		{
+			for( NamedElement child : ((Package)pNamedElement).getChildren() )
+			{
+				clearPersistentIds(child);
+			}
+		}
+	}
+	
 	private void removeDanglingRelationships()
 	{
 		List<Relationship> toDelete = new ArrayList<>();
@@ -1,6 +1,7 @@
 package utils;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import diagram.Element;
@@ -15,7 +16,8 @@ import diagram.manager.SimpleOperation;
 public class PropertyChangeTracker 
 {
 	private HashMap<String, Property> oldProperties = new HashMap<>();
-	private HashMap<String, Property> properties = new HashMap<>();
+	private Map<String, Property> properties = new HashMap<>();
+	private final Element aEdited;
 	
 	/**
 	 * Creates a new tracker for pEdited.
@@ -26,6 +28,7 @@ public class PropertyChangeTracker
 	public PropertyChangeTracker(Element pEdited)
 	{
 		assert pEdited != null;
+		aEdited = pEdited;
 		properties = pEdited.getProperties();
 	}
 
@@ -58,7 +61,7 @@ public class PropertyChangeTracker
 				final Property oldValue = oldProperties.get(entry.getKey());
 				operation.add(new SimpleOperation(
 						()-> entry.setValue(newValue),
-						()-> entry.setValue(oldValue)));
+						()-> entry.setValue(oldValue), List.of(aEdited)));
 			}
 		}
 		return operation;
@@ -21,7 +21,7 @@ public final class UserPreferences
 	public enum booleanPreference
 	{	
 		showGrid(true), showToolHints(false), autoEditNamedElement(false), verboseToolTips(false),
-		showTips(true);
+		showTips(true), incrementalSave(false);
 		
 		private boolean aDefault;
 		
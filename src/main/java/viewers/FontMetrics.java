@@ -1,5 +1,8 @@
 package viewers;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import geom.Dimension;
 import javafx.geometry.Bounds;
 import javafx.scene.text.Font;
@@ -27,12 +30,28 @@ import javafx.scene.text.Text;
  * Hence, upon calling getHeight(), to get tight bounds, one should subtract
  * off the leading value (found by getting the max Y value of a one-lined text
  * box)
+ * 
+ * The leading is computed once, when the object is created, and the dimensions
+ * of the most recently measured strings are kept, as the same names and labels
+ * are measured every time the bounds of the elements that show them are 
+ * computed. Each object is for a single font, so a new one must be created 
+ * when the font changes.
  */
 public class FontMetrics 
 {
 	public static final int DEFAULT_FONT_SIZE = 12;
 	private static final String BLANK = "";
+	private static final int CACHE_CAPACITY = 4_096;
 	private Text aTextNamedElement;
+	private final double aLeading;
+	private final Map<String, Dimension> aDimensions = new LinkedHashMap<>(CACHE_CAPACITY, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Dimension> pEldest)
+		{
+			return size() > CACHE_CAPACITY;
+		}
+	};
 
 	/**
 	 * Creates a new FontMetrics object.
@@ -45,6 +64,8 @@ public class FontMetrics
 		
 		aTextNamedElement = new Text();
 		aTextNamedElement.setFont(pFont);
+		aTextNamedElement.setText(BLANK);
+		aLeading = aTextNamedElement.getLayoutBounds().getMaxY();
 	}
 
 	/**
@@ -56,10 +77,14 @@ public class FontMetrics
 	{
 		assert pString != null;
 		
-		aTextNamedElement.setText(pString);
-		Bounds bounds = aTextNamedElement.getLayoutBounds();
-		aTextNamedElement.setText(BLANK);
-		double leading = aTextNamedElement.getLayoutBounds().getMaxY();
-		return new Dimension((int) Math.round(bounds.getWidth()), (int) Math.round(bounds.getHeight() - leading));
+		Dimension dimension = aDimensions.get(pString);
+		if( dimension == null )
+		{
+			aTextNamedElement.setText(pString);
+			Bounds bounds = aTextNamedElement.getLayoutBounds();
+			dimension = new Dimension((int) Math.round(bounds.getWidth()), (int) Math.round(bounds.getHeight() - aLeading));
+			aDimensions.put(pString, dimension);
+		}
+		return dimension;
 	}
 } 
\ No newline at end of file
@@ -19,7 +19,8 @@ public final class Grid
 	private Grid() {}
 	
 	/**
-     * Draws this grid inside a rectangle.
+     * Draws this grid inside a rectangle. The lines are drawn at the
+     * multiples of the grid size, wherever the rectangle starts.
      * @param pGraphics the graphics context
      * @param pBounds the bounding rectangle
      */
@@ -31,11 +32,11 @@ public final class Grid
 		int y1 = pBounds.getY();
 		int x2 = pBounds.getMaxX();
 		int y2 = pBounds.getMaxY();
-		for(int x = x1; x < x2; x += GRID_SIZE)
+		for(int x = (int) (Math.ceil(x1 / GRID_SIZE) * GRID_SIZE); x < x2; x += GRID_SIZE)
 		{
 			ToolGraphics.strokeSharpLine(pGraphics, x, y1, x, y2);
 		}
-		for(int y = y1; y < y2; y += GRID_SIZE)
+		for(int y = (int) (Math.ceil(y1 / GRID_SIZE) * GRID_SIZE); y < y2; y += GRID_SIZE)
 		{
 			ToolGraphics.strokeSharpLine(pGraphics, x1, y, x2, y);
 		}
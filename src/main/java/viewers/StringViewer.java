@@ -136,6 +136,14 @@ public final class StringViewer
 				Math.round(dimension.height() + aVerticalPadding*2));
 	}
 
+	/**
+	 * @return The size of the font with which strings are measured and drawn.
+	 */
+	public static int getFontSize()
+	{
+		return CANVAS_FONT.fontSize();
+	}
+	
 	/**
 	 * Breaks up a string such that each multi-word line has at most
 	 * pWidth characters.
@@ -335,6 +343,7 @@ public final class StringViewer
 		{
 			aFont = Font.font("System", UserPreferences.instance().getInteger(IntegerPreference.fontSize));
 			aFontBold = Font.font(aFont.getFamily(), FontWeight.BOLD, aFont.getSize());
+			// New metrics also drop the dimensions measured with the previous font
 			aFontMetrics = new FontMetrics(aFont);
 			aFontBoldMetrics = new FontMetrics(aFontBold);
 		}
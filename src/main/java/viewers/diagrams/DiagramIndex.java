@@ -0,0 +1,346 @@
+package viewers.diagrams;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import diagram.Diagram;
+import diagram.DiagramListener;
+import diagram.Element;
+import diagram.NamedElement;
+import diagram.Relationship;
+import geom.Point;
+import geom.Rectangle;
+import geom.SpatialIndex;
+import viewers.namedelements.NamedElementViewerRegistry;
+import viewers.relationships.RelationshipViewerRegistry;
+
+/**
+ * Spatial indexes of the bounds of the root NamedElements and of the Relationships
+ * of a diagram, used to find the elements at a point without going through the
+ * whole diagram. The bounds of a package enclose its descendants, so the root
+ * NamedElements are enough to find the NamedElements at any depth.
+ *
+ * The index listens to its diagram and only notes which elements changed. Their
+ * bounds are computed again the next time the index is queried. A NamedElement
+ * that changes changes the bounds of its ancestors, and the path of the
+ * Relationships connected to it and its ancestors. The Relationships are spread
+ * along the sides of the NamedElements they are connected to, in the order of
+ * their other end, so the Relationships connected to the other end of these
+ * Relationships also change, as do the ones connected to the ends of a
+ * Relationship that is added, removed or changed.
+ *
+ * The bounds of the Relationships are recorded in them as they are computed. When
+ * the index is built, a Relationship whose known bounds still hold is indexed with
+ * them, unless the bounds of all the elements may have changed. The Relationships 
+ * of an area are loaded before the index is queried for them, in case the diagram
+ * only creates some of them when they are needed.
+ *
+ * The index also collects the area in which the drawing of the diagram changed,
+ * which is the union of the bounds that the changed elements had before and after
+ * they changed, so that only this area needs to be drawn again.
+ */
+final class DiagramIndex implements DiagramListener
+{
+	// The area damaged when the whole diagram may have changed, which covers the whole plane
+	private static final Rectangle EVERYWHERE = new Rectangle(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, 
+			Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+	private final Diagram aDiagram;
+	private final SpatialIndex<NamedElement> aNamedElements = new SpatialIndex<>();
+	private final SpatialIndex<Relationship> aRelationships = new SpatialIndex<>();
+	private Set<NamedElement> aChangedNamedElements = identitySet();
+	private Set<Relationship> aChangedRelationships = identitySet();
+	// The NamedElements whose connected Relationships must be indexed again
+	private Set<NamedElement> aChangedEnds = identitySet();
+	private Set<NamedElement> aPlacedOnTop = identitySet();
+	private boolean aReset = true;
+	// True if the known bounds of the Relationships cannot be used to build the index
+	private boolean aMeasureAll = false;
+	private Optional<Rectangle> aDamagedArea = Optional.empty();
+
+	/**
+	 * Creates an index of pDiagram, which is built the first time it is queried.
+	 *
+	 * @param pDiagram The diagram to index.
+	 * @pre pDiagram != null
+	 */
+	DiagramIndex(Diagram pDiagram)
+	{
+		assert pDiagram != null;
+		aDiagram = pDiagram;
+		aDiagram.addListener(this);
+	}
+
+	/**
+	 * @return The diagram of this index.
+	 */
+	Diagram getDiagram()
+	{
+		return aDiagram;
+	}
+
+	/**
+	 * Stops listening to the diagram.
+	 */
+	void dispose()
+	{
+		aDiagram.removeListener(this);
+	}
+
+	/**
+	 * Drops all the bounds, for instance because the font size changed.
+	 */
+	void invalidate()
+	{
+		aReset = true;
+		aMeasureAll = true;
+	}
+
+	/**
+	 * @param pPoint A point.
+	 * @return The root NamedElements whose bounds contain pPoint, in no particular order.
+	 */
+	List<NamedElement> namedElementsAt(Point pPoint)
+	{
+		update();
+		return aNamedElements.itemsAt(pPoint);
+	}
+
+	/**
+	 * @param pArea An area.
+	 * @return The root NamedElements whose bounds intersect pArea, in no particular order.
+	 */
+	List<NamedElement> namedElementsIntersecting(Rectangle pArea)
+	{
+		update();
+		return aNamedElements.itemsIntersecting(pArea);
+	}
+
+	/**
+	 * @param pArea An area.
+	 * @return The Relationships whose bounds intersect pArea, in no particular order.
+	 */
+	List<Relationship> relationshipsIntersecting(Rectangle pArea)
+	{
+		aDiagram.loadRelationships(pArea);
+		update();
+		return aRelationships.itemsIntersecting(pArea);
+	}
+
+	/**
+	 * Returns the area in which the drawing of the diagram may have changed since 
+	 * this method was last called, and starts collecting a new one.
+	 *
+	 * @return The damaged area, which covers the whole plane if the whole diagram
+	 *     may have changed, or Optional.empty() if nothing changed.
+	 */
+	Optional<Rectangle> takeDamagedArea()
+	{
+		update();
+		Optional<Rectangle> result = aDamagedArea;
+		aDamagedArea = Optional.empty();
+		return result;
+	}
+
+	@Override
+	public void elementAdded(Element pElement)
+	{
+		changed(pElement);
+	}
+
+	@Override
+	public void elementRemoved(Element pElement)
+	{
+		if( pElement instanceof Relationship )
+		{
+			Relationship relationship = (Relationship) pElement;
+			damage(aRelationships.getBounds(relationship));
+			aRelationships.remove(relationship);
+			aChangedEnds.add(relationship.getStart());
+			aChangedEnds.add(relationship.getEnd());
+		}
+		else
+		{
+			NamedElement namedElement = (NamedElement) pElement;
+			damage(aNamedElements.getBounds(namedElement));
+			aNamedElements.remove(namedElement);
+			if( namedElement.hasParent() )
+			{
+				aChangedNamedElements.add(namedElement.getParent());
+			}
+		}
+	}
+
+	@Override
+	public void elementChanged(Element pElement)
+	{
+		changed(pElement);
+	}
+
+	@Override
+	public void elementPlacedOnTop(NamedElement pNamedElement)
+	{
+		aPlacedOnTop.add(pNamedElement);
+	}
+
+	@Override
+	public void diagramReset()
+	{
+		aReset = true;
+	}
+
+	private void changed(Element pElement)
+	{
+		if( pElement instanceof Relationship )
+		{
+			aChangedRelationships.add((Relationship) pElement);
+		}
+		else
+		{
+			aChangedNamedElements.add((NamedElement) pElement);
+		}
+	}
+
+	/*
+	 * Computes the bounds of the elements that changed since the last update. Computing
+	 * the bounds of a package can load its children, which are then reported as added,
+	 * so the changes are taken out before they are processed, until there are none left.
+	 */
+	private void update()
+	{
+		if( aReset )
+		{
+			aReset = false;
+			aChangedNamedElements.clear();
+			aChangedRelationships.clear();
+			aChangedEnds.clear();
+			aPlacedOnTop.clear();
+			rebuild();
+		}
+		// Placing a NamedElement on top does not change any bounds, only what is drawn within its own
+		for( NamedElement namedElement : aPlacedOnTop )
+		{
+			if( aDiagram.contains(namedElement) )
+			{
+				damage(NamedElementViewerRegistry.getBounds(namedElement));
+			}
+		}
+		aPlacedOnTop.clear();
+		while( !aChangedNamedElements.isEmpty() || !aChangedRelationships.isEmpty() || !aChangedEnds.isEmpty() )
+		{
+			Set<NamedElement> changedNamedElements = aChangedNamedElements;
+			Set<Relationship> changedRelationships = aChangedRelationships;
+			Set<NamedElement> changedEnds = aChangedEnds;
+			aChangedNamedElements = identitySet();
+			aChangedRelationships = identitySet();
+			aChangedEnds = identitySet();
+
+			Set<NamedElement> roots = identitySet();
+			for( NamedElement namedElement : changedNamedElements )
+			{
+				if( aDiagram.contains(namedElement) )
+				{
+					roots.add(changedAncestors(namedElement, changedEnds));
+				}
+			}
+			for( NamedElement root : roots )
+			{
+				Rectangle bounds = NamedElementViewerRegistry.getBounds(root);
+				damage(aNamedElements.getBounds(root));
+				damage(bounds);
+				aNamedElements.put(root, bounds);
+			}
+			for( Relationship relationship : changedRelationships )
+			{
+				changedEnds.add(relationship.getStart());
+				changedEnds.add(relationship.getEnd());
+			}
+			for( NamedElement end : changedEnds )
+			{
+				if( aDiagram.contains(end) )
+				{
+					aDiagram.RelationshipsConnectedTo(end).forEach(changedRelationships::add);
+				}
+			}
+			for( Relationship relationship : changedRelationships )
+			{
+				if( aDiagram.contains(relationship) )
+				{
+					Rectangle bounds = measure(relationship);
+					damage(aRelationships.getBounds(relationship));
+					damage(bounds);
+					aRelationships.put(relationship, bounds);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Adds pNamedElement, its ancestors and the other ends of their Relationships
+	 * to pChangedEnds, and returns the root ancestor of pNamedElement.
+	 */
+	private NamedElement changedAncestors(NamedElement pNamedElement, Set<NamedElement> pChangedEnds)
+	{
+		NamedElement current = pNamedElement;
+		while( true )
+		{
+			pChangedEnds.add(current);
+			for( Relationship relationship : aDiagram.RelationshipsConnectedTo(current) )
+			{
+				pChangedEnds.add(relationship.getStart() == current ? relationship.getEnd() : relationship.getStart());
+			}
+			if( !current.hasParent() )
+			{
+				return current;
+			}
+			// A NamedElement indexed as a root that was moved into a package is no longer one
+			damage(aNamedElements.getBounds(current));
+			aNamedElements.remove(current);
+			current = current.getParent();
+		}
+	}
+
+	private void rebuild()
+	{
+		aDamagedArea = Optional.of(EVERYWHERE);
+		aNamedElements.clear();
+		aRelationships.clear();
+		// Copied, as computing bounds can load children and report them as changed
+		for( NamedElement namedElement : new ArrayList<>(aDiagram.getNamedElements()) )
+		{
+			aNamedElements.put(namedElement, NamedElementViewerRegistry.getBounds(namedElement));
+		}
+		for( Relationship relationship : new ArrayList<>(aDiagram.getRelationships()) )
+		{
+			Optional<Rectangle> knownBounds = aMeasureAll ? Optional.empty() : relationship.getKnownBounds();
+			aRelationships.put(relationship, knownBounds.isPresent() ? knownBounds.get() : measure(relationship));
+		}
+		aMeasureAll = false;
+	}
+
+	private static Rectangle measure(Relationship pRelationship)
+	{
+		Rectangle bounds = RelationshipViewerRegistry.getBounds(pRelationship);
+		pRelationship.setKnownBounds(bounds);
+		return bounds;
+	}
+
+	private void damage(Optional<Rectangle> pBounds)
+	{
+		pBounds.ifPresent(this::damage);
+	}
+
+	private void damage(Rectangle pBounds)
+	{
+		aDamagedArea = Optional.of(aDamagedArea.map(pBounds::add).orElse(pBounds));
+	}
+
+	private static <T> Set<T> identitySet()
+	{
+		return Collections.newSetFromMap(new IdentityHashMap<>());
+	}
+}
@@ -1,5 +1,7 @@
 package viewers.diagrams;
 
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
 
 import diagram.Diagram;
@@ -17,10 +19,17 @@ import javafx.scene.canvas.GraphicsContext;
 /**
  * A strategy for drawing a diagram and computing geometric properties of a 
  * diagram. This class can be inherited if certain diagram types require specialized 
- * services. This class is stateless.
+ * services. The only state of this class is a spatial index of the bounds of the 
+ * elements of the diagram it is used with, which it creates when it is first needed.
  */
 public class DiagramViewer
 {
+	/* The distance from a point within which a Relationship can be found, which covers
+	 * the distance within which a Relationship contains a point and the rounding of its bounds. */
+	private static final int RELATIONSHIP_TOLERANCE = 5;
+	
+	private Optional<DiagramIndex> aIndex = Optional.empty();
+	
 	/**
 	 * Draws pDiagram onto pGraphics.
 	 * 
@@ -32,10 +41,8 @@ public class DiagramViewer
 	public final void draw(Diagram pDiagram, GraphicsContext pGraphics)
 	{
 		assert pDiagram != null && pGraphics != null;
-		NamedElementViewerRegistry.activateNamedElementStorages();
 		pDiagram.getNamedElements().forEach(NamedElement -> drawNamedElement(NamedElement, pGraphics));
 		pDiagram.getRelationships().forEach(Relationship -> RelationshipViewerRegistry.draw(Relationship, pGraphics));
-		NamedElementViewerRegistry.deactivateAndClearNamedElementStorages();
 	}
 	
 	private void drawNamedElement(NamedElement pNamedElement, GraphicsContext pGraphics)
@@ -46,6 +53,56 @@ public class DiagramViewer
 		}
 	}
 	
+	/**
+	 * Draws the part of pDiagram that is in pVisibleArea onto pGraphics. The 
+	 * NamedElements and Relationships whose bounds do not intersect pVisibleArea 
+	 * are skipped, so drawing a diagram that is much larger than what can be seen
+	 * only draws what is seen. The root NamedElements and the Relationships to draw 
+	 * are found with the spatial index of the diagram, so the ones that cannot be
+	 * seen are not even looked at.
+	 * 
+	 * @param pDiagram the diagram to draw.
+	 * @param pGraphics the graphics context where the diagram should be drawn.
+	 * @param pVisibleArea the part of the diagram to draw.
+	 * @pre pDiagram != null && pGraphics != null && pVisibleArea != null.
+	 */
+	public final void draw(Diagram pDiagram, GraphicsContext pGraphics, Rectangle pVisibleArea)
+	{
+		assert pDiagram != null && pGraphics != null && pVisibleArea != null;
+		List<NamedElement> namedElements = index(pDiagram).namedElementsIntersecting(pVisibleArea);
+		namedElements.sort(Comparator.comparingInt(pDiagram.getNamedElements()::indexOf));
+		for(NamedElement namedElement : namedElements)
+		{
+			drawVisibleNamedElement(namedElement, pGraphics, pVisibleArea);
+		}
+		List<Relationship> relationships = index(pDiagram).relationshipsIntersecting(pVisibleArea);
+		relationships.sort(Comparator.comparingInt(pDiagram::indexOf));
+		for(Relationship relationship : relationships)
+		{
+			RelationshipViewerRegistry.draw(relationship, pGraphics);
+		}
+	}
+	
+	/*
+	 * The bounds of a package enclose its children, so the children
+	 * of a package that is not visible are not visible either.
+	 */
+	private void drawVisibleNamedElement(NamedElement pNamedElement, GraphicsContext pGraphics, Rectangle pVisibleArea)
+	{
+		if(!NamedElementViewerRegistry.getBounds(pNamedElement).intersects(pVisibleArea))
+		{
+			return;
+		}
+		NamedElementViewerRegistry.draw(pNamedElement, pGraphics);
+		if(pNamedElement instanceof Package)
+		{
+			for(NamedElement child : ((Package)pNamedElement).getChildren())
+			{
+				drawVisibleNamedElement(child, pGraphics, pVisibleArea);
+			}
+		}
+	}
+	
 	/**
 	 * Returns the Relationship underneath the given point, if it exists.
 	 * 
@@ -57,7 +114,11 @@ public class DiagramViewer
 	public final Optional<Relationship> RelationshipAt(Diagram pDiagram, Point pPoint)
 	{
 		assert pDiagram != null && pPoint != null;
-		return pDiagram.getRelationships().stream()
+		List<Relationship> candidates = index(pDiagram).relationshipsIntersecting(new Rectangle(
+				pPoint.getX() - RELATIONSHIP_TOLERANCE, pPoint.getY() - RELATIONSHIP_TOLERANCE, 
+				2 * RELATIONSHIP_TOLERANCE, 2 * RELATIONSHIP_TOLERANCE));
+		candidates.sort(Comparator.comparingInt(pDiagram::indexOf));
+		return candidates.stream()
 				.filter(Relationship -> RelationshipViewerRegistry.contains(Relationship, pPoint))
 				.findFirst();
 	}
@@ -73,11 +134,56 @@ public class DiagramViewer
 	public final Optional<NamedElement> NamedElementAt(Diagram pDiagram, Point pPoint)
 	{
 		assert pDiagram != null && pPoint != null;
-		return pDiagram.getNamedElements().stream()
+		// Only the root NamedElements whose bounds contain pPoint can contain a NamedElement 
+		// that contains it. They are searched from the top of the z-order down.
+		List<NamedElement> candidates = index(pDiagram).namedElementsAt(pPoint);
+		candidates.sort(Comparator.comparingInt(pDiagram.getNamedElements()::indexOf).reversed());
+		return candidates.stream()
 			.map(NamedElement -> deepFindNamedElement(pDiagram, NamedElement, pPoint))
 			.filter(Optional::isPresent)
 			.map(Optional::get)
-			.reduce((first, second) -> second);
+			.findFirst();
+	}
+	
+	/**
+	 * Returns the area in which the drawing of pDiagram may have changed since this 
+	 * method was last called: the bounds that the elements that were added, removed, 
+	 * changed or placed on top had before and after. Elements can be drawn slightly 
+	 * beyond their bounds, for instance by their shadow, so the caller is expected 
+	 * to add a margin to this area. 
+	 * 
+	 * @param pDiagram The diagram of interest.
+	 * @return The damaged area, which covers the whole plane if all of pDiagram may 
+	 *     have changed, or Optional.empty() if nothing changed.
+	 * @pre pDiagram != null
+	 */
+	public final Optional<Rectangle> takeDamagedArea(Diagram pDiagram)
+	{
+		assert pDiagram != null;
+		return index(pDiagram).takeDamagedArea();
+	}
+	
+	/**
+	 * Tells this viewer that the bounds of all the elements may have changed, 
+	 * for instance because the font size changed.
+	 */
+	public final void boundsChanged()
+	{
+		aIndex.ifPresent(DiagramIndex::invalidate);
+	}
+	
+	/*
+	 * Returns the spatial index of pDiagram, which replaces the index of
+	 * any other diagram this viewer was used with.
+	 */
+	private DiagramIndex index(Diagram pDiagram)
+	{
+		if( aIndex.isEmpty() || aIndex.get().getDiagram() != pDiagram )
+		{
+			aIndex.ifPresent(DiagramIndex::dispose);
+			aIndex = Optional.of(new DiagramIndex(pDiagram));
+		}
+		return aIndex.get();
 	}
 	
 	/**
@@ -150,7 +256,8 @@ public class DiagramViewer
 		}
 		for(Relationship Relationship : pDiagram.getRelationships())
 		{
-			bounds = bounds.add(RelationshipViewerRegistry.getBounds(Relationship));
+			Optional<Rectangle> knownBounds = Relationship.getKnownBounds();
+			bounds = bounds.add(knownBounds.isPresent() ? knownBounds.get() : RelationshipViewerRegistry.getBounds(Relationship));
 		}
 		if(bounds == null )
 		{
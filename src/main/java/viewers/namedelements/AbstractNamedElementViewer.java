@@ -1,6 +1,7 @@
 package viewers.namedelements;
 
 import java.util.Optional;
+import java.util.function.Function;
 
 import diagram.NamedElement;
 import geom.Direction;
@@ -20,7 +21,8 @@ public abstract class AbstractNamedElementViewer implements NamedElementViewer
 	public static final int BUTTON_SIZE = 25;
 	public static final int OFFSET = 3;
 	
-	private NamedElementStorage aNamedElementStorage = new NamedElementStorage();
+	// Kept in a field, so that finding bounds in the cache does not create a function
+	private final Function<NamedElement, Rectangle> aBoundsCalculator = this::internalGetBounds;
 	
 	/* 
 	 * The default behavior for containment is to return true if the point is
@@ -94,19 +96,7 @@ public abstract class AbstractNamedElementViewer implements NamedElementViewer
 	@Override
 	public final Rectangle getBounds(NamedElement pNamedElement)
 	{
-		return aNamedElementStorage.getBounds(pNamedElement, this::internalGetBounds);
-	}
-	
-	@Override
-	public final void activateNamedElementStorage()
-	{
-		aNamedElementStorage.activate();
-	}
-	
-	@Override
-	public final void deactivateAndClearNamedElementStorage() 
-	{
-		aNamedElementStorage.deactivateAndClear();
+		return BoundsCache.instance().getBounds(pNamedElement, aBoundsCalculator);
 	}
 	
 	/**
@@ -0,0 +1,128 @@
+package viewers.namedelements;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+
+import diagram.NamedElement;
+import geom.Rectangle;
+import utils.UserPreferences;
+import utils.UserPreferences.IntegerPreference;
+import utils.UserPreferences.IntegerPreferenceChangeHandler;
+import viewers.StringViewer;
+
+/**
+ * Keeps the bounds of NamedElements from one use to the next, so that their text
+ * is only measured again when their bounds may have changed. The bounds of a 
+ * NamedElement are kept with its version, which changes whenever one of its 
+ * properties, its position, or one of its descendants changes, and with the 
+ * font size they were measured with. They are used as long as both are the same.
+ * 
+ * All the bounds are dropped when the font size changes, and the bounds of a
+ * NamedElement are dropped once nothing else refers to it. The number of times
+ * the bounds were found in the cache, and computed, are counted.
+ */
+public final class BoundsCache implements IntegerPreferenceChangeHandler
+{
+	private static final BoundsCache INSTANCE = new BoundsCache();
+	
+	private final Map<NamedElement, Entry> aBounds = new WeakHashMap<>();
+	private long aHits = 0;
+	private long aMisses = 0;
+	
+	private BoundsCache()
+	{
+		UserPreferences.instance().addIntegerPreferenceChangeHandler(this);
+	}
+	
+	/**
+	 * @return The cache of the bounds of all the NamedElements.
+	 */
+	public static BoundsCache instance()
+	{
+		return INSTANCE;
+	}
+	
+	/**
+	 * Returns the bounds of pNamedElement from the cache if they are still valid, 
+	 * or from pBoundsCalculator.
+	 * 
+	 * @param pNamedElement The NamedElement of interest.
+	 * @param pBoundsCalculator The function that computes the bounds of pNamedElement.
+	 * @return The bounds of pNamedElement.
+	 * @pre pNamedElement != null && pBoundsCalculator != null
+	 */
+	public Rectangle getBounds(NamedElement pNamedElement, Function<NamedElement, Rectangle> pBoundsCalculator)
+	{
+		assert pNamedElement != null && pBoundsCalculator != null;
+		Entry entry = aBounds.get(pNamedElement);
+		int fontSize = StringViewer.getFontSize();
+		if( entry != null && entry.aVersion == pNamedElement.getVersion() && entry.aFontSize == fontSize )
+		{
+			aHits++;
+			return entry.aBounds;
+		}
+		aMisses++;
+		Rectangle bounds = pBoundsCalculator.apply(pNamedElement);
+		// The version is read once the bounds are computed, as this can load the children of a package
+		aBounds.put(pNamedElement, new Entry(bounds, pNamedElement.getVersion(), fontSize));
+		return bounds;
+	}
+	
+	/**
+	 * @return The number of times bounds were found in the cache.
+	 */
+	public long getHits()
+	{
+		return aHits;
+	}
+	
+	/**
+	 * @return The number of times bounds had to be computed.
+	 */
+	public long getMisses()
+	{
+		return aMisses;
+	}
+	
+	/**
+	 * @return The number of NamedElements whose bounds are in the cache.
+	 */
+	public int size()
+	{
+		return aBounds.size();
+	}
+	
+	/**
+	 * Drops all the bounds, and resets the counters.
+	 */
+	public void clear()
+	{
+		aBounds.clear();
+		aHits = 0;
+		aMisses = 0;
+	}
+	
+	@Override
+	public void integerPreferenceChanged(IntegerPreference pPreference)
+	{
+		if( pPreference == IntegerPreference.fontSize )
+		{
+			aBounds.clear();
+		}
+	}
+	
+	private static final class Entry
+	{
+		private final Rectangle aBounds;
+		private final int aVersion;
+		private final int aFontSize;
+		
+		Entry(Rectangle pBounds, int pVersion, int pFontSize)
+		{
+			aBounds = pBounds;
+			aVersion = pVersion;
+			aFontSize = pFontSize;
+		}
+	}
+}
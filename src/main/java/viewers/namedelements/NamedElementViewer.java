@@ -66,14 +66,4 @@ public interface NamedElementViewer
      * @pre pNamedElement != null && pDirection != null
 	 */
 	Point getConnectionPoint(NamedElement pNamedElement, Direction pDirection);
-	
-	/**
-	 * Activates the NamedElementStorage.
-	 */
-	void activateNamedElementStorage();
-	
-	/**
-	 * Deactivates and clears the NamedElementStorage. 
-	 */
-	void deactivateAndClearNamedElementStorage();
 }
@@ -113,26 +113,4 @@ public final class NamedElementViewerRegistry
    	{
 		return INSTANCE.viewerFor(pNamedElement).getConnectionPoint(pNamedElement, pDirection);
    	}
-   	
-   	/**
-   	 * Activates all the NamedElementStorages of the NamedElementViewers present in the registry. 
-   	 */
-   	public static void activateNamedElementStorages()
-   	{
-   		for (NamedElementViewer NamedElementViewer : INSTANCE.aRegistry.values())
-   		{
-   			NamedElementViewer.activateNamedElementStorage();
-   		}
-   	}
-   	
-   	/**
-   	 * Deactivates and clears all the NamedElementStorages of the NamedElementViewers present in the registry. 
-   	 */
-   	public static void deactivateAndClearNamedElementStorages()
-   	{
-   		for (NamedElementViewer NamedElementViewer : INSTANCE.aRegistry.values())
-   		{
-   			NamedElementViewer.deactivateAndClearNamedElementStorage();
-   		}
-   	}
 }
@@ -43,6 +43,13 @@ public class PackageViewer extends AbstractNamedElementViewer
 	
 	protected Rectangle getTopBounds(Package pNamedElement)
 	{
+		Optional<Rectangle> knownBounds = getUnloadedBounds(pNamedElement);
+		if( knownBounds.isPresent() )
+		{
+			Dimension topDimension = getTopDimension(pNamedElement);
+			return new Rectangle(knownBounds.get().getX(), knownBounds.get().getY(), 
+					topDimension.width(), topDimension.height());
+		}
 		Optional<Rectangle> childrenBounds = getChildrenBounds(pNamedElement);
 		Point position = getPosition(pNamedElement, childrenBounds);
 		Dimension topDimension = getTopDimension(pNamedElement);
@@ -54,6 +61,15 @@ public class PackageViewer extends AbstractNamedElementViewer
 		int width = DEFAULT_WIDTH;
 		int height = DEFAULT_BOTTOM_HEIGHT;
 		
+		Optional<Rectangle> knownBounds = getUnloadedBounds(pNamedElement);
+		if( knownBounds.isPresent() )
+		{
+			Dimension topDimension = getTopDimension(pNamedElement);
+			return new Rectangle(knownBounds.get().getX(), knownBounds.get().getY() + topDimension.height(), 
+					max(width, knownBounds.get().getWidth()), 
+					max(height, knownBounds.get().getHeight() - topDimension.height()));
+		}
+		
 		Optional<Rectangle> childrenBounds = getChildrenBounds(pNamedElement);
 		Point position = getPosition(pNamedElement, childrenBounds);
 		
@@ -71,6 +87,19 @@ public class PackageViewer extends AbstractNamedElementViewer
 				width, height);
 	}
 	
+	/*
+	 * The bounds of a package whose children are not loaded yet, as they were last
+	 * known, so that the package can be drawn without loading its children.
+	 */
+	private static Optional<Rectangle> getUnloadedBounds(Package pNamedElement)
+	{
+		if( pNamedElement.hasLoadedChildren() )
+		{
+			return Optional.empty();
+		}
+		return pNamedElement.getKnownBounds();
+	}
+	
 	private Optional<Rectangle> getChildrenBounds(NamedElement pNamedElement)
 	{
 		if( ((Package)pNamedElement).getChildren().isEmpty() )
@@ -125,7 +154,9 @@ public class PackageViewer extends AbstractNamedElementViewer
 	protected Rectangle internalGetBounds(NamedElement pNamedElement)
 	{
 		assert pNamedElement instanceof Package;
-		return getTopBounds((Package)pNamedElement).add(getBottomBounds((Package)pNamedElement));
+		Rectangle bounds = getTopBounds((Package)pNamedElement).add(getBottomBounds((Package)pNamedElement));
+		((Package)pNamedElement).setKnownBounds(bounds);
+		return bounds;
 	}
 	
 	/**
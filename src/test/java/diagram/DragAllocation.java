@@ -0,0 +1,75 @@
+package diagram;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the memory allocated by moving a selection of elements, as is done
+ * on every mouse event of a drag. Half of the moved classes are in packages,
+ * and a snapshot of the diagram is taken first, so that moves are recorded for
+ * the next snapshot. Moving the elements should allocate nothing.
+ *
+ * Run with: java diagram.DragAllocation [selected]
+ */
+public final class DragAllocation
+{
+	private static final int DEFAULT_SELECTED = 2_000;
+	private static final int CLASSES_PER_PACKAGE = 10;
+	private static final int WARMUP_FRAMES = 20_000;
+	private static final int FRAMES = 1_000;
+
+	private DragAllocation() {}
+
+	/**
+	 * @param pArgs An optional number of selected elements.
+	 */
+	public static void main(String[] pArgs)
+	{
+		int selected = pArgs.length > 0 ? Integer.parseInt(pArgs[0]) : DEFAULT_SELECTED;
+		Diagram diagram = new Diagram();
+		List<NamedElement> selection = new ArrayList<>();
+		Package container = null;
+		for( int i = 0; i < selected; i++ )
+		{
+			BClass bClass = new BClass(false, false);
+			if( i % 2 == 0 )
+			{
+				diagram.addNamedElement(bClass);
+			}
+			else
+			{
+				if( container == null || container.getChildren().size() == CLASSES_PER_PACKAGE )
+				{
+					container = new Package();
+					diagram.addNamedElement(container);
+				}
+				container.addChild(bClass);
+			}
+			selection.add(bClass);
+		}
+		diagram.snapshot();
+
+		drag(selection, WARMUP_FRAMES);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long before = threads.getCurrentThreadAllocatedBytes();
+		drag(selection, FRAMES);
+		long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+		System.out.println(String.format("%d elements: %d bytes allocated per frame", selected, allocated / FRAMES));
+	}
+
+	/*
+	 * Moves the selection back and forth, one step per frame.
+	 */
+	private static void drag(List<NamedElement> pSelection, int pFrames)
+	{
+		for( int frame = 0; frame < pFrames; frame++ )
+		{
+			int delta = frame % 2 == 0 ? 1 : -1;
+			for( int i = 0; i < pSelection.size(); i++ )
+			{
+				pSelection.get(i).translate(delta, delta);
+			}
+		}
+	}
+}
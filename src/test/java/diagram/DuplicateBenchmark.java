@@ -0,0 +1,102 @@
+package diagram;
+
+import java.util.Random;
+
+import geom.Point;
+
+/**
+ * Measures the time needed to duplicate diagrams of increasing size. Each
+ * diagram has as many relationships as NamedElements, with the NamedElements
+ * grouped in about sqrt(n) packages, so the time per element should stay
+ * roughly constant if duplicating scales linearly.
+ *
+ * Run with: java diagram.DuplicateBenchmark [sizes...]
+ */
+public final class DuplicateBenchmark
+{
+	private static final int[] DEFAULT_SIZES = {1_000, 10_000, 50_000};
+	private static final int WARMUP_SIZE = 1_000;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final long SEED = 42;
+
+	private DuplicateBenchmark() {}
+
+	/**
+	 * @param pArgs Optional diagram sizes.
+	 */
+	public static void main(String[] pArgs)
+	{
+		int[] sizes = DEFAULT_SIZES;
+		if( pArgs.length > 0 )
+		{
+			sizes = new int[pArgs.length];
+			for( int i = 0; i < pArgs.length; i++ )
+			{
+				sizes[i] = Integer.parseInt(pArgs[i]);
+			}
+		}
+
+		Diagram warmup = createDiagram(WARMUP_SIZE);
+		for( int i = 0; i < WARMUP_ROUNDS; i++ )
+		{
+			warmup.duplicate();
+		}
+
+		System.out.println(String.format("%10s %16s %14s", "elements", "duplicate (ms)", "us/element"));
+		for( int size : sizes )
+		{
+			Diagram diagram = createDiagram(size);
+			long start = System.nanoTime();
+			Diagram copy = diagram.duplicate();
+			long elapsed = System.nanoTime() - start;
+			assert copy.getRelationships().size() == diagram.getRelationships().size();
+			System.out.println(String.format("%10d %16.1f %14.3f", size, elapsed / 1e6, elapsed / 1e3 / size));
+		}
+	}
+
+	/*
+	 * Creates a diagram with pSize NamedElements, classes in about sqrt(pSize) packages, and
+	 * pSize relationships between randomly chosen classes.
+	 */
+	static Diagram createDiagram(int pSize)
+	{
+		Random random = new Random(SEED);
+		Diagram diagram = new Diagram();
+		int packageSize = Math.max(1, (int) Math.sqrt(pSize));
+		NamedElement[] classes = new NamedElement[pSize];
+		int count = 0;
+		while( count < pSize )
+		{
+			Package container = new Package();
+			container.getProperties().get("name").setValue("package" + count);
+			diagram.addNamedElement(container);
+			count++;
+			for( int i = 0; i < packageSize && count < pSize; i++ )
+			{
+				BClass bClass = new BClass(false, false);
+				bClass.getProperties().get("name").setValue("Class" + count);
+				bClass.getProperties().get("attributes").setValue("id:int;\nname:String");
+				bClass.setPosition(new Point(random.nextInt(10_000), random.nextInt(10_000)));
+				container.addChild(bClass);
+				classes[count++] = bClass;
+			}
+		}
+		for( int i = 0; i < pSize; i++ )
+		{
+			Relationship relationship = i % 2 == 0 ? new Association(false, false) : new Generalization();
+			relationship.connect(randomClass(classes, random), randomClass(classes, random), diagram);
+			diagram.addRelationship(relationship);
+		}
+		return diagram;
+	}
+
+	private static NamedElement randomClass(NamedElement[] pClasses, Random pRandom)
+	{
+		NamedElement result = null;
+		while( result == null )
+		{
+			result = pClasses[pRandom.nextInt(pClasses.length)];
+		}
+		return result;
+	}
+}
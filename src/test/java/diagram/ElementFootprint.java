@@ -0,0 +1,59 @@
+package diagram;
+
+import java.util.function.Supplier;
+
+/**
+ * Measures the heap retained by each kind of element, by creating many of
+ * them and comparing the used memory before and after. The numbers include
+ * everything reachable only from the elements: their fields, properties and
+ * the lists they own.
+ *
+ * Run with: java diagram.ElementFootprint [elements]
+ */
+public final class ElementFootprint
+{
+	private static final int DEFAULT_ELEMENTS = 100_000;
+	private static final int GC_ROUNDS = 5;
+
+	private ElementFootprint() {}
+
+	/**
+	 * @param pArgs An optional number of elements of each kind.
+	 */
+	public static void main(String[] pArgs)
+	{
+		int elements = pArgs.length > 0 ? Integer.parseInt(pArgs[0]) : DEFAULT_ELEMENTS;
+		System.out.println(String.format("%16s %16s", "element", "bytes/element"));
+		measure("BClass", elements, () -> new BClass(false, false));
+		measure("Enumeration", elements, Enumeration::new);
+		measure("Package", elements, Package::new);
+		measure("PointElement", elements, PointElement::new);
+		measure("Association", elements, () -> new Association(false, false));
+		measure("Composition", elements, Composition::new);
+		measure("Generalization", elements, Generalization::new);
+		measure("BClass clone", elements, () -> new BClass(false, false).clone());
+	}
+
+	private static void measure(String pName, int pElements, Supplier<Element> pFactory)
+	{
+		Element[] elements = new Element[pElements];
+		long before = usedMemory();
+		for( int i = 0; i < pElements; i++ )
+		{
+			elements[i] = pFactory.get();
+		}
+		long after = usedMemory();
+		assert elements[pElements - 1] != null;
+		System.out.println(String.format("%16s %16d", pName, (after - before) / pElements));
+	}
+
+	private static long usedMemory()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for( int i = 0; i < GC_ROUNDS; i++ )
+		{
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,112 @@
+package diagram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.function.IntSupplier;
+
+import file.XmlStreamEncoder;
+
+/**
+ * Measures the time and the memory allocated by splitting the attributes
+ * and methods of a class with many members, and by encoding a diagram that
+ * contains it. Splitting the same value again should take no time and
+ * allocate nothing, and encoding should only allocate what it writes. Parsing
+ * the text with PropertyParser is also compared with splitting it with
+ * String.split, as Property did before.
+ *
+ * Run with: java diagram.PropertyBenchmark [members]
+ */
+public final class PropertyBenchmark
+{
+	private static final int DEFAULT_MEMBERS = 500;
+	private static final int ROUNDS = 1_000;
+	private static final int WARMUP_ROUNDS = 1_000;
+
+	private PropertyBenchmark() {}
+
+	/**
+	 * @param pArgs An optional number of attributes and methods.
+	 * @throws IOException If the diagram cannot be encoded.
+	 */
+	public static void main(String[] pArgs) throws IOException
+	{
+		int members = pArgs.length > 0 ? Integer.parseInt(pArgs[0]) : DEFAULT_MEMBERS;
+		BClass bClass = createClass(members);
+		Diagram diagram = new Diagram();
+		diagram.addNamedElement(bClass);
+		Property attributes = bClass.getProperties().get("attributes");
+		Property methods = bClass.getProperties().get("methods");
+
+		System.out.println(String.format("%24s %14s %16s", "operation", "us/call", "bytes/call"));
+		measure("first split", 1, () ->
+		{
+			attributes.setValue(new String(attributes.getValue()));
+			methods.setValue(new String(methods.getValue()));
+			return attributes.splitAsAttributes().size() + methods.splitAsMethods().size();
+		});
+		measure("split attributes", ROUNDS, () -> attributes.splitAsAttributes().size());
+		measure("split methods", ROUNDS, () -> methods.splitAsMethods().size());
+		measure("copy and split", ROUNDS, () -> new Property(attributes).splitAsAttributes().size());
+		measure("String.split attributes", ROUNDS, () -> TestPropertyParser.splitAsAttributes(attributes.getValue()).size());
+		measure("parse attributes", ROUNDS, () -> PropertyParser.parseAttributes(attributes.getValue()).size());
+		measure("String.split methods", ROUNDS, () -> TestPropertyParser.splitAsMethods(methods.getValue()).size());
+		measure("parse methods", ROUNDS, () -> PropertyParser.parseMethods(methods.getValue()).size());
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		measure("encode", ROUNDS, () ->
+		{
+			output.reset();
+			try
+			{
+				XmlStreamEncoder.encode(diagram, output);
+			}
+			catch( IOException exception )
+			{
+				throw new IllegalStateException(exception);
+			}
+			return output.size();
+		});
+		System.out.println(String.format("%24s %14s %16d", "encoded size", "", output.size()));
+	}
+
+	private static BClass createClass(int pMembers)
+	{
+		BClass result = new BClass(false, false);
+		result.getProperties().get("name").setValue("Large");
+		StringBuilder attributes = new StringBuilder();
+		StringBuilder methods = new StringBuilder();
+		for( int i = 0; i < pMembers; i++ )
+		{
+			attributes.append("attribute").append(i).append(":Map<String,Integer>;\n");
+			methods.append("method").append(i).append("(first:int, second:String):void;\n");
+		}
+		result.getProperties().get("attributes").setValue(attributes.toString());
+		result.getProperties().get("methods").setValue(methods.toString());
+		return result;
+	}
+
+	/*
+	 * Runs pOperation pRounds times after warming it up, and prints the average
+	 * time and number of bytes allocated by the current thread per call.
+	 */
+	private static void measure(String pName, int pRounds, IntSupplier pOperation)
+	{
+		for( int i = 0; i < WARMUP_ROUNDS; i++ )
+		{
+			pOperation.getAsInt();
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		int result = 0;
+		long allocated = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		for( int i = 0; i < pRounds; i++ )
+		{
+			result += pOperation.getAsInt();
+		}
+		long elapsed = System.nanoTime() - start;
+		allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+		assert result > 0;
+		System.out.println(String.format("%24s %14.2f %16d", pName, elapsed / 1e3 / pRounds, allocated / pRounds));
+	}
+}
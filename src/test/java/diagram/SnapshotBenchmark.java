@@ -0,0 +1,86 @@
+package diagram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the time needed to take a snapshot of diagrams of increasing size,
+ * first from scratch, then after each of a series of small edits. The edits
+ * move, rename and raise a class and connect it to another one, so the time of
+ * a snapshot after an edit should barely grow with the size of the diagram.
+ * The time to duplicate the diagram, the other way to hand it to another
+ * thread, is shown for comparison.
+ *
+ * Run with: java diagram.SnapshotBenchmark [sizes...]
+ */
+public final class SnapshotBenchmark
+{
+	private static final int[] DEFAULT_SIZES = {1_000, 10_000, 50_000};
+	private static final int EDITS = 1_000;
+	private static final long SEED = 42;
+
+	private SnapshotBenchmark() {}
+
+	/**
+	 * @param pArgs Optional diagram sizes.
+	 */
+	public static void main(String[] pArgs)
+	{
+		int[] sizes = DEFAULT_SIZES;
+		if( pArgs.length > 0 )
+		{
+			sizes = new int[pArgs.length];
+			for( int i = 0; i < pArgs.length; i++ )
+			{
+				sizes[i] = Integer.parseInt(pArgs[i]);
+			}
+		}
+		run(DuplicateBenchmark.createDiagram(1_000));
+
+		System.out.println(String.format("%10s %14s %14s %16s", "elements", "first (ms)", "after edit (us)", "duplicate (ms)"));
+		for( int size : sizes )
+		{
+			Diagram diagram = DuplicateBenchmark.createDiagram(size);
+			long start = System.nanoTime();
+			diagram.snapshot();
+			long first = System.nanoTime() - start;
+			long afterEdit = run(diagram);
+			start = System.nanoTime();
+			diagram.duplicate();
+			long duplicate = System.nanoTime() - start;
+			System.out.println(String.format("%10d %14.1f %14.1f %16.1f", size, first / 1e6, afterEdit / 1e3 / EDITS,
+					duplicate / 1e6));
+		}
+	}
+
+	/*
+	 * Returns the total time of the snapshots taken after each edit.
+	 */
+	private static long run(Diagram pDiagram)
+	{
+		Random random = new Random(SEED);
+		List<NamedElement> classes = new ArrayList<>();
+		for( NamedElement namedElement : pDiagram.getNamedElements() )
+		{
+			classes.addAll(((Package) namedElement).getChildren());
+		}
+		pDiagram.snapshot();
+		long total = 0;
+		for( int i = 0; i < EDITS; i++ )
+		{
+			NamedElement bClass = classes.get(random.nextInt(classes.size()));
+			bClass.translate(random.nextInt(10), random.nextInt(10));
+			bClass.getProperty(PropertyKey.NAME).setValue("Edited" + i);
+			pDiagram.placeOnTop(bClass);
+			Relationship relationship = new Generalization();
+			relationship.connect(bClass, classes.get(random.nextInt(classes.size())), pDiagram);
+			pDiagram.addRelationship(relationship);
+			long start = System.nanoTime();
+			DiagramSnapshot snapshot = pDiagram.snapshot();
+			total += System.nanoTime() - start;
+			assert snapshot.getRelationships().size() == pDiagram.getRelationships().size();
+		}
+		return total;
+	}
+}
@@ -0,0 +1,210 @@
+package diagram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TestDiagram
+{
+	@Test
+	public void testRelationshipsConnectedTo()
+	{
+		Diagram diagram = new Diagram();
+		BClass first = new BClass(false, false);
+		BClass second = new BClass(false, false);
+		diagram.addNamedElement(first);
+		diagram.addNamedElement(second);
+		Relationship association = connect(new Association(false, false), first, second, diagram);
+		Relationship generalization = connect(new Generalization(), second, first, diagram);
+		Relationship self = connect(new Composition(), first, first, diagram);
+		assertEquals(List.of(association, self, generalization), connectedTo(diagram, first));
+		assertEquals(List.of(generalization, association), connectedTo(diagram, second));
+
+		// Removing then adding at the same index, as undo does
+		int index = diagram.indexOf(association);
+		diagram.removeRelationship(association);
+		assertEquals(List.of(self, generalization), connectedTo(diagram, first));
+		assertEquals(List.of(generalization), connectedTo(diagram, second));
+		diagram.addRelationship(index, association);
+		assertEquals(List.of(association, generalization, self), diagram.getRelationships());
+		assertEquals(List.of(generalization, association), connectedTo(diagram, second));
+
+		diagram.removeRelationship(self);
+		assertEquals(List.of(association), first.getOwnedRelationshipsAsStart());
+		assertEquals(List.of(generalization), first.getOwnedRelationshipsAsEnd());
+
+		diagram.setRelationships(new ArrayList<>(List.of(generalization)));
+		assertTrue(first.getOwnedRelationshipsAsStart().isEmpty());
+		assertEquals(List.of(generalization), connectedTo(diagram, first));
+	}
+
+	@Test
+	public void testDuplicateConnectedTo()
+	{
+		Diagram diagram = new Diagram();
+		BClass first = new BClass(false, false);
+		BClass second = new BClass(false, false);
+		diagram.addNamedElement(first);
+		diagram.addNamedElement(second);
+		connect(new Association(false, false), first, second, diagram);
+		Diagram copy = diagram.duplicate();
+		NamedElement firstCopy = copy.getNamedElements().get(0);
+		assertEquals(List.of(copy.getRelationships().get(0)), connectedTo(copy, firstCopy));
+		assertNotSame(diagram.getStringPool(), copy.getStringPool());
+	}
+
+	@Test
+	public void testContainsNested()
+	{
+		Diagram diagram = new Diagram();
+		Package root = new Package();
+		Package parent = root;
+		for( int i = 0; i < 100; i++ )
+		{
+			Package child = new Package();
+			parent.addChild(child);
+			parent = child;
+		}
+		BClass leaf = new BClass(false, false);
+		parent.addChild(leaf);
+		assertFalse(diagram.contains(leaf));
+		diagram.addNamedElement(root);
+		assertTrue(diagram.contains(leaf));
+
+		// Children added to or removed from a package of the diagram
+		BClass added = new BClass(false, false);
+		parent.addChild(added);
+		assertTrue(diagram.contains(added));
+		parent.removeChild(leaf);
+		assertFalse(diagram.contains(leaf));
+		diagram.addNamedElement(leaf);
+		assertTrue(diagram.contains(leaf));
+
+		// Children loaded after their package was added
+		Package lazy = new Package();
+		BClass loaded = new BClass(false, false);
+		lazy.setChildrenLoader(container -> container.addChild(loaded));
+		diagram.addNamedElement(lazy);
+		assertEquals(List.of(loaded), lazy.getChildren());
+		assertTrue(diagram.contains(loaded));
+
+		diagram.removeNamedElement(root);
+		assertFalse(diagram.contains(root));
+		assertFalse(diagram.contains(added));
+		assertTrue(diagram.contains(leaf));
+	}
+
+	@Test
+	public void testIndexOf()
+	{
+		Diagram diagram = new Diagram();
+		BClass bClass = new BClass(false, false);
+		diagram.addNamedElement(bClass);
+		List<Relationship> removed = new ArrayList<>();
+		Random random = new Random(42);
+		for( int i = 0; i < 1_000; i++ )
+		{
+			int size = diagram.getRelationships().size();
+			int operation = random.nextInt(4);
+			if( operation == 0 && size > 0 )
+			{
+				Relationship relationship = diagram.getRelationships().get(random.nextInt(size));
+				diagram.removeRelationship(relationship);
+				removed.add(relationship);
+				assertFalse(diagram.contains(relationship));
+			}
+			else if( operation == 1 && !removed.isEmpty() )
+			{
+				diagram.addRelationship(random.nextInt(size + 1), removed.remove(removed.size() - 1));
+			}
+			else
+			{
+				connect(new Generalization(), bClass, bClass, diagram);
+			}
+			List<Relationship> relationships = diagram.getRelationships();
+			if( !relationships.isEmpty() && random.nextBoolean() )
+			{
+				Relationship relationship = relationships.get(random.nextInt(relationships.size()));
+				assertEquals(relationships.indexOf(relationship), diagram.indexOf(relationship));
+			}
+		}
+		for( Relationship relationship : diagram.getRelationships() )
+		{
+			assertEquals(diagram.getRelationships().indexOf(relationship), diagram.indexOf(relationship));
+		}
+	}
+
+	@Test
+	public void testRemoveRelationships()
+	{
+		Diagram diagram = new Diagram();
+		BClass first = new BClass(false, false);
+		BClass second = new BClass(false, false);
+		diagram.addNamedElement(first);
+		diagram.addNamedElement(second);
+		List<Relationship> relationships = new ArrayList<>();
+		for( int i = 0; i < 6; i++ )
+		{
+			relationships.add(connect(new Generalization(), i % 2 == 0 ? first : second, second, diagram));
+		}
+		diagram.removeRelationships(List.of(relationships.get(4), relationships.get(1), relationships.get(2)));
+		assertEquals(List.of(relationships.get(0), relationships.get(3), relationships.get(5)), diagram.getRelationships());
+		assertEquals(List.of(relationships.get(0)), first.getOwnedRelationshipsAsStart());
+		assertEquals(List.of(relationships.get(3), relationships.get(5)), second.getOwnedRelationshipsAsStart());
+		assertFalse(diagram.contains(relationships.get(1)));
+		assertEquals(2, diagram.indexOf(relationships.get(5)));
+
+		// Reinserting from the first to the last index, as undo does
+		diagram.addRelationship(1, relationships.get(1));
+		diagram.addRelationship(2, relationships.get(2));
+		diagram.addRelationship(4, relationships.get(4));
+		assertEquals(relationships, diagram.getRelationships());
+		for( Relationship relationship : relationships )
+		{
+			assertEquals(relationships.indexOf(relationship), diagram.indexOf(relationship));
+		}
+	}
+
+	@Test
+	public void testPlaceOnTop()
+	{
+		Diagram diagram = new Diagram();
+		Package first = new Package();
+		Package second = new Package();
+		BClass bottom = new BClass(false, false);
+		BClass top = new BClass(false, false);
+		diagram.addNamedElement(first);
+		diagram.addNamedElement(second);
+		first.addChild(bottom);
+		first.addChild(top);
+		bottom.attach(diagram);
+		top.attach(diagram);
+		diagram.placeOnTop(bottom);
+		assertEquals(List.of(top, bottom), first.getChildren());
+		assertEquals(List.of(second, first), diagram.getNamedElements());
+		assertTrue(bottom.getOptionalDiagram().isPresent());
+		assertTrue(diagram.contains(bottom));
+		assertEquals(first, bottom.getParent());
+	}
+
+	private static Relationship connect(Relationship pRelationship, NamedElement pStart, NamedElement pEnd, Diagram pDiagram)
+	{
+		pRelationship.connect(pStart, pEnd, pDiagram);
+		pDiagram.addRelationship(pRelationship);
+		return pRelationship;
+	}
+
+	private static List<Relationship> connectedTo(Diagram pDiagram, NamedElement pNamedElement)
+	{
+		List<Relationship> result = new ArrayList<>();
+		pDiagram.RelationshipsConnectedTo(pNamedElement).forEach(result::add);
+		return result;
+	}
+}
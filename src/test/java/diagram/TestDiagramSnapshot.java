@@ -0,0 +1,274 @@
+package diagram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import geom.Point;
+import geom.Rectangle;
+
+public class TestDiagramSnapshot
+{
+	@Test
+	public void testSharing()
+	{
+		Diagram diagram = new Diagram();
+		BClass first = new BClass(false, false);
+		Package aPackage = new Package();
+		BClass child = new BClass(true, false);
+		diagram.addNamedElement(first);
+		diagram.addNamedElement(aPackage);
+		aPackage.addChild(child);
+		Generalization generalization = new Generalization();
+		generalization.connect(child, first, diagram);
+		diagram.addRelationship(generalization);
+
+		DiagramSnapshot before = diagram.snapshot();
+		assertSame(before, diagram.snapshot());
+		child.getProperty(PropertyKey.NAME).setValue("Child");
+		DiagramSnapshot after = diagram.snapshot();
+
+		assertEquals("", childOf(before).getProperty(PropertyKey.NAME));
+		assertEquals("Child", childOf(after).getProperty(PropertyKey.NAME));
+		assertSame(before.getRootElements().get(0), after.getRootElements().get(0));
+		assertSame(before.getRelationships().get(0), after.getRelationships().get(0));
+		assertSame(childOf(after), after.getStart(after.getRelationships().get(0)));
+		assertSame(after.getRootElements().get(0), after.getEnd(after.getRelationships().get(0)));
+
+		first.translate(10, 20);
+		diagram.placeOnTop(first);
+		DiagramSnapshot moved = diagram.snapshot();
+		assertEquals(10, moved.getRootElements().get(1).getX());
+		assertEquals(0, after.getRootElements().get(0).getX());
+		assertSame(after.getRelationships().get(0), moved.getRelationships().get(0));
+		assertEquals(10, moved.getEnd(moved.getRelationships().get(0)).getX());
+		assertSame(childOf(after), childOf(moved));
+	}
+
+	@Test
+	public void testKnownBounds()
+	{
+		Diagram diagram = new Diagram();
+		BClass first = new BClass(false, false);
+		BClass second = new BClass(false, false);
+		diagram.addNamedElement(first);
+		diagram.addNamedElement(second);
+		Generalization generalization = new Generalization();
+		generalization.connect(first, second, diagram);
+		diagram.addRelationship(generalization);
+		generalization.setKnownBounds(new Rectangle(0, 0, 10, 10));
+
+		DiagramSnapshot known = diagram.snapshot();
+		assertEquals(new Rectangle(0, 0, 10, 10), known.getRelationships().get(0).getKnownBounds().get());
+		Diagram copy = known.toDiagram();
+		assertEquals(new Rectangle(0, 0, 10, 10), copy.getRelationships().get(0).getKnownBounds().get());
+
+		second.translate(10, 0);
+		DiagramSnapshot moved = diagram.snapshot();
+		assertFalse(moved.getRelationships().get(0).getKnownBounds().isPresent());
+		assertTrue(known.getRelationships().get(0).getKnownBounds().isPresent());
+
+		generalization.setKnownBounds(new Rectangle(0, 0, 20, 10));
+		Association association = new Association(false, false);
+		association.connect(second, first, diagram);
+		diagram.addRelationship(association);
+		DiagramSnapshot connected = diagram.snapshot();
+		assertFalse(generalization.getKnownBounds().isPresent());
+		assertFalse(connected.getRelationships().get(0).getKnownBounds().isPresent());
+	}
+
+	/*
+	 * Snapshots derived from the previous ones must be the same as snapshots of
+	 * copies of the diagram, which are built from scratch, and must not change.
+	 */
+	@Test
+	public void testRandomEdits()
+	{
+		Random random = new Random(18);
+		Diagram diagram = new Diagram();
+		List<NamedElement> namedElements = new ArrayList<>();
+		List<String> descriptions = new ArrayList<>();
+		List<DiagramSnapshot> snapshots = new ArrayList<>();
+		for( int i = 0; i < 3000; i++ )
+		{
+			edit(diagram, namedElements, random);
+			if( random.nextInt(10) == 0 )
+			{
+				DiagramSnapshot snapshot = diagram.snapshot();
+				String description = describe(snapshot);
+				assertEquals(describe(diagram.duplicate().snapshot()), description);
+				assertEquals(describe(snapshot.toDiagram().snapshot()), description);
+				snapshots.add(snapshot);
+				descriptions.add(description);
+			}
+		}
+		for( int i = 0; i < snapshots.size(); i++ )
+		{
+			assertEquals(descriptions.get(i), describe(snapshots.get(i)));
+		}
+	}
+
+	@Test
+	public void testToDiagram()
+	{
+		Diagram diagram = new Diagram();
+		BClass bClass = new BClass(false, true);
+		bClass.getProperty(PropertyKey.NAME).setValue("Shape");
+		Package aPackage = new Package();
+		diagram.addNamedElement(aPackage);
+		aPackage.addChild(bClass);
+		Association association = new Association(true, false);
+		association.connect(bClass, aPackage, diagram);
+		diagram.addRelationship(association);
+
+		Diagram copy = diagram.snapshot().toDiagram();
+		BClass copiedClass = (BClass) ((Package) copy.getNamedElements().get(0)).getChildren().get(0);
+		assertSame(bClass.getProperty(PropertyKey.NAME).getValue(), copiedClass.getProperty(PropertyKey.NAME).getValue());
+		assertEquals(bClass.getPersistentId(), copiedClass.getPersistentId());
+		assertEquals(aPackage.getPersistentId(), copy.getNamedElements().get(0).getPersistentId());
+		assertTrue(copiedClass.getIsInterface());
+		assertTrue(((Association) copy.getRelationships().get(0)).getUniDirection());
+		assertSame(copiedClass, copy.getRelationships().get(0).getStart());
+		assertNotSame(diagram.getStringPool(), copy.getStringPool());
+	}
+
+	private static void edit(Diagram pDiagram, List<NamedElement> pNamedElements, Random pRandom)
+	{
+		NamedElement target = pNamedElements.isEmpty() ? null : pNamedElements.get(pRandom.nextInt(pNamedElements.size()));
+		switch( pRandom.nextInt(9) )
+		{
+		case 0:
+			NamedElement added = pRandom.nextBoolean() ? new Package() : new BClass(false, false);
+			added.setPosition(new Point(pRandom.nextInt(1000), pRandom.nextInt(1000)));
+			if( target instanceof Package )
+			{
+				Package parent = (Package) target;
+				parent.addChild(pRandom.nextInt(parent.getChildren().size() + 1), added);
+			}
+			else
+			{
+				pDiagram.addNamedElement(pRandom.nextInt(pDiagram.getNamedElements().size() + 1), added);
+			}
+			pNamedElements.add(added);
+			break;
+		case 1:
+			if( target != null && !(target instanceof Package) )
+			{
+				pDiagram.removeRelationships((List<Relationship>) pDiagram.RelationshipsConnectedTo(target));
+				if( target.hasParent() )
+				{
+					target.getParent().removeChild(target);
+				}
+				else
+				{
+					pDiagram.removeNamedElement(target);
+				}
+				pNamedElements.remove(target);
+			}
+			break;
+		case 2:
+			if( target != null )
+			{
+				target.translate(pRandom.nextInt(20), pRandom.nextInt(20));
+			}
+			break;
+		case 3:
+			if( target != null )
+			{
+				target.getProperty(PropertyKey.NAME).setValue("N" + pRandom.nextInt(100));
+			}
+			break;
+		case 4:
+			if( target != null )
+			{
+				pDiagram.placeOnTop(target);
+			}
+			break;
+		case 5:
+		case 6:
+			if( target != null )
+			{
+				NamedElement end = pNamedElements.get(pRandom.nextInt(pNamedElements.size()));
+				Relationship relationship = pRandom.nextBoolean() ? new Generalization() : new Association(false, false);
+				relationship.connect(target, end, pDiagram);
+				pDiagram.addRelationship(pRandom.nextInt(pDiagram.getRelationships().size() + 1), relationship);
+			}
+			break;
+		case 7:
+			if( !pDiagram.getRelationships().isEmpty() )
+			{
+				pDiagram.removeRelationship(pDiagram.getRelationships().get(pRandom.nextInt(pDiagram.getRelationships().size())));
+			}
+			break;
+		default:
+			Relationship relationship = pDiagram.getRelationships().isEmpty() ? null :
+					pDiagram.getRelationships().get(pRandom.nextInt(pDiagram.getRelationships().size()));
+			if( relationship != null && relationship.getSchema().size() > 0 )
+			{
+				relationship.getProperties().put(relationship.getSchema().getKey(0).getName(), new Property("L" + pRandom.nextInt(100)));
+			}
+			else if( target instanceof BClass )
+			{
+				((BClass) target).setIsAbstract(!((BClass) target).getIsAbstract());
+			}
+		}
+	}
+
+	private static NamedElementSnapshot childOf(DiagramSnapshot pSnapshot)
+	{
+		for( NamedElementSnapshot namedElement : pSnapshot.getRootElements() )
+		{
+			if( namedElement.isPackage() )
+			{
+				return pSnapshot.getChildren(namedElement).get(0);
+			}
+		}
+		return null;
+	}
+
+	private static String describe(DiagramSnapshot pSnapshot)
+	{
+		StringBuilder result = new StringBuilder();
+		for( NamedElementSnapshot namedElement : pSnapshot.getRootElements() )
+		{
+			describe(pSnapshot, namedElement, result);
+		}
+		for( RelationshipSnapshot relationship : pSnapshot.getRelationships() )
+		{
+			describeElement(relationship, result);
+			describe(pSnapshot, pSnapshot.getStart(relationship), result);
+			describe(pSnapshot, pSnapshot.getEnd(relationship), result);
+		}
+		return result.toString();
+	}
+
+	private static void describe(DiagramSnapshot pSnapshot, NamedElementSnapshot pNamedElement, StringBuilder pResult)
+	{
+		describeElement(pNamedElement, pResult);
+		pResult.append('#').append(pNamedElement.getPersistentId());
+		pResult.append(pNamedElement.getX()).append(',').append(pNamedElement.getY()).append(pNamedElement.isAbstract()).append('[');
+		for( NamedElementSnapshot child : pSnapshot.getChildren(pNamedElement) )
+		{
+			describe(pSnapshot, child, pResult);
+		}
+		pResult.append(']');
+	}
+
+	private static void describeElement(ElementSnapshot pElement, StringBuilder pResult)
+	{
+		pResult.append(pElement.getType().getSimpleName()).append('{');
+		for( int i = 0; i < pElement.getSchema().size(); i++ )
+		{
+			pResult.append(pElement.getProperty(pElement.getSchema().getKey(i))).append(';');
+		}
+		pResult.append('}');
+	}
+}
@@ -0,0 +1,132 @@
+package diagram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import geom.Point;
+
+public class TestElement
+{
+	@Test
+	public void testPropertiesView()
+	{
+		Association association = new Association(false, false);
+		Map<String, Property> properties = association.getProperties();
+		List<String> keys = new ArrayList<>(properties.keySet());
+		assertEquals(List.of("startLabel", "midLabel", "endLabel", "direction"), keys);
+		assertEquals("NoDirection", properties.get("direction").getValue());
+		assertNull(properties.get("name"));
+		assertFalse(properties.containsKey("name"));
+
+		Property label = new Property("label");
+		properties.put("midLabel", label);
+		assertSame(label, association.getProperty(PropertyKey.MID_LABEL));
+		Property direction = new Property("BiDirection");
+		properties.entrySet().iterator().next().setValue(direction);
+		assertSame(direction, association.getProperty(PropertyKey.START_LABEL));
+		assertThrows(UnsupportedOperationException.class, () -> properties.put("name", new Property("")));
+		assertThrows(UnsupportedOperationException.class, () -> properties.remove("midLabel"));
+	}
+
+	@Test
+	public void testPropertiesViewIsKept()
+	{
+		BClass bClass = new BClass(false, false);
+		Map<String, Property> properties = bClass.getProperties();
+		assertSame(properties, bClass.getProperties());
+		bClass.getProperty(PropertyKey.NAME).setValue("Name");
+		bClass.buildProperties();
+		assertSame(bClass.getProperty(PropertyKey.NAME), properties.get("name"));
+		assertEquals("", properties.get("name").getValue());
+
+		BClass clone = bClass.clone();
+		assertNotSame(properties, clone.getProperties());
+		Property name = new Property("Clone");
+		clone.getProperties().put("name", name);
+		assertSame(name, clone.getProperty(PropertyKey.NAME));
+		assertNotSame(name, bClass.getProperty(PropertyKey.NAME));
+	}
+
+	@Test
+	public void testSetProperties()
+	{
+		BClass bClass = new BClass(false, false);
+		bClass.getProperty(PropertyKey.METHODS).setValue("m()");
+		Property name = new Property("Name");
+		bClass.setProperties(Map.of("name", name, "literals", new Property("A")));
+		assertSame(name, bClass.getProperty(PropertyKey.NAME));
+		assertEquals("", bClass.getProperty(PropertyKey.METHODS).getValue());
+		assertEquals(3, bClass.getProperties().size());
+	}
+
+	@Test
+	public void testClone()
+	{
+		BClass bClass = new BClass(false, false);
+		bClass.getProperty(PropertyKey.ATTRIBUTES).setValue("a:int");
+		BClass clone = bClass.clone();
+		assertNotSame(bClass.getProperty(PropertyKey.ATTRIBUTES), clone.getProperty(PropertyKey.ATTRIBUTES));
+		assertEquals("a:int", clone.getProperty(PropertyKey.ATTRIBUTES).getValue());
+		clone.getProperty(PropertyKey.ATTRIBUTES).setValue("b:int");
+		assertEquals("a:int", bClass.getAttributesString());
+	}
+
+	@Test
+	public void testTranslate()
+	{
+		BClass bClass = new BClass(false, false);
+		bClass.setPosition(new Point(10, 20));
+		Point position = bClass.getPosition();
+		assertSame(position, bClass.getPosition());
+		BClass clone = bClass.clone();
+		bClass.translate(5, -5);
+		assertEquals(15, bClass.getX());
+		assertEquals(15, bClass.getY());
+		assertEquals(new Point(15, 15), bClass.getPosition());
+		assertEquals(new Point(10, 20), position);
+		assertEquals(new Point(10, 20), clone.getPosition());
+	}
+
+	@Test
+	public void testVersion()
+	{
+		Package outer = new Package();
+		Package inner = new Package();
+		BClass bClass = new BClass(false, false);
+		outer.addChild(inner);
+		int outerVersion = outer.getVersion();
+		inner.addChild(bClass);
+		assertNotEquals(outerVersion, outer.getVersion());
+		
+		outerVersion = outer.getVersion();
+		int innerVersion = inner.getVersion();
+		int classVersion = bClass.getVersion();
+		bClass.translate(1, 1);
+		assertNotEquals(classVersion, bClass.getVersion());
+		assertNotEquals(innerVersion, inner.getVersion());
+		assertNotEquals(outerVersion, outer.getVersion());
+		
+		outerVersion = outer.getVersion();
+		classVersion = bClass.getVersion();
+		bClass.getProperty(PropertyKey.NAME).setValue("Name");
+		assertNotEquals(classVersion, bClass.getVersion());
+		assertNotEquals(outerVersion, outer.getVersion());
+		
+		outerVersion = outer.getVersion();
+		classVersion = bClass.getVersion();
+		inner.removeChild(bClass);
+		assertNotEquals(outerVersion, outer.getVersion());
+		assertEquals(classVersion, bClass.getVersion());
+	}
+}
@@ -0,0 +1,102 @@
+package diagram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TestOrderStatisticList
+{
+	@Test
+	public void testSameAsArrayList()
+	{
+		assertSameAsArrayList(new Random(42), 10_000, Integer.MAX_VALUE);
+	}
+
+	/*
+	 * Small lists find their elements without a map.
+	 */
+	@Test
+	public void testSameAsArrayListWhenSmall()
+	{
+		Random random = new Random(42);
+		for( int i = 0; i < 100; i++ )
+		{
+			assertSameAsArrayList(random, 100, 16);
+		}
+	}
+
+	private static void assertSameAsArrayList(Random pRandom, int pOperations, int pMaxSize)
+	{
+		OrderStatisticList<Object> list = new OrderStatisticList<>();
+		List<Object> expected = new ArrayList<>();
+		for( int i = 0; i < pOperations; i++ )
+		{
+			int operation = pRandom.nextInt(6);
+			if( expected.isEmpty() || operation <= 1 && expected.size() < pMaxSize )
+			{
+				Object element = new Object();
+				int index = pRandom.nextInt(expected.size() + 1);
+				list.add(index, element);
+				expected.add(index, element);
+			}
+			else if( operation == 2 )
+			{
+				int index = pRandom.nextInt(expected.size());
+				assertEquals(expected.remove(index), list.remove(index));
+			}
+			else if( operation == 3 )
+			{
+				Object element = expected.get(pRandom.nextInt(expected.size()));
+				list.moveToEnd(element);
+				expected.remove(element);
+				expected.add(element);
+			}
+			else if( operation == 4 )
+			{
+				Object element = expected.get(pRandom.nextInt(expected.size()));
+				assertEquals(expected.indexOf(element), list.indexOf(element));
+			}
+			else
+			{
+				int index = pRandom.nextInt(expected.size());
+				assertEquals(expected.get(index), list.get(index));
+			}
+			assertEquals(expected.size(), list.size());
+		}
+		assertEquals(expected, list);
+		assertEquals(-1, list.indexOf(new Object()));
+	}
+
+	@Test
+	public void testIteratorRemove()
+	{
+		List<Integer> list = new OrderStatisticList<>();
+		for( int i = 0; i < 100; i++ )
+		{
+			list.add(i);
+		}
+		list.removeIf(element -> element % 3 == 0);
+		List<Integer> expected = new ArrayList<>();
+		for( int i = 0; i < 100; i++ )
+		{
+			if( i % 3 != 0 )
+			{
+				expected.add(i);
+			}
+		}
+		assertEquals(expected, list);
+		assertFalse(list.contains(3));
+		Iterator<Integer> iterator = list.iterator();
+		iterator.next();
+		list.add(1000);
+		assertThrows(RuntimeException.class, iterator::next);
+		assertThrows(IllegalArgumentException.class, () -> list.add(list.get(0)));
+	}
+}
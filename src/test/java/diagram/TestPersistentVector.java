@@ -0,0 +1,56 @@
+package diagram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TestPersistentVector
+{
+	@Test
+	public void testRandomOperations()
+	{
+		Random random = new Random(18);
+		List<Integer> expected = new ArrayList<>();
+		for( int i = 0; i < 100; i++ )
+		{
+			expected.add(i);
+		}
+		PersistentVector<Integer> vector = PersistentVector.of(expected);
+		List<PersistentVector<Integer>> versions = new ArrayList<>();
+		List<List<Integer>> contents = new ArrayList<>();
+		for( int i = 0; i < 2000; i++ )
+		{
+			int operation = random.nextInt(3);
+			if( operation == 0 || expected.isEmpty() )
+			{
+				int index = random.nextInt(expected.size() + 1);
+				expected.add(index, i);
+				vector = vector.plus(index, i);
+			}
+			else if( operation == 1 )
+			{
+				int index = random.nextInt(expected.size());
+				expected.remove(index);
+				vector = vector.minus(index);
+			}
+			else
+			{
+				int index = random.nextInt(expected.size());
+				expected.set(index, -i);
+				vector = vector.with(index, -i);
+			}
+			versions.add(vector);
+			contents.add(new ArrayList<>(expected));
+		}
+		assertEquals(expected, vector);
+		assertEquals(expected.get(expected.size() / 2), vector.get(expected.size() / 2));
+		for( int i = 0; i < versions.size(); i++ )
+		{
+			assertEquals(contents.get(i), new ArrayList<>(versions.get(i)));
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package diagram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TestPropertyParser
+{
+	private static final String ALPHABET = "ab :;,()\n";
+	private static final int SAMPLES = 20_000;
+
+	@Test
+	public void testSameAsSplit()
+	{
+		Random random = new Random(42);
+		for( int i = 0; i < SAMPLES; i++ )
+		{
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(12);
+			for( int j = 0; j < length; j++ )
+			{
+				text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+			}
+			assertSameAsSplit(text.toString());
+		}
+		assertSameAsSplit("name:String;\nage:int");
+		assertSameAsSplit("get(index:int, name:String):List<String>;\nclear():void;\n");
+		assertSameAsSplit("a:int<;b:int");
+		assertSameAsSplit("FATHER;\nMOTHER;");
+	}
+
+	@Test
+	public void testNestedTypes()
+	{
+		List<Attribute> attributes = PropertyParser.parseAttributes("index:Map<String, List<Integer>>;\ngrid:int[;]");
+		assertEquals("[index Map<String, List<Integer>>, grid int[;]]", describeAttributes(attributes));
+
+		List<Method> methods = PropertyParser.parseMethods("put(key:K, value:Map<K, V>):Map<K, V>");
+		assertEquals(1, methods.size());
+		assertEquals("put Map<K, V> [key K,  value Map<K, V>]", describe(methods.get(0)));
+	}
+
+	private static void assertSameAsSplit(String pText)
+	{
+		try
+		{
+			String expected = describeAttributes(splitAsAttributes(pText));
+			assertEquals(expected, describeAttributes(PropertyParser.parseAttributes(pText)), pText);
+		}
+		catch( ArrayIndexOutOfBoundsException exception )
+		{
+			// String.split fails on this text
+		}
+		try
+		{
+			List<String> expected = new ArrayList<>();
+			for( Method method : splitAsMethods(pText) )
+			{
+				expected.add(describe(method));
+			}
+			List<String> actual = new ArrayList<>();
+			for( Method method : PropertyParser.parseMethods(pText) )
+			{
+				actual.add(describe(method));
+			}
+			assertEquals(expected, actual, pText);
+		}
+		catch( ArrayIndexOutOfBoundsException exception )
+		{
+			// String.split fails on this text
+		}
+		assertEquals(List.of(pText.replace("\n", "").split(";")), PropertyParser.parseLiterals(pText), pText);
+	}
+
+	private static String describeAttributes(List<Attribute> pAttributes)
+	{
+		List<String> result = new ArrayList<>();
+		for( Attribute attribute : pAttributes )
+		{
+			result.add(attribute.getName() + " " + attribute.getType());
+		}
+		return result.toString();
+	}
+
+	private static String describe(Method pMethod)
+	{
+		return pMethod.getName() + " " + pMethod.getType() + " " + describeAttributes(pMethod.getParameters());
+	}
+
+	/*
+	 * The implementation of Property.splitAsAttributes with String.split.
+	 */
+	static List<Attribute> splitAsAttributes(String pText)
+	{
+		ArrayList<Attribute> result = new ArrayList<>();
+		for( String member : pText.replace("\n", "").split(";") )
+		{
+			result.add(splitAsAttribute(member));
+		}
+		return result;
+	}
+
+	/*
+	 * The implementation of Property.splitAsMethods with String.split.
+	 */
+	static List<Method> splitAsMethods(String pText)
+	{
+		ArrayList<Method> result = new ArrayList<>();
+		for( String member : pText.replace("\n", "").split(";") )
+		{
+			String[] parts = member.split("\\)");
+			String type = "";
+			if( parts.length == 2 )
+			{
+				type = parts[1].replace(":", "");
+			}
+			else if( parts.length > 2 )
+			{
+				for( int i = 1; i < parts.length; i++ )
+				{
+					type += parts[i];
+				}
+			}
+			String[] nameAndParameters = parts[0].split("\\(");
+			ArrayList<Attribute> parameters = new ArrayList<>();
+			if( nameAndParameters.length >= 2 )
+			{
+				for( String parameter : nameAndParameters[1].split(",") )
+				{
+					parameters.add(splitAsAttribute(parameter));
+				}
+			}
+			result.add(new Method(type, nameAndParameters[0], parameters));
+		}
+		return result;
+	}
+
+	private static Attribute splitAsAttribute(String pMember)
+	{
+		String[] parts = pMember.split(":");
+		if( parts.length <= 1 )
+		{
+			return new Attribute(parts[0], "");
+		}
+		String type = "";
+		for( int i = 1; i < parts.length; i++ )
+		{
+			type += parts[i];
+		}
+		return new Attribute(parts[0], type);
+	}
+}
@@ -0,0 +1,56 @@
+package diagram;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TestStringPool
+{
+	@Test
+	public void testIntern()
+	{
+		StringPool pool = new StringPool();
+		String first = new String("String");
+		assertSame(first, pool.intern(first));
+		assertSame(first, pool.intern(new String("String")));
+		assertSame(first, pool.intern("List<String>", 5, 11));
+		assertSame(first, pool.intern(new StringBuilder("a:String"), 2, 8));
+		assertEquals("", pool.intern("abc", 1, 1));
+		for( int i = 0; i < 1000; i++ )
+		{
+			String name = "name" + i;
+			assertSame(name, pool.intern(name));
+		}
+		assertEquals(1002, pool.size());
+		assertSame(first, pool.intern("String"));
+		assertEquals("name999", pool.intern("xname999", 1, 8));
+	}
+
+	@Test
+	public void testParsedTypesShared()
+	{
+		Diagram diagram = new Diagram();
+		BClass first = new BClass(false, false);
+		BClass second = new BClass(false, false);
+		diagram.addNamedElement(first);
+		diagram.addNamedElement(second);
+		first.getProperty(PropertyKey.ATTRIBUTES).setValue("id:int;\nname:String");
+		second.getProperty(PropertyKey.ATTRIBUTES).setValue("count:int");
+		List<Attribute> firstAttributes = first.getProperty(PropertyKey.ATTRIBUTES).splitAsAttributes();
+		List<Attribute> secondAttributes = second.getProperty(PropertyKey.ATTRIBUTES).splitAsAttributes();
+		assertSame(firstAttributes.get(0).getType(), secondAttributes.get(0).getType());
+
+		second.getProperty(PropertyKey.NAME).setValue(new String("Person"));
+		first.getProperty(PropertyKey.NAME).setValue(new String("Person"));
+		assertNotSame(first.getProperty(PropertyKey.NAME).getValue(), second.getProperty(PropertyKey.NAME).getValue());
+		int version = first.getProperty(PropertyKey.NAME).getVersion();
+		first.internProperties();
+		second.internProperties();
+		assertSame(first.getProperty(PropertyKey.NAME).getValue(), second.getProperty(PropertyKey.NAME).getValue());
+		assertEquals(version, first.getProperty(PropertyKey.NAME).getVersion());
+	}
+}
@@ -0,0 +1,115 @@
+package file;
+
+import java.util.Random;
+
+import diagram.BClass;
+import diagram.Diagram;
+import diagram.NamedElement;
+import diagram.Relationship;
+
+/**
+ * Measures the time needed to build serialization and deserialization
+ * contexts of increasing size, and to resolve the end points of as many
+ * relationships as there are classes through a deserialization context.
+ * The time per element should stay roughly constant if both directions of
+ * the context take constant time.
+ *
+ * Run with: java file.ContextBenchmark [sizes...]
+ */
+public final class ContextBenchmark
+{
+	private static final int[] DEFAULT_SIZES = {1_000, 10_000, 100_000};
+	private static final int WARMUP_SIZE = 1_000;
+	private static final int WARMUP_ROUNDS = 20;
+	private static final long SEED = 42;
+
+	private ContextBenchmark() {}
+
+	/**
+	 * @param pArgs Optional context sizes.
+	 */
+	public static void main(String[] pArgs)
+	{
+		int[] sizes = DEFAULT_SIZES;
+		if( pArgs.length > 0 )
+		{
+			sizes = new int[pArgs.length];
+			for( int i = 0; i < pArgs.length; i++ )
+			{
+				sizes[i] = Integer.parseInt(pArgs[i]);
+			}
+		}
+
+		Diagram warmup = PersistenceBenchmark.createDiagram(WARMUP_SIZE);
+		for( int i = 0; i < WARMUP_ROUNDS; i++ )
+		{
+			resolve(warmup, deserializationContext(warmup, new SerializationContext(warmup)));
+		}
+
+		System.out.println(String.format("%10s %16s %16s %16s %14s", "elements", "serialize (ms)",
+				"deserialize (ms)", "resolve (ms)", "us/element"));
+		for( int size : sizes )
+		{
+			Diagram diagram = PersistenceBenchmark.createDiagram(size);
+			long start = System.nanoTime();
+			SerializationContext serialization = new SerializationContext(diagram);
+			long serialized = System.nanoTime();
+			DeserializationContext deserialization = deserializationContext(diagram, serialization);
+			long deserialized = System.nanoTime();
+			int resolved = resolve(diagram, deserialization);
+			long end = System.nanoTime();
+			assert resolved == 2 * diagram.getRelationships().size();
+			System.out.println(String.format("%10d %16.1f %16.1f %16.1f %14.3f", size, (serialized - start) / 1e6,
+					(deserialized - serialized) / 1e6, (end - deserialized) / 1e6, (end - start) / 1e3 / size));
+		}
+	}
+
+	/*
+	 * Adds the NamedElements of pDiagram to a new deserialization context, in random order,
+	 * with the identifiers of pContext.
+	 */
+	private static DeserializationContext deserializationContext(Diagram pDiagram, SerializationContext pContext)
+	{
+		NamedElement[] namedElements = new NamedElement[pContext.size()];
+		int i = 0;
+		for( NamedElement namedElement : pContext )
+		{
+			namedElements[i++] = namedElement;
+		}
+		Random random = new Random(SEED);
+		for( i = namedElements.length - 1; i > 0; i-- )
+		{
+			int other = random.nextInt(i + 1);
+			NamedElement namedElement = namedElements[i];
+			namedElements[i] = namedElements[other];
+			namedElements[other] = namedElement;
+		}
+		DeserializationContext result = new DeserializationContext(pDiagram);
+		for( NamedElement namedElement : namedElements )
+		{
+			result.addNamedElement(namedElement, pContext.getId(namedElement));
+		}
+		return result;
+	}
+
+	/*
+	 * Looks up the end points of every relationship by identifier, as a decoder does,
+	 * and returns the number of end points found.
+	 */
+	private static int resolve(Diagram pDiagram, DeserializationContext pContext)
+	{
+		int result = 0;
+		for( Relationship relationship : pDiagram.getRelationships() )
+		{
+			if( pContext.getNamedElement(pContext.getId(relationship.getStart())) == relationship.getStart() )
+			{
+				result++;
+			}
+			if( pContext.getNamedElement(pContext.getId(relationship.getEnd())) instanceof BClass )
+			{
+				result++;
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,189 @@
+package file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import diagram.Association;
+import diagram.BClass;
+import diagram.Diagram;
+import diagram.Generalization;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.Relationship;
+import geom.Point;
+
+/**
+ * Measures the time needed to save synthetic diagrams of increasing size
+ * with XmlStreamEncoder, which PersistenceService uses for Xml files.
+ * Each diagram has as many relationships as it has classes, so the time
+ * per element should stay roughly constant if saving scales linearly.
+ * Then compares the save time, load time and file size of the Xml and
+ * binary formats on the same diagrams, and the time needed to read a binary
+ * file completely with the time needed to map it and open one package.
+ *
+ * Run with: java file.PersistenceBenchmark [sizes...]
+ */
+public final class PersistenceBenchmark
+{
+	private static final int[] DEFAULT_SIZES = {1_000, 10_000, 100_000};
+	private static final int WARMUP_SIZE = 1_000;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final long SEED = 42;
+
+	private PersistenceBenchmark() {}
+
+	/**
+	 * Creates a diagram with pSize classes, each with a few attributes and a method,
+	 * and pSize relationships between randomly chosen classes.
+	 *
+	 * @param pSize The number of classes and relationships.
+	 * @return A new diagram.
+	 */
+	static Diagram createDiagram(int pSize)
+	{
+		Random random = new Random(SEED);
+		Diagram diagram = new Diagram();
+		NamedElement[] elements = new NamedElement[pSize];
+		for( int i = 0; i < pSize; i++ )
+		{
+			BClass element = new BClass(false, false);
+			element.getProperties().get("name").setValue("Class" + i);
+			element.getProperties().get("attributes").setValue("id:int;\nname:String;\nchildren:List<Class" + i + ">");
+			element.getProperties().get("methods").setValue("get(index:int):Class" + i);
+			element.setPosition(new Point(random.nextInt(10_000), random.nextInt(10_000)));
+			diagram.addNamedElement(element);
+			elements[i] = element;
+		}
+		for( int i = 0; i < pSize; i++ )
+		{
+			Relationship relationship = i % 2 == 0 ? new Association(false, false) : new Generalization();
+			relationship.connect(elements[random.nextInt(pSize)], elements[random.nextInt(pSize)], diagram);
+			diagram.addRelationship(relationship);
+		}
+		return diagram;
+	}
+
+	/**
+	 * Creates a diagram with pSize classes distributed in about sqrt(pSize) packages,
+	 * and pSize relationships between randomly chosen classes of the same package.
+	 *
+	 * @param pSize The number of classes and relationships.
+	 * @return A new diagram.
+	 */
+	static Diagram createPackagedDiagram(int pSize)
+	{
+		Random random = new Random(SEED);
+		Diagram diagram = new Diagram();
+		int packageSize = Math.max(1, (int) Math.sqrt(pSize));
+		for( int first = 0; first < pSize; first += packageSize )
+		{
+			Package container = new Package();
+			container.getProperties().get("name").setValue("package" + first);
+			int size = Math.min(packageSize, pSize - first);
+			NamedElement[] elements = new NamedElement[size];
+			for( int i = 0; i < size; i++ )
+			{
+				BClass element = new BClass(false, false);
+				element.getProperties().get("name").setValue("Class" + (first + i));
+				element.getProperties().get("attributes").setValue("id:int;\nname:String");
+				element.getProperties().get("methods").setValue("get(index:int):Class" + (first + i));
+				element.setPosition(new Point(random.nextInt(10_000), random.nextInt(10_000)));
+				container.addChild(element);
+				elements[i] = element;
+			}
+			diagram.addNamedElement(container);
+			for( int i = 0; i < size; i++ )
+			{
+				Relationship relationship = i % 2 == 0 ? new Association(false, false) : new Generalization();
+				relationship.connect(elements[random.nextInt(size)], elements[random.nextInt(size)], diagram);
+				diagram.addRelationship(relationship);
+			}
+		}
+		return diagram;
+	}
+
+	/**
+	 * @param pArgs Optional diagram sizes.
+	 * @throws IOException If the temporary files cannot be written.
+	 */
+	public static void main(String[] pArgs) throws IOException
+	{
+		int[] sizes = DEFAULT_SIZES;
+		if( pArgs.length > 0 )
+		{
+			sizes = new int[pArgs.length];
+			for( int i = 0; i < pArgs.length; i++ )
+			{
+				sizes[i] = Integer.parseInt(pArgs[i]);
+			}
+		}
+		File file = File.createTempFile("benchmark", ".xmi");
+		file.deleteOnExit();
+		File binaryFile = File.createTempFile("benchmark", ".mbd");
+		binaryFile.deleteOnExit();
+
+		Diagram warmup = createDiagram(WARMUP_SIZE);
+		for( int i = 0; i < WARMUP_ROUNDS; i++ )
+		{
+			XmlStreamEncoder.encode(warmup, file);
+			XmlStreamDecoder.decode(file);
+			BinaryEncoder.encode(warmup, binaryFile);
+			BinaryDecoder.decode(binaryFile);
+		}
+
+		System.out.println(String.format("%10s %12s %14s", "elements", "save (ms)", "us/element"));
+		for( int size : sizes )
+		{
+			Diagram diagram = createDiagram(size);
+			long start = System.nanoTime();
+			XmlStreamEncoder.encode(diagram, file);
+			long elapsed = System.nanoTime() - start;
+			System.out.println(String.format("%10d %12.1f %14.2f", size, elapsed / 1e6, elapsed / 1e3 / size));
+		}
+
+		System.out.println();
+		System.out.println(String.format("%10s %8s %12s %12s %12s", "elements", "format", "save (ms)", "load (ms)", "size (KB)"));
+		for( int size : sizes )
+		{
+			Diagram diagram = createDiagram(size);
+			long start = System.nanoTime();
+			XmlStreamEncoder.encode(diagram, file);
+			long saved = System.nanoTime();
+			XmlStreamDecoder.decode(file);
+			long loaded = System.nanoTime();
+			printComparison(size, "xmi", saved - start, loaded - saved, file.length());
+
+			start = System.nanoTime();
+			BinaryEncoder.encode(diagram, binaryFile);
+			saved = System.nanoTime();
+			BinaryDecoder.decode(binaryFile);
+			loaded = System.nanoTime();
+			printComparison(size, "binary", saved - start, loaded - saved, binaryFile.length());
+		}
+
+		System.out.println();
+		System.out.println(String.format("%10s %12s %12s %16s", "elements", "read (ms)", "mapped (ms)", "1 package (ms)"));
+		for( int size : sizes )
+		{
+			BinaryEncoder.encode(createPackagedDiagram(size), binaryFile);
+			long start = System.nanoTime();
+			PersistenceService.read(binaryFile);
+			long read = System.nanoTime();
+			Diagram diagram = PersistenceService.readMapped(binaryFile).diagram();
+			long mapped = System.nanoTime();
+			for( NamedElement child : ((Package) diagram.getNamedElements().get(0)).getChildren() )
+			{
+				child.getProperties().get("attributes").getValue();
+			}
+			long opened = System.nanoTime();
+			System.out.println(String.format("%10d %12.1f %12.1f %16.1f", size, (read - start) / 1e6, 
+					(mapped - read) / 1e6, (opened - mapped) / 1e6));
+		}
+	}
+
+	private static void printComparison(int pSize, String pFormat, long pSave, long pLoad, long pLength)
+	{
+		System.out.println(String.format("%10d %8s %12.1f %12.1f %12d", pSize, pFormat, pSave / 1e6, pLoad / 1e6, pLength / 1024));
+	}
+}
@@ -0,0 +1,120 @@
+package file;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.function.Function;
+
+import diagram.BClass;
+import diagram.Diagram;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.PropertyKey;
+
+/**
+ * Measures the heap retained by a model with many attributes once it is
+ * loaded and its attributes and methods are split, as when it is drawn. The
+ * attributes and parameters draw their names and types from a small
+ * vocabulary, as in real metamodels, so most of their strings are repeated.
+ * The model is loaded from the Xml and the binary format.
+ *
+ * Run with: java file.StringFootprint [attributes]
+ */
+public final class StringFootprint
+{
+	private static final int DEFAULT_ATTRIBUTES = 100_000;
+	private static final int ATTRIBUTES_PER_CLASS = 20;
+	private static final int CLASSES_PER_PACKAGE = 50;
+	private static final int GC_ROUNDS = 5;
+	private static final long SEED = 42;
+	private static final String[] NAMES = {"id", "name", "value", "count", "owner", "parent", "children", "created",
+			"updated", "description", "label", "type", "key", "index", "size", "enabled", "visible", "status", "code", "version"};
+	private static final String[] TYPES = {"int", "long", "double", "boolean", "String", "Date", "List<String>",
+			"Map<String, Integer>", "Set<Long>", "Optional<String>"};
+
+	private StringFootprint() {}
+
+	/**
+	 * @param pArgs An optional number of attributes.
+	 * @throws IOException If the temporary files cannot be written.
+	 */
+	public static void main(String[] pArgs) throws IOException
+	{
+		int attributes = pArgs.length > 0 ? Integer.parseInt(pArgs[0]) : DEFAULT_ATTRIBUTES;
+		Diagram diagram = createDiagram(attributes);
+		File xml = File.createTempFile("footprint", ".jet");
+		File binary = File.createTempFile("footprint", ".mbd");
+		xml.deleteOnExit();
+		binary.deleteOnExit();
+		XmlStreamEncoder.encode(diagram, xml);
+		BinaryEncoder.encode(diagram, binary);
+		diagram = null;
+
+		System.out.println(String.format("%8s %14s %18s", "format", "retained (MB)", "bytes/attribute"));
+		measure("xml", xml, XmlStreamDecoder::decode, attributes);
+		measure("binary", binary, BinaryDecoder::decode, attributes);
+	}
+
+	private static void measure(String pFormat, File pFile, Function<File, Diagram> pDecoder, int pAttributes)
+	{
+		long before = usedMemory();
+		Diagram diagram = pDecoder.apply(pFile);
+		for( NamedElement namedElement : diagram.getNamedElements() )
+		{
+			for( NamedElement child : ((Package) namedElement).getChildren() )
+			{
+				child.getProperty(PropertyKey.ATTRIBUTES).splitAsAttributes();
+				child.getProperty(PropertyKey.METHODS).splitAsMethods();
+			}
+		}
+		long retained = usedMemory() - before;
+		assert !diagram.getNamedElements().isEmpty();
+		System.out.println(String.format("%8s %14.1f %18d", pFormat, retained / 1e6, retained / pAttributes));
+	}
+
+	/*
+	 * Creates packages of classes with ATTRIBUTES_PER_CLASS attributes each, and a
+	 * method per attribute, until there are pAttributes attributes.
+	 */
+	private static Diagram createDiagram(int pAttributes)
+	{
+		Random random = new Random(SEED);
+		Diagram diagram = new Diagram();
+		Package container = null;
+		for( int i = 0; i * ATTRIBUTES_PER_CLASS < pAttributes; i++ )
+		{
+			if( i % CLASSES_PER_PACKAGE == 0 )
+			{
+				container = new Package();
+				container.getProperty(PropertyKey.NAME).setValue("package" + i / CLASSES_PER_PACKAGE);
+				diagram.addNamedElement(container);
+			}
+			StringBuilder attributes = new StringBuilder();
+			StringBuilder methods = new StringBuilder();
+			for( int j = 0; j < ATTRIBUTES_PER_CLASS; j++ )
+			{
+				String name = NAMES[random.nextInt(NAMES.length)];
+				String type = TYPES[random.nextInt(TYPES.length)];
+				attributes.append(name).append(':').append(type).append(";\n");
+				methods.append("get").append(name).append("(key:").append(TYPES[random.nextInt(TYPES.length)])
+						.append("):").append(type).append(";\n");
+			}
+			BClass bClass = new BClass(false, false);
+			bClass.getProperty(PropertyKey.NAME).setValue("Class" + i);
+			bClass.getProperty(PropertyKey.ATTRIBUTES).setValue(attributes.toString());
+			bClass.getProperty(PropertyKey.METHODS).setValue(methods.toString());
+			container.addChild(bClass);
+		}
+		return diagram;
+	}
+
+	private static long usedMemory()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for( int i = 0; i < GC_ROUNDS; i++ )
+		{
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,262 @@
+package file;
+
+import static file.TestPersistenceService.createDiagram;
+import static file.TestPersistenceService.describe;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import diagram.BClass;
+import diagram.Diagram;
+import diagram.Generalization;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.Relationship;
+import diagram.manager.DiagramOperationProcessor;
+import diagram.manager.SimpleOperation;
+import geom.Point;
+
+public class TestDiagramJournal
+{
+	@TempDir
+	Path aDirectory;
+
+	@Test
+	public void testRecover() throws Exception
+	{
+		File file = aDirectory.resolve("diagram.xmi").toFile();
+		Diagram diagram = createDiagram();
+		DiagramJournal journal = new DiagramJournal(diagram);
+		journal.save(file).get();
+		DiagramOperationProcessor processor = new DiagramOperationProcessor();
+		processor.addOperationListener(journal::record);
+
+		edit(diagram, processor);
+		journal.sync();
+		assertTrue(DiagramJournal.hasJournal(file));
+		DiagramJournal recovered = DiagramJournal.recover(file);
+		assertEquals(describe(diagram), describe(recovered.getDiagram()));
+
+		// The recovered journal continues from the recovered diagram
+		DiagramOperationProcessor recoveredProcessor = new DiagramOperationProcessor();
+		recoveredProcessor.addOperationListener(recovered::record);
+		NamedElement person = recovered.getDiagram().getNamedElements().get(0);
+		recoveredProcessor.executeNewOperation(recovered.getDiagram().getDiagramBuilder()
+				.createMoveNamedElementOperation(person, 7, 7));
+		recovered.sync();
+		assertEquals(describe(recovered.getDiagram()), describe(DiagramJournal.recover(file).getDiagram()));
+		journal.close();
+		recovered.close();
+	}
+
+	@Test
+	public void testCompaction() throws Exception
+	{
+		File file = aDirectory.resolve("diagram.mbd").toFile();
+		Diagram diagram = createDiagram();
+		DiagramJournal journal = new DiagramJournal(diagram, 64);
+		journal.save(file).get();
+		DiagramOperationProcessor processor = new DiagramOperationProcessor();
+		processor.addOperationListener(journal::record);
+
+		edit(diagram, processor);
+		journal.sync();
+		assertTrue(DiagramJournal.getAutosaveFile(file).exists());
+		assertTrue(DiagramJournal.getJournalFile(file).length() < uncompactedLength());
+		assertEquals(describe(diagram), describe(DiagramJournal.recover(file).getDiagram()));
+
+		journal.save(file).get();
+		assertFalse(DiagramJournal.getAutosaveFile(file).exists());
+		assertFalse(DiagramJournal.hasJournal(file));
+		journal.close();
+	}
+
+	@Test
+	public void testMappedStart() throws Exception
+	{
+		File file = aDirectory.resolve("diagram.mbd").toFile();
+		PersistenceService.save(createDiagram(), file);
+		DiagramJournal journal = DiagramJournal.startMapped(file);
+		Diagram diagram = journal.getDiagram();
+		Package family = (Package) diagram.getNamedElements().get(1);
+		DiagramOperationProcessor processor = new DiagramOperationProcessor();
+		processor.addOperationListener(journal::record);
+
+		BClass other = new BClass(false, false);
+		processor.executeNewOperation(new SimpleOperation(() -> diagram.addNamedElement(other),
+				() -> diagram.removeNamedElement(other), List.of(other)));
+		journal.sync();
+		assertFalse(family.hasLoadedChildren());
+		assertFalse(DiagramJournal.getAutosaveFile(file).exists());
+		assertTrue(DiagramJournal.hasJournal(file));
+
+		edit(diagram, processor);
+		journal.sync();
+		assertFalse(DiagramJournal.getAutosaveFile(file).exists());
+		assertEquals(describe(diagram), describe(DiagramJournal.recover(file).getDiagram()));
+		journal.close();
+	}
+
+	@Test
+	public void testMappedRemovalOfWaitingEndPoint() throws Exception
+	{
+		File file = aDirectory.resolve("diagram.mbd").toFile();
+		PersistenceService.save(createDiagram(), file);
+		DiagramJournal journal = DiagramJournal.startMapped(file);
+		Diagram diagram = journal.getDiagram();
+		NamedElement person = diagram.getNamedElements().get(0);
+		DiagramOperationProcessor processor = new DiagramOperationProcessor();
+		processor.addOperationListener(journal::record);
+
+		// The relationships of Person are not read yet, so they are not removed with it
+		processor.executeNewOperation(new SimpleOperation(() -> diagram.removeNamedElement(person),
+				() -> diagram.addNamedElement(0, person), List.of(person)));
+		journal.sync();
+		Diagram recovered = DiagramJournal.recover(file).getDiagram();
+		assertEquals(1, recovered.getNamedElements().size());
+		assertEquals(1, recovered.getRelationships().size());
+
+		processor.undoLastExecutedOperation();
+		journal.sync();
+		assertEquals(describe(diagram), describe(DiagramJournal.recover(file).getDiagram()));
+		assertEquals(3, diagram.getRelationships().size());
+		journal.close();
+	}
+
+	@Test
+	public void testTruncatedEntry() throws Exception
+	{
+		File file = aDirectory.resolve("diagram.xmi").toFile();
+		Diagram diagram = createDiagram();
+		DiagramJournal journal = new DiagramJournal(diagram);
+		journal.save(file).get();
+		DiagramOperationProcessor processor = new DiagramOperationProcessor();
+		processor.addOperationListener(journal::record);
+		NamedElement person = diagram.getNamedElements().get(0);
+		processor.executeNewOperation(diagram.getDiagramBuilder().createMoveNamedElementOperation(person, 10, 0));
+		journal.sync();
+		String expected = describe(diagram);
+		long length = DiagramJournal.getJournalFile(file).length();
+
+		processor.executeNewOperation(diagram.getDiagramBuilder().createMoveNamedElementOperation(person, 10, 0));
+		journal.sync();
+		try( FileOutputStream out = new FileOutputStream(DiagramJournal.getJournalFile(file), true) )
+		{
+			out.getChannel().truncate(length + 10);
+		}
+		assertEquals(expected, describe(DiagramJournal.recover(file).getDiagram()));
+		assertEquals(length, DiagramJournal.getJournalFile(file).length());
+		journal.close();
+	}
+
+	@Test
+	public void testJournalOfModifiedFile() throws Exception
+	{
+		File file = aDirectory.resolve("diagram.xmi").toFile();
+		Diagram diagram = createDiagram();
+		DiagramJournal journal = new DiagramJournal(diagram);
+		journal.save(file).get();
+		DiagramOperationProcessor processor = new DiagramOperationProcessor();
+		processor.addOperationListener(journal::record);
+		processor.executeNewOperation(diagram.getDiagramBuilder()
+				.createMoveNamedElementOperation(diagram.getNamedElements().get(0), 10, 0));
+		journal.sync();
+
+		long lastModified = file.lastModified();
+		PersistenceService.save(createDiagram(), file);
+		// The rewritten file has the same length, and file systems can keep times in seconds
+		assertTrue(file.setLastModified(lastModified + 2000));
+		assertThrows(DeserializationException.class, () -> DiagramJournal.recover(file));
+		journal.close();
+		assertFalse(DiagramJournal.getJournalFile(file).exists());
+	}
+
+	/*
+	 * Returns the length of the journal of the edits, without compaction.
+	 */
+	private long uncompactedLength() throws Exception
+	{
+		File file = aDirectory.resolve("uncompacted.mbd").toFile();
+		Diagram diagram = createDiagram();
+		DiagramJournal journal = new DiagramJournal(diagram);
+		journal.save(file).get();
+		DiagramOperationProcessor processor = new DiagramOperationProcessor();
+		processor.addOperationListener(journal::record);
+		edit(diagram, processor);
+		journal.sync();
+		long length = DiagramJournal.getJournalFile(file).length();
+		journal.close();
+		return length;
+	}
+
+	/*
+	 * Adds, moves, edits and removes elements, and undoes and redoes some of the changes.
+	 */
+	private static void edit(Diagram pDiagram, DiagramOperationProcessor pProcessor)
+	{
+		NamedElement person = pDiagram.getNamedElements().get(0);
+		Package family = (Package) pDiagram.getNamedElements().get(1);
+		NamedElement role = family.getChildren().get(1);
+		pProcessor.executeNewOperation(pDiagram.getDiagramBuilder().createMoveNamedElementOperation(person, 5, -3));
+
+		BClass child = new BClass(false, false);
+		child.getProperties().get("name").setValue("Child");
+		child.setPosition(new Point(400, 10));
+		pProcessor.executeNewOperation(new SimpleOperation(() -> pDiagram.addNamedElement(child),
+				() -> pDiagram.removeNamedElement(child), List.of(child)));
+
+		Package school = new Package();
+		school.getProperties().get("name").setValue("School");
+		BClass teacher = new BClass(false, true);
+		teacher.getProperties().get("name").setValue("Teacher");
+		school.addChild(teacher);
+		pProcessor.executeNewOperation(new SimpleOperation(() -> pDiagram.addNamedElement(school),
+				() -> pDiagram.removeNamedElement(school), List.of(school)));
+
+		Relationship generalization = new Generalization();
+		generalization.connect(child, person, pDiagram);
+		pProcessor.executeNewOperation(new SimpleOperation(() -> pDiagram.addRelationship(generalization),
+				() -> pDiagram.removeRelationship(generalization), List.of(generalization)));
+
+		pProcessor.executeNewOperation(new SimpleOperation(
+				() -> child.getProperties().get("methods").setValue("play():void"),
+				() -> child.getProperties().get("methods").setValue(""), List.of(child)));
+
+		Relationship composition = pDiagram.getRelationships().get(2);
+		pProcessor.executeNewOperation(new SimpleOperation(() ->
+		{
+			pDiagram.removeRelationship(composition);
+			family.removeChild(role);
+		},
+		() ->
+		{
+			family.addChild(1, role);
+			pDiagram.addRelationship(2, composition);
+		}, List.of(composition, role)));
+		pProcessor.undoLastExecutedOperation();
+		pProcessor.redoLastUndoneOperation();
+
+		pProcessor.executeNewOperation(new SimpleOperation(() ->
+		{
+			pDiagram.removeNamedElement(person);
+			school.addChild(0, person);
+		},
+		() ->
+		{
+			school.removeChild(person);
+			pDiagram.addNamedElement(person);
+		}, List.of(person)));
+		pProcessor.undoLastExecutedOperation();
+		pProcessor.redoLastUndoneOperation();
+	}
+}
@@ -0,0 +1,489 @@
+package file;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import diagram.Association;
+import diagram.BClass;
+import diagram.Composition;
+import diagram.Diagram;
+import diagram.DiagramListener;
+import diagram.Element;
+import diagram.Enumeration;
+import diagram.Generalization;
+import diagram.NamedElement;
+import diagram.Package;
+import diagram.Property;
+import diagram.Relationship;
+import geom.Point;
+import geom.Rectangle;
+
+public class TestPersistenceService
+{
+	private static final int CONCURRENT_DECODES = 8;
+
+	@TempDir
+	Path aDirectory;
+
+	@Test
+	public void testReadAllConcurrently() throws IOException
+	{
+		Diagram diagram = createDiagram();
+		List<File> files = new ArrayList<>();
+		for( int i = 0; i < CONCURRENT_DECODES; i++ )
+		{
+			files.add(aDirectory.resolve("diagram" + i + ".xmi").toFile());
+		}
+		Map<File, Diagram> diagrams = new LinkedHashMap<>();
+		files.forEach(file -> diagrams.put(file, diagram));
+		PersistenceService.saveAll(diagrams, CONCURRENT_DECODES);
+
+		List<VersionedDiagram> results = PersistenceService.readAll(files, CONCURRENT_DECODES);
+
+		assertEquals(CONCURRENT_DECODES, results.size());
+		for( int i = 0; i < results.size(); i++ )
+		{
+			assertEquals(describe(diagram), describe(results.get(i).diagram()));
+			if( i > 0 )
+			{
+				assertNotSame(results.get(i - 1).diagram(), results.get(i).diagram());
+			}
+		}
+	}
+
+	@Test
+	public void testXmlDecoderConcurrently() throws Exception
+	{
+		File file = aDirectory.resolve("diagram.xmi").toFile();
+		Diagram diagram = createDiagram();
+		XmlEncoder.encode(diagram, file);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Callable<Diagram>> tasks = new ArrayList<>();
+		for( int i = 0; i < CONCURRENT_DECODES; i++ )
+		{
+			tasks.add(() ->
+			{
+				start.await();
+				return XmlDecoder.decode(file);
+			});
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_DECODES);
+		try
+		{
+			List<Future<Diagram>> futures = new ArrayList<>();
+			for( Callable<Diagram> task : tasks )
+			{
+				futures.add(executor.submit(task));
+			}
+			start.countDown();
+			for( Future<Diagram> future : futures )
+			{
+				assertEquals(describe(diagram), describe(future.get()));
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testReadXmlEncoderOutput() throws IOException
+	{
+		File file = aDirectory.resolve("diagram.xmi").toFile();
+		Diagram diagram = createDiagram();
+		XmlEncoder.encode(diagram, file);
+		assertEquals(describe(diagram), describe(PersistenceService.read(file).diagram()));
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws IOException
+	{
+		File file = aDirectory.resolve("diagram.mbd").toFile();
+		Diagram diagram = createDiagram();
+		PersistenceService.save(diagram, file);
+		Diagram result = PersistenceService.read(file).diagram();
+		assertEquals(describe(diagram), describe(result));
+		NamedElement person = result.getNamedElements().get(0);
+		assertEquals("name:String;\nage:int", person.getProperties().get("attributes").getValue());
+		assertTrue(((Association)result.getRelationships().get(0)).getBiDirection());
+	}
+
+	@Test
+	public void testReadMapped() throws IOException
+	{
+		File file = aDirectory.resolve("diagram.mbd").toFile();
+		Diagram diagram = createDiagram();
+		PersistenceService.save(diagram, file);
+		Diagram result = PersistenceService.readMapped(file).diagram();
+		Package family = (Package) result.getNamedElements().get(1);
+		assertFalse(family.hasLoadedChildren());
+		assertTrue(result.getRelationships().isEmpty());
+		assertEquals(2, family.getChildren().size());
+		assertEquals(3, result.getRelationships().size());
+		assertSame(family.getChildren().get(0), result.getRelationships().get(0).getStart());
+		assertEquals(describe(diagram), describe(result));
+	}
+
+	@Test
+	public void testReadMappedRelationships() throws IOException
+	{
+		File file = aDirectory.resolve("diagram.mbd").toFile();
+		Diagram diagram = createDiagram();
+		BClass other = new BClass(false, false);
+		diagram.addNamedElement(other);
+		Association association = new Association(false, false);
+		association.connect(other, diagram.getNamedElements().get(0), diagram);
+		diagram.addRelationship(association);
+		for( Relationship relationship : diagram.getRelationships() )
+		{
+			relationship.setKnownBounds(new Rectangle(0, 0, 100, 100));
+		}
+		PersistenceService.save(diagram, file);
+
+		Diagram result = PersistenceService.readMapped(file).diagram();
+		Package family = (Package) result.getNamedElements().get(1);
+		NamedElement person = result.getNamedElements().get(0);
+		// Person waits for the relationships of the package, so the bounds of the association are not used
+		assertEquals(1, result.getRelationships().size());
+		assertFalse(result.getRelationships().get(0).getKnownBounds().isPresent());
+		result.loadRelationships(new Rectangle(500, 500, 10, 10));
+		assertFalse(family.hasLoadedChildren());
+		result.loadRelationships(new Rectangle(50, 50, 10, 10));
+		assertTrue(family.hasLoadedChildren());
+		assertEquals(4, result.getRelationships().size());
+
+		// Removing Person before the package is loaded keeps its relationships until it is back
+		result = PersistenceService.readMapped(file).diagram();
+		family = (Package) result.getNamedElements().get(1);
+		person = result.getNamedElements().get(0);
+		result.removeRelationship(result.getRelationships().get(0));
+		result.removeNamedElement(person);
+		family.getChildren();
+		assertEquals(1, result.getRelationships().size());
+		result.addNamedElement(person);
+		assertEquals(3, result.getRelationships().size());
+
+		// Moving Person loads the relationships that wait for it
+		result = PersistenceService.readMapped(file).diagram();
+		family = (Package) result.getNamedElements().get(1);
+		result.getNamedElements().get(0).translate(10, 10);
+		assertTrue(family.hasLoadedChildren());
+		assertEquals(4, result.getRelationships().size());
+	}
+
+	@Test
+	public void testKnownBoundsOfRelationships() throws IOException
+	{
+		File file = aDirectory.resolve("diagram.mbd").toFile();
+		Diagram diagram = new Diagram();
+		BClass first = new BClass(false, false);
+		BClass second = new BClass(false, false);
+		diagram.addNamedElement(first);
+		diagram.addNamedElement(second);
+		Generalization generalization = new Generalization();
+		generalization.connect(first, second, diagram);
+		diagram.addRelationship(generalization);
+		generalization.setKnownBounds(new Rectangle(10, 20, 30, 40));
+		PersistenceService.save(diagram, file);
+
+		Relationship mapped = PersistenceService.readMapped(file).diagram().getRelationships().get(0);
+		assertEquals(new Rectangle(10, 20, 30, 40), mapped.getKnownBounds().get());
+		mapped.getStart().translate(5, 5);
+		assertFalse(mapped.getKnownBounds().isPresent());
+		Relationship read = PersistenceService.read(file).diagram().getRelationships().get(0);
+		assertEquals(new Rectangle(10, 20, 30, 40), read.getKnownBounds().get());
+	}
+
+	@Test
+	public void testReadMappedValueIsNotAnEdit() throws IOException
+	{
+		File file = aDirectory.resolve("diagram.mbd").toFile();
+		PersistenceService.save(createDiagram(), file);
+		Diagram result = PersistenceService.readMapped(file).diagram();
+		List<Element> changed = new ArrayList<>();
+		result.addListener(new DiagramListener()
+		{
+			@Override
+			public void elementAdded(Element pElement) {}
+
+			@Override
+			public void elementRemoved(Element pElement) {}
+
+			@Override
+			public void elementChanged(Element pElement)
+			{
+				changed.add(pElement);
+			}
+
+			@Override
+			public void elementPlacedOnTop(NamedElement pNamedElement) {}
+
+			@Override
+			public void diagramReset() {}
+		});
+		NamedElement person = result.getNamedElements().get(0);
+		Property attributes = person.getProperties().get("attributes");
+		int version = person.getVersion();
+		int propertyVersion = attributes.getVersion();
+		assertEquals("name:String;\nage:int", attributes.getValue());
+		assertEquals(version, person.getVersion());
+		assertEquals(propertyVersion, attributes.getVersion());
+		assertTrue(changed.isEmpty());
+	}
+
+	@Test
+	public void testReadMappedKnownBounds() throws Exception
+	{
+		File file = aDirectory.resolve("diagram.mbd").toFile();
+		Diagram diagram = createDiagram();
+		Package family = (Package) diagram.getNamedElements().get(1);
+		family.setKnownBounds(new Rectangle(10, 20, 300, 200));
+		PersistenceService.saveInBackground(diagram, file).get();
+		Package result = (Package) PersistenceService.readMapped(file).diagram().getNamedElements().get(1);
+		assertEquals(new Rectangle(10, 20, 300, 200), result.getKnownBounds().get());
+		assertFalse(result.hasLoadedChildren());
+	}
+
+	@Test
+	public void testSaveOverMappedFile() throws Exception
+	{
+		File file = aDirectory.resolve("diagram.mbd").toFile();
+		Diagram diagram = createDiagram();
+		PersistenceService.save(diagram, file);
+		Diagram result = PersistenceService.readMapped(file).diagram();
+		Package family = (Package) result.getNamedElements().get(1);
+		PersistenceService.save(new Diagram(), file);
+		assertTrue(family.hasLoadedChildren());
+		assertEquals(describe(diagram), describe(result));
+		assertEquals(0, PersistenceService.read(file).diagram().getNamedElements().size());
+	}
+
+	@Test
+	public void testSaveInBackground() throws Exception
+	{
+		File file = aDirectory.resolve("diagram.xmi").toFile();
+		Diagram diagram = createDiagram();
+		String expected = describe(diagram);
+		CompletableFuture<Void> saved = PersistenceService.saveInBackground(diagram, file);
+		diagram.getNamedElements().get(0).getProperties().get("name").setValue("Renamed");
+		diagram.getNamedElements().get(0).translate(5, 5);
+		saved.get();
+		assertEquals(expected, describe(PersistenceService.read(file).diagram()));
+		assertEquals(1, aDirectory.toFile().list().length);
+	}
+
+	@Test
+	public void testBinaryDecoderRejectsXmi() throws IOException
+	{
+		File file = aDirectory.resolve("diagram.xmi").toFile();
+		PersistenceService.save(createDiagram(), file);
+		assertThrows(DeserializationException.class, () -> BinaryDecoder.decode(file));
+	}
+
+	@Test
+	public void testPersistentIds() throws IOException
+	{
+		File file = aDirectory.resolve("diagram.xmi").toFile();
+		PersistenceService.save(createDiagram(), file);
+		Diagram diagram = PersistenceService.read(file).diagram();
+		Package family = (Package) diagram.getNamedElements().get(1);
+		NamedElement role = family.getChildren().get(1);
+		int roleId = role.getPersistentId();
+		NamedElement parent = family.getChildren().get(0);
+		family.removeChild(parent);
+		for( Relationship relationship : new ArrayList<>(diagram.getRelationships()) )
+		{
+			if( relationship.getStart() == parent )
+			{
+				diagram.removeRelationship(relationship);
+			}
+		}
+		BClass child = new BClass(false, false);
+		diagram.addNamedElement(child);
+
+		PersistenceService.save(diagram, file);
+		Diagram saved = PersistenceService.read(file).diagram();
+		assertEquals(roleId, ((Package) saved.getNamedElements().get(1)).getChildren().get(0).getPersistentId());
+		assertEquals(roleId + 1, saved.getNamedElements().get(2).getPersistentId());
+		assertEquals(roleId + 1, child.getPersistentId());
+	}
+
+	@Test
+	public void testBinaryPersistentIds() throws IOException
+	{
+		File file = aDirectory.resolve("diagram.mbd").toFile();
+		Diagram diagram = createDiagram();
+		Package family = (Package) diagram.getNamedElements().get(1);
+		diagram.getNamedElements().get(0).setPersistentId(7);
+		family.setPersistentId(3);
+		family.getChildren().get(1).setPersistentId(12);
+		PersistenceService.save(diagram, file);
+		List<Integer> expected = persistentIds(diagram);
+
+		Diagram decoded = BinaryDecoder.decode(file);
+		assertEquals(expected, persistentIds(decoded));
+		PersistenceService.save(decoded, file);
+		assertEquals(expected, persistentIds(BinaryDecoder.decode(file)));
+		assertEquals(expected, persistentIds(MappedBinaryDecoder.decode(file)));
+	}
+
+	@Test
+	public void testIncrementalSave() throws IOException
+	{
+		Diagram diagram = createDiagram();
+		XmiFragments fragments = new XmiFragments();
+		XmlStreamEncoder.encode(diagram, new ByteArrayOutputStream(), fragments);
+		assertEquals(0, fragments.getReusedCount());
+
+		diagram.getNamedElements().get(0).translate(5, 5);
+		ByteArrayOutputStream incremental = new ByteArrayOutputStream();
+		XmlStreamEncoder.encode(diagram, incremental, fragments);
+		assertEquals(1, fragments.getReusedCount());
+		ByteArrayOutputStream full = new ByteArrayOutputStream();
+		XmlStreamEncoder.encode(diagram, full);
+		assertArrayEquals(full.toByteArray(), incremental.toByteArray());
+
+		Package family = (Package) diagram.getNamedElements().get(1);
+		family.getChildren().get(0).getProperties().get("name").setValue("Ancestor");
+		XmlStreamEncoder.encode(diagram, new ByteArrayOutputStream(), fragments);
+		assertEquals(1, fragments.getReusedCount());
+		XmlStreamEncoder.encode(diagram, new ByteArrayOutputStream(), fragments);
+		assertEquals(2, fragments.getReusedCount());
+
+		// A value that is equal to the previous one, but not the same String, is not a change
+		family.getChildren().get(0).getProperties().get("name").setValue(new String("Ancestor"));
+		XmlStreamEncoder.encode(diagram, new ByteArrayOutputStream(), fragments);
+		assertEquals(2, fragments.getReusedCount());
+	}
+
+	/*
+	 * The persistent identifiers of the NamedElements of pDiagram, in depth-first order.
+	 */
+	private static List<Integer> persistentIds(Diagram pDiagram)
+	{
+		List<Integer> result = new ArrayList<>();
+		for( NamedElement namedElement : new SerializationContext(pDiagram) )
+		{
+			result.add(namedElement.getPersistentId());
+		}
+		return result;
+	}
+
+	static Diagram createDiagram()
+	{
+		Diagram diagram = new Diagram();
+		BClass person = new BClass(false, false);
+		person.getProperties().get("name").setValue("Person");
+		person.getProperties().get("attributes").setValue("name:String;\nage:int");
+		person.getProperties().get("methods").setValue("rename(name:String):void");
+		person.setPosition(new Point(10, 20));
+		diagram.addNamedElement(person);
+
+		Package family = new Package();
+		family.getProperties().get("name").setValue("Family");
+		family.setPosition(new Point(200, 100));
+		BClass parent = new BClass(true, false);
+		parent.getProperties().get("name").setValue("Parent");
+		family.addChild(parent);
+		Enumeration role = new Enumeration();
+		role.getProperties().get("name").setValue("Role");
+		role.getProperties().get("literals").setValue("FATHER;\nMOTHER");
+		family.addChild(role);
+		diagram.addNamedElement(family);
+
+		Association association = new Association(false, false);
+		association.getProperties().get("direction").setValue("BiDirection");
+		association.getProperties().get("startLabel").setValue("parents 0..2");
+		association.getProperties().get("endLabel").setValue("children *");
+		association.connect(parent, person, diagram);
+		diagram.addRelationship(association);
+		Generalization generalization = new Generalization();
+		generalization.connect(parent, person, diagram);
+		diagram.addRelationship(generalization);
+		Composition composition = new Composition();
+		composition.getProperties().get("midLabel").setValue("roles");
+		composition.connect(family, role, diagram);
+		diagram.addRelationship(composition);
+		return diagram;
+	}
+
+	/*
+	 * A textual description of the structure and properties of pDiagram that does not
+	 * depend on object identities or on the order in which root elements are stored.
+	 */
+	static String describe(Diagram pDiagram)
+	{
+		List<String> namedElements = new ArrayList<>();
+		for( NamedElement namedElement : pDiagram.getNamedElements() )
+		{
+			StringBuilder builder = new StringBuilder();
+			describe(namedElement, builder, "");
+			namedElements.add(builder.toString());
+		}
+		namedElements.sort(null);
+		List<String> relationships = new ArrayList<>();
+		for( Relationship relationship : pDiagram.getRelationships() )
+		{
+			relationships.add(relationship.getClass().getSimpleName() + " " + relationship.getStart().getName() +
+					"->" + relationship.getEnd().getName() + " " + nonEmptyProperties(relationship));
+		}
+		return String.join("", namedElements) + String.join("\n", relationships);
+	}
+
+	private static void describe(NamedElement pNamedElement, StringBuilder pBuilder, String pIndent)
+	{
+		pBuilder.append(pIndent).append(pNamedElement.getClass().getSimpleName()).append(' ')
+			.append(pNamedElement.getPosition().getX()).append(',').append(pNamedElement.getPosition().getY())
+			.append(' ').append(nonEmptyProperties(pNamedElement));
+		if( pNamedElement instanceof BClass )
+		{
+			pBuilder.append(" abstract=").append(((BClass)pNamedElement).getIsAbstract());
+		}
+		pBuilder.append('\n');
+		if( pNamedElement instanceof Package )
+		{
+			for( NamedElement child : ((Package)pNamedElement).getChildren() )
+			{
+				describe(child, pBuilder, pIndent + "  ");
+			}
+		}
+	}
+
+	private static Map<String, String> nonEmptyProperties(Element pElement)
+	{
+		Map<String, String> result = new TreeMap<>();
+		pElement.getProperties().forEach((key, property) ->
+		{
+			if( !property.getValue().isEmpty() )
+			{
+				result.put(key, property.getValue().replaceAll(";$", ""));
+			}
+		});
+		return result;
+	}
+}
@@ -0,0 +1,114 @@
+package geom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class TestSpatialIndex
+{
+	@Test
+	public void testBoundaries()
+	{
+		SpatialIndex<String> index = new SpatialIndex<>();
+		index.put("a", new Rectangle(0, 0, 10, 10));
+		index.put("b", new Rectangle(10, 10, 5, 5));
+		assertEquals(List.of("a"), index.itemsAt(new Point(0, 0)));
+		assertEquals(2, index.itemsAt(new Point(10, 10)).size());
+		assertEquals(List.of("b"), index.itemsIntersecting(new Rectangle(12, 12, 10, 10)));
+		index.put("a", new Rectangle(100, 100, 10, 10));
+		assertEquals(List.of("b"), index.itemsAt(new Point(10, 10)));
+		assertEquals(Optional.of(new Rectangle(100, 100, 10, 10)), index.getBounds("a"));
+		index.remove("b");
+		assertFalse(index.contains("b"));
+		assertEquals(Optional.empty(), index.getBounds("b"));
+		assertTrue(index.itemsAt(new Point(10, 10)).isEmpty());
+		assertEquals(1, index.size());
+	}
+
+	/*
+	 * The items found must be the same as those found by checking all of them,
+	 * while items are added, moved and removed.
+	 */
+	@Test
+	public void testRandomOperations()
+	{
+		Random random = new Random(22);
+		SpatialIndex<Object> index = new SpatialIndex<>();
+		Map<Object, Rectangle> expected = new IdentityHashMap<>();
+		List<Object> items = new ArrayList<>();
+		for( int i = 0; i < 5000; i++ )
+		{
+			int operation = random.nextInt(4);
+			if( operation <= 1 || items.isEmpty() )
+			{
+				Object item = new Object();
+				items.add(item);
+				Rectangle bounds = randomRectangle(random);
+				expected.put(item, bounds);
+				index.put(item, bounds);
+			}
+			else if( operation == 2 )
+			{
+				Object item = items.get(random.nextInt(items.size()));
+				Rectangle bounds = randomRectangle(random);
+				expected.put(item, bounds);
+				index.put(item, bounds);
+			}
+			else
+			{
+				Object item = items.remove(random.nextInt(items.size()));
+				expected.remove(item);
+				index.remove(item);
+			}
+			if( i % 50 == 0 )
+			{
+				Rectangle area = randomRectangle(random);
+				assertEquals(intersecting(expected, area), asSet(index.itemsIntersecting(area)));
+				Point point = new Point(random.nextInt(1000), random.nextInt(1000));
+				assertEquals(intersecting(expected, new Rectangle(point.getX(), point.getY(), 0, 0)), 
+						asSet(index.itemsAt(point)));
+			}
+		}
+		assertEquals(expected.size(), index.size());
+	}
+
+	private static Rectangle randomRectangle(Random pRandom)
+	{
+		return new Rectangle(pRandom.nextInt(1000), pRandom.nextInt(1000), pRandom.nextInt(100), pRandom.nextInt(100));
+	}
+
+	private static Set<Object> intersecting(Map<Object, Rectangle> pBounds, Rectangle pArea)
+	{
+		Set<Object> result = Collections.newSetFromMap(new IdentityHashMap<>());
+		pBounds.forEach((item, bounds) -> 
+		{
+			if( bounds.intersects(pArea) )
+			{
+				result.add(item);
+			}
+		});
+		return result;
+	}
+
+	/*
+	 * Also checks that no item is found twice.
+	 */
+	private static Set<Object> asSet(List<Object> pItems)
+	{
+		Set<Object> result = Collections.newSetFromMap(new IdentityHashMap<>());
+		result.addAll(pItems);
+		assertEquals(pItems.size(), result.size());
+		return result;
+	}
+}
@@ -0,0 +1,75 @@
+package ui;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.testfx.framework.junit5.ApplicationTest;
+import org.testfx.util.WaitForAsyncUtils;
+
+import diagram.BClass;
+import diagram.Diagram;
+import diagram.Package;
+import file.PersistenceService;
+import geom.Point;
+import javafx.scene.Scene;
+import javafx.scene.control.TabPane;
+import javafx.stage.Stage;
+import viewers.namedelements.NamedElementViewerRegistry;
+
+/**
+ * Opens a diagram read as it is accessed in a small tab, and checks that only
+ * the packages that are seen are loaded.
+ */
+public class TestDiagramTab extends ApplicationTest
+{
+	private static final int FAR = 5000;
+
+	private Package aNear;
+	private Package aFar;
+
+	@Override
+	public void start(Stage pStage) throws Exception
+	{
+		Diagram diagram = new Diagram();
+		diagram.addNamedElement(createPackage("Near", 20));
+		diagram.addNamedElement(createPackage("Far", FAR));
+		// Computing the bounds of the packages records them, so that they are saved
+		diagram.getNamedElements().forEach(NamedElementViewerRegistry::getBounds);
+		File file = Files.createTempFile("diagram", ".mbd").toFile();
+		file.deleteOnExit();
+		PersistenceService.save(diagram, file);
+
+		Diagram mapped = PersistenceService.readMapped(file).diagram();
+		aNear = (Package) mapped.getNamedElements().get(0);
+		aFar = (Package) mapped.getNamedElements().get(1);
+		pStage.setScene(new Scene(new TabPane(new DiagramTab(mapped)), 400, 300));
+		pStage.show();
+	}
+
+	@Test
+	public void testOnlyVisiblePackagesAreLoaded()
+	{
+		WaitForAsyncUtils.waitForFxEvents();
+		assertTrue(aNear.hasLoadedChildren());
+		assertFalse(aFar.hasLoadedChildren());
+	}
+
+	private static Package createPackage(String pName, int pPosition)
+	{
+		Package result = new Package();
+		result.getProperties().get("name").setValue(pName);
+		result.setPosition(new Point(pPosition, pPosition));
+		for( int i = 0; i < 3; i++ )
+		{
+			BClass bClass = new BClass(false, false);
+			bClass.getProperties().get("name").setValue(pName + i);
+			bClass.setPosition(new Point(pPosition + 10 + 150 * i, pPosition + 40));
+			result.addChild(bClass);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,86 @@
+package viewers.diagrams;
+
+import diagram.Diagram;
+import geom.Rectangle;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+
+/**
+ * Measures the time needed to draw a 1200x800 window onto diagrams of 
+ * increasing size, with all their elements and with only those in the window.
+ * The classes are spread so that the window always shows about the same number
+ * of them, so the time to draw only the window should barely grow with the
+ * size of the diagram.
+ *
+ * Drawing needs the JavaFX toolkit, and the benchmark does nothing if it cannot be started.
+ *
+ * Run with: java viewers.diagrams.CullingBenchmark [sizes...]
+ */
+public final class CullingBenchmark
+{
+	private static final int[] DEFAULT_SIZES = {5_000, 50_000};
+	private static final int WIDTH = 1_200;
+	private static final int HEIGHT = 800;
+	private static final int AREA_PER_CLASS = 200 * 200;
+	private static final int RELATIONSHIPS_PER_CLASS = 2;
+	private static final int FRAMES = 5;
+
+	private CullingBenchmark() {}
+
+	/**
+	 * @param pArgs Optional diagram sizes, in number of classes.
+	 * @throws InterruptedException If interrupted while starting JavaFX.
+	 */
+	public static void main(String[] pArgs) throws InterruptedException
+	{
+		int[] sizes = DEFAULT_SIZES;
+		if( pArgs.length > 0 )
+		{
+			sizes = new int[pArgs.length];
+			for( int i = 0; i < pArgs.length; i++ )
+			{
+				sizes[i] = Integer.parseInt(pArgs[i]);
+			}
+		}
+		if( !RenderBenchmark.startToolkit() )
+		{
+			System.out.println("Drawing skipped: the JavaFX toolkit is not available");
+			return;
+		}
+		System.out.println(String.format("%8s %16s %16s", "classes", "all (ms/frame)", "window (ms/frame)"));
+		for( int size : sizes )
+		{
+			run(size);
+		}
+		Platform.exit();
+	}
+
+	private static void run(int pClasses)
+	{
+		int side = (int) Math.sqrt((double) pClasses * AREA_PER_CLASS);
+		Diagram diagram = RenderBenchmark.createDiagram(pClasses, RELATIONSHIPS_PER_CLASS * pClasses, side);
+		Rectangle window = new Rectangle((side - WIDTH) / 2, (side - HEIGHT) / 2, WIDTH, HEIGHT);
+		// The canvas is the size of the window, as the visible part of a scroll pane
+		Canvas canvas = new Canvas(WIDTH, HEIGHT);
+		GraphicsContext graphics = canvas.getGraphicsContext2D();
+		graphics.translate(-window.getX(), -window.getY());
+
+		diagram.getDiagramViewer().draw(diagram, graphics);
+		long start = System.nanoTime();
+		for( int i = 0; i < FRAMES; i++ )
+		{
+			diagram.getDiagramViewer().draw(diagram, graphics);
+		}
+		long all = System.nanoTime() - start;
+
+		diagram.getDiagramViewer().draw(diagram, graphics, window);
+		start = System.nanoTime();
+		for( int i = 0; i < FRAMES; i++ )
+		{
+			diagram.getDiagramViewer().draw(diagram, graphics, window);
+		}
+		long visible = System.nanoTime() - start;
+		System.out.println(String.format("%8d %16.2f %16.2f", pClasses, all / 1e6 / FRAMES, visible / 1e6 / FRAMES));
+	}
+}
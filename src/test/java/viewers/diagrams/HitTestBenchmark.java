@@ -0,0 +1,139 @@
+package viewers.diagrams;
+
+import java.util.Optional;
+import java.util.Random;
+
+import diagram.Diagram;
+import diagram.NamedElement;
+import diagram.Relationship;
+import geom.Point;
+import geom.Rectangle;
+import geom.SpatialIndex;
+import javafx.application.Platform;
+import viewers.relationships.RelationshipViewerRegistry;
+
+/**
+ * Measures the time needed to find what is under 10,000 random clicks on a
+ * diagram of 20,000 classes and 20,000 relationships, with the spatial index
+ * of the diagram and by going through all the elements of the diagram. The 
+ * spatial index is first measured alone, on the bounds of 20,000 rectangles,
+ * which does not need JavaFX. Finding the elements of a diagram needs their
+ * bounds, which need the JavaFX toolkit, and is skipped if it cannot be started.
+ *
+ * Run with: java viewers.diagrams.HitTestBenchmark [classes clicks]
+ */
+public final class HitTestBenchmark
+{
+	private static final int DEFAULT_CLASSES = 20_000;
+	private static final int DEFAULT_CLICKS = 10_000;
+	private static final int AREA_PER_CLASS = 200 * 200;
+	private static final int CLASS_WIDTH = 100;
+	private static final int CLASS_HEIGHT = 60;
+	private static final long SEED = 42;
+
+	private HitTestBenchmark() {}
+
+	/**
+	 * @param pArgs An optional number of classes and clicks.
+	 * @throws InterruptedException If interrupted while starting JavaFX.
+	 */
+	public static void main(String[] pArgs) throws InterruptedException
+	{
+		int classes = pArgs.length > 1 ? Integer.parseInt(pArgs[0]) : DEFAULT_CLASSES;
+		int clicks = pArgs.length > 1 ? Integer.parseInt(pArgs[1]) : DEFAULT_CLICKS;
+		int side = (int) Math.sqrt((double) classes * AREA_PER_CLASS);
+		Point[] points = new Point[clicks];
+		Random random = new Random(SEED);
+		for( int i = 0; i < clicks; i++ )
+		{
+			points[i] = new Point(random.nextInt(side), random.nextInt(side));
+		}
+
+		Rectangle[] bounds = new Rectangle[classes];
+		SpatialIndex<Integer> index = new SpatialIndex<>();
+		for( int i = 0; i < classes; i++ )
+		{
+			bounds[i] = new Rectangle(random.nextInt(side), random.nextInt(side), CLASS_WIDTH, CLASS_HEIGHT);
+			index.put(i, bounds[i]);
+		}
+		// Warm up
+		for( Point point : points )
+		{
+			index.itemsAt(point);
+		}
+		long start = System.nanoTime();
+		int found = 0;
+		for( Point point : points )
+		{
+			found += index.itemsAt(point).size();
+		}
+		report("SpatialIndex.itemsAt", System.nanoTime() - start, clicks, found);
+		start = System.nanoTime();
+		found = 0;
+		for( Point point : points )
+		{
+			for( Rectangle rectangle : bounds )
+			{
+				found += rectangle.contains(point) ? 1 : 0;
+			}
+		}
+		report("scan of all bounds", System.nanoTime() - start, clicks, found);
+
+		if( !RenderBenchmark.startToolkit() )
+		{
+			System.out.println("Hit tests on a diagram skipped: the JavaFX toolkit is not available");
+			return;
+		}
+		Diagram diagram = RenderBenchmark.createDiagram(classes, classes, side);
+		DiagramViewer viewer = diagram.getDiagramViewer();
+		// Builds the index, and warms up
+		viewer.NamedElementAt(diagram, points[0]);
+		viewer.RelationshipAt(diagram, points[0]);
+
+		start = System.nanoTime();
+		found = 0;
+		for( Point point : points )
+		{
+			found += viewer.NamedElementAt(diagram, point).isPresent() ? 1 : 0;
+			found += viewer.RelationshipAt(diagram, point).isPresent() ? 1 : 0;
+		}
+		report("NamedElementAt + RelationshipAt", System.nanoTime() - start, clicks, found);
+		start = System.nanoTime();
+		found = 0;
+		for( Point point : points )
+		{
+			found += scanNamedElements(viewer, diagram, point).isPresent() ? 1 : 0;
+			found += scanRelationships(diagram, point).isPresent() ? 1 : 0;
+		}
+		report("scan of all elements", System.nanoTime() - start, clicks, found);
+		Platform.exit();
+	}
+
+	private static void report(String pName, long pElapsed, int pClicks, int pFound)
+	{
+		System.out.println(String.format("%-32s %10.2f ms for %d clicks, %8.2f us per click (%d found)",
+				pName, pElapsed / 1e6, pClicks, pElapsed / 1e3 / pClicks, pFound));
+	}
+
+	/*
+	 * How NamedElementAt found NamedElements before the diagrams were indexed.
+	 */
+	private static Optional<NamedElement> scanNamedElements(DiagramViewer pViewer, Diagram pDiagram, Point pPoint)
+	{
+		return pDiagram.getNamedElements().stream()
+				.map(namedElement -> pViewer.deepFindNamedElement(pDiagram, namedElement, pPoint))
+				.filter(Optional::isPresent)
+				.map(Optional::get)
+				.reduce((first, second) -> second);
+	}
+
+	/*
+	 * How RelationshipAt found Relationships before the diagrams were indexed.
+	 */
+	private static Optional<Relationship> scanRelationships(Diagram pDiagram, Point pPoint)
+	{
+		return pDiagram.getRelationships().stream()
+				.filter(relationship -> RelationshipViewerRegistry.contains(relationship, pPoint))
+				.findFirst();
+	}
+}
@@ -0,0 +1,180 @@
+package viewers.diagrams;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import diagram.Association;
+import diagram.BClass;
+import diagram.Composition;
+import diagram.Diagram;
+import diagram.Generalization;
+import diagram.NamedElement;
+import diagram.Relationship;
+import geom.Point;
+import javafx.application.Platform;
+import javafx.scene.canvas.Canvas;
+
+/**
+ * Measures the time needed to draw a diagram with 5,000 classes and 20,000
+ * relationships, and the part of it spent finding the relationships connected
+ * to each end point of each relationship, which the segmentation styles do
+ * for every relationship they draw. The connected relationships are found
+ * with Diagram.RelationshipsConnectedTo and, for comparison, by going through
+ * all the relationships of the diagram.
+ *
+ * Drawing needs the JavaFX toolkit, and is skipped if it cannot be started.
+ *
+ * Run with: java viewers.diagrams.RenderBenchmark [classes relationships]
+ */
+public final class RenderBenchmark
+{
+	private static final int DEFAULT_CLASSES = 5_000;
+	private static final int DEFAULT_RELATIONSHIPS = 20_000;
+	private static final int SCAN_QUERIES = 2_000;
+	private static final int FRAMES = 5;
+	private static final int SIZE = 20_000;
+	private static final long SEED = 42;
+
+	private RenderBenchmark() {}
+
+	/**
+	 * @param pArgs An optional number of classes and relationships.
+	 * @throws InterruptedException If interrupted while starting JavaFX.
+	 */
+	public static void main(String[] pArgs) throws InterruptedException
+	{
+		int classes = pArgs.length > 1 ? Integer.parseInt(pArgs[0]) : DEFAULT_CLASSES;
+		int relationships = pArgs.length > 1 ? Integer.parseInt(pArgs[1]) : DEFAULT_RELATIONSHIPS;
+		Diagram diagram = createDiagram(classes, relationships, SIZE);
+
+		// Warm up
+		connectedToEndPoints(diagram);
+		scanEndPoints(diagram, SCAN_QUERIES);
+
+		long start = System.nanoTime();
+		int found = connectedToEndPoints(diagram);
+		long elapsed = System.nanoTime() - start;
+		System.out.println(String.format("%-32s %12.2f ms for %d end points (%d relationships found)",
+				"RelationshipsConnectedTo", elapsed / 1e6, 2 * relationships, found));
+
+		start = System.nanoTime();
+		found = scanEndPoints(diagram, SCAN_QUERIES);
+		elapsed = System.nanoTime() - start;
+		System.out.println(String.format("%-32s %12.2f ms for %d end points, about %.0f ms for all of them",
+				"scan of all relationships", elapsed / 1e6, SCAN_QUERIES,
+				elapsed / 1e6 * 2 * relationships / SCAN_QUERIES));
+
+		if( !startToolkit() )
+		{
+			System.out.println("Drawing skipped: the JavaFX toolkit is not available");
+			return;
+		}
+		Canvas canvas = new Canvas(SIZE, SIZE);
+		diagram.getDiagramViewer().draw(diagram, canvas.getGraphicsContext2D());
+		start = System.nanoTime();
+		for( int i = 0; i < FRAMES; i++ )
+		{
+			diagram.getDiagramViewer().draw(diagram, canvas.getGraphicsContext2D());
+		}
+		elapsed = System.nanoTime() - start;
+		System.out.println(String.format("%-32s %12.2f ms per frame", "draw", elapsed / 1e6 / FRAMES));
+		Platform.exit();
+	}
+
+	/*
+	 * Creates a diagram with pClasses classes at random positions in a square of side
+	 * pSize and pRelationships relationships of the three kinds between randomly chosen classes.
+	 */
+	static Diagram createDiagram(int pClasses, int pRelationships, int pSize)
+	{
+		Random random = new Random(SEED);
+		Diagram diagram = new Diagram();
+		NamedElement[] elements = new NamedElement[pClasses];
+		for( int i = 0; i < pClasses; i++ )
+		{
+			BClass element = new BClass(false, false);
+			element.getProperties().get("name").setValue("Class" + i);
+			element.getProperties().get("attributes").setValue("id:int;\nname:String");
+			element.setPosition(new Point(random.nextInt(pSize), random.nextInt(pSize)));
+			diagram.addNamedElement(element);
+			elements[i] = element;
+		}
+		for( int i = 0; i < pRelationships; i++ )
+		{
+			Relationship relationship;
+			if( i % 3 == 0 )
+			{
+				relationship = new Association(false, false);
+			}
+			else if( i % 3 == 1 )
+			{
+				relationship = new Generalization();
+			}
+			else
+			{
+				relationship = new Composition();
+			}
+			relationship.connect(elements[random.nextInt(pClasses)], elements[random.nextInt(pClasses)], diagram);
+			diagram.addRelationship(relationship);
+		}
+		return diagram;
+	}
+
+	/*
+	 * Finds the relationships connected to both end points of every relationship,
+	 * and returns the number of relationships found.
+	 */
+	private static int connectedToEndPoints(Diagram pDiagram)
+	{
+		int result = 0;
+		for( Relationship relationship : pDiagram.getRelationships() )
+		{
+			for( Relationship connected : pDiagram.RelationshipsConnectedTo(relationship.getStart()) )
+			{
+				result += connected == relationship ? 1 : 0;
+			}
+			for( Relationship connected : pDiagram.RelationshipsConnectedTo(relationship.getEnd()) )
+			{
+				result += connected == relationship ? 1 : 0;
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Finds the relationships connected to the first pQueries end points by going through
+	 * all the relationships each time, and returns the number of relationships found.
+	 */
+	private static int scanEndPoints(Diagram pDiagram, int pQueries)
+	{
+		int result = 0;
+		for( int i = 0; i < pQueries; i++ )
+		{
+			Relationship relationship = pDiagram.getRelationships().get(i / 2);
+			NamedElement endPoint = i % 2 == 0 ? relationship.getStart() : relationship.getEnd();
+			for( Relationship connected : pDiagram.getRelationships() )
+			{
+				if( connected.getStart() == endPoint || connected.getEnd() == endPoint )
+				{
+					result++;
+				}
+			}
+		}
+		return result;
+	}
+
+	static boolean startToolkit() throws InterruptedException
+	{
+		CountDownLatch started = new CountDownLatch(1);
+		try
+		{
+			Platform.startup(started::countDown);
+		}
+		catch( RuntimeException | LinkageError exception )
+		{
+			return false;
+		}
+		started.await();
+		return true;
+	}
+}
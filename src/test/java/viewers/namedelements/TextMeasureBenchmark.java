@@ -0,0 +1,97 @@
+package viewers.namedelements;
+
+import java.util.concurrent.CountDownLatch;
+
+import diagram.BClass;
+import javafx.application.Platform;
+
+/**
+ * Measures the time needed to compute the bounds of classes with
+ * BClassViewer.internalGetBounds, which measures their name, attributes and
+ * methods, without going through the cache of bounds. The classes are first
+ * measured with a cold cache of text dimensions, as each of their strings is
+ * new, then again with a warm cache, as when bounds are computed again after
+ * an unrelated change.
+ *
+ * Measuring text needs the JavaFX toolkit, and is skipped if it cannot be started.
+ *
+ * Run with: java viewers.namedelements.TextMeasureBenchmark [classes]
+ */
+public final class TextMeasureBenchmark
+{
+	private static final int DEFAULT_CLASSES = 2_000;
+	private static final int ATTRIBUTES = 5;
+	private static final int ROUNDS = 10;
+
+	private TextMeasureBenchmark() {}
+
+	/**
+	 * @param pArgs An optional number of classes.
+	 * @throws InterruptedException If interrupted while starting JavaFX.
+	 */
+	public static void main(String[] pArgs) throws InterruptedException
+	{
+		int classes = pArgs.length > 0 ? Integer.parseInt(pArgs[0]) : DEFAULT_CLASSES;
+		CountDownLatch started = new CountDownLatch(1);
+		try
+		{
+			Platform.startup(started::countDown);
+		}
+		catch( RuntimeException | LinkageError exception )
+		{
+			System.out.println("Measuring skipped: the JavaFX toolkit is not available");
+			return;
+		}
+		started.await();
+		BClassViewer viewer = new BClassViewer();
+
+		// Warm up with classes whose strings are not measured afterwards
+		measure(viewer, createClasses(classes, "warmup"));
+
+		BClass[] bClasses = createClasses(classes, "class");
+		long start = System.nanoTime();
+		measure(viewer, bClasses);
+		long elapsed = System.nanoTime() - start;
+		System.out.println(String.format("%-12s %10.2f us per class", "cold cache", elapsed / 1e3 / classes));
+
+		start = System.nanoTime();
+		for( int i = 0; i < ROUNDS; i++ )
+		{
+			measure(viewer, bClasses);
+		}
+		elapsed = System.nanoTime() - start;
+		System.out.println(String.format("%-12s %10.2f us per class", "warm cache", elapsed / 1e3 / classes / ROUNDS));
+		Platform.exit();
+	}
+
+	private static void measure(BClassViewer pViewer, BClass[] pClasses)
+	{
+		for( BClass bClass : pClasses )
+		{
+			pViewer.internalGetBounds(bClass);
+		}
+	}
+
+	/*
+	 * Creates pClasses classes whose name, attributes and methods all contain pPrefix.
+	 */
+	private static BClass[] createClasses(int pClasses, String pPrefix)
+	{
+		BClass[] result = new BClass[pClasses];
+		for( int i = 0; i < pClasses; i++ )
+		{
+			StringBuilder attributes = new StringBuilder();
+			StringBuilder methods = new StringBuilder();
+			for( int j = 0; j < ATTRIBUTES; j++ )
+			{
+				attributes.append(pPrefix).append(i).append("attribute").append(j).append(":int;\n");
+				methods.append("get").append(pPrefix).append(i).append("attribute").append(j).append("():int;\n");
+			}
+			result[i] = new BClass(false, false);
+			result[i].getProperties().get("name").setValue(pPrefix + i);
+			result[i].getProperties().get("attributes").setValue(attributes.toString());
+			result[i].getProperties().get("methods").setValue(methods.toString());
+		}
+		return result;
+	}
+}